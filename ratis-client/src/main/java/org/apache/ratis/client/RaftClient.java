@@ -60,6 +60,12 @@ public interface RaftClient extends Closeable {
   /** Async call to send the given readonly message to the raft service. */
   CompletableFuture<RaftClientReply> sendReadOnlyAsync(Message message);
 
+  /**
+   * Async call to send the given readonly message to the given server, which may be a follower.
+   * The read is linearizable: the server serves it once it has applied the read index provided by the leader.
+   */
+  CompletableFuture<RaftClientReply> sendReadOnlyAsync(Message message, RaftPeerId server);
+
   /** Async call to send the given stale-read message to the given server (not the raft service). */
   CompletableFuture<RaftClientReply> sendStaleReadAsync(Message message, long minIndex, RaftPeerId server);
 
@@ -79,6 +85,9 @@ public interface RaftClient extends Closeable {
   /** Send the given readonly message to the raft service. */
   RaftClientReply sendReadOnly(Message message) throws IOException;
 
+  /** Send the given readonly message to the given server, which may be a follower, for a linearizable read. */
+  RaftClientReply sendReadOnly(Message message, RaftPeerId server) throws IOException;
+
   /** Send the given stale-read message to the given server (not the raft service). */
   RaftClientReply sendStaleRead(Message message, long minIndex, RaftPeerId server) throws IOException;
 
@@ -88,6 +97,13 @@ public interface RaftClient extends Closeable {
   /** Send set configuration request to the raft service. */
   RaftClientReply setConfiguration(RaftPeer[] serversInNewConf) throws IOException;
 
+  /**
+   * Send set configuration request to the raft service.
+   * The learners receive the log but they are non-voting,
+   * i.e. they neither count toward the commit quorum nor take part in the elections.
+   */
+  RaftClientReply setConfiguration(RaftPeer[] serversInNewConf, RaftPeer[] learnersInNewConf) throws IOException;
+
   /** Send groupAdd request to the given server (not the raft service). */
   RaftClientReply groupAdd(RaftGroup newGroup, RaftPeerId server) throws IOException;
 
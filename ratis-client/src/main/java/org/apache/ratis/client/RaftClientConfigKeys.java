@@ -76,6 +76,51 @@ public interface RaftClientConfigKeys {
       setInt(properties::setInt, OUTSTANDING_REQUESTS_MAX_KEY, outstandingRequests);
     }
 
+    /** Batch the async write messages into a single request. */
+    interface Batch {
+      String PREFIX = Async.PREFIX + ".batch";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The max number of messages in a batch. */
+      String ELEMENT_LIMIT_KEY = PREFIX + ".element-limit";
+      int ELEMENT_LIMIT_DEFAULT = 64;
+      static int elementLimit(RaftProperties properties) {
+        return getInt(properties::getInt, ELEMENT_LIMIT_KEY, ELEMENT_LIMIT_DEFAULT, getDefaultLog(), requireMin(1));
+      }
+      static void setElementLimit(RaftProperties properties, int elementLimit) {
+        setInt(properties::setInt, ELEMENT_LIMIT_KEY, elementLimit, requireMin(1));
+      }
+
+      /** The max total size of the messages in a batch. */
+      String BYTE_LIMIT_KEY = PREFIX + ".byte-limit";
+      SizeInBytes BYTE_LIMIT_DEFAULT = SizeInBytes.valueOf("256KB");
+      static SizeInBytes byteLimit(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes, BYTE_LIMIT_KEY, BYTE_LIMIT_DEFAULT, getDefaultLog());
+      }
+      static void setByteLimit(RaftProperties properties, SizeInBytes byteLimit) {
+        setSizeInBytes(properties::set, BYTE_LIMIT_KEY, byteLimit, requireMin(1L));
+      }
+
+      /** The max time to wait for more messages after the first message of a batch is submitted. */
+      String LINGER_KEY = PREFIX + ".linger";
+      TimeDuration LINGER_DEFAULT = TimeDuration.valueOf(1, TimeUnit.MILLISECONDS);
+      static TimeDuration linger(RaftProperties properties) {
+        return getTimeDuration(properties.getTimeDuration(LINGER_DEFAULT.getUnit()),
+            LINGER_KEY, LINGER_DEFAULT, getDefaultLog(), requireNonNegativeTimeDuration());
+      }
+      static void setLinger(RaftProperties properties, TimeDuration linger) {
+        setTimeDuration(properties::setTimeDuration, LINGER_KEY, linger);
+      }
+    }
+
     interface Experimental {
       String PREFIX = Async.PREFIX + "." + Experimental.class.getSimpleName().toLowerCase();
 
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.client.impl;
+
+import org.apache.ratis.client.RaftClientConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.WriteBatchReply;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+/**
+ * Batch the async write messages submitted within a short time into a single {@link WriteBatchRequest}.
+ * The messages keep their own reply futures and their order.
+ *
+ * A batch is sent once it reaches the element limit or the byte limit,
+ * or once the linger time has elapsed since its first message was submitted.
+ * A batch holds a permit of {@link OrderedAsync} from the time it is opened,
+ * so that sending a batch never blocks.
+ */
+class AsyncWriteBatcher {
+  static final Logger LOG = LoggerFactory.getLogger(AsyncWriteBatcher.class);
+
+  /** A message waiting in a batch. */
+  private static class Write {
+    private final Message message;
+    private final CompletableFuture<RaftClientReply> future = new CompletableFuture<>();
+
+    Write(Message message) {
+      this.message = message;
+    }
+
+    void complete(RaftClientReply reply) {
+      try {
+        future.complete(RaftClientImpl.handleRaftException(reply, CompletionException::new));
+      } catch (CompletionException e) {
+        future.completeExceptionally(e);
+      }
+    }
+  }
+
+  private final RaftClientImpl client;
+  private final int elementLimit;
+  private final long byteLimit;
+  private final TimeDuration linger;
+
+  /** The current batch; null if there is no batch opened. */
+  private List<Write> batch;
+  private long batchSize = 0;
+  /** The id of the current batch, which is increased when a batch is sent. */
+  private long batchId = 0;
+
+  AsyncWriteBatcher(RaftClientImpl client, RaftProperties properties) {
+    this.client = client;
+    this.elementLimit = RaftClientConfigKeys.Async.Batch.elementLimit(properties);
+    this.byteLimit = RaftClientConfigKeys.Async.Batch.byteLimit(properties).getSize();
+    this.linger = RaftClientConfigKeys.Async.Batch.linger(properties);
+  }
+
+  /** Add the given message to the current batch. */
+  CompletableFuture<RaftClientReply> add(Message message) {
+    final Write write = new Write(message);
+    synchronized (this) {
+      if (batch != null) {
+        addToBatch(write);
+        return write.future;
+      }
+    }
+
+    // acquire a permit outside the lock since it may block
+    final OrderedAsync ordered = client.getOrderedAsync();
+    try {
+      ordered.acquireRequestPermit(() -> "adding " + message + " to a batch");
+    } catch (InterruptedIOException e) {
+      return JavaUtils.completeExceptionally(e);
+    }
+    final long id;
+    synchronized (this) {
+      if (batch != null) {
+        // another batch has been opened in the meantime
+        ordered.releaseRequestPermit();
+        addToBatch(write);
+        return write.future;
+      }
+      batch = new ArrayList<>();
+      id = batchId;
+      if (addToBatch(write)) {
+        return write.future;
+      }
+    }
+    client.getTimer().onShortTimeout(linger, () -> send(id), LOG,
+        () -> client.getId() + ": Failed to send batch " + id);
+    return write.future;
+  }
+
+  /** @return true iff the batch is sent. */
+  private synchronized boolean addToBatch(Write write) {
+    batch.add(write);
+    batchSize += Message.getSize(write.message);
+    if (batch.size() >= elementLimit || batchSize >= byteLimit || linger.isNonPositive()) {
+      send();
+      return true;
+    }
+    return false;
+  }
+
+  private synchronized void send(long id) {
+    if (id == batchId) {
+      send();
+    }
+  }
+
+  /** Send the current batch, if there is any. */
+  synchronized void send() {
+    if (batch == null) {
+      return;
+    }
+    final List<Write> sending = batch;
+    batch = null;
+    batchSize = 0;
+    batchId++;
+
+    final OrderedAsync ordered = client.getOrderedAsync();
+    if (sending.size() == 1) {
+      final Write w = sending.get(0);
+      ordered.sendWithPermit(RaftClientRequest.writeRequestType(), w.message, null)
+          .whenComplete((reply, e) -> {
+            if (e != null) {
+              w.future.completeExceptionally(e);
+            } else {
+              w.future.complete(reply);
+            }
+          });
+      return;
+    }
+
+    LOG.debug("{}: send a batch of {} messages", client.getId(), sending.size());
+    final List<Message> messages = sending.stream().map(w -> w.message).collect(Collectors.toList());
+    ordered.sendWriteBatchWithPermit(messages).whenComplete((reply, e) -> {
+      if (e == null && (!(reply instanceof WriteBatchReply)
+          || ((WriteBatchReply) reply).getReplies().size() != sending.size())) {
+        e = new IllegalStateException("Unexpected reply for a batch of " + sending.size() + " messages: " + reply);
+      }
+      if (e != null) {
+        for (Write w : sending) {
+          w.future.completeExceptionally(e);
+        }
+        return;
+      }
+      final List<RaftClientReply> replies = ((WriteBatchReply) reply).getReplies();
+      for (int i = 0; i < sending.size(); i++) {
+        sending.get(i).complete(replies.get(i));
+      }
+    });
+  }
+}
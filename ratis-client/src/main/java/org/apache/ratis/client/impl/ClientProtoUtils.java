@@ -98,6 +98,15 @@ public interface ClientProtoUtils {
   static RaftClientRequest toRaftClientRequest(RaftClientRequestProto p) {
     final RaftClientRequest.Type type = toRaftClientRequestType(p);
     final RaftRpcRequestProto request = p.getRpcRequest();
+    if (p.getBatchCount() > 0) {
+      return new WriteBatchRequest(
+          ClientId.valueOf(request.getRequestorId()),
+          RaftPeerId.valueOf(request.getReplyId()),
+          ProtoUtils.toRaftGroupId(request.getRaftGroupId()),
+          request.getCallId(),
+          p.getBatchList().stream().map(ClientProtoUtils::toMessage).collect(Collectors.toList()),
+          request.getSlidingWindowEntry());
+    }
     return new RaftClientRequest(
         ClientId.valueOf(request.getRequestorId()),
         RaftPeerId.valueOf(request.getReplyId()),
@@ -115,6 +124,9 @@ public interface ClientProtoUtils {
     if (request.getMessage() != null) {
       b.setMessage(toClientMessageEntryProtoBuilder(request.getMessage()));
     }
+    if (request instanceof WriteBatchRequest) {
+      ((WriteBatchRequest) request).getMessages().forEach(m -> b.addBatch(toClientMessageEntryProtoBuilder(m)));
+    }
 
     final RaftClientRequest.Type type = request.getType();
     switch (type.getTypeCase()) {
@@ -163,6 +175,11 @@ public interface ClientProtoUtils {
         b.setMessage(toClientMessageEntryProtoBuilder(reply.getMessage()));
       }
       ProtoUtils.addCommitInfos(reply.getCommitInfos(), b::addCommitInfos);
+      if (reply instanceof WriteBatchReply) {
+        // the commit infos are only set in the batch
+        ((WriteBatchReply) reply).getReplies().forEach(
+            r -> b.addBatch(toRaftClientReplyProto(r).toBuilder().clearCommitInfos()));
+      }
 
       final NotLeaderException nle = reply.getNotLeaderException();
       final StateMachineException sme;
@@ -259,6 +276,10 @@ public interface ClientProtoUtils {
   }
 
   static RaftClientReply toRaftClientReply(RaftClientReplyProto replyProto) {
+    return toRaftClientReply(replyProto, replyProto.getCommitInfosList());
+  }
+
+  static RaftClientReply toRaftClientReply(RaftClientReplyProto replyProto, List<CommitInfoProto> commitInfos) {
     final RaftRpcReplyProto rp = replyProto.getRpcReply();
     final RaftGroupMemberId serverMemberId = ProtoUtils.toRaftGroupMemberId(rp.getReplyId(), rp.getRaftGroupId());
 
@@ -287,9 +308,15 @@ public interface ClientProtoUtils {
       e = null;
     }
     ClientId clientId = ClientId.valueOf(rp.getRequestorId());
+    if (replyProto.getBatchCount() > 0) {
+      final List<RaftClientReply> replies = replyProto.getBatchList().stream()
+          .map(r -> toRaftClientReply(r, commitInfos))
+          .collect(Collectors.toList());
+      return new WriteBatchReply(clientId, serverMemberId, rp.getCallId(), replies, commitInfos);
+    }
     return new RaftClientReply(clientId, serverMemberId, rp.getCallId(), rp.getSuccess(),
         toMessage(replyProto.getMessage()), e,
-        replyProto.getLogIndex(), replyProto.getCommitInfosList());
+        replyProto.getLogIndex(), commitInfos);
   }
 
   static GroupListReply toGroupListReply(
@@ -375,11 +402,12 @@ public interface ClientProtoUtils {
       SetConfigurationRequestProto p) {
     final RaftRpcRequestProto m = p.getRpcRequest();
     final List<RaftPeer> peers = ProtoUtils.toRaftPeers(p.getPeersList());
+    final List<RaftPeer> learners = ProtoUtils.toRaftPeers(p.getLearnersList());
     return new SetConfigurationRequest(
         ClientId.valueOf(m.getRequestorId()),
         RaftPeerId.valueOf(m.getReplyId()),
         ProtoUtils.toRaftGroupId(m.getRaftGroupId()),
-        p.getRpcRequest().getCallId(), peers);
+        p.getRpcRequest().getCallId(), peers, learners);
   }
 
   static SetConfigurationRequestProto toSetConfigurationRequestProto(
@@ -387,6 +415,7 @@ public interface ClientProtoUtils {
     return SetConfigurationRequestProto.newBuilder()
         .setRpcRequest(toRaftRpcRequestProtoBuilder(request))
         .addAllPeers(ProtoUtils.toRaftPeerProtos(request.getPeersInNewConf()))
+        .addAllLearners(ProtoUtils.toRaftPeerProtos(request.getLearnersInNewConf()))
         .build();
   }
 
@@ -30,6 +30,7 @@ import org.apache.ratis.protocol.RaftClientReply;
 import org.apache.ratis.protocol.RaftClientRequest;
 import org.apache.ratis.protocol.RaftException;
 import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.protocol.WriteBatchRequest;
 import org.apache.ratis.retry.RetryPolicies;
 import org.apache.ratis.retry.RetryPolicy;
 import org.apache.ratis.util.IOUtils;
@@ -42,6 +43,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -52,6 +55,7 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.LongFunction;
+import java.util.function.Supplier;
 
 /** Send ordered asynchronous requests to a raft service. */
 public final class OrderedAsync {
@@ -137,7 +141,8 @@ public final class OrderedAsync {
   }
 
   private SlidingWindow.Client<PendingOrderedRequest, RaftClientReply> getSlidingWindow(RaftClientRequest request) {
-    return getSlidingWindow(request.is(TypeCase.STALEREAD) ? request.getServerId() : null);
+    final boolean toServer = request.is(TypeCase.STALEREAD) || request.getType().isFollowerRead();
+    return getSlidingWindow(toServer ? request.getServerId() : null);
   }
 
   private SlidingWindow.Client<PendingOrderedRequest, RaftClientReply> getSlidingWindow(RaftPeerId target) {
@@ -157,20 +162,52 @@ public final class OrderedAsync {
     if (!type.is(TypeCase.WATCH) && !type.is(TypeCase.STREAM)) {
       Objects.requireNonNull(message, "message == null");
     }
+    try {
+      acquireRequestPermit(() -> "sending " + type + ", message=" + message);
+    } catch (InterruptedIOException e) {
+      return JavaUtils.completeExceptionally(e);
+    }
+    return sendWithPermit(type, message, server);
+  }
+
+  /** Acquire a permit for sending a request; it blocks until a permit is available. */
+  void acquireRequestPermit(Supplier<String> what) throws InterruptedIOException {
     try {
       requestSemaphore.acquire();
     } catch (InterruptedException e) {
-      return JavaUtils.completeExceptionally(IOUtils.toInterruptedIOException(
-          "Interrupted when sending " + type + ", message=" + message, e));
+      throw IOUtils.toInterruptedIOException("Interrupted when " + what.get(), e);
     }
+  }
 
+  void releaseRequestPermit() {
+    requestSemaphore.release();
+  }
+
+  /** Send a request using a permit acquired by {@link #acquireRequestPermit(Supplier)}. */
+  CompletableFuture<RaftClientReply> sendWithPermit(RaftClientRequest.Type type, Message message, RaftPeerId server) {
     final long callId = RaftClientImpl.nextCallId();
-    final LongFunction<PendingOrderedRequest> constructor = seqNum -> new PendingOrderedRequest(callId, seqNum,
+    return send(callId, server,
         slidingWindowEntry -> client.newRaftClientRequest(server, callId, message, type, slidingWindowEntry));
+  }
+
+  /**
+   * Send the messages as a single {@link WriteBatchRequest}
+   * using a permit acquired by {@link #acquireRequestPermit(Supplier)}.
+   */
+  CompletableFuture<RaftClientReply> sendWriteBatchWithPermit(List<Message> messages) {
+    final long callId = RaftClientImpl.nextCallIds(messages.size());
+    return send(callId, null,
+        slidingWindowEntry -> client.newWriteBatchRequest(callId, messages, slidingWindowEntry));
+  }
+
+  private CompletableFuture<RaftClientReply> send(long callId, RaftPeerId server,
+      Function<SlidingWindowEntry, RaftClientRequest> requestConstructor) {
+    final LongFunction<PendingOrderedRequest> constructor
+        = seqNum -> new PendingOrderedRequest(callId, seqNum, requestConstructor);
     return getSlidingWindow(server).submitNewRequest(constructor, this::sendRequestWithRetry
     ).getReplyFuture(
     ).thenApply(reply -> RaftClientImpl.handleRaftException(reply, CompletionException::new)
-    ).whenComplete((r, e) -> requestSemaphore.release());
+    ).whenComplete((r, e) -> releaseRequestPermit());
   }
 
   private void sendRequestWithRetry(PendingOrderedRequest pending) {
@@ -218,7 +255,7 @@ public final class OrderedAsync {
 
   private void scheduleWithTimeout(PendingOrderedRequest pending, TimeDuration sleepTime,
       SlidingWindow.Client<PendingOrderedRequest, RaftClientReply> slidingWindow) {
-    client.getScheduler().onTimeout(sleepTime,
+    client.getTimer().onTimeout(sleepTime,
         () -> slidingWindow.retry(pending, this::sendRequestWithRetry),
         LOG, () -> "Failed* to retry " + pending);
   }
@@ -19,6 +19,7 @@ package org.apache.ratis.client.impl;
 
 import org.apache.ratis.client.ClientRetryEvent;
 import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.client.RaftClientConfigKeys;
 import org.apache.ratis.client.RaftClientRpc;
 import org.apache.ratis.client.api.StreamApi;
 import org.apache.ratis.conf.RaftProperties;
@@ -28,14 +29,15 @@ import org.apache.ratis.proto.RaftProtos.SlidingWindowEntry;
 import org.apache.ratis.protocol.*;
 import org.apache.ratis.retry.RetryPolicy;
 import org.apache.ratis.util.CollectionUtils;
+import org.apache.ratis.util.HashedWheelTimer;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.Preconditions;
-import org.apache.ratis.util.TimeoutScheduler;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -55,6 +57,11 @@ final class RaftClientImpl implements RaftClient {
     return CALL_ID_COUNTER.getAndIncrement() & Long.MAX_VALUE;
   }
 
+  /** @return the first of the given number of consecutive call ids. */
+  static long nextCallIds(int n) {
+    return CALL_ID_COUNTER.getAndAdd(n) & Long.MAX_VALUE;
+  }
+
   abstract static class PendingClientRequest {
     private final CompletableFuture<RaftClientReply> replyFuture = new CompletableFuture<>();
     private final AtomicInteger attemptCount = new AtomicInteger();
@@ -83,10 +90,13 @@ final class RaftClientImpl implements RaftClient {
 
   private volatile RaftPeerId leaderId;
 
-  private final TimeoutScheduler scheduler;
+  /** For scheduling the retries and the lingers of the write batches. */
+  private final HashedWheelTimer timer;
 
   private final Supplier<OrderedAsync> orderedAsync;
   private final Supplier<StreamApi> streamApi;
+  /** Batch the async write messages; null if batching is disabled. */
+  private final AsyncWriteBatcher writeBatcher;
 
   RaftClientImpl(ClientId clientId, RaftGroup group, RaftPeerId leaderId,
       RaftClientRpc clientRpc, RaftProperties properties, RetryPolicy retryPolicy) {
@@ -99,11 +109,13 @@ final class RaftClientImpl implements RaftClient {
     Preconditions.assertTrue(retryPolicy != null, "retry policy can't be null");
     this.retryPolicy = retryPolicy;
 
-    scheduler = TimeoutScheduler.getInstance();
+    timer = HashedWheelTimer.getInstance(properties);
     clientRpc.addServers(peers);
 
     this.orderedAsync = JavaUtils.memoize(() -> OrderedAsync.newInstance(this, properties));
     this.streamApi = JavaUtils.memoize(() -> StreamImpl.newInstance(this, properties));
+    this.writeBatcher = RaftClientConfigKeys.Async.Batch.enabled(properties)?
+        new AsyncWriteBatcher(this, properties): null;
   }
 
   @Override
@@ -115,8 +127,8 @@ final class RaftClientImpl implements RaftClient {
     return retryPolicy;
   }
 
-  TimeoutScheduler getScheduler() {
-    return scheduler;
+  HashedWheelTimer getTimer() {
+    return timer;
   }
 
   OrderedAsync getOrderedAsync() {
@@ -130,6 +142,10 @@ final class RaftClientImpl implements RaftClient {
 
   @Override
   public CompletableFuture<RaftClientReply> sendAsync(Message message) {
+    if (writeBatcher != null) {
+      Objects.requireNonNull(message, "message == null");
+      return writeBatcher.add(message);
+    }
     return sendAsync(RaftClientRequest.writeRequestType(), message, null);
   }
 
@@ -138,6 +154,11 @@ final class RaftClientImpl implements RaftClient {
     return sendAsync(RaftClientRequest.readRequestType(), message, null);
   }
 
+  @Override
+  public CompletableFuture<RaftClientReply> sendReadOnlyAsync(Message message, RaftPeerId server) {
+    return sendAsync(RaftClientRequest.followerReadRequestType(), message, server);
+  }
+
   @Override
   public CompletableFuture<RaftClientReply> sendStaleReadAsync(Message message, long minIndex, RaftPeerId server) {
     return sendAsync(RaftClientRequest.staleReadRequestType(minIndex), message, server);
@@ -158,6 +179,10 @@ final class RaftClientImpl implements RaftClient {
 
   private CompletableFuture<RaftClientReply> sendAsync(
       RaftClientRequest.Type type, Message message, RaftPeerId server) {
+    if (writeBatcher != null) {
+      // send the current batch first in order to keep the order of the requests
+      writeBatcher.send();
+    }
     return getOrderedAsync().send(type, message, server);
   }
 
@@ -168,6 +193,10 @@ final class RaftClientImpl implements RaftClient {
         callId, message, type, slidingWindowEntry);
   }
 
+  WriteBatchRequest newWriteBatchRequest(long callId, List<Message> messages, SlidingWindowEntry slidingWindowEntry) {
+    return new WriteBatchRequest(clientId, leaderId, groupId, callId, messages, slidingWindowEntry);
+  }
+
   @Override
   public RaftClientReply send(Message message) throws IOException {
     return send(RaftClientRequest.writeRequestType(), message, null);
@@ -178,6 +207,11 @@ final class RaftClientImpl implements RaftClient {
     return send(RaftClientRequest.readRequestType(), message, null);
   }
 
+  @Override
+  public RaftClientReply sendReadOnly(Message message, RaftPeerId server) throws IOException {
+    return send(RaftClientRequest.followerReadRequestType(), message, server);
+  }
+
   @Override
   public RaftClientReply sendStaleRead(Message message, long minIndex, RaftPeerId server)
       throws IOException {
@@ -203,13 +237,20 @@ final class RaftClientImpl implements RaftClient {
   @Override
   public RaftClientReply setConfiguration(RaftPeer[] peersInNewConf)
       throws IOException {
+    return setConfiguration(peersInNewConf, new RaftPeer[0]);
+  }
+
+  @Override
+  public RaftClientReply setConfiguration(RaftPeer[] peersInNewConf, RaftPeer[] learnersInNewConf)
+      throws IOException {
     Objects.requireNonNull(peersInNewConf, "peersInNewConf == null");
+    Objects.requireNonNull(learnersInNewConf, "learnersInNewConf == null");
 
     final long callId = nextCallId();
     // also refresh the rpc proxies for these peers
-    addServers(Arrays.stream(peersInNewConf));
+    addServers(Stream.concat(Arrays.stream(peersInNewConf), Arrays.stream(learnersInNewConf)));
     return sendRequestWithRetry(() -> new SetConfigurationRequest(
-        clientId, leaderId, groupId, callId, Arrays.asList(peersInNewConf)));
+        clientId, leaderId, groupId, callId, Arrays.asList(peersInNewConf), Arrays.asList(learnersInNewConf)));
   }
 
   @Override
@@ -406,7 +447,9 @@ final class RaftClientImpl implements RaftClient {
 
   @Override
   public void close() throws IOException {
-    scheduler.close();
+    if (writeBatcher != null) {
+      writeBatcher.send();
+    }
     clientRpc.close();
   }
 }
@@ -119,7 +119,7 @@ public interface UnorderedAsync {
         }
 
         LOG.debug("schedule retry for attempt #{}, policy={}, request={}", attemptCount, retryPolicy, request);
-        client.getScheduler().onTimeout(action.getSleepTime(),
+        client.getTimer().onTimeout(action.getSleepTime(),
             () -> sendRequestWithRetry(pending, client), LOG, () -> clientId + ": Failed~ to retry " + request);
       } catch (Throwable t) {
         LOG.error(clientId + ": Failed " + request, t);
@@ -18,13 +18,21 @@
 package org.apache.ratis;
 
 import static org.apache.ratis.conf.ConfUtils.get;
+import static org.apache.ratis.conf.ConfUtils.getInt;
+import static org.apache.ratis.conf.ConfUtils.getTimeDuration;
 import static org.apache.ratis.conf.ConfUtils.printAll;
+import static org.apache.ratis.conf.ConfUtils.requireMin;
+import static org.apache.ratis.conf.ConfUtils.requirePositive;
 import static org.apache.ratis.conf.ConfUtils.set;
+import static org.apache.ratis.conf.ConfUtils.setInt;
+import static org.apache.ratis.conf.ConfUtils.setTimeDuration;
 
 import org.apache.ratis.conf.RaftProperties;
 import org.apache.ratis.rpc.RpcType;
 import org.apache.ratis.rpc.SupportedRpcType;
+import org.apache.ratis.util.TimeDuration;
 
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public interface RaftConfigKeys {
@@ -46,6 +54,56 @@ public interface RaftConfigKeys {
     }
   }
 
+  /**
+   * The parameters of the {@link org.apache.ratis.util.HashedWheelTimer}.
+   * A server has its own timer, which is shared by all its groups.
+   * The clients with the same parameters share a timer in a JVM.
+   */
+  interface Timer {
+    String PREFIX = RaftConfigKeys.PREFIX + ".timer";
+
+    /** The time between two ticks; a timeout may expire up to a tick late. */
+    String TICK_KEY = PREFIX + ".tick";
+    TimeDuration TICK_DEFAULT = TimeDuration.valueOf(10, TimeUnit.MILLISECONDS);
+    static TimeDuration tick(RaftProperties properties, Consumer<String> logger) {
+      return getTimeDuration(properties.getTimeDuration(TICK_DEFAULT.getUnit()),
+          TICK_KEY, TICK_DEFAULT, logger, requirePositive());
+    }
+    static void setTick(RaftProperties properties, TimeDuration tick) {
+      setTimeDuration(properties::setTimeDuration, TICK_KEY, tick);
+    }
+
+    /** The number of buckets in a wheel, which must be a power of two. */
+    String TICKS_PER_WHEEL_KEY = PREFIX + ".ticks-per-wheel";
+    int TICKS_PER_WHEEL_DEFAULT = 512;
+    static int ticksPerWheel(RaftProperties properties, Consumer<String> logger) {
+      return getInt(properties::getInt, TICKS_PER_WHEEL_KEY, TICKS_PER_WHEEL_DEFAULT, logger, requireMin(1));
+    }
+    static void setTicksPerWheel(RaftProperties properties, int ticksPerWheel) {
+      setInt(properties::setInt, TICKS_PER_WHEEL_KEY, ticksPerWheel);
+    }
+
+    /** The number of shards, each of which has a tick thread. */
+    String SHARDS_KEY = PREFIX + ".shards";
+    int SHARDS_DEFAULT = Math.min(4, Runtime.getRuntime().availableProcessors());
+    static int shards(RaftProperties properties, Consumer<String> logger) {
+      return getInt(properties::getInt, SHARDS_KEY, SHARDS_DEFAULT, logger, requireMin(1));
+    }
+    static void setShards(RaftProperties properties, int shards) {
+      setInt(properties::setInt, SHARDS_KEY, shards);
+    }
+
+    /** The number of threads for running the tasks of the expired timeouts. */
+    String TASK_THREADS_KEY = PREFIX + ".task-threads";
+    int TASK_THREADS_DEFAULT = Math.max(2, Runtime.getRuntime().availableProcessors());
+    static int taskThreads(RaftProperties properties, Consumer<String> logger) {
+      return getInt(properties::getInt, TASK_THREADS_KEY, TASK_THREADS_DEFAULT, logger, requireMin(1));
+    }
+    static void setTaskThreads(RaftProperties properties, int taskThreads) {
+      setInt(properties::setInt, TASK_THREADS_KEY, taskThreads);
+    }
+  }
+
   static void main(String[] args) {
     printAll(RaftConfigKeys.class);
   }
@@ -34,6 +34,7 @@ public class RaftClientRequest extends RaftClientMessage {
       WatchRequestTypeProto.newBuilder().setIndex(0L).setReplication(ReplicationLevel.MAJORITY).build());
 
   private static final Type DEFAULT_READ = new Type(ReadRequestTypeProto.getDefaultInstance());
+  private static final Type FOLLOWER_READ = new Type(ReadRequestTypeProto.newBuilder().setFollowerRead(true).build());
   private static final Type DEFAULT_STALE_READ = new Type(StaleReadRequestTypeProto.getDefaultInstance());
 
   public static Type writeRequestType() {
@@ -52,6 +53,11 @@ public class RaftClientRequest extends RaftClientMessage {
     return DEFAULT_READ;
   }
 
+  /** @return the type of a linearizable read which can be served by a follower. */
+  public static Type followerReadRequestType() {
+    return FOLLOWER_READ;
+  }
+
   public static Type staleReadRequestType(long minIndex) {
     return minIndex == 0L? DEFAULT_STALE_READ
         : new Type(StaleReadRequestTypeProto.newBuilder().setMinIndex(minIndex).build());
@@ -71,7 +77,7 @@ public class RaftClientRequest extends RaftClientMessage {
     }
 
     public static Type valueOf(ReadRequestTypeProto read) {
-      return DEFAULT_READ;
+      return read.getFollowerRead()? FOLLOWER_READ: DEFAULT_READ;
     }
 
     public static Type valueOf(StaleReadRequestTypeProto staleRead) {
@@ -128,6 +134,11 @@ public class RaftClientRequest extends RaftClientMessage {
       return typeCase;
     }
 
+    /** @return true if this is a read which can be served by a follower. */
+    public boolean isFollowerRead() {
+      return is(READ) && getRead().getFollowerRead();
+    }
+
     public WriteRequestTypeProto getWrite() {
       Preconditions.assertTrue(is(WRITE));
       return (WriteRequestTypeProto)proto;
@@ -173,7 +184,7 @@ public class RaftClientRequest extends RaftClientMessage {
         case STREAM:
           return toString(getStream());
         case READ:
-          return "RO";
+          return getRead().getFollowerRead()? "RO-follower": "RO";
         case STALEREAD:
           return "StaleRead(" + getStaleRead().getMinIndex() + ")";
         case WATCH:
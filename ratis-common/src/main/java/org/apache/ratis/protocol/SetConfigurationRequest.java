@@ -24,20 +24,33 @@ import java.util.List;
 
 public class SetConfigurationRequest extends RaftClientRequest {
   private final List<RaftPeer> peers;
+  private final List<RaftPeer> learners;
 
   public SetConfigurationRequest(ClientId clientId, RaftPeerId serverId,
       RaftGroupId groupId, long callId, List<RaftPeer> peers) {
+    this(clientId, serverId, groupId, callId, peers, null);
+  }
+
+  public SetConfigurationRequest(ClientId clientId, RaftPeerId serverId,
+      RaftGroupId groupId, long callId, List<RaftPeer> peers, List<RaftPeer> learners) {
     super(clientId, serverId, groupId, callId, writeRequestType());
     this.peers = peers != null? Collections.unmodifiableList(peers): Collections.emptyList();
-    Preconditions.assertUnique(this.peers);
+    this.learners = learners != null? Collections.unmodifiableList(learners): Collections.emptyList();
+    Preconditions.assertUnique(this.peers, this.learners);
   }
 
   public List<RaftPeer> getPeersInNewConf() {
     return peers;
   }
 
+  /** @return the non-voting learners in the new conf. */
+  public List<RaftPeer> getLearnersInNewConf() {
+    return learners;
+  }
+
   @Override
   public String toString() {
-    return super.toString() + ", peers:" + getPeersInNewConf();
+    return super.toString() + ", peers:" + getPeersInNewConf()
+        + (learners.isEmpty()? "": ", learners:" + getLearnersInNewConf());
   }
 }
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.protocol;
+
+import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The reply of a {@link WriteBatchRequest},
+ * which has the replies of the messages in the same order as the messages in the batch.
+ */
+public class WriteBatchReply extends RaftClientReply {
+  private final List<RaftClientReply> replies;
+
+  public WriteBatchReply(RaftClientRequest request, List<RaftClientReply> replies,
+      Collection<CommitInfoProto> commitInfos) {
+    super(request, commitInfos);
+    this.replies = Collections.unmodifiableList(replies);
+  }
+
+  public WriteBatchReply(ClientId clientId, RaftGroupMemberId serverId, long callId,
+      List<RaftClientReply> replies, Collection<CommitInfoProto> commitInfos) {
+    super(clientId, serverId, callId, true, null, null, 0L, commitInfos);
+    this.replies = Collections.unmodifiableList(replies);
+  }
+
+  /** @return the replies of the messages in the batch. */
+  public List<RaftClientReply> getReplies() {
+    return replies;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + ", batch of " + replies.size();
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.protocol;
+
+import org.apache.ratis.proto.RaftProtos.SlidingWindowEntry;
+import org.apache.ratis.util.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of write messages sent in a single request,
+ * where the i-th message has the call id {@link #getCallId()} + i.
+ */
+public class WriteBatchRequest extends RaftClientRequest {
+  private final List<Message> messages;
+
+  public WriteBatchRequest(ClientId clientId, RaftPeerId serverId, RaftGroupId groupId,
+      long callId, List<Message> messages, SlidingWindowEntry slidingWindowEntry) {
+    super(clientId, serverId, groupId, callId, null, writeRequestType(), slidingWindowEntry);
+    Preconditions.assertTrue(!messages.isEmpty(), "The batch is empty");
+    this.messages = Collections.unmodifiableList(messages);
+  }
+
+  public List<Message> getMessages() {
+    return messages;
+  }
+
+  /**
+   * @return the individual write requests of the messages in this batch,
+   *         which share the sliding window entry of this batch.
+   */
+  public List<RaftClientRequest> getRequests() {
+    final List<RaftClientRequest> requests = new ArrayList<>(messages.size());
+    for (int i = 0; i < messages.size(); i++) {
+      requests.add(new RaftClientRequest(getClientId(), getServerId(), getRaftGroupId(),
+          getCallId() + i, messages.get(i), writeRequestType(), getSlidingWindowEntry()));
+    }
+    return requests;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + ", batch of " + messages.size();
+  }
+}
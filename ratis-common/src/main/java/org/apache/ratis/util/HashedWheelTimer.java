@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.util.function.CheckedRunnable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A sharded hashed-wheel timer.
+ *
+ * Each shard has a tick thread and a wheel of buckets, where a bucket holds the timeouts expiring in the same tick.
+ * Scheduling a timeout only adds it to a lock-free queue of the shard and
+ * cancelling a timeout only marks it, so that both operations take O(1) time;
+ * the tick thread moves the new timeouts to the buckets and removes the cancelled timeouts.
+ * The tasks of the expired timeouts are run by a separated pool of threads
+ * so that a slow task does not delay the other timeouts.
+ *
+ * The timeouts may expire up to a tick late.
+ */
+public final class HashedWheelTimer implements Closeable {
+  public static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+  /** The shared timers, one for each distinct list of the {@link RaftConfigKeys.Timer} parameters. */
+  private static final Map<List<Object>, HashedWheelTimer> INSTANCES = new ConcurrentHashMap<>();
+  private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+
+  /**
+   * @return the timer shared in this JVM by the callers with the same {@link RaftConfigKeys.Timer} parameters
+   *         in their properties; the shared timers are never closed.
+   */
+  public static HashedWheelTimer getInstance(RaftProperties properties) {
+    final TimeDuration tick = RaftConfigKeys.Timer.tick(properties, LOG::debug);
+    final int ticksPerWheel = RaftConfigKeys.Timer.ticksPerWheel(properties, LOG::debug);
+    final int numShards = RaftConfigKeys.Timer.shards(properties, LOG::debug);
+    final int numTaskThreads = RaftConfigKeys.Timer.taskThreads(properties, LOG::debug);
+    final List<Object> key = Arrays.asList(tick, ticksPerWheel, numShards, numTaskThreads);
+    return INSTANCES.computeIfAbsent(key, k -> {
+      final String name = "timer" + INSTANCE_COUNT.getAndIncrement();
+      LOG.info("{}: new shared timer with tick={}, ticksPerWheel={}, shards={}, taskThreads={}",
+          name, tick, ticksPerWheel, numShards, numTaskThreads);
+      return new HashedWheelTimer(name, tick, ticksPerWheel, numShards, numTaskThreads);
+    });
+  }
+
+  /**
+   * @return a new timer with the {@link RaftConfigKeys.Timer} parameters in the given properties,
+   *         which should be closed by the caller.
+   */
+  public static HashedWheelTimer newInstance(String name, RaftProperties properties) {
+    return new HashedWheelTimer(name,
+        RaftConfigKeys.Timer.tick(properties, LOG::info),
+        RaftConfigKeys.Timer.ticksPerWheel(properties, LOG::info),
+        RaftConfigKeys.Timer.shards(properties, LOG::info),
+        RaftConfigKeys.Timer.taskThreads(properties, LOG::info));
+  }
+
+  /** A scheduled task, which can be cancelled before it expires. */
+  public static final class Timeout {
+    private static final int INIT = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final Shard shard;
+    private final long deadline;
+    private final Runnable task;
+    private final AtomicInteger state = new AtomicInteger(INIT);
+
+    /** The remaining rounds of the wheel; only accessed by the tick thread. */
+    private long remainingRounds;
+    /** The bucket containing this timeout and the links in the bucket; only accessed by the tick thread. */
+    private Bucket bucket;
+    private Timeout prev;
+    private Timeout next;
+
+    private Timeout(Shard shard, long deadline, Runnable task) {
+      this.shard = shard;
+      this.deadline = deadline;
+      this.task = task;
+    }
+
+    /**
+     * Cancel this timeout.
+     *
+     * @return true iff this timeout is cancelled by this call.
+     */
+    public boolean cancel() {
+      if (!state.compareAndSet(INIT, CANCELLED)) {
+        return false;
+      }
+      shard.cancelled.add(this);
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state.get() == EXPIRED;
+    }
+
+    private void expire() {
+      if (!state.compareAndSet(INIT, EXPIRED)) {
+        return;
+      }
+      try {
+        shard.timer.taskExecutor.execute(() -> {
+          shard.lagNanos = System.nanoTime() - deadline;
+          task.run();
+        });
+      } catch (RejectedExecutionException e) {
+        LOG.debug("{}: the timer is closed, drop the task", shard.timer, e);
+      }
+    }
+  }
+
+  /** A doubly linked list of timeouts; only accessed by the tick thread. */
+  private static final class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    void add(Timeout t) {
+      t.bucket = this;
+      if (head == null) {
+        head = tail = t;
+      } else {
+        tail.next = t;
+        t.prev = tail;
+        tail = t;
+      }
+    }
+
+    Timeout remove(Timeout t) {
+      final Timeout next = t.next;
+      if (t.prev != null) {
+        t.prev.next = next;
+      }
+      if (t.next != null) {
+        t.next.prev = t.prev;
+      }
+      if (t == head) {
+        head = next;
+      }
+      if (t == tail) {
+        tail = t.prev;
+      }
+      t.prev = null;
+      t.next = null;
+      t.bucket = null;
+      return next;
+    }
+
+    /** Expire the timeouts in this bucket due in the current round. */
+    void expire() {
+      for(Timeout t = head; t != null; ) {
+        if (t.isCancelled()) {
+          t = remove(t);
+        } else if (t.remainingRounds <= 0) {
+          final Timeout next = remove(t);
+          t.expire();
+          t = next;
+        } else {
+          t.remainingRounds--;
+          t = t.next;
+        }
+      }
+    }
+  }
+
+  private static final class Shard implements Runnable {
+    private final HashedWheelTimer timer;
+    private final int id;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final Daemon thread;
+
+    /** The time, in nanos, when the tick thread started. */
+    private volatile long startTime;
+    /** The number of ticks passed; only accessed by the tick thread. */
+    private long tick = 0;
+    /** The delay between the deadline and the actual run of the last expired task. */
+    private volatile long lagNanos = 0;
+
+    Shard(HashedWheelTimer timer, int id, int ticksPerWheel) {
+      this.timer = timer;
+      this.id = id;
+      this.wheel = new Bucket[ticksPerWheel];
+      for(int i = 0; i < wheel.length; i++) {
+        wheel[i] = new Bucket();
+      }
+      this.mask = ticksPerWheel - 1;
+      this.thread = new Daemon(this, timer.name + "-shard" + id);
+    }
+
+    Timeout schedule(long timeoutNanos, Runnable task) {
+      if (started.compareAndSet(false, true)) {
+        startTime = System.nanoTime();
+        thread.start();
+      }
+      final Timeout t = new Timeout(this, System.nanoTime() + timeoutNanos, task);
+      added.add(t);
+      return t;
+    }
+
+    @Override
+    public void run() {
+      for(; !timer.closed.get(); ) {
+        final long tickDeadline = waitForNextTick();
+        if (tickDeadline < 0) {
+          break;
+        }
+        removeCancelled();
+        transferAdded();
+        wheel[(int) (tick & mask)].expire();
+        tick++;
+      }
+      LOG.debug("{}-shard{} stopped", timer.name, id);
+    }
+
+    /** @return the deadline of the current tick, or -1 if the timer is closed. */
+    private long waitForNextTick() {
+      final long tickDeadline = startTime + timer.tickNanos * (tick + 1);
+      for(;;) {
+        final long sleepNanos = tickDeadline - System.nanoTime();
+        if (sleepNanos <= 0) {
+          return tickDeadline;
+        }
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          if (timer.closed.get()) {
+            return -1;
+          }
+        }
+      }
+    }
+
+    private void removeCancelled() {
+      for(Timeout t; (t = cancelled.poll()) != null; ) {
+        if (t.bucket != null) {
+          t.bucket.remove(t);
+        }
+      }
+    }
+
+    private void transferAdded() {
+      for(Timeout t; (t = added.poll()) != null; ) {
+        if (t.isCancelled()) {
+          continue;
+        }
+        // the tick at which the timeout expires, rounded up; a timeout in the past expires at the current tick.
+        final long expireTick = Math.max(tick, (t.deadline - startTime + timer.tickNanos - 1) / timer.tickNanos - 1);
+        t.remainingRounds = (expireTick - tick) / wheel.length;
+        wheel[(int) (expireTick & mask)].add(t);
+      }
+    }
+  }
+
+  private final String name;
+  private final long tickNanos;
+  private final Shard[] shards;
+  private final ExecutorService taskExecutor;
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  /**
+   * @param name the name prefix of the threads.
+   * @param tick the time between two ticks.
+   * @param ticksPerWheel the number of buckets in a wheel, which must be a power of two.
+   * @param numShards the number of shards, each shard has a tick thread.
+   * @param numTaskThreads the number of threads for running the tasks.
+   */
+  public HashedWheelTimer(String name, TimeDuration tick, int ticksPerWheel, int numShards, int numTaskThreads) {
+    Preconditions.assertTrue(!tick.isNonPositive(), () -> "tick = " + tick + " <= 0");
+    Preconditions.assertTrue(ticksPerWheel > 0 && Integer.bitCount(ticksPerWheel) == 1,
+        () -> "ticksPerWheel = " + ticksPerWheel + " is not a positive power of two");
+    Preconditions.assertTrue(numShards > 0, () -> "numShards = " + numShards + " <= 0");
+    Preconditions.assertTrue(numTaskThreads > 0, () -> "numTaskThreads = " + numTaskThreads + " <= 0");
+
+    this.name = name;
+    this.tickNanos = tick.toLong(TimeUnit.NANOSECONDS);
+    this.shards = new Shard[numShards];
+    for(int i = 0; i < shards.length; i++) {
+      shards[i] = new Shard(this, i, ticksPerWheel);
+    }
+    final AtomicInteger count = new AtomicInteger();
+    this.taskExecutor = Executors.newFixedThreadPool(numTaskThreads,
+        r -> new Daemon(r, name + "-task" + count.getAndIncrement()));
+  }
+
+  /** @return the time between two ticks. */
+  public TimeDuration getTick() {
+    return TimeDuration.valueOf(tickNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public int getNumShards() {
+    return shards.length;
+  }
+
+  /** @return the delay between the deadline and the actual run of the last expired task in the given shard. */
+  public TimeDuration getLag(int shard) {
+    return TimeDuration.valueOf(shards[shard].lagNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private Shard getShard() {
+    return shards[(int) (Thread.currentThread().getId() % shards.length)];
+  }
+
+  /**
+   * Schedule a timeout task.
+   *
+   * @param timeout the timeout value.
+   * @param task the task to run when timeout.
+   * @param errorHandler to handle the error, if there is any.
+   * @return the {@link Timeout} for cancelling the task.
+   */
+  public <THROWABLE extends Throwable> Timeout onTimeout(
+      TimeDuration timeout, CheckedRunnable<THROWABLE> task, Consumer<THROWABLE> errorHandler) {
+    Preconditions.assertTrue(!closed.get(), () -> name + " is already closed");
+    return getShard().schedule(timeout.toLong(TimeUnit.NANOSECONDS), () -> {
+      try {
+        task.run();
+      } catch(Throwable t) {
+        errorHandler.accept(JavaUtils.cast(t));
+      }
+    });
+  }
+
+  /** When timeout, run the task.  Log the error, if there is any. */
+  public Timeout onTimeout(TimeDuration timeout, CheckedRunnable<?> task, Logger log, Supplier<String> errorMessage) {
+    return onTimeout(timeout, task, t -> log.error(errorMessage.get(), t));
+  }
+
+  /**
+   * Similar to {@link #onTimeout(TimeDuration, CheckedRunnable, Logger, Supplier)}
+   * except that a timeout shorter than a tick is scheduled on the {@link TimeoutScheduler}
+   * since it would otherwise be rounded up to a tick.
+   * The task cannot be cancelled.
+   */
+  public void onShortTimeout(TimeDuration timeout, CheckedRunnable<?> task, Logger log, Supplier<String> errorMessage) {
+    if (timeout.toLong(TimeUnit.NANOSECONDS) < tickNanos) {
+      TimeoutScheduler.getInstance().onTimeout(timeout, task, log, errorMessage);
+    } else {
+      onTimeout(timeout, task, log, errorMessage);
+    }
+  }
+
+  /** Stop the tick threads and the task threads; the pending timeouts are dropped. */
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true)) {
+      for(Shard s : shards) {
+        s.thread.interrupt();
+      }
+      taskExecutor.shutdown();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -118,6 +118,63 @@ public interface GrpcConfigKeys {
     static void setLeaderOutstandingAppendsMax(RaftProperties properties, int maxAppend) {
       setInt(properties::setInt, LEADER_OUTSTANDING_APPENDS_MAX_KEY, maxAppend);
     }
+
+    /**
+     * The maximum number of unacknowledged snapshot chunks in a stream,
+     * which also applies to a follower sending a snapshot on behalf of the leader.
+     *
+     * When a stream breaks, the leader resumes the installation after the last acknowledged chunk.
+     * The resume position is kept in the memory of the leader only,
+     * so that a new leader, or the same leader after a restart, installs the snapshot from the beginning.
+     */
+    String LEADER_OUTSTANDING_SNAPSHOT_CHUNKS_MAX_KEY = PREFIX + ".leader.outstanding.snapshot.chunks.max";
+    int LEADER_OUTSTANDING_SNAPSHOT_CHUNKS_MAX_DEFAULT = 8;
+    static int leaderOutstandingSnapshotChunksMax(RaftProperties properties) {
+      return getInt(properties::getInt, LEADER_OUTSTANDING_SNAPSHOT_CHUNKS_MAX_KEY,
+          LEADER_OUTSTANDING_SNAPSHOT_CHUNKS_MAX_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setLeaderOutstandingSnapshotChunksMax(RaftProperties properties, int maxChunks) {
+      setInt(properties::setInt, LEADER_OUTSTANDING_SNAPSHOT_CHUNKS_MAX_KEY, maxChunks);
+    }
+
+    /** The number of streams for sending the files of a snapshot to a follower in parallel. */
+    String LEADER_SNAPSHOT_STREAMS_KEY = PREFIX + ".leader.snapshot.streams";
+    int LEADER_SNAPSHOT_STREAMS_DEFAULT = 1;
+    static int leaderSnapshotStreams(RaftProperties properties) {
+      return getInt(properties::getInt, LEADER_SNAPSHOT_STREAMS_KEY,
+          LEADER_SNAPSHOT_STREAMS_DEFAULT, getDefaultLog(), requireMin(1));
+    }
+    static void setLeaderSnapshotStreams(RaftProperties properties, int streams) {
+      setInt(properties::setInt, LEADER_SNAPSHOT_STREAMS_KEY, streams);
+    }
+
+    String HEARTBEAT_COALESCING_ENABLED_KEY = PREFIX + ".heartbeat.coalescing.enabled";
+    boolean HEARTBEAT_COALESCING_ENABLED_DEFAULT = false;
+    static boolean heartbeatCoalescingEnabled(RaftProperties properties) {
+      return getBoolean(properties::getBoolean,
+          HEARTBEAT_COALESCING_ENABLED_KEY, HEARTBEAT_COALESCING_ENABLED_DEFAULT, getDefaultLog());
+    }
+    static void setHeartbeatCoalescingEnabled(RaftProperties properties, boolean enabled) {
+      setBoolean(properties::setBoolean, HEARTBEAT_COALESCING_ENABLED_KEY, enabled);
+    }
+
+    /**
+     * The heartbeats to the same server within this window are sent in a single RPC.
+     * Since a heartbeat may wait for the window, and up to a timer tick more, before it is sent,
+     * the window adds latency to the heartbeats.
+     * It must stay well below the min election timeout,
+     * i.e. at most 1/10 of {@link org.apache.ratis.server.RaftServerConfigKeys.Rpc#timeoutMin};
+     * otherwise, the server fails to start.
+     */
+    String HEARTBEAT_COALESCING_WINDOW_KEY = PREFIX + ".heartbeat.coalescing.window";
+    TimeDuration HEARTBEAT_COALESCING_WINDOW_DEFAULT = TimeDuration.valueOf(10, TimeUnit.MILLISECONDS);
+    static TimeDuration heartbeatCoalescingWindow(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(HEARTBEAT_COALESCING_WINDOW_DEFAULT.getUnit()),
+          HEARTBEAT_COALESCING_WINDOW_KEY, HEARTBEAT_COALESCING_WINDOW_DEFAULT, getDefaultLog(), requirePositive());
+    }
+    static void setHeartbeatCoalescingWindow(RaftProperties properties, TimeDuration window) {
+      setTimeDuration(properties::setTimeDuration, HEARTBEAT_COALESCING_WINDOW_KEY, window);
+    }
   }
 
   interface OutputStream {
@@ -52,10 +52,10 @@ import org.apache.ratis.thirdparty.io.grpc.netty.NegotiationType;
 import org.apache.ratis.thirdparty.io.grpc.netty.NettyChannelBuilder;
 import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
 import org.apache.ratis.util.CollectionUtils;
+import org.apache.ratis.util.HashedWheelTimer;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.SizeInBytes;
 import org.apache.ratis.util.TimeDuration;
-import org.apache.ratis.util.TimeoutScheduler;
 import org.apache.ratis.util.function.CheckedSupplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -81,7 +81,7 @@ public class GrpcClientProtocolClient implements Closeable {
 
   private final TimeDuration requestTimeoutDuration;
   private final TimeDuration watchRequestTimeoutDuration;
-  private final TimeoutScheduler scheduler = TimeoutScheduler.getInstance();
+  private final HashedWheelTimer timer;
 
   private final RaftClientProtocolServiceBlockingStub blockingStub;
   private final RaftClientProtocolServiceStub asyncStub;
@@ -94,6 +94,7 @@ public class GrpcClientProtocolClient implements Closeable {
   GrpcClientProtocolClient(ClientId id, RaftPeer target, RaftProperties properties, GrpcTlsConfig tlsConf) {
     this.name = JavaUtils.memoize(() -> id + "->" + target.getId());
     this.target = target;
+    this.timer = HashedWheelTimer.getInstance(properties);
     final SizeInBytes flowControlWindow = GrpcConfigKeys.flowControlWindow(properties, LOG::debug);
     final SizeInBytes maxMessageSize = GrpcConfigKeys.messageSizeMax(properties, LOG::debug);
     NettyChannelBuilder channelBuilder =
@@ -149,7 +150,6 @@ public class GrpcClientProtocolClient implements Closeable {
     } catch (Exception e) {
       LOG.error("Unexpected exception while waiting for channel termination", e);
     }
-    scheduler.close();
   }
 
   RaftClientReplyProto groupAdd(GroupManagementRequestProto request) throws IOException {
@@ -322,11 +322,11 @@ public class GrpcClientProtocolClient implements Closeable {
       }
 
       if (RaftClientRequestProto.TypeCase.WATCH.equals(request.getType().getTypeCase())) {
-        scheduler.onTimeout(watchRequestTimeoutDuration, () ->
+        timer.onTimeout(watchRequestTimeoutDuration, () ->
                 timeoutCheck(callId, watchRequestTimeoutDuration), LOG,
             () -> "Timeout check failed for client request #" + callId);
       } else {
-        scheduler.onTimeout(requestTimeoutDuration,
+        timer.onTimeout(requestTimeoutDuration,
             () -> timeoutCheck(callId, requestTimeoutDuration), LOG,
             () -> "Timeout check failed for client request #" + callId);
       }
@@ -46,10 +46,14 @@ public class GrpcServerMetrics {
       "%s_append_entry_timeout_count";
   public static final String RATIS_GRPC_METRICS_LOG_APPENDER_PENDING_COUNT
       = "%s_pending_log_requests_count";
+  public static final String RATIS_GRPC_METRICS_LOG_APPENDER_PENDING_SNAPSHOT_CHUNKS_COUNT
+      = "%s_pending_snapshot_chunks_count";
 
   public static final String RATIS_GRPC_METRICS_REQUEST_RETRY_COUNT = "num_retries";
   public static final String RATIS_GRPC_METRICS_REQUESTS_TOTAL = "num_requests";
   public static final String RATIS_GRPC_INSTALL_SNAPSHOT_COUNT = "num_install_snapshot";
+  public static final String RATIS_GRPC_COALESCED_HEARTBEATS_RPC_COUNT = "num_coalesced_heartbeats_rpc";
+  public static final String RATIS_GRPC_COALESCED_HEARTBEATS_COUNT = "num_coalesced_heartbeats";
 
   public GrpcServerMetrics(String serverId) {
     MetricRegistryInfo info = new MetricRegistryInfo(serverId, RATIS_GRPC_METRICS_APP_NAME,
@@ -96,10 +100,21 @@ public class GrpcServerMetrics {
     registry.gauge(String.format(RATIS_GRPC_METRICS_LOG_APPENDER_PENDING_COUNT, follower), () -> pendinglogQueueSize);
   }
 
+  public void addPendingSnapshotChunksCount(String follower, Gauge pendingSnapshotChunks) {
+    registry.gauge(String.format(RATIS_GRPC_METRICS_LOG_APPENDER_PENDING_SNAPSHOT_CHUNKS_COUNT, follower),
+        () -> pendingSnapshotChunks);
+  }
+
   public void onInstallSnapshot() {
     registry.counter(RATIS_GRPC_INSTALL_SNAPSHOT_COUNT).inc();
   }
 
+  /** A heartbeats RPC is sent with the given number of the heartbeats coalesced. */
+  public void onHeartbeatsCoalesced(int numHeartbeats) {
+    registry.counter(RATIS_GRPC_COALESCED_HEARTBEATS_RPC_COUNT).inc();
+    registry.counter(RATIS_GRPC_COALESCED_HEARTBEATS_COUNT).inc(numHeartbeats);
+  }
+
   public static String getHeartbeatSuffix(boolean heartbeat) {
     return heartbeat ? "_heartbeat" : "";
   }
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc.server;
+
+import org.apache.ratis.grpc.GrpcConfigKeys;
+import org.apache.ratis.grpc.GrpcUtil;
+import org.apache.ratis.grpc.metrics.GrpcServerMetrics;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
+import org.apache.ratis.proto.RaftProtos.HeartbeatsReplyProto;
+import org.apache.ratis.proto.RaftProtos.HeartbeatsRequestProto;
+import org.apache.ratis.proto.RaftProtos.RaftRpcReplyProto;
+import org.apache.ratis.proto.RaftProtos.RaftRpcRequestProto;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
+import org.apache.ratis.util.HashedWheelTimer;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.function.CheckedFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Coalesce the heartbeats sent from this server to the same server,
+ * which are usually for different groups, into a single {@link HeartbeatsRequestProto}.
+ *
+ * The first heartbeat to a server opens a batch,
+ * and the heartbeats submitted within the coalescing window join the batch.
+ * Since the send time of all the heartbeats in a batch is the time when the batch is sent,
+ * the heartbeats of the groups become aligned after a few rounds.
+ */
+class GrpcHeartbeatCoalescer {
+  public static final Logger LOG = LoggerFactory.getLogger(GrpcHeartbeatCoalescer.class);
+
+  /** The min election timeout must be at least this multiple of the window. */
+  static final int MIN_TIMEOUT_WINDOW_RATIO = 10;
+
+  /**
+   * @return the given window if it is far below the given min election timeout.
+   * @throws IllegalArgumentException otherwise.
+   */
+  static TimeDuration checkWindow(TimeDuration window, TimeDuration timeoutMin) {
+    if (window.multiply(MIN_TIMEOUT_WINDOW_RATIO).compareTo(timeoutMin) > 0) {
+      throw new IllegalArgumentException("Illegal configuration: "
+          + GrpcConfigKeys.Server.HEARTBEAT_COALESCING_WINDOW_KEY + " = " + window + " > 1/"
+          + MIN_TIMEOUT_WINDOW_RATIO + " of " + RaftServerConfigKeys.Rpc.TIMEOUT_MIN_KEY + " = " + timeoutMin);
+    }
+    return window;
+  }
+
+  /** The heartbeats to the same server. */
+  private class Batch implements StreamObserver<HeartbeatsReplyProto> {
+    private final RaftPeerId target;
+    private final List<AppendEntriesRequestProto> heartbeats = new ArrayList<>();
+    private final List<Runnable> onSends = new ArrayList<>();
+    /** A group has at most one heartbeat in a batch. */
+    private final Map<RaftGroupId, CompletableFuture<AppendEntriesReplyProto>> futures = new HashMap<>();
+
+    Batch(RaftPeerId target) {
+      this.target = target;
+    }
+
+    CompletableFuture<AppendEntriesReplyProto> add(AppendEntriesRequestProto heartbeat, Runnable onSend) {
+      final RaftGroupId groupId = RaftGroupId.valueOf(heartbeat.getServerRequest().getRaftGroupId().getId());
+      final CompletableFuture<AppendEntriesReplyProto> previous = futures.get(groupId);
+      if (previous != null) {
+        return previous;
+      }
+      final CompletableFuture<AppendEntriesReplyProto> future = new CompletableFuture<>();
+      futures.put(groupId, future);
+      heartbeats.add(heartbeat);
+      onSends.add(onSend);
+      return future;
+    }
+
+    void send() {
+      final RaftRpcRequestProto first = heartbeats.get(0).getServerRequest();
+      final HeartbeatsRequestProto.Builder request = HeartbeatsRequestProto.newBuilder()
+          .setRequestorId(first.getRequestorId())
+          .setReplyId(first.getReplyId());
+      for (AppendEntriesRequestProto heartbeat : heartbeats) {
+        request.addHeartbeats(heartbeat.toBuilder().setServerRequest(
+            heartbeat.getServerRequest().toBuilder().clearRequestorId().clearReplyId()));
+      }
+      metrics.get().onHeartbeatsCoalesced(heartbeats.size());
+      onSends.forEach(Runnable::run);
+      try {
+        getClient.apply(target).heartbeats(request.build(), this);
+      } catch (Throwable t) {
+        onError(t);
+      }
+    }
+
+    @Override
+    public synchronized void onNext(HeartbeatsReplyProto reply) {
+      for (AppendEntriesReplyProto r : reply.getRepliesList()) {
+        final RaftRpcReplyProto serverReply = r.getServerReply();
+        final RaftGroupId groupId = RaftGroupId.valueOf(serverReply.getRaftGroupId().getId());
+        final CompletableFuture<AppendEntriesReplyProto> future = futures.remove(groupId);
+        if (future != null) {
+          future.complete(r.toBuilder().setServerReply(serverReply.toBuilder()
+              .setRequestorId(reply.getRequestorId())
+              .setReplyId(reply.getReplyId())).build());
+        }
+      }
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+      GrpcUtil.warn(LOG, () -> "Failed to send " + heartbeats.size() + " heartbeat(s) to " + target, t);
+      futures.values().forEach(f -> f.completeExceptionally(t));
+      futures.clear();
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+      if (!futures.isEmpty()) {
+        final IOException e = new IOException(target + " has not replied the heartbeat(s) for " + futures.keySet());
+        futures.values().forEach(f -> f.completeExceptionally(e));
+        futures.clear();
+      }
+    }
+  }
+
+  private final TimeDuration window;
+  private final CheckedFunction<RaftPeerId, GrpcServerProtocolClient, IOException> getClient;
+  /** The timer is obtained lazily since it may be created by the server after this object. */
+  private final Supplier<HashedWheelTimer> timer;
+  /** The metrics are created lazily since the server id may not be available at construction. */
+  private final Supplier<GrpcServerMetrics> metrics;
+
+  /** The batches not yet sent. */
+  private final Map<RaftPeerId, Batch> batches = new HashMap<>();
+
+  GrpcHeartbeatCoalescer(Supplier<RaftPeerId> idSupplier, TimeDuration window, Supplier<HashedWheelTimer> timer,
+      CheckedFunction<RaftPeerId, GrpcServerProtocolClient, IOException> getClient) {
+    this.window = window;
+    this.timer = JavaUtils.memoize(timer);
+    this.getClient = getClient;
+    this.metrics = JavaUtils.memoize(() -> new GrpcServerMetrics(idSupplier.get().toString()));
+  }
+
+  /**
+   * Submit a heartbeat to the batch of the given target.
+   *
+   * @param onSend to run when the batch is sent.
+   * @return a future of the reply of the heartbeat.
+   */
+  CompletableFuture<AppendEntriesReplyProto> submit(RaftPeerId target, AppendEntriesRequestProto heartbeat,
+      Runnable onSend) {
+    final boolean isNewBatch;
+    final CompletableFuture<AppendEntriesReplyProto> future;
+    synchronized (this) {
+      final Batch batch = batches.computeIfAbsent(target, Batch::new);
+      isNewBatch = batch.heartbeats.isEmpty();
+      future = batch.add(heartbeat, onSend);
+    }
+    if (isNewBatch) {
+      timer.get().onTimeout(window, () -> send(target), LOG, () -> "Failed to send heartbeats to " + target);
+    }
+    return future;
+  }
+
+  private void send(RaftPeerId target) {
+    final Batch batch;
+    synchronized (this) {
+      batch = batches.remove(target);
+    }
+    if (batch != null) {
+      batch.send();
+    }
+  }
+}
@@ -27,12 +27,16 @@ import org.apache.ratis.server.impl.LeaderState;
 import org.apache.ratis.server.impl.LogAppender;
 import org.apache.ratis.server.impl.RaftServerImpl;
 import org.apache.ratis.server.impl.ServerProtoUtils;
+import org.apache.ratis.server.impl.SnapshotRequestIter;
 import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.thirdparty.io.grpc.stub.ClientCallStreamObserver;
+import org.apache.ratis.thirdparty.io.grpc.stub.ClientResponseObserver;
 import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.server.storage.FileInfo;
 import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.util.*;
 import org.slf4j.Logger;
@@ -42,6 +46,8 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 import com.codahale.metrics.Timer;
 
@@ -54,14 +60,22 @@ public class GrpcLogAppender extends LogAppender {
   private final GrpcService rpcService;
   private final RequestMap pendingRequests = new RequestMap();
   private final int maxPendingRequestsNum;
+  private final int maxOutstandingSnapshotChunks;
+  private final int snapshotStreams;
+  /** The position to resume an interrupted snapshot installation; null if there is none. */
+  private volatile SnapshotPosition snapshotResumePosition;
+  /** The number of the snapshot chunks sent but not yet replied, over all the streams. */
+  private final AtomicInteger pendingSnapshotChunks = new AtomicInteger();
   private long callId = 0;
   private volatile boolean firstResponseReceived = false;
   private final boolean installSnapshotEnabled;
 
   private final TimeDuration requestTimeoutDuration;
-  private final TimeoutScheduler scheduler = TimeoutScheduler.getInstance();
+  private final HashedWheelTimer timer;
 
   private volatile StreamObserver<AppendEntriesRequestProto> appendLogRequestObserver;
+  /** Null if heartbeat coalescing is disabled. */
+  private final GrpcHeartbeatCoalescer heartbeatCoalescer;
 
   private final GrpcServerMetrics grpcServerMetrics;
 
@@ -70,15 +84,21 @@ public class GrpcLogAppender extends LogAppender {
     super(server, leaderState, f);
 
     this.rpcService = (GrpcService) server.getServerRpc();
+    this.heartbeatCoalescer = rpcService.getHeartbeatCoalescer();
+    this.timer = server.getProxy().getTimer();
 
     maxPendingRequestsNum = GrpcConfigKeys.Server.leaderOutstandingAppendsMax(
         server.getProxy().getProperties());
+    maxOutstandingSnapshotChunks = GrpcConfigKeys.Server.leaderOutstandingSnapshotChunksMax(
+        server.getProxy().getProperties());
+    snapshotStreams = GrpcConfigKeys.Server.leaderSnapshotStreams(server.getProxy().getProperties());
     requestTimeoutDuration = RaftServerConfigKeys.Rpc.requestTimeout(server.getProxy().getProperties());
     installSnapshotEnabled = RaftServerConfigKeys.Log.Appender.installSnapshotEnabled(
         server.getProxy().getProperties());
     grpcServerMetrics = new GrpcServerMetrics(server.getMemberId().toString());
     grpcServerMetrics.addPendingRequestsCount(getFollowerId().toString(),
         () -> pendingRequests.logRequestsSize());
+    grpcServerMetrics.addPendingSnapshotChunksCount(getFollowerId().toString(), pendingSnapshotChunks::get);
   }
 
   private GrpcServerProtocolClient getClient() throws IOException {
@@ -108,7 +128,9 @@ public class GrpcLogAppender extends LogAppender {
         if (installSnapshotEnabled) {
           SnapshotInfo snapshot = shouldInstallSnapshot();
           if (snapshot != null) {
-            installSnapshot(snapshot);
+            if (!installSnapshotFromFollower(snapshot)) {
+              installSnapshot(snapshot);
+            }
             shouldAppendLog = false;
           }
         } else {
@@ -135,7 +157,7 @@ public class GrpcLogAppender extends LogAppender {
     } else if (shouldWait()) {
       return halfMinTimeoutMs; // Should wait for a short time
     }
-    return 0L;
+    return getCatchUpWaitTimeMs(); // Wait if the committed entries are throttled
   }
 
   private void mayWait() {
@@ -181,7 +203,11 @@ public class GrpcLogAppender extends LogAppender {
       if (pending == null) {
         return;
       }
-      request = new AppendEntriesRequest(pending, getFollowerId(), grpcServerMetrics);
+      if (shouldCoalesce(pending)) {
+        coalesceHeartbeat(pending, getReadIndexRound());
+        return;
+      }
+      request = new AppendEntriesRequest(pending, getFollowerId(), getReadIndexRound(), grpcServerMetrics);
       pendingRequests.put(request);
       increaseNextIndex(pending);
       if (appendLogRequestObserver == null) {
@@ -201,12 +227,49 @@ public class GrpcLogAppender extends LogAppender {
         server.getId(), null, proto);
     request.startRequestTimer();
     s.onNext(proto);
-    scheduler.onTimeout(requestTimeoutDuration,
+    timer.onTimeout(requestTimeoutDuration,
         () -> timeoutAppendRequest(request.getCallId(), request.isHeartbeat()),
         LOG, () -> "Timeout check failed for append entry request: " + request);
     follower.updateLastRpcSendTime();
   }
 
+  /**
+   * A heartbeat can be sent outside the appendEntries stream only if there are no outstanding log requests.
+   * Then, the previous log of the heartbeat is already acknowledged by the follower
+   * so that the heartbeat cannot be reordered with the log requests in a way causing an inconsistency.
+   */
+  private boolean shouldCoalesce(AppendEntriesRequestProto request) {
+    return heartbeatCoalescer != null && request.getEntriesCount() == 0
+        && appendLogRequestObserver != null && firstResponseReceived
+        && pendingRequests.logRequestsSize() == 0;
+  }
+
+  private void coalesceHeartbeat(AppendEntriesRequestProto heartbeat, long readIndexRound) {
+    heartbeatCoalescer.submit(getFollowerId(), heartbeat, follower::updateLastRpcSendTime)
+        .whenComplete((reply, e) -> {
+          if (!isAppenderRunning()) {
+            return;
+          }
+          if (e != null) {
+            GrpcUtil.warn(LOG, () -> this + ": Failed coalesced heartbeat", e);
+            return;
+          }
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("{}: received coalesced heartbeat reply {}", this, ServerProtoUtils.toString(reply));
+          }
+          try {
+            onAppendEntriesReply(reply);
+            if (isReadIndexAck(reply)) {
+              onReadIndexAck(readIndexRound);
+            }
+          } catch(Throwable t) {
+            LOG.error("Failed to handle coalesced heartbeat reply " + ServerProtoUtils.toString(reply), t);
+          }
+        });
+    // the send time will be updated again when the coalesced heartbeats are sent
+    follower.updateLastRpcSendTime();
+  }
+
   private void timeoutAppendRequest(long cid, boolean heartbeat) {
     final AppendEntriesRequest pending = pendingRequests.handleTimeout(cid, heartbeat);
     if (pending != null) {
@@ -240,7 +303,10 @@ public class GrpcLogAppender extends LogAppender {
     public void onNext(AppendEntriesReplyProto reply) {
       AppendEntriesRequest request = pendingRequests.remove(reply);
       if (request != null) {
-        request.stopRequestTimer(); // Update completion time
+        final long elapsedNanos = request.stopRequestTimer(); // Update completion time
+        if (!request.isHeartbeat()) {
+          onAppendEntriesLatency(elapsedNanos);
+        }
       }
 
       if (LOG.isDebugEnabled()) {
@@ -250,45 +316,16 @@ public class GrpcLogAppender extends LogAppender {
       }
 
       try {
-        onNextImpl(reply);
+        onAppendEntriesReply(reply);
+        if (request != null && isReadIndexAck(reply)) {
+          onReadIndexAck(request.getReadIndexRound());
+        }
       } catch(Throwable t) {
         LOG.error("Failed onNext request=" + request
             + ", reply=" + ServerProtoUtils.toString(reply), t);
       }
     }
 
-    private void onNextImpl(AppendEntriesReplyProto reply) {
-      // update the last rpc time
-      follower.updateLastRpcResponseTime();
-
-      if (!firstResponseReceived) {
-        firstResponseReceived = true;
-      }
-
-      switch (reply.getResult()) {
-        case SUCCESS:
-          grpcServerMetrics.onRequestSuccess(getFollowerId().toString(), reply.getIsHearbeat());
-          updateCommitIndex(reply.getFollowerCommit());
-          if (follower.updateMatchIndex(reply.getMatchIndex())) {
-            submitEventOnSuccessAppend();
-          }
-          break;
-        case NOT_LEADER:
-          grpcServerMetrics.onRequestNotLeader(getFollowerId().toString());
-          if (checkResponseTerm(reply.getTerm())) {
-            return;
-          }
-          break;
-        case INCONSISTENCY:
-          grpcServerMetrics.onRequestInconsistency(getFollowerId().toString());
-          updateNextIndex(reply.getNextIndex());
-          break;
-        default:
-          throw new IllegalStateException("Unexpected reply result: " + reply.getResult());
-      }
-      notifyAppend();
-    }
-
     /**
      * for now we simply retry the first pending request
      */
@@ -316,28 +353,130 @@ public class GrpcLogAppender extends LogAppender {
     }
   }
 
+  private void onAppendEntriesReply(AppendEntriesReplyProto reply) {
+    // update the last rpc time, which extends the read lease, only if the follower has accepted this leader
+    if (isReadIndexAck(reply)) {
+      follower.updateLastRpcResponseTime();
+    }
+
+    if (!firstResponseReceived) {
+      firstResponseReceived = true;
+    }
+
+    switch (reply.getResult()) {
+      case SUCCESS:
+        grpcServerMetrics.onRequestSuccess(getFollowerId().toString(), reply.getIsHearbeat());
+        updateCommitIndex(reply.getFollowerCommit());
+        if (follower.updateMatchIndex(reply.getMatchIndex())) {
+          submitEventOnSuccessAppend();
+        }
+        break;
+      case NOT_LEADER:
+        grpcServerMetrics.onRequestNotLeader(getFollowerId().toString());
+        if (checkResponseTerm(reply.getTerm())) {
+          return;
+        }
+        break;
+      case INCONSISTENCY:
+        grpcServerMetrics.onRequestInconsistency(getFollowerId().toString());
+        updateFollowerSnapshotIndex(reply);
+        updateNextIndex(getNextIndexForInconsistency(reply));
+        break;
+      default:
+        throw new IllegalStateException("Unexpected reply result: " + reply.getResult());
+    }
+    notifyAppend();
+  }
+
   private synchronized void updateNextIndex(long replyNextIndex) {
     pendingRequests.clear();
     follower.updateNextIndex(replyNextIndex);
   }
 
-  private class InstallSnapshotResponseHandler implements StreamObserver<InstallSnapshotReplyProto> {
+  /** The position of a snapshot installation, i.e. where the next chunk starts. */
+  static final class SnapshotPosition {
+    private final TermIndex snapshot;
+    /** The base index of an incremental snapshot, whose files are different from the full snapshot. */
+    private final long baseIndex;
+    private final String requestId;
+    private final int requestIndex;
+    private final int fileIndex;
+    private final long offset;
+
+    SnapshotPosition(SnapshotInfo snapshot, String requestId, int requestIndex, int fileIndex, long offset) {
+      this.snapshot = snapshot.getTermIndex();
+      this.baseIndex = snapshot.getBaseIndex();
+      this.requestId = requestId;
+      this.requestIndex = requestIndex;
+      this.fileIndex = fileIndex;
+      this.offset = offset;
+    }
+
+    @Override
+    public String toString() {
+      return "snapshot=" + snapshot + ",baseIndex=" + baseIndex + ",requestId=" + requestId + ",requestIndex=" + requestIndex
+          + ",fileIndex=" + fileIndex + ",offset=" + offset;
+    }
+  }
+
+  private class InstallSnapshotResponseHandler
+      implements ClientResponseObserver<InstallSnapshotRequestProto, InstallSnapshotReplyProto> {
     private final String name = follower.getName() + "-" + getClass().getSimpleName();
     private final Queue<Integer> pending;
+    /** The positions after the pending chunks. */
+    private final Map<Integer, SnapshotPosition> positions = new HashMap<>();
     private final AtomicBoolean done = new AtomicBoolean(false);
+    private volatile boolean progressed = false;
+    private volatile ClientCallStreamObserver<InstallSnapshotRequestProto> requestStream;
 
     InstallSnapshotResponseHandler() {
       pending = new LinkedList<>();
     }
 
+    @Override
+    public void beforeStart(ClientCallStreamObserver<InstallSnapshotRequestProto> stream) {
+      this.requestStream = stream;
+      stream.setOnReadyHandler(GrpcLogAppender.this::notifyAppend);
+    }
+
+    /** @return true if the request stream can accept more chunks without buffering. */
+    boolean isReady() {
+      final ClientCallStreamObserver<InstallSnapshotRequestProto> s = requestStream;
+      return s == null || s.isReady();
+    }
+
     synchronized void addPending(InstallSnapshotRequestProto request) {
       pending.offer(request.getSnapshotChunk().getRequestIndex());
+      pendingSnapshotChunks.incrementAndGet();
+    }
+
+    synchronized void addPending(InstallSnapshotRequestProto request, SnapshotPosition next) {
+      addPending(request);
+      positions.put(request.getSnapshotChunk().getRequestIndex(), next);
+    }
+
+    synchronized int getPendingCount() {
+      return pending.size();
     }
 
     synchronized void removePending(InstallSnapshotReplyProto reply) {
       final Integer index = pending.poll();
       Objects.requireNonNull(index, "index == null");
+      pendingSnapshotChunks.decrementAndGet();
       Preconditions.assertTrue(index == reply.getRequestIndex());
+      final SnapshotPosition next = positions.remove(index);
+      if (next != null) {
+        progressed = true;
+        if (reply.getSynced()) {
+          // the follower has forced the chunk to the disk; the installation can be resumed after it
+          snapshotResumePosition = next;
+        }
+      }
+    }
+
+    /** @return true if any chunk has been installed by the follower. */
+    boolean hasProgressed() {
+      return progressed;
     }
 
     boolean isDone() {
@@ -345,7 +484,12 @@ public class GrpcLogAppender extends LogAppender {
     }
 
     void close() {
-      done.set(true);
+      synchronized (this) {
+        if (done.compareAndSet(false, true)) {
+          // the remaining chunks will not be replied
+          pendingSnapshotChunks.addAndGet(-pending.size());
+        }
+      }
       GrpcLogAppender.this.notifyAppend();
     }
 
@@ -371,12 +515,14 @@ public class GrpcLogAppender extends LogAppender {
         case SUCCESS:
         case IN_PROGRESS:
           removePending(reply);
+          GrpcLogAppender.this.notifyAppend();
           break;
         case ALREADY_INSTALLED:
           final long followerSnapshotIndex = reply.getSnapshotIndex();
           LOG.info("{}: set follower snapshotIndex to {}.", this, followerSnapshotIndex);
           follower.setSnapshotIndex(followerSnapshotIndex);
           removePending(reply);
+          GrpcLogAppender.this.notifyAppend();
           break;
         case NOT_LEADER:
           checkResponseTerm(reply.getTerm());
@@ -416,27 +562,43 @@ public class GrpcLogAppender extends LogAppender {
 
   /**
    * Send installSnapshot request to Follower with a snapshot.
+   * The chunks are sent only when the stream is ready
+   * and the number of outstanding chunks is below the limit.
+   * If a previous installation of the same snapshot was interrupted,
+   * it is resumed after the last chunk installed by the follower.
+   *
    * @param snapshot the snapshot to be sent to Follower
    */
   private void installSnapshot(SnapshotInfo snapshot) {
+    final int numStreams = Math.min(snapshotStreams, snapshot.getFiles().size());
+    if (numStreams > 1) {
+      installSnapshotInParallel(snapshot, numStreams);
+      return;
+    }
+
     LOG.info("{}: followerNextIndex = {} but logStartIndex = {}, send snapshot {} to follower",
         this, follower.getNextIndex(), raftLog.getStartIndex(), snapshot);
 
     final InstallSnapshotResponseHandler responseHandler = new InstallSnapshotResponseHandler();
     StreamObserver<InstallSnapshotRequestProto> snapshotRequestObserver = null;
-    final String requestId = UUID.randomUUID().toString();
+    final SnapshotPosition resume = getSnapshotResumePosition(snapshot);
+    final String requestId = resume != null? resume.requestId: UUID.randomUUID().toString();
+    boolean allSent = false;
     try {
+      final SnapshotRequestIter iter = resume == null? newSnapshotRequestIter(snapshot, requestId)
+          : newSnapshotRequestIter(snapshot, requestId, resume.requestIndex, resume.fileIndex, resume.offset);
       snapshotRequestObserver = getClient().installSnapshot(responseHandler);
-      for (InstallSnapshotRequestProto request :
-          new SnapshotRequestIter(snapshot, requestId)) {
-        if (isAppenderRunning()) {
-          snapshotRequestObserver.onNext(request);
-          follower.updateLastRpcSendTime();
-          responseHandler.addPending(request);
-        } else {
+      for (Iterator<InstallSnapshotRequestProto> i = iter.iterator(); i.hasNext(); ) {
+        if (!waitForSnapshotWindow(responseHandler)) {
           break;
         }
+        final InstallSnapshotRequestProto request = i.next();
+        responseHandler.addPending(request, new SnapshotPosition(snapshot, requestId,
+            iter.getRequestIndex(), iter.getFileIndex(), iter.getOffset()));
+        snapshotRequestObserver.onNext(request);
+        follower.updateLastRpcSendTime();
       }
+      allSent = !iter.iterator().hasNext();
       snapshotRequestObserver.onCompleted();
       grpcServerMetrics.onInstallSnapshot();
     } catch (Exception e) {
@@ -447,21 +609,226 @@ public class GrpcLogAppender extends LogAppender {
       return;
     }
 
-    synchronized (this) {
-      while (isAppenderRunning() && !responseHandler.isDone()) {
-        try {
-          wait();
-        } catch (InterruptedException ignored) {
+    if (!waitForSnapshotResponses(responseHandler::isDone)) {
+      return;
+    }
+
+    if (allSent && responseHandler.hasAllResponse()) {
+      snapshotResumePosition = null;
+      follower.setSnapshotIndex(snapshot.getTermIndex().getIndex());
+      LOG.info("{}: installed snapshot {} successfully", this, snapshot);
+    } else if (resume != null && !responseHandler.hasProgressed()) {
+      // the follower cannot resume the installation, e.g. it has been restarted with a new storage.
+      LOG.info("{}: failed to resume installing snapshot {}; restart from the beginning next time", this, snapshot);
+      snapshotResumePosition = null;
+    }
+  }
+
+  /** A stream sending a subset of the files of a snapshot. */
+  private class SnapshotStream {
+    private final InstallSnapshotResponseHandler handler = new InstallSnapshotResponseHandler();
+    private final Iterator<InstallSnapshotRequestProto> requests;
+    private StreamObserver<InstallSnapshotRequestProto> requestObserver;
+    /** The next request to be sent; null if all the requests have been sent. */
+    private InstallSnapshotRequestProto next;
+    private int numSent = 0;
+
+    SnapshotStream(SnapshotRequestIter iter) {
+      this.requests = iter.iterator();
+      this.next = requests.hasNext()? requests.next(): null;
+    }
+
+    boolean hasNext() {
+      return next != null;
+    }
+
+    /** @return true if the next request is the last request of the entire snapshot. */
+    boolean isNextDone() {
+      return next != null && next.getSnapshotChunk().getDone();
+    }
+
+    boolean canSend() {
+      return handler.isReady() && handler.getPendingCount() < maxOutstandingSnapshotChunks;
+    }
+
+    void sendNext() throws IOException {
+      if (requestObserver == null) {
+        requestObserver = getClient().installSnapshot(handler);
+      }
+      handler.addPending(next);
+      requestObserver.onNext(next);
+      follower.updateLastRpcSendTime();
+      numSent++;
+      next = requests.hasNext()? requests.next(): null;
+    }
+
+    /** @return true if all the requests have been sent and replied. */
+    boolean isAllReplied() {
+      return next == null && handler.hasAllResponse();
+    }
+
+    void onCompleted() {
+      if (requestObserver != null) {
+        requestObserver.onCompleted();
+      } else {
+        handler.close();
+      }
+    }
+
+    void onError(Throwable t) {
+      if (requestObserver != null) {
+        requestObserver.onError(t);
+      } else {
+        handler.close();
+      }
+    }
+  }
+
+  /**
+   * Send the files of a snapshot to the follower over multiple streams in parallel.
+   * The files are assigned to the streams in a round-robin manner.
+   * The first request, which starts a new installation in the follower, is sent before the other requests
+   * and the last request, which completes the installation, is sent after all the other requests are replied.
+   * An interrupted parallel installation is not resumed.
+   */
+  private void installSnapshotInParallel(SnapshotInfo snapshot, int numStreams) {
+    LOG.info("{}: followerNextIndex = {} but logStartIndex = {}, send snapshot {} to follower using {} streams",
+        this, follower.getNextIndex(), raftLog.getStartIndex(), snapshot, numStreams);
+    snapshotResumePosition = null;
+
+    final String requestId = UUID.randomUUID().toString();
+    final List<FileInfo> files = snapshot.getFiles();
+    final List<SnapshotStream> streams = new ArrayList<>(numStreams);
+    final boolean allSent;
+    try {
+      int requestIndex = 0;
+      for (int i = 0; i < numStreams; i++) {
+        final List<FileInfo> subset = new ArrayList<>();
+        for (int j = i; j < files.size(); j += numStreams) {
+          subset.add(files.get(j));
         }
+        // the streams use disjoint ranges of request indices, where only the first stream starts from 0.
+        final SnapshotRequestIter iter = newSnapshotRequestIter(snapshot, subset, requestId, requestIndex);
+        requestIndex += iter.getNumRequests();
+        streams.add(new SnapshotStream(iter));
       }
+      allSent = sendSnapshotStreams(streams);
+      streams.forEach(SnapshotStream::onCompleted);
+      grpcServerMetrics.onInstallSnapshot();
+    } catch (Exception e) {
+      LOG.warn("{}: failed to install snapshot {}: {}", this, files, e);
+      streams.forEach(s -> s.onError(e));
+      return;
     }
 
-    if (responseHandler.hasAllResponse()) {
+    if (!waitForSnapshotResponses(() -> streams.stream().allMatch(s -> s.handler.isDone()))) {
+      return;
+    }
+
+    if (allSent && streams.stream().allMatch(s -> s.handler.hasAllResponse())) {
       follower.setSnapshotIndex(snapshot.getTermIndex().getIndex());
       LOG.info("{}: installed snapshot {} successfully", this, snapshot);
     }
   }
 
+  /** @return true if all the requests of the streams are sent. */
+  private boolean sendSnapshotStreams(List<SnapshotStream> streams) throws IOException {
+    final SnapshotStream first = streams.get(0);
+    boolean started = false;
+    while (isAppenderRunning()) {
+      if (!started && first.numSent > 0 && first.handler.hasAllResponse()) {
+        // the follower has started the installation; the other streams can be started.
+        started = true;
+      }
+
+      boolean sent = false;
+      boolean allSent = true;
+      for (SnapshotStream s : streams) {
+        if (s.handler.isDone()) {
+          // the stream has failed
+          return false;
+        } else if (!s.hasNext()) {
+          continue;
+        }
+        allSent = false;
+        if (!started && (s != first || s.numSent > 0)) {
+          continue;
+        } else if (s.isNextDone() && !streams.stream().allMatch(other -> other == s || other.isAllReplied())) {
+          continue;
+        }
+        if (s.canSend()) {
+          s.sendNext();
+          sent = true;
+        }
+      }
+      if (allSent) {
+        return true;
+      } else if (!sent) {
+        synchronized (this) {
+          try {
+            wait(halfMinTimeoutMs);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Wait until the responses of the snapshot streams are done.
+   * The wait is bounded so that a stopped appender is noticed even if it is not notified.
+   *
+   * @return true if the responses are done; false if the appender is stopped or the thread is interrupted.
+   */
+  private boolean waitForSnapshotResponses(BooleanSupplier isDone) {
+    synchronized (this) {
+      while (isAppenderRunning() && !isDone.getAsBoolean()) {
+        try {
+          wait(halfMinTimeoutMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    return isAppenderRunning();
+  }
+
+  /** @return the position to resume the installation of the given snapshot; or null if there is none. */
+  private SnapshotPosition getSnapshotResumePosition(SnapshotInfo snapshot) {
+    final SnapshotPosition p = snapshotResumePosition;
+    if (p == null) {
+      return null;
+    } else if (!p.snapshot.equals(snapshot.getTermIndex()) || p.baseIndex != snapshot.getBaseIndex()) {
+      snapshotResumePosition = null;
+      return null;
+    }
+    LOG.info("{}: resume installing snapshot {} from {}", this, snapshot, p);
+    return p;
+  }
+
+  /**
+   * Wait until the snapshot stream is ready and the number of outstanding chunks is below the limit.
+   * @return true if the next chunk can be sent.
+   */
+  private boolean waitForSnapshotWindow(InstallSnapshotResponseHandler handler) {
+    synchronized (this) {
+      while (isAppenderRunning() && !handler.isDone()
+          && (!handler.isReady() || handler.getPendingCount() >= maxOutstandingSnapshotChunks)) {
+        try {
+          wait(halfMinTimeoutMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    return isAppenderRunning() && !handler.isDone();
+  }
+
   /**
    * Send installSnapshot request to Follower with only a notification that a snapshot needs to be installed.
    * @param firstAvailableLogTermIndex the first available log's index on the Leader
@@ -526,9 +893,13 @@ public class GrpcLogAppender extends LogAppender {
     private final int entriesCount;
 
     private final TermIndex lastEntry;
+    /** The ReadIndex heartbeat round acked by the reply of this request. */
+    private final long readIndexRound;
 
-    AppendEntriesRequest(AppendEntriesRequestProto proto, RaftPeerId followerId, GrpcServerMetrics grpcServerMetrics) {
+    AppendEntriesRequest(AppendEntriesRequestProto proto, RaftPeerId followerId, long readIndexRound,
+        GrpcServerMetrics grpcServerMetrics) {
       this.callId = proto.getServerRequest().getCallId();
+      this.readIndexRound = readIndexRound;
       this.previousLog = proto.hasPreviousLog()? ServerProtoUtils.toTermIndex(proto.getPreviousLog()): null;
       this.entriesCount = proto.getEntriesCount();
       this.lastEntry = entriesCount > 0? ServerProtoUtils.toTermIndex(proto.getEntries(entriesCount - 1)): null;
@@ -545,12 +916,17 @@ public class GrpcLogAppender extends LogAppender {
       return previousLog;
     }
 
+    long getReadIndexRound() {
+      return readIndexRound;
+    }
+
     void startRequestTimer() {
       timerContext = timer.time();
     }
 
-    void stopRequestTimer() {
-      timerContext.stop();
+    /** @return the elapsed time in nanoseconds. */
+    long stopRequestTimer() {
+      return timerContext.stop();
     }
 
     boolean isHeartbeat() {
@@ -18,11 +18,15 @@
 package org.apache.ratis.grpc.server;
 
 import org.apache.ratis.grpc.GrpcTlsConfig;
+import org.apache.ratis.grpc.GrpcUtil;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.thirdparty.io.grpc.ManagedChannel;
+import org.apache.ratis.thirdparty.io.grpc.Status;
 import org.apache.ratis.thirdparty.io.grpc.netty.GrpcSslContexts;
 import org.apache.ratis.thirdparty.io.grpc.netty.NegotiationType;
 import org.apache.ratis.thirdparty.io.grpc.netty.NettyChannelBuilder;
+import org.apache.ratis.thirdparty.io.grpc.stub.ClientCallStreamObserver;
+import org.apache.ratis.thirdparty.io.grpc.stub.ClientResponseObserver;
 import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.proto.grpc.RaftServerProtocolServiceGrpc;
@@ -30,12 +34,20 @@ import org.apache.ratis.proto.grpc.RaftServerProtocolServiceGrpc.RaftServerProto
 import org.apache.ratis.proto.grpc.RaftServerProtocolServiceGrpc.RaftServerProtocolServiceStub;
 import org.apache.ratis.protocol.RaftPeer;
 import org.apache.ratis.thirdparty.io.netty.handler.ssl.SslContextBuilder;
+import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.TimeDuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This is a RaftClient implementation that supports streaming data to the raft
@@ -49,6 +61,8 @@ public class GrpcServerProtocolClient implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(GrpcServerProtocolClient.class);
   //visible for using in log / error messages AND to use in instrumented tests
   private final RaftPeerId raftPeerId;
+  /** Does the peer support the installSnapshotStream rpc?  It is false for the peers running an old version. */
+  private volatile boolean installSnapshotStreamSupported = true;
 
   public GrpcServerProtocolClient(RaftPeer target, int flowControlWindow,
       TimeDuration requestTimeoutDuration, GrpcTlsConfig tlsConfig) {
@@ -110,9 +124,280 @@ public class GrpcServerProtocolClient implements Closeable {
     return asyncStub.appendEntries(responseHandler);
   }
 
+  /**
+   * Start a stream of installSnapshot requests, where each request is replied.
+   * If the peer does not support the installSnapshotStream rpc,
+   * the stream fails with UNIMPLEMENTED and the subsequent streams fall back to the installSnapshot rpc.
+   */
   StreamObserver<InstallSnapshotRequestProto> installSnapshot(
-      StreamObserver<InstallSnapshotReplyProto> responseHandler) {
+      ClientResponseObserver<InstallSnapshotRequestProto, InstallSnapshotReplyProto> responseHandler) {
+    if (!installSnapshotStreamSupported) {
+      return new InstallSnapshotOneByOne(responseHandler);
+    }
     return asyncStub.withDeadlineAfter(requestTimeoutDuration.getDuration(), requestTimeoutDuration.getUnit())
-        .installSnapshot(responseHandler);
+        .installSnapshotStream(new ClientResponseObserver<InstallSnapshotRequestProto, InstallSnapshotReplyProto>() {
+          @Override
+          public void beforeStart(ClientCallStreamObserver<InstallSnapshotRequestProto> stream) {
+            responseHandler.beforeStart(stream);
+          }
+
+          @Override
+          public void onNext(InstallSnapshotReplyProto reply) {
+            responseHandler.onNext(reply);
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            if (Status.fromThrowable(t).getCode() == Status.Code.UNIMPLEMENTED) {
+              LOG.info("{} does not support installSnapshotStream; fall back to installSnapshot", raftPeerId);
+              installSnapshotStreamSupported = false;
+            }
+            responseHandler.onError(t);
+          }
+
+          @Override
+          public void onCompleted() {
+            responseHandler.onCompleted();
+          }
+        });
+  }
+
+  /**
+   * Send each installSnapshot request in its own installSnapshot call,
+   * which has a single reply, after the previous request is replied.
+   * It is used for the peers without the installSnapshotStream rpc.
+   */
+  private class InstallSnapshotOneByOne implements StreamObserver<InstallSnapshotRequestProto> {
+    private final StreamObserver<InstallSnapshotReplyProto> responseHandler;
+    /** The requests not yet sent; guarded by this. */
+    private final Queue<InstallSnapshotRequestProto> queue = new LinkedList<>();
+    /** The call in progress; guarded by this. */
+    private StreamObserver<InstallSnapshotRequestProto> current;
+    /** Have all the requests been added?  Guarded by this. */
+    private boolean completed = false;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    InstallSnapshotOneByOne(StreamObserver<InstallSnapshotReplyProto> responseHandler) {
+      this.responseHandler = responseHandler;
+    }
+
+    @Override
+    public synchronized void onNext(InstallSnapshotRequestProto request) {
+      queue.offer(request);
+      sendNext();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      synchronized (this) {
+        queue.clear();
+        if (current != null) {
+          // cancel the call in progress, which then closes this.
+          current.onError(t);
+          return;
+        }
+      }
+      close(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      synchronized (this) {
+        completed = true;
+        if (current != null || !queue.isEmpty()) {
+          return;
+        }
+      }
+      close(null);
+    }
+
+    private synchronized void sendNext() {
+      if (current != null || closed.get()) {
+        return;
+      }
+      final InstallSnapshotRequestProto request = queue.poll();
+      if (request == null) {
+        return;
+      }
+      current = asyncStub.withDeadlineAfter(requestTimeoutDuration.getDuration(), requestTimeoutDuration.getUnit())
+          .installSnapshot(new StreamObserver<InstallSnapshotReplyProto>() {
+            @Override
+            public void onNext(InstallSnapshotReplyProto reply) {
+              responseHandler.onNext(reply);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+              close(t);
+            }
+
+            @Override
+            public void onCompleted() {
+              onReplied();
+            }
+          });
+      current.onNext(request);
+      current.onCompleted();
+    }
+
+    private void onReplied() {
+      synchronized (this) {
+        current = null;
+        if (!completed || !queue.isEmpty()) {
+          sendNext();
+          return;
+        }
+      }
+      close(null);
+    }
+
+    private void close(Throwable t) {
+      if (closed.compareAndSet(false, true)) {
+        if (t != null) {
+          responseHandler.onError(t);
+        } else {
+          responseHandler.onCompleted();
+        }
+      }
+    }
+  }
+
+  /** Send a single installSnapshot request over a new stream and wait for the reply. */
+  InstallSnapshotReplyProto installSnapshot(InstallSnapshotRequestProto request) throws IOException {
+    return installSnapshot(Collections.singletonList(request), 1);
+  }
+
+  /**
+   * Send the installSnapshot requests over a new stream and wait for all the replies.
+   * A request is sent only when the stream is ready
+   * and the number of outstanding requests is below the given limit.
+   *
+   * @return the first unsuccessful reply; or, if all the requests are successful, the reply of the last request.
+   */
+  InstallSnapshotReplyProto installSnapshot(Iterable<InstallSnapshotRequestProto> requests, int maxOutstanding)
+      throws IOException {
+    final InstallSnapshotReplies replies = new InstallSnapshotReplies(maxOutstanding);
+    final StreamObserver<InstallSnapshotRequestProto> requestObserver = installSnapshot(replies);
+    try {
+      for (InstallSnapshotRequestProto request : requests) {
+        if (!replies.awaitWindow()) {
+          break;
+        }
+        requestObserver.onNext(request);
+      }
+    } catch (Exception e) {
+      requestObserver.onError(e);
+      throw e;
+    }
+    requestObserver.onCompleted();
+    return IOUtils.getFromFuture(replies.future, () -> raftPeerId + ": installSnapshot");
+  }
+
+  /** The replies of a stream of installSnapshot requests. */
+  private class InstallSnapshotReplies
+      implements ClientResponseObserver<InstallSnapshotRequestProto, InstallSnapshotReplyProto> {
+    private final int maxOutstanding;
+    private final CompletableFuture<InstallSnapshotReplyProto> future = new CompletableFuture<>();
+    private volatile ClientCallStreamObserver<InstallSnapshotRequestProto> requestStream;
+    /** The number of the requests sent but not yet replied; guarded by this. */
+    private int outstanding = 0;
+    /** The last reply received; guarded by this. */
+    private InstallSnapshotReplyProto lastReply;
+
+    InstallSnapshotReplies(int maxOutstanding) {
+      this.maxOutstanding = maxOutstanding;
+    }
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<InstallSnapshotRequestProto> stream) {
+      this.requestStream = stream;
+      stream.setOnReadyHandler(this::notifyWaiting);
+    }
+
+    /** @return true unless the stream is buffering; the stream is null when falling back to installSnapshot. */
+    private boolean isReady() {
+      final ClientCallStreamObserver<InstallSnapshotRequestProto> s = requestStream;
+      return s == null || s.isReady();
+    }
+
+    private synchronized void notifyWaiting() {
+      notifyAll();
+    }
+
+    /**
+     * Wait until the stream is ready and the number of outstanding requests is below the limit.
+     * The stream has a deadline, so that the wait ends when the deadline is exceeded.
+     *
+     * @return true if the next request can be sent; false if the stream is already completed.
+     */
+    synchronized boolean awaitWindow() throws InterruptedIOException {
+      while (!future.isDone() && (!isReady() || outstanding >= maxOutstanding)) {
+        try {
+          wait(requestTimeoutDuration.toLong(TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw IOUtils.toInterruptedIOException(raftPeerId + ": interrupted while waiting for installSnapshot", e);
+        }
+      }
+      if (future.isDone()) {
+        return false;
+      }
+      outstanding++;
+      return true;
+    }
+
+    @Override
+    public synchronized void onNext(InstallSnapshotReplyProto reply) {
+      outstanding--;
+      lastReply = reply;
+      if (!reply.getServerReply().getSuccess()) {
+        future.complete(reply);
+      }
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+      future.completeExceptionally(GrpcUtil.unwrapIOException(t));
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+      if (outstanding > 0 || lastReply == null) {
+        future.completeExceptionally(new IOException(raftPeerId + ": installSnapshot is completed with "
+            + outstanding + " request(s) not replied"));
+      } else {
+        future.complete(lastReply);
+      }
+      notifyAll();
+    }
+  }
+
+  void heartbeats(HeartbeatsRequestProto request, StreamObserver<HeartbeatsReplyProto> responseHandler) {
+    asyncStub.withDeadlineAfter(requestTimeoutDuration.getDuration(), requestTimeoutDuration.getUnit())
+        .heartbeats(request, responseHandler);
+  }
+
+  CompletableFuture<ReadIndexReplyProto> readIndex(ReadIndexRequestProto request) {
+    final CompletableFuture<ReadIndexReplyProto> reply = new CompletableFuture<>();
+    asyncStub.withDeadlineAfter(requestTimeoutDuration.getDuration(), requestTimeoutDuration.getUnit())
+        .readIndex(request, new StreamObserver<ReadIndexReplyProto>() {
+          @Override
+          public void onNext(ReadIndexReplyProto r) {
+            reply.complete(r);
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            reply.completeExceptionally(GrpcUtil.unwrapIOException(t));
+          }
+
+          @Override
+          public void onCompleted() {
+            reply.completeExceptionally(new IOException(raftPeerId + ": No reply for readIndex"));
+          }
+        });
+    return reply;
   }
 }
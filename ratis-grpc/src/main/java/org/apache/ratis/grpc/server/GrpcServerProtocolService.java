@@ -26,11 +26,15 @@ import org.apache.ratis.thirdparty.io.grpc.StatusRuntimeException;
 import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.proto.grpc.RaftServerProtocolServiceGrpc.RaftServerProtocolServiceImplBase;
+import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.ProtoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -209,9 +213,75 @@ class GrpcServerProtocolService extends RaftServerProtocolServiceImplBase {
     };
   }
 
+  @Override
+  public void heartbeats(HeartbeatsRequestProto request, StreamObserver<HeartbeatsReplyProto> responseObserver) {
+    final List<CompletableFuture<AppendEntriesReplyProto>> futures = new ArrayList<>(request.getHeartbeatsCount());
+    for (AppendEntriesRequestProto heartbeat : request.getHeartbeatsList()) {
+      futures.add(heartbeatAsync(heartbeat.toBuilder().setServerRequest(heartbeat.getServerRequest().toBuilder()
+          .setRequestorId(request.getRequestorId())
+          .setReplyId(request.getReplyId())).build()));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenRun(() -> {
+      final HeartbeatsReplyProto.Builder reply = HeartbeatsReplyProto.newBuilder()
+          .setRequestorId(request.getRequestorId())
+          .setReplyId(request.getReplyId());
+      futures.stream().map(CompletableFuture::join).filter(Objects::nonNull)
+          .map(r -> r.toBuilder().setServerReply(r.getServerReply().toBuilder().clearRequestorId().clearReplyId()))
+          .forEach(reply::addReplies);
+      responseObserver.onNext(reply.build());
+      responseObserver.onCompleted();
+    });
+  }
+
+  @Override
+  public void readIndex(ReadIndexRequestProto request, StreamObserver<ReadIndexReplyProto> responseObserver) {
+    final CompletableFuture<ReadIndexReplyProto> future;
+    try {
+      future = server.readIndexAsync(request);
+    } catch (Throwable e) {
+      GrpcUtil.warn(LOG, () -> getId() + ": Failed readIndex " + ProtoUtils.toString(request.getServerRequest()), e);
+      responseObserver.onError(GrpcUtil.wrapException(e));
+      return;
+    }
+    future.whenComplete((reply, e) -> {
+      if (e != null) {
+        GrpcUtil.warn(LOG, () -> getId() + ": Failed readIndex " + ProtoUtils.toString(request.getServerRequest()), e);
+        responseObserver.onError(GrpcUtil.wrapException(JavaUtils.unwrapCompletionException(e)));
+      } else {
+        responseObserver.onNext(reply);
+        responseObserver.onCompleted();
+      }
+    });
+  }
+
+  /** @return a future of the reply; or a future of null if the heartbeat has failed. */
+  private CompletableFuture<AppendEntriesReplyProto> heartbeatAsync(AppendEntriesRequestProto heartbeat) {
+    CompletableFuture<AppendEntriesReplyProto> future;
+    try {
+      future = server.appendEntriesAsync(heartbeat);
+    } catch (Throwable e) {
+      future = JavaUtils.completeExceptionally(e);
+    }
+    return future.exceptionally(e -> {
+      GrpcUtil.warn(LOG, () -> getId() + ": Failed heartbeat " + ServerProtoUtils.toString(heartbeat), e);
+      return null;
+    });
+  }
+
   @Override
   public StreamObserver<InstallSnapshotRequestProto> installSnapshot(
       StreamObserver<InstallSnapshotReplyProto> responseObserver) {
+    return newInstallSnapshotObserver(responseObserver);
+  }
+
+  @Override
+  public StreamObserver<InstallSnapshotRequestProto> installSnapshotStream(
+      StreamObserver<InstallSnapshotReplyProto> responseObserver) {
+    return newInstallSnapshotObserver(responseObserver);
+  }
+
+  private StreamObserver<InstallSnapshotRequestProto> newInstallSnapshotObserver(
+      StreamObserver<InstallSnapshotReplyProto> responseObserver) {
     return new ServerRequestStreamObserver<InstallSnapshotRequestProto, InstallSnapshotReplyProto>(
         RaftServerProtocol.Op.INSTALL_SNAPSHOT, responseObserver) {
       @Override
@@ -41,6 +41,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 import static org.apache.ratis.thirdparty.io.netty.handler.ssl.SslProvider.OPENSSL;
@@ -54,6 +55,7 @@ public final class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocol
 
   public static final class Builder extends RaftServerRpc.Builder<Builder, GrpcService> {
     private GrpcTlsConfig tlsConfig;
+    private Supplier<HashedWheelTimer> timer;
 
     private Builder() {}
 
@@ -64,7 +66,7 @@ public final class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocol
 
     @Override
     public GrpcService build() {
-      return new GrpcService(getServer(), getTlsConfig());
+      return new GrpcService(getServer(), getTimer(), getTlsConfig());
     }
 
     public Builder setTlsConfig(GrpcTlsConfig tlsConfig) {
@@ -75,6 +77,17 @@ public final class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocol
     public GrpcTlsConfig getTlsConfig() {
       return tlsConfig;
     }
+
+    /** Set the timer for scheduling the coalesced heartbeats; the supplier is called after the server is created. */
+    public Builder setTimer(Supplier<HashedWheelTimer> timer) {
+      this.timer = timer;
+      return this;
+    }
+
+    /** @return the timer supplier, which defaults to the timer shared by the callers with the same properties. */
+    public Supplier<HashedWheelTimer> getTimer() {
+      return timer != null? timer: () -> HashedWheelTimer.getInstance(getServer().getProperties());
+    }
   }
 
   public static Builder newBuilder() {
@@ -85,20 +98,30 @@ public final class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocol
   private final Supplier<InetSocketAddress> addressSupplier;
 
   private final GrpcClientProtocolService clientProtocolService;
+  /** Null if heartbeat coalescing is disabled. */
+  private final GrpcHeartbeatCoalescer heartbeatCoalescer;
+  /** For the snapshots sent by a follower on behalf of the leader. */
+  private final int maxOutstandingSnapshotChunks;
 
-  private GrpcService(RaftServer server, GrpcTlsConfig tlsConfig) {
-    this(server, server::getId,
+  private GrpcService(RaftServer server, Supplier<HashedWheelTimer> timer, GrpcTlsConfig tlsConfig) {
+    this(server, server::getId, timer,
         GrpcConfigKeys.Server.port(server.getProperties()),
         GrpcConfigKeys.messageSizeMax(server.getProperties(), LOG::info),
         RaftServerConfigKeys.Log.Appender.bufferByteLimit(server.getProperties()),
         GrpcConfigKeys.flowControlWindow(server.getProperties(), LOG::info),
         RaftServerConfigKeys.Rpc.requestTimeout(server.getProperties()),
+        GrpcConfigKeys.Server.heartbeatCoalescingEnabled(server.getProperties())?
+            GrpcHeartbeatCoalescer.checkWindow(GrpcConfigKeys.Server.heartbeatCoalescingWindow(server.getProperties()),
+                RaftServerConfigKeys.Rpc.timeoutMin(server.getProperties())): null,
+        GrpcConfigKeys.Server.leaderOutstandingSnapshotChunksMax(server.getProperties()),
         tlsConfig);
   }
 
-  private GrpcService(RaftServer raftServer, Supplier<RaftPeerId> idSupplier, int port,
-      SizeInBytes grpcMessageSizeMax, SizeInBytes appenderBufferSize,
-      SizeInBytes flowControlWindow,TimeDuration requestTimeoutDuration, GrpcTlsConfig tlsConfig) {
+  @SuppressWarnings("parameternumber")
+  private GrpcService(RaftServer raftServer, Supplier<RaftPeerId> idSupplier, Supplier<HashedWheelTimer> timer,
+      int port, SizeInBytes grpcMessageSizeMax, SizeInBytes appenderBufferSize,
+      SizeInBytes flowControlWindow,TimeDuration requestTimeoutDuration,
+      TimeDuration heartbeatCoalescingWindow, int maxOutstandingSnapshotChunks, GrpcTlsConfig tlsConfig) {
     super(idSupplier, id -> new PeerProxyMap<>(id.toString(),
         p -> new GrpcServerProtocolClient(p, flowControlWindow.getSizeInt(),
             requestTimeoutDuration, tlsConfig)));
@@ -108,7 +131,11 @@ public final class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocol
           + " > " + GrpcConfigKeys.MESSAGE_SIZE_MAX_KEY + " = " + grpcMessageSizeMax);
     }
 
+    this.maxOutstandingSnapshotChunks = maxOutstandingSnapshotChunks;
     this.clientProtocolService = new GrpcClientProtocolService(idSupplier, raftServer);
+    this.heartbeatCoalescer = heartbeatCoalescingWindow == null? null
+        : new GrpcHeartbeatCoalescer(idSupplier, heartbeatCoalescingWindow,
+            timer, peer -> getProxies().getProxy(peer));
 
     NettyServerBuilder nettyServerBuilder = NettyServerBuilder.forPort(port)
         .withChildOption(ChannelOption.SO_REUSEADDR, true)
@@ -173,6 +200,11 @@ public final class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocol
     LOG.info("{} successfully", name);
   }
 
+  /** @return the heartbeat coalescer; or null if heartbeat coalescing is disabled. */
+  GrpcHeartbeatCoalescer getHeartbeatCoalescer() {
+    return heartbeatCoalescer;
+  }
+
   @Override
   public void notifyNotLeader(RaftGroupId groupId) {
     clientProtocolService.closeAllOrderedRequestStreamObservers(groupId);
@@ -190,9 +222,19 @@ public final class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocol
   }
 
   @Override
-  public InstallSnapshotReplyProto installSnapshot(InstallSnapshotRequestProto request) {
-    throw new UnsupportedOperationException(
-        "Blocking " + JavaUtils.getCurrentStackTraceElement().getMethodName() + " call is not supported");
+  public InstallSnapshotReplyProto installSnapshot(InstallSnapshotRequestProto request) throws IOException {
+    CodeInjectionForTesting.execute(GRPC_SEND_SERVER_REQUEST, getId(),
+        null, request);
+
+    final RaftPeerId target = RaftPeerId.valueOf(request.getServerRequest().getReplyId());
+    return getProxies().getProxy(target).installSnapshot(request);
+  }
+
+  /** Stream the requests with the same flow control as the snapshots sent by the leader. */
+  @Override
+  public InstallSnapshotReplyProto installSnapshot(RaftPeerId target,
+      Iterable<InstallSnapshotRequestProto> requests) throws IOException {
+    return getProxies().getProxy(target).installSnapshot(requests, maxOutstandingSnapshotChunks);
   }
 
   @Override
@@ -204,4 +246,17 @@ public final class GrpcService extends RaftServerRpcWithProxy<GrpcServerProtocol
     final RaftPeerId target = RaftPeerId.valueOf(request.getServerRequest().getReplyId());
     return getProxies().getProxy(target).requestVote(request);
   }
+
+  @Override
+  public CompletableFuture<ReadIndexReplyProto> readIndexAsync(ReadIndexRequestProto request) {
+    CodeInjectionForTesting.execute(GRPC_SEND_SERVER_REQUEST, getId(),
+        null, request);
+
+    final RaftPeerId target = RaftPeerId.valueOf(request.getServerRequest().getReplyId());
+    try {
+      return getProxies().getProxy(target).readIndex(request);
+    } catch (IOException e) {
+      return JavaUtils.completeExceptionally(e);
+    }
+  }
 }
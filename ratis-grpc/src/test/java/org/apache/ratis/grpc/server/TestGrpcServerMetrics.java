@@ -76,7 +76,7 @@ public class TestGrpcServerMetrics {
         proto.addEntries(RaftProtos.LogEntryProto.newBuilder().build());
       }
       GrpcLogAppender.AppendEntriesRequest req =
-          new GrpcLogAppender.AppendEntriesRequest(proto.build(), followerId,
+          new GrpcLogAppender.AppendEntriesRequest(proto.build(), followerId, 0L,
               grpcServerMetrics);
       Assert.assertEquals(0L, ratisMetricRegistry.timer(String.format(
           RATIS_GRPC_METRICS_LOG_APPENDER_LATENCY + GrpcServerMetrics
@@ -28,6 +28,8 @@ import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteReplyProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteRequestProto;
 import org.apache.ratis.proto.hadoop.HadoopProtos.CombinedClientProtocolService;
@@ -37,11 +39,11 @@ import org.apache.ratis.rpc.SupportedRpcType;
 import org.apache.ratis.server.RaftServer;
 import org.apache.ratis.server.RaftServerRpc;
 import org.apache.ratis.server.impl.RaftServerRpcWithProxy;
-import org.apache.ratis.server.protocol.RaftServerProtocol;
 import org.apache.ratis.thirdparty.com.google.protobuf.BlockingService;
 import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.thirdparty.com.google.protobuf.ServiceException;
 import org.apache.ratis.util.CodeInjectionForTesting;
+import org.apache.ratis.util.Daemon;
 import org.apache.ratis.util.PeerProxyMap;
 import org.apache.ratis.util.ProtoUtils;
 import org.apache.ratis.util.function.CheckedFunction;
@@ -50,6 +52,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /** Server side Hadoop RPC service. */
 public final class HadoopRpcService extends RaftServerRpcWithProxy<Proxy<RaftServerProtocolPB>,
@@ -92,6 +98,8 @@ public final class HadoopRpcService extends RaftServerRpcWithProxy<Proxy<RaftSer
 
   private final RPC.Server ipcServer;
   private final InetSocketAddress ipcServerAddress;
+  /** Send the readIndex requests, since the Hadoop rpc calls are blocking. */
+  private final ExecutorService readIndexExecutor = Executors.newCachedThreadPool(Daemon::new);
 
   private HadoopRpcService(RaftServer server, final Configuration conf) {
     super(server::getId,
@@ -121,7 +129,7 @@ public final class HadoopRpcService extends RaftServerRpcWithProxy<Proxy<RaftSer
   }
 
   private static RPC.Server newRpcServer(
-      RaftServerProtocol serverProtocol, final Configuration conf)
+      RaftServer serverProtocol, final Configuration conf)
       throws IOException {
     final int handlerCount = HadoopConfigKeys.Ipc.handlers(conf);
     final InetSocketAddress address = HadoopConfigKeys.Ipc.address(conf);
@@ -157,6 +165,7 @@ public final class HadoopRpcService extends RaftServerRpcWithProxy<Proxy<RaftSer
   @Override
   public void closeImpl() throws IOException {
     ipcServer.stop();
+    readIndexExecutor.shutdown();
     super.closeImpl();
   }
 
@@ -181,6 +190,18 @@ public final class HadoopRpcService extends RaftServerRpcWithProxy<Proxy<RaftSer
         proxy -> proxy.requestVote(null, request));
   }
 
+  @Override
+  public CompletableFuture<ReadIndexReplyProto> readIndexAsync(ReadIndexRequestProto request) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return processRequest(request, request.getServerRequest().getReplyId(),
+            proxy -> proxy.readIndex(null, request));
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, readIndexExecutor);
+  }
+
   private <REQUEST, REPLY> REPLY processRequest(
       REQUEST request, ByteString replyId,
       CheckedFunction<RaftServerProtocolPB, REPLY, ServiceException> f)
@@ -20,22 +20,25 @@ package org.apache.ratis.hadooprpc.server;
 import java.io.IOException;
 
 import org.apache.hadoop.classification.InterfaceAudience;
-import org.apache.ratis.server.protocol.RaftServerProtocol;
+import org.apache.ratis.server.RaftServer;
 import org.apache.ratis.thirdparty.com.google.protobuf.RpcController;
 import org.apache.ratis.thirdparty.com.google.protobuf.ServiceException;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteReplyProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteRequestProto;
+import org.apache.ratis.util.IOUtils;
 
 @InterfaceAudience.Private
 public class RaftServerProtocolServerSideTranslatorPB
     implements RaftServerProtocolPB {
-  private final RaftServerProtocol impl;
+  private final RaftServer impl;
 
-  public RaftServerProtocolServerSideTranslatorPB(RaftServerProtocol impl) {
+  public RaftServerProtocolServerSideTranslatorPB(RaftServer impl) {
     this.impl = impl;
   }
 
@@ -70,4 +73,14 @@ public class RaftServerProtocolServerSideTranslatorPB
       throw new ServiceException(ioe);
     }
   }
+
+  @Override
+  public ReadIndexReplyProto readIndex(RpcController controller,
+      ReadIndexRequestProto request) throws ServiceException {
+    try {
+      return IOUtils.getFromFuture(impl.readIndexAsync(request), () -> impl.getId() + ": readIndex");
+    } catch(IOException ioe) {
+      throw new ServiceException(ioe);
+    }
+  }
 }
@@ -76,6 +76,8 @@ public class NettyRpcProxy implements Closeable {
         return proto.getInstallSnapshotReply().getServerReply().getCallId();
       case RAFTCLIENTREPLY:
         return proto.getRaftClientReply().getRpcReply().getCallId();
+      case READINDEXREPLY:
+        return proto.getReadIndexReply().getServerReply().getCallId();
       case EXCEPTIONREPLY:
         return proto.getExceptionReply().getRpcReply().getCallId();
       case RAFTNETTYSERVERREPLY_NOT_SET:
@@ -164,6 +166,17 @@ public class NettyRpcProxy implements Closeable {
     connection.close();
   }
 
+  /** Send the given request asynchronously; the returned future completes with its reply. */
+  public CompletableFuture<RaftNettyServerReplyProto> sendAsync(RaftNettyServerRequestProto proto) {
+    final CompletableFuture<RaftNettyServerReplyProto> reply = new CompletableFuture<>();
+    connection.offer(proto, reply).addListener((ChannelFutureListener) f -> {
+      if (!f.isSuccess()) {
+        reply.completeExceptionally(IOUtils.asIOException(f.cause()));
+      }
+    });
+    return reply;
+  }
+
   public RaftNettyServerReplyProto send(
       RaftRpcRequestProto request, RaftNettyServerRequestProto proto)
       throws IOException {
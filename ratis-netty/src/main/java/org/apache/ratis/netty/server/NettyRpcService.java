@@ -44,11 +44,14 @@ import org.apache.ratis.proto.netty.NettyProtos.RaftNettyExceptionReplyProto;
 import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerReplyProto;
 import org.apache.ratis.proto.netty.NettyProtos.RaftNettyServerRequestProto;
 import org.apache.ratis.util.CodeInjectionForTesting;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.ProtoUtils;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A netty server endpoint that acts as the communication layer.
@@ -224,6 +227,15 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
               .setGroupInfoReply(ClientProtoUtils.toGroupInfoReplyProto(groupInfoReply))
               .build();
 
+        case READINDEXREQUEST:
+          final ReadIndexRequestProto readIndexRequest = proto.getReadIndexRequest();
+          rpcRequest = readIndexRequest.getServerRequest();
+          final ReadIndexReplyProto readIndexReply = IOUtils.getFromFuture(
+              server.readIndexAsync(readIndexRequest), () -> getId() + ": readIndex");
+          return RaftNettyServerReplyProto.newBuilder()
+              .setReadIndexReply(readIndexReply)
+              .build();
+
         case RAFTNETTYSERVERREQUEST_NOT_SET:
           throw new IllegalArgumentException("Request case not set in proto: "
               + proto.getRaftNettyServerRequestCase());
@@ -283,6 +295,27 @@ public final class NettyRpcService extends RaftServerRpcWithProxy<NettyRpcProxy,
     return sendRaftNettyServerRequestProto(serverRequest, proto).getInstallSnapshotReply();
   }
 
+  @Override
+  public CompletableFuture<ReadIndexReplyProto> readIndexAsync(ReadIndexRequestProto request) {
+    CodeInjectionForTesting.execute(SEND_SERVER_REQUEST, getId(), null, request);
+
+    final RaftNettyServerRequestProto proto = RaftNettyServerRequestProto.newBuilder()
+        .setReadIndexRequest(request)
+        .build();
+    final RaftPeerId id = RaftPeerId.valueOf(request.getServerRequest().getReplyId());
+    final NettyRpcProxy p;
+    try {
+      p = getProxies().getProxy(id);
+    } catch (IOException e) {
+      return JavaUtils.completeExceptionally(e);
+    }
+    return p.sendAsync(proto).whenComplete((reply, e) -> {
+      if (e != null) {
+        getProxies().handleException(id, IOUtils.asIOException(JavaUtils.unwrapCompletionException(e)), false);
+      }
+    }).thenApply(RaftNettyServerReplyProto::getReadIndexReply);
+  }
+
   private RaftNettyServerReplyProto sendRaftNettyServerRequestProto(
       RaftRpcRequestProto request, RaftNettyServerRequestProto proto)
       throws IOException {
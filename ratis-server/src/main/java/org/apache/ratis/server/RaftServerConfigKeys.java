@@ -18,6 +18,7 @@
 package org.apache.ratis.server;
 
 import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.FileDigestAlgorithm;
 import org.apache.ratis.util.SizeInBytes;
 import org.apache.ratis.util.TimeDuration;
 import org.slf4j.Logger;
@@ -98,6 +99,120 @@ public interface RaftServerConfigKeys {
     static void setByteLimit(RaftProperties properties, SizeInBytes byteLimit) {
       setSizeInBytes(properties::set, BYTE_LIMIT_KEY, byteLimit, requireMin(1L));
     }
+
+    /**
+     * Batch the write requests arriving at the leader concurrently into a single log entry.
+     * A batch is appended once it reaches the element limit or the byte limit,
+     * or once the linger time has elapsed since its first request arrived.
+     * It takes effect only if the state machine supports it
+     * (see {@link org.apache.ratis.statemachine.StateMachine#supportsWriteBatch()}).
+     */
+    interface Batch {
+      String PREFIX = Write.PREFIX + ".batch";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      String ELEMENT_LIMIT_KEY = PREFIX + ".element-limit";
+      int ELEMENT_LIMIT_DEFAULT = 64;
+      static int elementLimit(RaftProperties properties) {
+        return getInt(properties::getInt, ELEMENT_LIMIT_KEY, ELEMENT_LIMIT_DEFAULT, getDefaultLog(), requireMin(1));
+      }
+      static void setElementLimit(RaftProperties properties, int limit) {
+        setInt(properties::setInt, ELEMENT_LIMIT_KEY, limit, requireMin(1));
+      }
+
+      String BYTE_LIMIT_KEY = PREFIX + ".byte-limit";
+      SizeInBytes BYTE_LIMIT_DEFAULT = SizeInBytes.valueOf("256KB");
+      static SizeInBytes byteLimit(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            BYTE_LIMIT_KEY, BYTE_LIMIT_DEFAULT, getDefaultLog());
+      }
+      static void setByteLimit(RaftProperties properties, SizeInBytes byteLimit) {
+        setSizeInBytes(properties::set, BYTE_LIMIT_KEY, byteLimit, requireMin(1L));
+      }
+
+      String LINGER_KEY = PREFIX + ".linger";
+      TimeDuration LINGER_DEFAULT = TimeDuration.valueOf(1, TimeUnit.MILLISECONDS);
+      static TimeDuration linger(RaftProperties properties) {
+        return getTimeDuration(properties.getTimeDuration(LINGER_DEFAULT.getUnit()),
+            LINGER_KEY, LINGER_DEFAULT, getDefaultLog(), requireNonNegativeTimeDuration());
+      }
+      static void setLinger(RaftProperties properties, TimeDuration linger) {
+        setTimeDuration(properties::setTimeDuration, LINGER_KEY, linger);
+      }
+    }
+  }
+
+  interface Read {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".read";
+
+    enum Option {
+      /** Directly query the state machine once the leader is ready; it is not linearizable. */
+      DEFAULT,
+      /**
+       * Use the ReadIndex protocol:
+       * record the commit index, confirm the leadership by a round of heartbeats
+       * and then query the state machine once the commit index has been applied.
+       */
+      LINEARIZABLE
+    }
+
+    String OPTION_KEY = PREFIX + ".option";
+    Option OPTION_DEFAULT = Option.DEFAULT;
+    static Option option(RaftProperties properties) {
+      return get(properties::getEnum, OPTION_KEY, OPTION_DEFAULT, getDefaultLog());
+    }
+    static void setOption(RaftProperties properties, Option option) {
+      set(properties::setEnum, OPTION_KEY, option);
+    }
+
+    /** Timeout for linearizable read requests. */
+    String TIMEOUT_KEY = PREFIX + ".timeout";
+    TimeDuration TIMEOUT_DEFAULT = TimeDuration.valueOf(10, TimeUnit.SECONDS);
+    static TimeDuration timeout(RaftProperties properties) {
+      return getTimeDuration(properties.getTimeDuration(TIMEOUT_DEFAULT.getUnit()),
+          TIMEOUT_KEY, TIMEOUT_DEFAULT, getDefaultLog(), requirePositive());
+    }
+    static void setTimeout(RaftProperties properties, TimeDuration readTimeout) {
+      setTimeDuration(properties::setTimeDuration, TIMEOUT_KEY, readTimeout);
+    }
+
+    /**
+     * Leader lease for linearizable reads.
+     * When the lease is valid, the leader serves the reads locally without a round of heartbeats.
+     * The lease is the min election timeout minus the drift bound,
+     * counted from the last heartbeat response received from a majority.
+     */
+    interface Lease {
+      String PREFIX = Read.PREFIX + ".lease";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The bound of the clock drift between the servers, including the rpc latency. */
+      String DRIFT_BOUND_KEY = PREFIX + ".drift-bound";
+      TimeDuration DRIFT_BOUND_DEFAULT = TimeDuration.valueOf(50, TimeUnit.MILLISECONDS);
+      static TimeDuration driftBound(RaftProperties properties) {
+        return getTimeDuration(properties.getTimeDuration(DRIFT_BOUND_DEFAULT.getUnit()),
+            DRIFT_BOUND_KEY, DRIFT_BOUND_DEFAULT, getDefaultLog(), requireNonNegativeTimeDuration());
+      }
+      static void setDriftBound(RaftProperties properties, TimeDuration driftBound) {
+        setTimeDuration(properties::setTimeDuration, DRIFT_BOUND_KEY, driftBound);
+      }
+    }
   }
 
   interface Watch {
@@ -336,6 +451,67 @@ public interface RaftServerConfigKeys {
         setSizeInBytes(properties::set, SNAPSHOT_CHUNK_SIZE_MAX_KEY, maxChunkSize);
       }
 
+      /**
+       * The algorithm of the file digests sent with the snapshot chunks.
+       * MD5 digests are taken from the md5 files of the snapshot;
+       * CRC32C digests are computed from the chunks sent, which is cheaper for the followers to verify.
+       */
+      String SNAPSHOT_DIGEST_ALGORITHM_KEY = PREFIX + ".snapshot.digest.algorithm";
+      FileDigestAlgorithm SNAPSHOT_DIGEST_ALGORITHM_DEFAULT = FileDigestAlgorithm.MD5;
+      static FileDigestAlgorithm snapshotDigestAlgorithm(RaftProperties properties) {
+        return get(properties::getEnum,
+            SNAPSHOT_DIGEST_ALGORITHM_KEY, SNAPSHOT_DIGEST_ALGORITHM_DEFAULT, getDefaultLog());
+      }
+      static void setSnapshotDigestAlgorithm(RaftProperties properties, FileDigestAlgorithm algorithm) {
+        set(properties::setEnum, SNAPSHOT_DIGEST_ALGORITHM_KEY, algorithm);
+      }
+
+      /**
+       * The bandwidth, in bytes per second, shared by all the snapshot chunks
+       * and the committed log entries sent to lagging followers from a server.
+       * The snapshot chunk size should be small enough for a chunk to be sent within an election timeout.
+       * 0 means no limit.
+       */
+      String THROTTLE_BANDWIDTH_PER_SERVER_KEY = PREFIX + ".throttle.bandwidth.per-server";
+      SizeInBytes THROTTLE_BANDWIDTH_PER_SERVER_DEFAULT = SizeInBytes.valueOf(0);
+      static SizeInBytes throttleBandwidthPerServer(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            THROTTLE_BANDWIDTH_PER_SERVER_KEY, THROTTLE_BANDWIDTH_PER_SERVER_DEFAULT, getDefaultLog());
+      }
+      static void setThrottleBandwidthPerServer(RaftProperties properties, SizeInBytes bandwidth) {
+        setSizeInBytes(properties::set, THROTTLE_BANDWIDTH_PER_SERVER_KEY, bandwidth);
+      }
+
+      /**
+       * The bandwidth, in bytes per second, of a single snapshot installation
+       * or of the committed log entries sent to a single lagging follower.
+       * 0 means no limit.
+       */
+      String THROTTLE_BANDWIDTH_PER_TRANSFER_KEY = PREFIX + ".throttle.bandwidth.per-transfer";
+      SizeInBytes THROTTLE_BANDWIDTH_PER_TRANSFER_DEFAULT = SizeInBytes.valueOf(0);
+      static SizeInBytes throttleBandwidthPerTransfer(RaftProperties properties) {
+        return getSizeInBytes(properties::getSizeInBytes,
+            THROTTLE_BANDWIDTH_PER_TRANSFER_KEY, THROTTLE_BANDWIDTH_PER_TRANSFER_DEFAULT, getDefaultLog());
+      }
+      static void setThrottleBandwidthPerTransfer(RaftProperties properties, SizeInBytes bandwidth) {
+        setSizeInBytes(properties::set, THROTTLE_BANDWIDTH_PER_TRANSFER_KEY, bandwidth);
+      }
+
+      /**
+       * When the average latency of the appendEntries with new entries exceeds this threshold,
+       * the per-server bandwidth is reduced until the latency drops.
+       * 0 means the bandwidth is not adjusted.
+       */
+      String THROTTLE_LATENCY_THRESHOLD_KEY = PREFIX + ".throttle.latency.threshold";
+      TimeDuration THROTTLE_LATENCY_THRESHOLD_DEFAULT = TimeDuration.valueOf(100, TimeUnit.MILLISECONDS);
+      static TimeDuration throttleLatencyThreshold(RaftProperties properties) {
+        return getTimeDuration(properties.getTimeDuration(THROTTLE_LATENCY_THRESHOLD_DEFAULT.getUnit()),
+            THROTTLE_LATENCY_THRESHOLD_KEY, THROTTLE_LATENCY_THRESHOLD_DEFAULT, getDefaultLog());
+      }
+      static void setThrottleLatencyThreshold(RaftProperties properties, TimeDuration threshold) {
+        setTimeDuration(properties::setTimeDuration, THROTTLE_LATENCY_THRESHOLD_KEY, threshold);
+      }
+
       String INSTALL_SNAPSHOT_ENABLED_KEY = PREFIX + ".install.snapshot.enabled";
       boolean INSTALL_SNAPSHOT_ENABLED_DEFAULT = true;
       static boolean installSnapshotEnabled(RaftProperties properties) {
@@ -345,6 +521,73 @@ public interface RaftServerConfigKeys {
       static void setInstallSnapshotEnabled(RaftProperties properties, boolean shouldInstallSnapshot) {
         setBoolean(properties::setBoolean, INSTALL_SNAPSHOT_ENABLED_KEY, shouldInstallSnapshot);
       }
+
+      /**
+       * When a follower needs a snapshot, should the leader direct another up-to-date follower
+       * to send its snapshot instead of sending the snapshot itself?
+       * It takes effect only if {@link #INSTALL_SNAPSHOT_ENABLED_KEY} is true.
+       */
+      String INSTALL_SNAPSHOT_FROM_FOLLOWER_ENABLED_KEY = PREFIX + ".install.snapshot.from-follower.enabled";
+      boolean INSTALL_SNAPSHOT_FROM_FOLLOWER_ENABLED_DEFAULT = false;
+      static boolean installSnapshotFromFollowerEnabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, INSTALL_SNAPSHOT_FROM_FOLLOWER_ENABLED_KEY,
+            INSTALL_SNAPSHOT_FROM_FOLLOWER_ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setInstallSnapshotFromFollowerEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, INSTALL_SNAPSHOT_FROM_FOLLOWER_ENABLED_KEY, enabled);
+      }
+    }
+  }
+
+  interface Apply {
+    String PREFIX = RaftServerConfigKeys.PREFIX + ".apply";
+
+    /**
+     * Apply the transactions of consecutive committed log entries in a batch
+     * using {@link org.apache.ratis.statemachine.StateMachine#applyTransactions(java.util.List)}.
+     */
+    interface Batch {
+      String PREFIX = Apply.PREFIX + ".batch";
+
+      /** The max number of transactions in a batch; 1 means applying the log entries one by one. */
+      String ELEMENT_LIMIT_KEY = PREFIX + ".element-limit";
+      int ELEMENT_LIMIT_DEFAULT = 1;
+      static int elementLimit(RaftProperties properties) {
+        return getInt(properties::getInt, ELEMENT_LIMIT_KEY, ELEMENT_LIMIT_DEFAULT, getDefaultLog(), requireMin(1));
+      }
+      static void setElementLimit(RaftProperties properties, int elementLimit) {
+        setInt(properties::setInt, ELEMENT_LIMIT_KEY, elementLimit, requireMin(1));
+      }
+    }
+
+    /**
+     * Apply the non-conflicting transactions in parallel
+     * using the conflict keys from
+     * {@link org.apache.ratis.statemachine.StateMachine#getConflictKeys(
+     * org.apache.ratis.statemachine.TransactionContext)}.
+     * When it is enabled, {@link Batch} is not used.
+     */
+    interface Parallel {
+      String PREFIX = Apply.PREFIX + ".parallel";
+
+      String ENABLED_KEY = PREFIX + ".enabled";
+      boolean ENABLED_DEFAULT = false;
+      static boolean enabled(RaftProperties properties) {
+        return getBoolean(properties::getBoolean, ENABLED_KEY, ENABLED_DEFAULT, getDefaultLog());
+      }
+      static void setEnabled(RaftProperties properties, boolean enabled) {
+        setBoolean(properties::setBoolean, ENABLED_KEY, enabled);
+      }
+
+      /** The number of the threads applying the transactions. */
+      String THREADS_KEY = PREFIX + ".threads";
+      int THREADS_DEFAULT = 4;
+      static int threads(RaftProperties properties) {
+        return getInt(properties::getInt, THREADS_KEY, THREADS_DEFAULT, getDefaultLog(), requireMin(1));
+      }
+      static void setThreads(RaftProperties properties, int threads) {
+        setInt(properties::setInt, THREADS_KEY, threads, requireMin(1));
+      }
     }
   }
 
@@ -382,6 +625,20 @@ public interface RaftServerConfigKeys {
     static void setRetentionFileNum(RaftProperties properties, int numSnapshotFilesRetained) {
       setInt(properties::setInt, RETENTION_FILE_NUM_KEY, numSnapshotFilesRetained);
     }
+
+    /**
+     * A file being installed is forced to the disk at its end and after every this many bytes written,
+     * so that an interrupted installation can be resumed from the last forced position.
+     */
+    String INSTALL_SYNC_INTERVAL_KEY = PREFIX + ".install.sync.interval";
+    SizeInBytes INSTALL_SYNC_INTERVAL_DEFAULT = SizeInBytes.valueOf("4MB");
+    static SizeInBytes installSyncInterval(RaftProperties properties) {
+      return getSizeInBytes(properties::getSizeInBytes,
+          INSTALL_SYNC_INTERVAL_KEY, INSTALL_SYNC_INTERVAL_DEFAULT, getDefaultLog());
+    }
+    static void setInstallSyncInterval(RaftProperties properties, SizeInBytes syncInterval) {
+      setSizeInBytes(properties::set, INSTALL_SYNC_INTERVAL_KEY, syncInterval, requireMin(1L));
+    }
   }
 
   /** server rpc timeout related */
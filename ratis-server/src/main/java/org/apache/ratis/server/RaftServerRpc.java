@@ -17,6 +17,10 @@
  */
 package org.apache.ratis.server;
 
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
 import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.rpc.RpcType;
@@ -27,6 +31,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An server-side interface for supporting different RPC implementations
@@ -64,6 +69,29 @@ public interface RaftServerRpc extends RaftServerProtocol, RpcType.Get, Closeabl
   /** Handle the given exception.  For example, try reconnecting. */
   void handleException(RaftPeerId serverId, Exception e, boolean reconnect);
 
+  /** Send a readIndex request to the leader asynchronously. */
+  CompletableFuture<ReadIndexReplyProto> readIndexAsync(ReadIndexRequestProto request);
+
+  /**
+   * Send the installSnapshot requests, i.e. the chunks of a snapshot, to the target server in order.
+   * The default implementation sends the requests one at a time
+   * using {@link #installSnapshot(InstallSnapshotRequestProto)};
+   * an implementation may stream the requests with flow control.
+   *
+   * @return the first unsuccessful reply; or, if all the requests are successful, the reply of the last request.
+   */
+  default InstallSnapshotReplyProto installSnapshot(RaftPeerId target,
+      Iterable<InstallSnapshotRequestProto> requests) throws IOException {
+    InstallSnapshotReplyProto reply = null;
+    for (InstallSnapshotRequestProto request : requests) {
+      reply = installSnapshot(request);
+      if (!reply.getServerReply().getSuccess()) {
+        break;
+      }
+    }
+    return reply;
+  }
+
   /** The server role changes from leader to a non-leader role. */
   default void notifyNotLeader(RaftGroupId groupId) {
   }
@@ -76,6 +76,15 @@ public class ConfigurationManager {
     return currentConf;
   }
 
+  /**
+   * Remove all the configurations whose log index is >= the given index and then add the given configurations
+   * in a single operation, so that {@link #getCurrent()} never returns the configuration in between.
+   */
+  synchronized void replaceConfigurations(long index, Map<Long, RaftConfiguration> confs) {
+    removeConfigurations(index);
+    confs.forEach(this::addConfiguration);
+  }
+
   synchronized int numOfConf() {
     return 1 + configurations.size();
   }
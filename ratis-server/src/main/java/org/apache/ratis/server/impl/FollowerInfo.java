@@ -25,6 +25,7 @@ import org.apache.ratis.util.Timestamp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
@@ -41,6 +42,10 @@ public class FollowerInfo {
   private final RaftLogIndex nextIndex;
   private final RaftLogIndex matchIndex = new RaftLogIndex("matchIndex", 0L);
   private final RaftLogIndex commitIndex = new RaftLogIndex("commitIndex", RaftLog.INVALID_LOG_INDEX);
+  /** The index of the latest snapshot in the follower; INVALID_LOG_INDEX if it is unknown or there is no snapshot. */
+  private volatile long latestSnapshotIndex = RaftLog.INVALID_LOG_INDEX;
+  /** The latest ReadIndex heartbeat round acked by the follower; see {@link ReadIndexHeartbeats}. */
+  private final AtomicLong readIndexRound = new AtomicLong();
   private volatile boolean attendVote;
   private final int rpcSlownessTimeoutMs;
 
@@ -75,6 +80,15 @@ public class FollowerInfo {
     return commitIndex.updateToMax(newCommitIndex, debugIndexChange);
   }
 
+  /** @return the latest ReadIndex heartbeat round acked by the follower. */
+  long getReadIndexRound() {
+    return readIndexRound.get();
+  }
+
+  boolean updateReadIndexRound(long newRound) {
+    return readIndexRound.getAndAccumulate(newRound, Math::max) < newRound;
+  }
+
   public long getNextIndex() {
     return nextIndex.get();
   }
@@ -94,6 +108,20 @@ public class FollowerInfo {
   public void setSnapshotIndex(long snapshotIndex) {
     matchIndex.setUnconditionally(snapshotIndex, infoIndexChange);
     nextIndex.setUnconditionally(snapshotIndex + 1, infoIndexChange);
+    latestSnapshotIndex = snapshotIndex;
+  }
+
+  /**
+   * @return the index of the latest snapshot in the follower;
+   *         or {@link RaftLog#INVALID_LOG_INDEX} if it is unknown or there is no snapshot.
+   */
+  public long getLatestSnapshotIndex() {
+    return latestSnapshotIndex;
+  }
+
+  /** Set the index of the latest snapshot reported by the follower. */
+  public void setLatestSnapshotIndex(long latestSnapshotIndex) {
+    this.latestSnapshotIndex = latestSnapshotIndex;
   }
 
   public String getName() {
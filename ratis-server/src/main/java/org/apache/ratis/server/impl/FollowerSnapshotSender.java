@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto.SendSnapshotProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotResult;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.statemachine.SnapshotInfo;
+import org.apache.ratis.util.MemoizedSupplier;
+import org.apache.ratis.util.ProtoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Send the latest snapshot of a follower to another follower on behalf of the leader,
+ * so that the leader does not have to send the snapshot itself.
+ *
+ * The transfer runs in the background.
+ * The leader polls it by resending the same {@link SendSnapshotProto} request
+ * until the reply is no longer {@link InstallSnapshotResult#IN_PROGRESS}.
+ *
+ * The chunks are streamed by {@link org.apache.ratis.server.RaftServerRpc#installSnapshot(RaftPeerId, Iterable)}
+ * and throttled in the same way as the chunks sent by the leader.
+ */
+class FollowerSnapshotSender {
+  public static final Logger LOG = LoggerFactory.getLogger(FollowerSnapshotSender.class);
+
+  /** A transfer to a target follower. */
+  private static class Transfer {
+    private final long leaderTerm;
+    private final TermIndex snapshot;
+    private final CompletableFuture<Void> future;
+
+    Transfer(long leaderTerm, TermIndex snapshot, CompletableFuture<Void> future) {
+      this.leaderTerm = leaderTerm;
+      this.snapshot = snapshot;
+      this.future = future;
+    }
+  }
+
+  private final RaftServerImpl server;
+  /** The transfers are run one at a time. */
+  private final MemoizedSupplier<ExecutorService> executor = MemoizedSupplier.valueOf(
+      Executors::newSingleThreadExecutor);
+  /** The transfers which are either in progress or completed but not yet polled, keyed by the target. */
+  private final Map<RaftPeerId, Transfer> transfers = new ConcurrentHashMap<>();
+
+  FollowerSnapshotSender(RaftServerImpl server) {
+    this.server = server;
+  }
+
+  InstallSnapshotReplyProto sendSnapshot(InstallSnapshotRequestProto request, RaftPeerId leaderId) {
+    final long leaderTerm = request.getLeaderTerm();
+    final SendSnapshotProto send = request.getSendSnapshot();
+    final RaftPeer target = ProtoUtils.toRaftPeer(send.getTarget());
+
+    final long currentTerm;
+    synchronized (server) {
+      final ServerState state = server.getState();
+      currentTerm = state.getCurrentTerm();
+      if (leaderTerm != currentTerm || !leaderId.equals(state.getLeaderId())) {
+        LOG.warn("{}: Failed to recognize leader {} (term={}) for sending snapshot to {}",
+            server.getMemberId(), leaderId, leaderTerm, target.getId());
+        return toReply(leaderId, currentTerm, InstallSnapshotResult.NOT_LEADER, null);
+      }
+    }
+
+    final Transfer previous = transfers.get(target.getId());
+    if (previous != null && previous.leaderTerm == leaderTerm) {
+      if (!previous.future.isDone()) {
+        return toReply(leaderId, currentTerm, InstallSnapshotResult.IN_PROGRESS, null);
+      }
+      transfers.remove(target.getId(), previous);
+      return previous.future.isCompletedExceptionally()?
+          toReply(leaderId, currentTerm, InstallSnapshotResult.TRANSFER_FAILED, null)
+          : toReply(leaderId, currentTerm, InstallSnapshotResult.SUCCESS, previous.snapshot);
+    }
+
+    final SnapshotInfo snapshot = server.getStateMachine().getLatestSnapshot();
+    if (snapshot == null || snapshot.getIndex() < send.getMinIndex() || snapshot.getFiles().isEmpty()) {
+      LOG.info("{}: The latest snapshot {} is unavailable for {}, minIndex={}",
+          server.getMemberId(), snapshot, target.getId(), send.getMinIndex());
+      return toReply(leaderId, currentTerm, InstallSnapshotResult.SNAPSHOT_UNAVAILABLE, null);
+    }
+
+    // the target may not be in the conf yet, e.g. it is a new peer in the staging phase.
+    server.getServerRpc().addPeers(Collections.singletonList(target));
+    final CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+      try {
+        send(target.getId(), leaderId, leaderTerm, snapshot);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor.get()).whenComplete((v, e) -> {
+      if (e != null) {
+        LOG.warn("{}: Failed to send snapshot {} to {}", server.getMemberId(), snapshot, target.getId(), e);
+      }
+    });
+    transfers.put(target.getId(), new Transfer(leaderTerm, snapshot.getTermIndex(), future));
+    return toReply(leaderId, currentTerm, InstallSnapshotResult.IN_PROGRESS, null);
+  }
+
+  private void send(RaftPeerId targetId, RaftPeerId leaderId, long leaderTerm, SnapshotInfo snapshot)
+      throws IOException {
+    LOG.info("{}: Sending snapshot {} to {} on behalf of leader {}",
+        server.getMemberId(), snapshot, targetId, leaderId);
+    final SnapshotRequestIter iter = new SnapshotRequestIter(server, targetId, leaderId, leaderTerm,
+        snapshot, snapshot.getFiles(), UUID.randomUUID().toString(), 0, 0, 0L);
+    final InstallSnapshotReplyProto reply = server.getServerRpc().installSnapshot(targetId, iter);
+    if (reply == null || !reply.getServerReply().getSuccess()) {
+      throw new IOException(server.getMemberId() + ": Failed to send snapshot " + snapshot
+          + " to " + targetId + ": " + ServerProtoUtils.toString(reply));
+    }
+    LOG.info("{}: Sent snapshot {} to {} successfully", server.getMemberId(), snapshot, targetId);
+  }
+
+  private InstallSnapshotReplyProto toReply(RaftPeerId leaderId, long currentTerm,
+      InstallSnapshotResult result, TermIndex sentSnapshot) {
+    return ServerProtoUtils.toInstallSnapshotReplyProto(leaderId, server.getMemberId(),
+        currentTerm, result, sentSnapshot);
+  }
+
+  void close() {
+    if (executor.isInitialized()) {
+      executor.get().shutdownNow();
+    }
+  }
+}
@@ -103,6 +103,10 @@ class FollowerState extends Daemon {
           LOG.info("{}: Stopping now (isRunning? {}, isFollower? {})", this, isRunning, isFollower);
           break;
         }
+        if (server.getRaftConf().isLearner(server.getId())) {
+          // a learner never starts an election
+          continue;
+        }
         synchronized (server) {
           if (outstandingOp.get() == 0 && lastRpcTime.elapsedTimeMs() >= electionTimeout) {
             LOG.info("{}: change to CANDIDATE, lastRpcTime:{}ms, electionTimeout:{}ms",
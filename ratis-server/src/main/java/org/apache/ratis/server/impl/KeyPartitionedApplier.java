@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.util.Daemon;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Apply the transactions to the state machine using a pool of threads.
+ * A transaction is applied after all the previous transactions sharing a conflict key with it,
+ * where the conflict keys are given by {@link StateMachine#getConflictKeys(TransactionContext)}.
+ * A transaction without conflict keys is applied after all the previous transactions,
+ * and all the subsequent transactions are applied after it.
+ *
+ * The transactions must be submitted by a single thread in the log order.
+ */
+class KeyPartitionedApplier {
+  static final Logger LOG = LoggerFactory.getLogger(KeyPartitionedApplier.class);
+
+  private final String name;
+  private final StateMachine stateMachine;
+  private final ExecutorService executor;
+  private final AtomicInteger count = new AtomicInteger();
+
+  /** The last submitted transaction of each key. */
+  private final Map<Object, CompletableFuture<Message>> lastByKey = new ConcurrentHashMap<>();
+  /** The submitted transactions which are not yet completed. */
+  private final Set<CompletableFuture<Message>> outstanding = ConcurrentHashMap.newKeySet();
+  /** The last submitted transaction without conflict keys. */
+  private CompletableFuture<Message> lastBarrier = CompletableFuture.completedFuture(null);
+
+  KeyPartitionedApplier(Object name, StateMachine stateMachine, int numThreads) {
+    Preconditions.assertTrue(numThreads > 0);
+    this.name = name + "-" + getClass().getSimpleName();
+    this.stateMachine = stateMachine;
+    this.executor = Executors.newFixedThreadPool(numThreads,
+        r -> new Daemon(r, this.name + "-" + count.incrementAndGet()));
+  }
+
+  /**
+   * Apply the given transactions in the log order,
+   * where {@link StateMachine#applyTransactionSerial(TransactionContext)} is called by the current thread
+   * and {@link StateMachine#applyTransaction(TransactionContext)} is called by the pool.
+   *
+   * @return a list of futures, one for each transaction in the same order.
+   */
+  List<CompletableFuture<Message>> applyTransactions(List<TransactionContext> transactions) {
+    final List<CompletableFuture<Message>> futures = new ArrayList<>(transactions.size());
+    for (TransactionContext trx : transactions) {
+      futures.add(apply(stateMachine.applyTransactionSerial(trx)));
+    }
+    return futures;
+  }
+
+  private CompletableFuture<Message> apply(TransactionContext trx) {
+    final Collection<?> keys = stateMachine.getConflictKeys(trx);
+    final List<CompletableFuture<Message>> previous = new ArrayList<>();
+    if (keys == null) {
+      previous.addAll(outstanding);
+    } else {
+      previous.add(lastBarrier);
+      for (Object key : keys) {
+        final CompletableFuture<Message> last = lastByKey.get(key);
+        if (last != null) {
+          previous.add(last);
+        }
+      }
+    }
+
+    // the previous transactions may fail; it does not prevent applying this transaction.
+    final CompletableFuture<Message> f = JavaUtils.allOf(previous)
+        .handle((dummy, e) -> null)
+        .thenComposeAsync(dummy -> stateMachine.applyTransaction(trx), executor);
+
+    outstanding.add(f);
+    if (keys == null) {
+      lastBarrier = f;
+    } else {
+      keys.forEach(key -> lastByKey.put(key, f));
+    }
+    f.whenComplete((reply, e) -> {
+      if (e != null) {
+        LOG.error("{}: applyTransaction failed for {}", name, ServerProtoUtils.toString(trx.getLogEntry()), e);
+      }
+      outstanding.remove(f);
+      if (keys != null) {
+        keys.forEach(key -> lastByKey.remove(key, f));
+      }
+    });
+    return f;
+  }
+
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
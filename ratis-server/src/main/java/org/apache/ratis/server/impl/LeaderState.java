@@ -40,9 +40,8 @@ import java.util.concurrent.CompletionException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
-import java.util.function.LongSupplier;
+import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -185,7 +184,10 @@ public class LeaderState {
   private final RaftLog raftLog;
   private final long currentTerm;
   private volatile ConfigurationStagingState stagingState;
-  private List<List<FollowerInfo>> voterLists;
+  /** The match indices of the voters; only used by the {@link EventProcessor}. */
+  private volatile VoterIndices matchIndices;
+  /** The commit indices of the voters; synchronized since it is used by the {@link LogAppender}s. */
+  private volatile VoterIndices commitIndices;
 
   /**
    * The list of threads appending entries to followers.
@@ -197,6 +199,11 @@ public class LeaderState {
   private final PendingRequests pendingRequests;
   private final WatchRequests watchRequests;
   private final StreamRequests streamRequests;
+  private final ReadIndexHeartbeats readIndexHeartbeats;
+  /** The leader lease in milliseconds for linearizable reads; non-positive if the lease is disabled. */
+  private final long readLeaseMs;
+  /** The negated elapsed times of the last rpc responses, so that the majority is the lease start time. */
+  private volatile VoterIndices lastResponseTimes;
   private volatile boolean running = true;
 
   private final int stagingCatchupGap;
@@ -211,6 +218,7 @@ public class LeaderState {
 
     stagingCatchupGap = RaftServerConfigKeys.stagingCatchupGap(properties);
     syncInterval = RaftServerConfigKeys.Rpc.sleepTime(properties);
+    readLeaseMs = getReadLeaseMs(server, properties);
 
     final ServerState state = server.getState();
     this.raftLog = state.getLog();
@@ -221,8 +229,9 @@ public class LeaderState {
     raftServerMetrics = server.getRaftServerMetrics();
     logAppenderMetrics = new LogAppenderMetrics(server.getMemberId());
     this.pendingRequests = new PendingRequests(server.getMemberId(), properties, raftServerMetrics);
-    this.watchRequests = new WatchRequests(server.getMemberId(), properties);
+    this.watchRequests = new WatchRequests(server.getMemberId(), properties, server.getProxy().getTimer());
     this.streamRequests = new StreamRequests(server.getMemberId());
+    this.readIndexHeartbeats = new ReadIndexHeartbeats(server.getMemberId(), this::notifySenders);
 
     final RaftConfiguration conf = server.getRaftConf();
     Collection<RaftPeer> others = conf.getOtherPeers(server.getId());
@@ -230,7 +239,24 @@ public class LeaderState {
 
     senders = new SenderList();
     addSenders(others, placeHolderIndex, true);
-    voterLists = divideFollowers(conf);
+    // the learners replicate the log but never attend the votes
+    addSenders(conf.getLearners().stream()
+        .filter(p -> !p.getId().equals(server.getId()) && !others.contains(p))
+        .collect(Collectors.toList()), placeHolderIndex, false);
+    updateVoterIndices(conf);
+  }
+
+  private static long getReadLeaseMs(RaftServerImpl server, RaftProperties properties) {
+    if (!RaftServerConfigKeys.Read.Lease.enabled(properties)) {
+      return -1;
+    }
+    final TimeDuration driftBound = RaftServerConfigKeys.Read.Lease.driftBound(properties);
+    final long leaseMs = server.getMinTimeoutMs() - driftBound.toLong(TimeUnit.MILLISECONDS);
+    if (leaseMs <= 0) {
+      LOG.warn("{}: Read lease is disabled since the drift bound {} is not less than the min timeout {}ms",
+          server.getMemberId(), driftBound, server.getMinTimeoutMs());
+    }
+    return leaseMs;
   }
 
   LogEntryProto start() {
@@ -241,7 +267,9 @@ public class LeaderState {
         server.getRaftConf(), server.getState().getCurrentTerm(), raftLog.getNextIndex());
     CodeInjectionForTesting.execute(APPEND_PLACEHOLDER,
         server.getId().toString(), null);
-    raftLog.append(placeHolder);
+    try(AutoCloseableLock ignored = server.getState().lockAppend()) {
+      raftLog.append(placeHolder);
+    }
     processor.start();
     senders.forEach(LogAppender::startAppender);
     return placeHolder;
@@ -264,6 +292,7 @@ public class LeaderState {
     } catch (IOException e) {
       LOG.warn("{}: Caught exception in sendNotLeaderResponses", this, e);
     }
+    readIndexHeartbeats.fail(nle);
     streamRequests.clear();
     server.getServerRpc().notifyNotLeader(server.getMemberId().getGroupId());
     logAppenderMetrics.unregister();
@@ -286,43 +315,65 @@ public class LeaderState {
   }
 
   /**
-   * Start bootstrapping new peers
+   * Start bootstrapping new peers.
+   * The new learners do not need bootstrapping
+   * since they are not counted in the majority.
    */
   PendingRequest startSetConfiguration(SetConfigurationRequest request) {
     LOG.info("{}: startSetConfiguration {}", this, request);
     Preconditions.assertTrue(running && !inStagingState());
 
+    final RaftConfiguration current = server.getRaftConf();
     final List<RaftPeer> peersInNewConf = request.getPeersInNewConf();
-    final Collection<RaftPeer> peersToBootStrap = server.getRaftConf().filterNotContainedInConf(peersInNewConf);
+    final List<RaftPeer> learnersInNewConf = request.getLearnersInNewConf();
+    final Collection<RaftPeer> peersToBootStrap = current.filterNotContainedInConf(peersInNewConf);
 
     // add the request to the pending queue
     final PendingRequest pending = pendingRequests.addConfRequest(request);
 
     ConfigurationStagingState stagingState = new ConfigurationStagingState(
-        peersToBootStrap, new PeerConfiguration(peersInNewConf));
-    Collection<RaftPeer> newPeers = stagingState.getNewPeers();
+        peersToBootStrap, new PeerConfiguration(peersInNewConf), new PeerConfiguration(learnersInNewConf));
     // set the staging state
     this.stagingState = stagingState;
 
-    if (newPeers.isEmpty()) {
+    // a learner to be promoted already has a sender
+    final Collection<RaftPeerId> senderIds = getFollowers().stream()
+        .map(RaftPeer::getId).collect(Collectors.toSet());
+    final List<RaftPeer> newSenders = Stream.concat(stagingState.getNewPeers().stream(), learnersInNewConf.stream())
+        .filter(p -> !p.getId().equals(server.getId()) && !senderIds.contains(p.getId()))
+        .collect(Collectors.toList());
+    // update the LeaderState's sender list
+    addAndStartSenders(newSenders);
+
+    if (stagingState.getNewPeers().isEmpty()) {
       applyOldNewConf();
-    } else {
-      // update the LeaderState's sender list
-      addAndStartSenders(newPeers);
     }
     return pending;
   }
 
-  PendingRequests.Permit tryAcquirePendingRequest(Message message) {
+  boolean tryAcquirePendingRequest(Message message) {
     return pendingRequests.tryAcquire(message);
   }
 
-  PendingRequest addPendingRequest(PendingRequests.Permit permit, RaftClientRequest request, TransactionContext entry) {
+  boolean tryAcquirePendingRequests(Collection<Message> messages) {
+    return pendingRequests.tryAcquire(messages);
+  }
+
+  List<PendingRequest> addPendingBatch(List<RaftClientRequest> requests,
+      List<TransactionContext> entries, TransactionContext batch) {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("{}: addPendingBatch of {} requests, entry={}", this, requests.size(),
+          ServerProtoUtils.toLogEntryString(batch.getLogEntry()));
+    }
+    return pendingRequests.addBatch(requests, entries, batch);
+  }
+
+  PendingRequest addPendingRequest(RaftClientRequest request, TransactionContext entry) {
     if (LOG.isDebugEnabled()) {
       LOG.debug("{}: addPendingRequest at {}, entry={}", this, request,
           ServerProtoUtils.toLogEntryString(entry.getLogEntry()));
     }
-    return pendingRequests.add(permit, request, entry);
+    return pendingRequests.add(request, entry);
   }
 
   CompletableFuture<RaftClientReply> streamAsync(RaftClientRequest request) {
@@ -356,15 +407,72 @@ public class LeaderState {
     }
   }
 
+  /**
+   * Get the read index for a linearizable read, i.e. the commit index at the time of the call.
+   * The returned future completes once the leadership is confirmed by a round of heartbeats,
+   * or immediately if the read lease is enabled and valid.
+   */
+  CompletableFuture<Long> getReadIndexAsync() {
+    final long readIndex = raftLog.getLastCommittedIndex();
+    if (readLeaseMs > 0) {
+      if (hasValidReadLease()) {
+        raftServerMetrics.onReadLeaseHit();
+        return CompletableFuture.completedFuture(readIndex);
+      }
+      raftServerMetrics.onReadLeaseExpired();
+    }
+    return readIndexHeartbeats.confirm().thenApply(v -> readIndex);
+  }
+
+  /**
+   * The lease is valid if a majority of the voters have responded within the lease.
+   * Since the followers withhold their votes within the min election timeout after hearing from the leader,
+   * even for the candidates with higher terms when the lease is enabled,
+   * no other leader can be elected before the lease expires,
+   * provided that the clock drift and the rpc latency are within the drift bound.
+   */
+  private boolean hasValidReadLease() {
+    final VoterIndices t = lastResponseTimes;
+    final long majority;
+    synchronized (t) {
+      if (!t.update()) {
+        return false;
+      }
+      majority = t.getMajority();
+    }
+    return -majority < readLeaseMs;
+  }
+
+  long getReadIndexRound() {
+    return readIndexHeartbeats.getRound();
+  }
+
+  /** The follower has replied to a request sent in the given ReadIndex heartbeat round. */
+  void onReadIndexAck(FollowerInfo follower, long round) {
+    if (follower.updateReadIndexRound(round)) {
+      readIndexHeartbeats.check();
+    }
+  }
+
   void commitIndexChanged() {
-    getMajorityMin(FollowerInfo::getCommitIndex, raftLog::getLastCommittedIndex).ifPresent(m -> {
-      // Normally, leader commit index is always ahead of followers.
-      // However, after a leader change, the new leader commit index may
-      // be behind some followers in the beginning.
-      watchRequests.update(ReplicationLevel.ALL_COMMITTED, m.min);
-      watchRequests.update(ReplicationLevel.MAJORITY_COMMITTED, m.majority);
-      watchRequests.update(ReplicationLevel.MAJORITY, m.max);
-    });
+    final VoterIndices c = commitIndices;
+    final long min;
+    final long majority;
+    final long max;
+    synchronized (c) {
+      if (!c.update()) {
+        return;
+      }
+      min = c.getMin();
+      majority = c.getMajority();
+      max = c.getMax();
+    }
+    // Normally, leader commit index is always ahead of followers.
+    // However, after a leader change, the new leader commit index may
+    // be behind some followers in the beginning.
+    watchRequests.update(ReplicationLevel.ALL_COMMITTED, min);
+    watchRequests.update(ReplicationLevel.MAJORITY_COMMITTED, majority);
+    watchRequests.update(ReplicationLevel.MAJORITY, max);
   }
 
   private void applyOldNewConf() {
@@ -373,7 +481,10 @@ public class LeaderState {
     final RaftConfiguration oldNewConf= stagingState.generateOldNewConf(current,
         state.getLog().getNextIndex());
     // apply the (old, new) configuration to log, and use it as the current conf
-    long index = state.getLog().append(state.getCurrentTerm(), oldNewConf);
+    final long index;
+    try(AutoCloseableLock ignored = state.lockAppend()) {
+      index = state.getLog().append(state.getCurrentTerm(), oldNewConf);
+    }
     updateConfiguration(index, oldNewConf);
 
     this.stagingState = null;
@@ -381,7 +492,7 @@ public class LeaderState {
   }
 
   private void updateConfiguration(long logIndex, RaftConfiguration newConf) {
-    voterLists = divideFollowers(newConf);
+    updateVoterIndices(newConf);
     server.getState().setRaftConf(logIndex, newConf);
   }
 
@@ -430,6 +541,8 @@ public class LeaderState {
     LOG.info("{}: Restarting {} for {}", this, sender.getClass().getSimpleName(), follower.getName());
     senders.removeAll(Collections.singleton(sender));
     addAndStartSenders(Collections.singleton(follower.getPeer()));
+    // the new sender has a new FollowerInfo
+    updateVoterIndices(server.getRaftConf());
   }
 
   /**
@@ -437,7 +550,10 @@ public class LeaderState {
    */
   private void updateSenders(RaftConfiguration conf) {
     Preconditions.assertTrue(conf.isStable() && !inStagingState());
-    stopAndRemoveSenders(s -> !conf.containsInConf(s.getFollower().getPeer().getId()));
+    stopAndRemoveSenders(s -> {
+      final RaftPeerId id = s.getFollower().getPeer().getId();
+      return !conf.containsInConf(id) && !conf.isLearner(id);
+    });
   }
 
   void submitStepDownEvent() {
@@ -487,6 +603,13 @@ public class LeaderState {
 
       while (running) {
         final StateUpdateEvent event = eventQueue.poll();
+        if (event != null && event.type == StateUpdateEvent.Type.UPDATE_COMMIT) {
+          // updating the commit index does not require the server lock; see updateCommit()
+          if (running) {
+            event.execute();
+          }
+          continue;
+        }
         synchronized(server) {
           if (running) {
             if (event != null) {
@@ -529,7 +652,7 @@ public class LeaderState {
   private Collection<BootStrapProgress> checkAllProgress(long committed) {
     Preconditions.assertTrue(inStagingState());
     return senders.stream()
-        .filter(sender -> !sender.getFollower().isAttendingVote())
+        .filter(sender -> stagingState.contains(sender.getFollower().getPeer().getId()))
         .map(sender -> checkProgress(sender.getFollower(), committed))
         .collect(Collectors.toCollection(ArrayList::new));
   }
@@ -551,7 +674,10 @@ public class LeaderState {
       } else if (!reports.contains(BootStrapProgress.PROGRESSING)) {
         // all caught up!
         applyOldNewConf();
-        senders.forEach(s -> s.getFollower().startAttendVote());
+        final RaftConfiguration conf = server.getRaftConf();
+        senders.stream()
+            .filter(s -> conf.containsInConf(s.getFollower().getPeer().getId()))
+            .forEach(s -> s.getFollower().startAttendVote());
       }
     }
   }
@@ -564,122 +690,68 @@ public class LeaderState {
     eventQueue.submit(UPDATE_COMMIT_EVENT);
   }
 
-  static class MinMajorityMax {
-    private final long min;
-    private final long majority;
-    private final long max;
-
-    MinMajorityMax(long min, long majority, long max) {
-      this.min = min;
-      this.majority = majority;
-      this.max = max;
-    }
-
-    MinMajorityMax combine(MinMajorityMax that) {
-      return new MinMajorityMax(
-          Math.min(this.min, that.min),
-          Math.min(this.majority, that.majority),
-          Math.min(this.max, that.max));
-    }
-
-    static MinMajorityMax valueOf(long[] sorted) {
-      return new MinMajorityMax(sorted[0], getMajority(sorted), getMax(sorted));
-    }
-
-    static long getMajority(long[] sorted) {
-      return sorted[(sorted.length - 1) / 2];
-    }
-
-    static long getMax(long[] sorted) {
-      return sorted[sorted.length - 1];
-    }
-  }
-
+  /**
+   * Advance the commit index when a majority of the voters have matched.
+   * This method does not require the server lock
+   * unless a configuration entry is committed.
+   */
   private void updateCommit() {
-    getMajorityMin(FollowerInfo::getMatchIndex, raftLog::getFlushIndex)
-        .ifPresent(m -> updateCommit(m.majority, m.min));
-  }
-
-  private Optional<MinMajorityMax> getMajorityMin(ToLongFunction<FollowerInfo> followerIndex, LongSupplier logIndex) {
-    final RaftPeerId selfId = server.getId();
-    final RaftConfiguration conf = server.getRaftConf();
-
-    final List<FollowerInfo> followers = voterLists.get(0);
-    final boolean includeSelf = conf.containsInConf(selfId);
-    if (followers.isEmpty() && !includeSelf) {
-      return Optional.empty();
-    }
-
-    final long[] indicesInNewConf = getSorted(followers, includeSelf, followerIndex, logIndex);
-    final MinMajorityMax newConf = MinMajorityMax.valueOf(indicesInNewConf);
-
-    if (!conf.isTransitional()) {
-      return Optional.of(newConf);
-    } else { // configuration is in transitional state
-      final List<FollowerInfo> oldFollowers = voterLists.get(1);
-      final boolean includeSelfInOldConf = conf.containsInOldConf(selfId);
-      if (oldFollowers.isEmpty() && !includeSelfInOldConf) {
-        return Optional.empty();
-      }
-
-      final long[] indicesInOldConf = getSorted(oldFollowers, includeSelfInOldConf, followerIndex, logIndex);
-      final MinMajorityMax oldConf = MinMajorityMax.valueOf(indicesInOldConf);
-      return Optional.of(newConf.combine(oldConf));
+    final VoterIndices m = matchIndices;
+    if (!m.update()) {
+      return;
     }
-  }
-
-  private void updateCommit(long majority, long min) {
+    final long majority = m.getMajority();
     final long oldLastCommitted = raftLog.getLastCommittedIndex();
     if (majority > oldLastCommitted) {
-      // copy the entries out from the raftlog, in order to prevent that
-      // the log gets purged after the statemachine does a snapshot
-      final TermIndex[] entriesToCommit = raftLog.getEntries(
-          oldLastCommitted + 1, majority + 1);
+      // the current conf entry is the last conf entry in the log
+      final long confIndex = server.getRaftConf().getLogEntryIndex();
       if (server.getState().updateStatemachine(majority, currentTerm)) {
         watchRequests.update(ReplicationLevel.MAJORITY, majority);
         logMetadata(majority);
         commitIndexChanged();
       }
-      checkAndUpdateConfiguration(entriesToCommit);
+      if (confIndex > oldLastCommitted && confIndex <= raftLog.getLastCommittedIndex()) {
+        synchronized (server) {
+          if (running) {
+            checkAndUpdateConfiguration();
+          }
+        }
+      }
     }
 
-    watchRequests.update(ReplicationLevel.ALL, min);
+    watchRequests.update(ReplicationLevel.ALL, m.getMin());
   }
 
   private void logMetadata(long commitIndex) {
-    raftLog.appendMetadata(currentTerm, commitIndex);
-    notifySenders();
-  }
-
-  private boolean committedConf(TermIndex[] entries) {
-    final long currentCommitted = raftLog.getLastCommittedIndex();
-    for (TermIndex entry : entries) {
-      if (entry.getIndex() <= currentCommitted && raftLog.isConfigEntry(entry)) {
-        return true;
+    final ServerState state = server.getState();
+    try(AutoCloseableLock ignored = state.lockAppend()) {
+      // the term cannot be changed when holding the append lock
+      if (!running || state.getCurrentTerm() != currentTerm) {
+        return;
       }
+      raftLog.appendMetadata(currentTerm, commitIndex);
     }
-    return false;
+    notifySenders();
   }
 
-  private void checkAndUpdateConfiguration(TermIndex[] entriesToCheck) {
+  /** The current conf entry has been committed. */
+  private void checkAndUpdateConfiguration() {
     final RaftConfiguration conf = server.getRaftConf();
-    if (committedConf(entriesToCheck)) {
-      if (conf.isTransitional()) {
-        replicateNewConf();
-      } else { // the (new) log entry has been committed
-        pendingRequests.replySetConfiguration(server::getCommitInfos);
-        // if the leader is not included in the current configuration, step down
-        if (!conf.containsInConf(server.getId())) {
-          LOG.info("{} is not included in the new configuration {}. Will shutdown server...", this, conf);
-          try {
-            // leave some time for all RPC senders to send out new conf entry
-            Thread.sleep(server.getMinTimeoutMs());
-          } catch (InterruptedException ignored) {
-          }
-          // the pending request handler will send NotLeaderException for
-          // pending client requests when it stops
-          server.shutdown(false);
+    if (conf.isTransitional()) {
+      replicateNewConf();
+    } else { // the (new) log entry has been committed
+      pendingRequests.replySetConfiguration(server::getCommitInfos);
+      // if the leader is not included in the current configuration, step down
+      if (!conf.containsInConf(server.getId())) {
+        LOG.info("{} is not included in the new configuration {}. Will shutdown server...", this, conf);
+        try {
+          // leave some time for all RPC senders to send out new conf entry
+          Thread.sleep(server.getMinTimeoutMs());
+        } catch (InterruptedException ignored) {
         }
+        // the pending request handler will send NotLeaderException for
+        // pending client requests when it stops
+        server.shutdown(false);
       }
     }
   }
@@ -699,79 +771,109 @@ public class LeaderState {
         .build();
     // stop the LogAppender if the corresponding follower is no longer in the conf
     updateSenders(newConf);
-    long index = raftLog.append(server.getState().getCurrentTerm(), newConf);
+    final long index;
+    try(AutoCloseableLock ignored = server.getState().lockAppend()) {
+      index = raftLog.append(server.getState().getCurrentTerm(), newConf);
+    }
     updateConfiguration(index, newConf);
     notifySenders();
   }
 
-  private static long[] getSorted(List<FollowerInfo> followers, boolean includeSelf,
-      ToLongFunction<FollowerInfo> getFollowerIndex, LongSupplier getLogIndex) {
-    final int length = includeSelf ? followers.size() + 1 : followers.size();
-    if (length == 0) {
-      throw new IllegalArgumentException("followers.size() == "
-          + followers.size() + " and includeSelf == " + includeSelf);
-    }
-    final long[] indices = new long[length];
-    for (int i = 0; i < followers.size(); i++) {
-      indices[i] = getFollowerIndex.applyAsLong(followers.get(i));
-    }
-    if (includeSelf) {
-      // note that we also need to wait for the local disk I/O
-      indices[length - 1] = getLogIndex.getAsLong();
-    }
-
-    Arrays.sort(indices);
-    return indices;
-  }
-
-  private List<List<FollowerInfo>> divideFollowers(RaftConfiguration conf) {
-    List<List<FollowerInfo>> lists = new ArrayList<>(2);
-    List<FollowerInfo> listForNew = senders.stream()
-        .filter(sender -> conf.containsInConf(sender.getFollower().getPeer().getId()))
+  private void updateVoterIndices(RaftConfiguration conf) {
+    final RaftPeerId selfId = server.getId();
+    final List<FollowerInfo> followersInNewConf = getFollowers(conf::containsInConf);
+    final boolean includeSelfInNewConf = conf.containsInConf(selfId);
+    final List<FollowerInfo> followersInOldConf = conf.isTransitional()?
+        getFollowers(conf::containsInOldConf): null;
+    final boolean includeSelfInOldConf = conf.isTransitional() && conf.containsInOldConf(selfId);
+
+    matchIndices = new VoterIndices(followersInNewConf, includeSelfInNewConf,
+        followersInOldConf, includeSelfInOldConf, FollowerInfo::getMatchIndex, raftLog::getFlushIndex);
+    commitIndices = new VoterIndices(followersInNewConf, includeSelfInNewConf,
+        followersInOldConf, includeSelfInOldConf, FollowerInfo::getCommitIndex, raftLog::getLastCommittedIndex);
+    // the leader itself always acks the current round
+    readIndexHeartbeats.setVoters(new VoterIndices(followersInNewConf, includeSelfInNewConf,
+        followersInOldConf, includeSelfInOldConf, FollowerInfo::getReadIndexRound, () -> Long.MAX_VALUE));
+    // the leader itself is always up-to-date, i.e. elapsed time 0
+    lastResponseTimes = new VoterIndices(followersInNewConf, includeSelfInNewConf,
+        followersInOldConf, includeSelfInOldConf, f -> -f.getLastRpcResponseTime().elapsedTimeMs(), () -> 0L);
+  }
+
+  private List<FollowerInfo> getFollowers(Predicate<RaftPeerId> inConf) {
+    return senders.stream()
         .map(LogAppender::getFollower)
+        .filter(f -> inConf.test(f.getPeer().getId()))
         .collect(Collectors.toList());
-    lists.add(listForNew);
-    if (conf.isTransitional()) {
-      List<FollowerInfo> listForOld = senders.stream()
-          .filter(sender -> conf.containsInOldConf(sender.getFollower().getPeer().getId()))
-          .map(LogAppender::getFollower)
-          .collect(Collectors.toList());
-      lists.add(listForOld);
-    }
-    return lists;
   }
 
   void replyPendingRequest(long logIndex, RaftClientReply reply) {
     pendingRequests.replyPendingRequest(logIndex, reply);
   }
 
+  void replyPendingRequest(long logIndex, int offset, RaftClientReply reply) {
+    pendingRequests.replyPendingRequest(logIndex, offset, reply);
+  }
+
+  void removePendingRequest(long logIndex) {
+    pendingRequests.removePendingRequest(logIndex);
+  }
+
   TransactionContext getTransactionContext(long index) {
     return pendingRequests.getTransactionContext(index);
   }
 
+  List<TransactionContext> getBatchTransactionContexts(long index) {
+    return pendingRequests.getBatchTransactionContexts(index);
+  }
+
   long[] getFollowerNextIndices() {
     return senders.stream().mapToLong(s -> s.getFollower().getNextIndex()).toArray();
   }
 
+  /**
+   * Choose a follower to send a snapshot to the given target on behalf of the leader.
+   * The chosen follower must be up-to-date, i.e. its match index is at least the given index.
+   * The followers with fewer ongoing snapshot transfers are preferred,
+   * and then the followers with larger commit indices.
+   *
+   * @return the chosen follower; or null if there is no such follower.
+   */
+  FollowerInfo chooseSnapshotSource(RaftPeerId target, long minMatchIndex) {
+    final Map<RaftPeerId, Long> numTransfers = senders.stream()
+        .map(LogAppender::getSnapshotSource)
+        .filter(Objects::nonNull)
+        .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    return senders.stream()
+        .map(LogAppender::getFollower)
+        .filter(f -> !f.getPeer().getId().equals(target))
+        .filter(f -> f.getMatchIndex() >= minMatchIndex)
+        .min(Comparator.<FollowerInfo>comparingLong(f -> numTransfers.getOrDefault(f.getPeer().getId(), 0L))
+            .thenComparing(Comparator.comparingLong(FollowerInfo::getCommitIndex).reversed()))
+        .orElse(null);
+  }
+
   private class ConfigurationStagingState {
     private final String name = server.getMemberId() + "-" + getClass().getSimpleName();
     private final Map<RaftPeerId, RaftPeer> newPeers;
     private final PeerConfiguration newConf;
+    private final PeerConfiguration newLearners;
 
     ConfigurationStagingState(Collection<RaftPeer> newPeers,
-        PeerConfiguration newConf) {
+        PeerConfiguration newConf, PeerConfiguration newLearners) {
       Map<RaftPeerId, RaftPeer> map = new HashMap<>();
       for (RaftPeer peer : newPeers) {
         map.put(peer.getId(), peer);
       }
       this.newPeers = Collections.unmodifiableMap(map);
       this.newConf = newConf;
+      this.newLearners = newLearners;
     }
 
     RaftConfiguration generateOldNewConf(RaftConfiguration current,
         long logIndex) {
       return RaftConfiguration.newBuilder()
           .setConf(newConf)
+          .setLearners(newLearners)
           .setOldConf(current)
           .setLogEntryIndex(logIndex)
           .build();
@@ -788,7 +890,10 @@ public class LeaderState {
     void fail(BootStrapProgress progress) {
       final String message = this + ": Fail to set configuration " + newConf + " due to " + progress;
       LOG.debug(message);
-      stopAndRemoveSenders(s -> !s.getFollower().isAttendingVote());
+      // keep the senders of the voters and the learners in the current conf
+      final RaftConfiguration current = server.getRaftConf();
+      stopAndRemoveSenders(s -> !s.getFollower().isAttendingVote()
+          && !current.isLearner(s.getFollower().getPeer().getId()));
 
       LeaderState.this.stagingState = null;
       // send back failure response to client's request
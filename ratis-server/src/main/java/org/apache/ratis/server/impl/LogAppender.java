@@ -25,21 +25,19 @@ import org.apache.ratis.server.storage.FileInfo;
 import org.apache.ratis.server.raftlog.RaftLog;
 import org.apache.ratis.server.raftlog.RaftLog.EntryWithData;
 import org.apache.ratis.server.raftlog.RaftLogIOException;
-import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.proto.RaftProtos.*;
 import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.ratis.server.impl.RaftServerConstants.DEFAULT_CALLID;
+import static org.apache.ratis.server.metrics.RaftLogMetrics.LOG_APPENDER_INSTALL_SNAPSHOT_FROM_FOLLOWER_METRIC;
 import static org.apache.ratis.server.metrics.RaftLogMetrics.LOG_APPENDER_INSTALL_SNAPSHOT_METRIC;
 import static org.apache.ratis.util.LifeCycle.State.CLOSED;
 import static org.apache.ratis.util.LifeCycle.State.CLOSING;
@@ -126,8 +124,19 @@ public class LogAppender {
   protected final FollowerInfo follower;
 
   private final DataQueue<EntryWithData> buffer;
-  private final int snapshotChunkMaxSize;
+  private final TransferThrottler throttler;
+  /** For throttling the committed entries sent to this follower; null if throttling is disabled. */
+  private final TransferThrottler.Transfer catchUpTransfer;
   protected final long halfMinTimeoutMs;
+  private final boolean installSnapshotFromFollowerEnabled;
+  /** The follower sending a snapshot to this follower on behalf of the leader; null if there is none. */
+  private volatile RaftPeerId snapshotSource;
+  /** The snapshot most recently sent to the follower by another follower; it may differ from the leader snapshot. */
+  private volatile TermIndex snapshotFromFollower;
+  /** The end of the current throttle period of the committed entries sent to the follower. */
+  private volatile long catchUpThrottledUntilNanos = System.nanoTime();
+  /** The ReadIndex heartbeat round of the latest request created by {@link #createRequest(long)}. */
+  private volatile long readIndexRound;
 
   private final AppenderDaemon daemon;
 
@@ -139,12 +148,15 @@ public class LogAppender {
     this.raftLog = server.getState().getLog();
 
     final RaftProperties properties = server.getProxy().getProperties();
-    this.snapshotChunkMaxSize = RaftServerConfigKeys.Log.Appender.snapshotChunkSizeMax(properties).getSizeInt();
     this.halfMinTimeoutMs = server.getMinTimeoutMs() / 2;
+    this.installSnapshotFromFollowerEnabled =
+        RaftServerConfigKeys.Log.Appender.installSnapshotFromFollowerEnabled(properties);
 
     final SizeInBytes bufferByteLimit = RaftServerConfigKeys.Log.Appender.bufferByteLimit(properties);
     final int bufferElementLimit = RaftServerConfigKeys.Log.Appender.bufferElementLimit(properties);
     this.buffer = new DataQueue<>(this, bufferByteLimit, bufferElementLimit, EntryWithData::getSerializedSize);
+    this.throttler = server.getProxy().getTransferThrottler();
+    this.catchUpTransfer = throttler.isEnabled()? throttler.newTransfer(): null;
     this.daemon = new AppenderDaemon();
   }
 
@@ -173,6 +185,10 @@ public class LogAppender {
     return getFollower().getPeer().getId();
   }
 
+  RaftPeerId getSnapshotSource() {
+    return snapshotSource;
+  }
+
   private TermIndex getPrevious(long nextIndex) {
     if (nextIndex == RaftLog.LEAST_VALID_LOG_INDEX) {
       return null;
@@ -192,25 +208,51 @@ public class LogAppender {
       }
     }
 
+    final TermIndex fromFollower = snapshotFromFollower;
+    if (fromFollower != null && fromFollower.getIndex() == previousIndex) {
+      return fromFollower;
+    }
     return null;
   }
 
   protected AppendEntriesRequestProto createRequest(long callId) throws RaftLogIOException {
+    // the request is sent after the current round has started, so that its reply acks the round
+    final long round = leaderState.getReadIndexRound();
+    final AppendEntriesRequestProto request = newAppendEntriesRequest(callId);
+    if (request != null) {
+      // record the round only if a request is sent; otherwise, a forced heartbeat of the round may be dropped.
+      readIndexRound = round;
+    }
+    return request;
+  }
+
+  private AppendEntriesRequestProto newAppendEntriesRequest(long callId) throws RaftLogIOException {
     final TermIndex previous = getPrevious(follower.getNextIndex());
     final long heartbeatRemainingMs = getHeartbeatRemainingTime();
     if (heartbeatRemainingMs <= 0L) {
       // heartbeat
       return leaderState.newAppendEntriesRequestProto(
-          getFollowerId(), previous, Collections.emptyList(), !follower.isAttendingVote(), callId);
+          getFollowerId(), previous, Collections.emptyList(), isFollowerInitializing(), callId);
     }
 
     Preconditions.assertTrue(buffer.isEmpty(), () -> "buffer has " + buffer.getNumElements() + " elements.");
 
     final long leaderNext = raftLog.getNextIndex();
     final long followerNext = follower.getNextIndex();
+    final long commitIndex = raftLog.getLastCommittedIndex();
     final long halfMs = heartbeatRemainingMs/2;
-    for (long next = followerNext; leaderNext > next && getHeartbeatRemainingTime() - halfMs > 0; ) {
-      if (!buffer.offer(raftLog.getEntryWithData(next++))) {
+    for (long next = followerNext; leaderNext > next && getHeartbeatRemainingTime() - halfMs > 0; next++) {
+      // the committed entries are only for a lagging follower to catch up;
+      // throttle them before reading the entry, and wait outside this method.
+      final boolean catchUp = next <= commitIndex;
+      if (catchUp && isCatchUpThrottled()) {
+        break;
+      }
+      final EntryWithData entry = raftLog.getEntryWithData(next);
+      if (catchUp && catchUpTransfer != null) {
+        catchUpTransfer.consume(entry.getSerializedSize());
+      }
+      if (!buffer.offer(entry)) {
         break;
       }
     }
@@ -224,7 +266,67 @@ public class LogAppender {
     buffer.clear();
     assertProtos(protos, followerNext, previous);
     return leaderState.newAppendEntriesRequestProto(
-        getFollowerId(), previous, protos, !follower.isAttendingVote(), callId);
+        getFollowerId(), previous, protos, isFollowerInitializing(), callId);
+  }
+
+  /** @return the ReadIndex heartbeat round of the latest request created by {@link #createRequest(long)}. */
+  protected long getReadIndexRound() {
+    return readIndexRound;
+  }
+
+  /**
+   * The follower has accepted this leader in a reply to a request of the given round,
+   * i.e. the request created when {@link #getReadIndexRound()} returned the round.
+   */
+  protected void onReadIndexAck(long round) {
+    leaderState.onReadIndexAck(follower, round);
+  }
+
+  /** Does the reply show that the follower has accepted this leader? */
+  protected static boolean isReadIndexAck(AppendEntriesReplyProto reply) {
+    final AppendEntriesReplyProto.AppendResult result = reply.getResult();
+    return result == AppendEntriesReplyProto.AppendResult.SUCCESS
+        || result == AppendEntriesReplyProto.AppendResult.INCONSISTENCY;
+  }
+
+  /**
+   * Are the committed entries to the follower throttled?
+   * If a new throttle period starts, record it in the metrics once.
+   */
+  private boolean isCatchUpThrottled() {
+    if (catchUpTransfer == null) {
+      return false;
+    }
+    final long wait = catchUpTransfer.getWaitNanos();
+    if (wait <= 0) {
+      return false;
+    }
+    final long now = System.nanoTime();
+    if (catchUpThrottledUntilNanos - now <= 0) {
+      server.getRaftServerMetrics().onLogAppenderThrottled(wait);
+    }
+    catchUpThrottledUntilNanos = now + wait;
+    return true;
+  }
+
+  /**
+   * @return the time in milliseconds to wait for the throttled committed entries,
+   *         which is bounded by the heartbeat remaining time; or 0 if the entries are not throttled.
+   */
+  protected long getCatchUpWaitTimeMs() {
+    final long remainingNanos = catchUpThrottledUntilNanos - System.nanoTime();
+    if (remainingNanos <= 0) {
+      return 0L;
+    }
+    return Math.min(TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1, getHeartbeatRemainingTime());
+  }
+
+  /**
+   * Record the latency of an appendEntries with new entries,
+   * which is used to adjust the bandwidth of the background transfers.
+   */
+  protected void onAppendEntriesLatency(long nanos) {
+    throttler.onForegroundLatency(nanos);
   }
 
   private void assertProtos(List<LogEntryProto> protos, long nextIndex, TermIndex previous) {
@@ -247,10 +349,12 @@ public class LogAppender {
       throws InterruptedException, InterruptedIOException, RaftLogIOException {
     int retry = 0;
     AppendEntriesRequestProto request = null;
+    long round = 0;
     while (isAppenderRunning()) { // keep retrying for IOException
       try {
         if (request == null || request.getEntriesCount() == 0) {
           request = createRequest(DEFAULT_CALLID);
+          round = getReadIndexRound();
         }
 
         if (request == null) {
@@ -262,10 +366,20 @@ public class LogAppender {
         }
 
         follower.updateLastRpcSendTime();
+        final long startNanos = System.nanoTime();
         final AppendEntriesReplyProto r = server.getServerRpc().appendEntries(request);
-        follower.updateLastRpcResponseTime();
+        // update the last rpc time, which extends the read lease, only if the follower has accepted this leader
+        if (isReadIndexAck(r)) {
+          follower.updateLastRpcResponseTime();
+        }
+        if (request.getEntriesCount() > 0) {
+          onAppendEntriesLatency(System.nanoTime() - startNanos);
+        }
 
         updateCommitIndex(r.getFollowerCommit());
+        if (isReadIndexAck(r)) {
+          onReadIndexAck(round);
+        }
         return r;
       } catch (InterruptedIOException | RaftLogIOException e) {
         throw e;
@@ -289,97 +403,33 @@ public class LogAppender {
     }
   }
 
-  protected class SnapshotRequestIter
-      implements Iterable<InstallSnapshotRequestProto> {
-    private final SnapshotInfo snapshot;
-    private final List<FileInfo> files;
-    private FileInputStream in;
-    private int fileIndex = 0;
-
-    private FileInfo currentFileInfo;
-    private byte[] currentBuf;
-    private long currentFileSize;
-    private long currentOffset = 0;
-    private int chunkIndex = 0;
-
-    private final String requestId;
-    private int requestIndex = 0;
-
-    public SnapshotRequestIter(SnapshotInfo snapshot, String requestId)
-        throws IOException {
-      this.snapshot = snapshot;
-      this.requestId = requestId;
-      this.files = snapshot.getFiles();
-      if (files.size() > 0) {
-        startReadFile();
-      }
-    }
-
-    private void startReadFile() throws IOException {
-      currentFileInfo = files.get(fileIndex);
-      File snapshotFile = currentFileInfo.getPath().toFile();
-      currentFileSize = snapshotFile.length();
-      final int bufLength = getSnapshotChunkLength(currentFileSize);
-      currentBuf = new byte[bufLength];
-      currentOffset = 0;
-      chunkIndex = 0;
-      in = new FileInputStream(snapshotFile);
-    }
-
-    private int getSnapshotChunkLength(long len) {
-      return len < snapshotChunkMaxSize? (int)len: snapshotChunkMaxSize;
-    }
+  protected SnapshotRequestIter newSnapshotRequestIter(SnapshotInfo snapshot, String requestId) throws IOException {
+    return newSnapshotRequestIter(snapshot, requestId, 0, 0, 0L);
+  }
 
-    @Override
-    public Iterator<InstallSnapshotRequestProto> iterator() {
-      return new Iterator<InstallSnapshotRequestProto>() {
-        @Override
-        public boolean hasNext() {
-          return fileIndex < files.size();
-        }
+  /**
+   * Resume a snapshot transfer from the given position.
+   *
+   * @param requestIndex the index of the first request.
+   * @param fileIndex the index of the first file in the snapshot files.
+   * @param offset the offset in the first file.
+   */
+  protected SnapshotRequestIter newSnapshotRequestIter(SnapshotInfo snapshot, String requestId,
+      int requestIndex, int fileIndex, long offset) throws IOException {
+    return new SnapshotRequestIter(server, getFollowerId(), null, leaderState.getCurrentTerm(),
+        snapshot, snapshot.getFiles(), requestId, requestIndex, fileIndex, offset);
+  }
 
-        @Override
-        public InstallSnapshotRequestProto next() {
-          if (fileIndex >= files.size()) {
-            throw new NoSuchElementException();
-          }
-          final int targetLength = getSnapshotChunkLength(
-              currentFileSize - currentOffset);
-          FileChunkProto chunk;
-          try {
-            chunk = readFileChunk(currentFileInfo, in, currentBuf,
-                targetLength, currentOffset, chunkIndex);
-            boolean done = (fileIndex == files.size() - 1) &&
-                chunk.getDone();
-            InstallSnapshotRequestProto request =
-                server.createInstallSnapshotRequest(follower.getPeer().getId(),
-                    requestId, requestIndex++, snapshot,
-                    Collections.singletonList(chunk), done);
-            currentOffset += targetLength;
-            chunkIndex++;
-
-            if (currentOffset >= currentFileSize) {
-              in.close();
-              fileIndex++;
-              if (fileIndex < files.size()) {
-                startReadFile();
-              }
-            }
-
-            return request;
-          } catch (IOException e) {
-            if (in != null) {
-              try {
-                in.close();
-              } catch (IOException ignored) {
-              }
-            }
-            LOG.warn("{}: Failed to prepare installSnapshot request", LogAppender.this, e);
-            throw new RuntimeException(e);
-          }
-        }
-      };
-    }
+  /**
+   * Transfer only the given files of the snapshot, e.g. when the files are sent over multiple streams.
+   * The last request is marked as done only if it is for the last chunk of the last snapshot file.
+   *
+   * @param files a sublist of the snapshot files in the same order.
+   */
+  protected SnapshotRequestIter newSnapshotRequestIter(SnapshotInfo snapshot, List<FileInfo> files,
+      String requestId, int requestIndex) throws IOException {
+    return new SnapshotRequestIter(server, getFollowerId(), null, leaderState.getCurrentTerm(),
+        snapshot, files, requestId, requestIndex, 0, 0L);
   }
 
   protected InstallSnapshotRequestProto createInstallSnapshotNotificationRequest(
@@ -387,28 +437,11 @@ public class LogAppender {
     return server.createInstallSnapshotRequest(getFollowerId(), firstLogStartTermIndex);
   }
 
-  private FileChunkProto readFileChunk(FileInfo fileInfo,
-      FileInputStream in, byte[] buf, int length, long offset, int chunkIndex)
-      throws IOException {
-    FileChunkProto.Builder builder = FileChunkProto.newBuilder()
-        .setOffset(offset).setChunkIndex(chunkIndex);
-    IOUtils.readFully(in, buf, 0, length);
-    Path relativePath = server.getState().getStorage().getStorageDir()
-        .relativizeToRoot(fileInfo.getPath());
-    builder.setFilename(relativePath.toString());
-    builder.setDone(offset + length == fileInfo.getFileSize());
-    builder.setFileDigest(
-        ByteString.copyFrom(fileInfo.getFileDigest().getDigest()));
-    builder.setData(ByteString.copyFrom(buf, 0, length));
-    return builder.build();
-  }
-
   private InstallSnapshotReplyProto installSnapshot(SnapshotInfo snapshot) throws InterruptedIOException {
     String requestId = UUID.randomUUID().toString();
     InstallSnapshotReplyProto reply = null;
     try {
-      for (InstallSnapshotRequestProto request :
-          new SnapshotRequestIter(snapshot, requestId)) {
+      for (InstallSnapshotRequestProto request : newSnapshotRequestIter(snapshot, requestId)) {
         follower.updateLastRpcSendTime();
         reply = server.getServerRpc().installSnapshot(request);
         follower.updateLastRpcResponseTime();
@@ -433,6 +466,11 @@ public class LogAppender {
     return reply;
   }
 
+  /**
+   * @return the snapshot to be installed, which is an incremental snapshot
+   *         if it is available for the latest snapshot in the follower;
+   *         or null if the follower does not need a snapshot.
+   */
   protected SnapshotInfo shouldInstallSnapshot() {
     final long logStartIndex = raftLog.getStartIndex();
     // we should install snapshot if the follower needs to catch up and:
@@ -442,25 +480,137 @@ public class LogAppender {
       SnapshotInfo snapshot = server.getState().getLatestSnapshot();
       if (follower.getNextIndex() < logStartIndex ||
           (logStartIndex == RaftLog.INVALID_LOG_INDEX && snapshot != null)) {
-        return snapshot;
+        return getIncrementalSnapshot(snapshot);
       }
     }
     return null;
   }
 
+  /**
+   * Try to install a snapshot to the follower from another follower, i.e. the snapshot source,
+   * so that the leader does not have to send the snapshot itself.
+   * The leader first designates the source to the follower,
+   * which then accepts the chunks sent on behalf of the leader only from the source.
+   * The leader polls the source until the transfer is completed
+   * and then verifies only the {@link TermIndex} of the snapshot sent.
+   *
+   * @param snapshot the snapshot which the leader would send.
+   * @return true if the snapshot is installed or the appender is stopped;
+   *         false if the leader should send the snapshot itself.
+   */
+  protected boolean installSnapshotFromFollower(SnapshotInfo snapshot) throws InterruptedIOException {
+    if (!installSnapshotFromFollowerEnabled || snapshot.getBaseIndex() != RaftLog.INVALID_LOG_INDEX) {
+      // an incremental snapshot is sent by the leader since it is small
+      return false;
+    }
+    final long logStartIndex = raftLog.getStartIndex();
+    // the snapshot must include all the entries before the first entry in the leader log
+    final long minIndex = (logStartIndex != RaftLog.INVALID_LOG_INDEX? logStartIndex: raftLog.getNextIndex()) - 1;
+    final FollowerInfo source = leaderState.chooseSnapshotSource(getFollowerId(), minIndex);
+    if (source == null) {
+      return false;
+    }
+
+    snapshotSource = source.getPeer().getId();
+    LOG.info("{}: followerNextIndex = {} but logStartIndex = {}, direct {} to send a snapshot to follower",
+        this, follower.getNextIndex(), logStartIndex, source);
+    final InstallSnapshotRequestProto request = ServerProtoUtils.toInstallSnapshotRequestProto(
+        server.getMemberId(), snapshotSource, leaderState.getCurrentTerm(), follower.getPeer(), minIndex);
+    try {
+      // the follower accepts the chunks sent on behalf of the leader only from the designated source
+      follower.updateLastRpcSendTime();
+      final InstallSnapshotReplyProto designated = server.getServerRpc().installSnapshot(
+          ServerProtoUtils.toInstallSnapshotRequestProto(
+              server.getMemberId(), getFollowerId(), leaderState.getCurrentTerm(), snapshotSource));
+      follower.updateLastRpcResponseTime();
+      if (designated.getResult() == InstallSnapshotResult.NOT_LEADER) {
+        checkResponseTerm(designated.getTerm());
+        return false;
+      } else if (designated.getResult() != InstallSnapshotResult.SUCCESS) {
+        LOG.warn("{}: Failed to designate {} as the snapshot source: {}", this, snapshotSource,
+            designated.getResult());
+        return false;
+      }
+
+      while (isAppenderRunning()) {
+        follower.updateLastRpcSendTime();
+        final InstallSnapshotReplyProto reply = server.getServerRpc().installSnapshot(request);
+        switch (reply.getResult()) {
+          case IN_PROGRESS:
+            // the source is making progress on behalf of the follower
+            follower.updateLastRpcResponseTime();
+            TimeUnit.MILLISECONDS.sleep(halfMinTimeoutMs);
+            break;
+          case SUCCESS:
+            return onSnapshotSentFromFollower(ServerProtoUtils.toTermIndex(reply.getSnapshotTermIndex()), minIndex);
+          case NOT_LEADER:
+            checkResponseTerm(reply.getTerm());
+            return false;
+          default:
+            LOG.warn("{}: Failed to send a snapshot from {}: {}", this, snapshotSource, reply.getResult());
+            return false;
+        }
+      }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      final InterruptedIOException iioe = new InterruptedIOException(
+          this + ": interrupted while sending a snapshot from " + snapshotSource);
+      iioe.initCause(e);
+      throw iioe;
+    } catch (InterruptedIOException e) {
+      throw e;
+    } catch (Exception e) {
+      LOG.warn("{}: Failed to send a snapshot from {}: {}", this, snapshotSource, e);
+      return false;
+    } finally {
+      snapshotSource = null;
+    }
+  }
+
+  private boolean onSnapshotSentFromFollower(TermIndex sent, long minIndex) {
+    final TermIndex local = raftLog.getTermIndex(sent.getIndex());
+    if (sent.getIndex() < minIndex || (local != null && local.getTerm() != sent.getTerm())) {
+      LOG.warn("{}: The snapshot {} sent from {} does not match the leader log, minIndex={}, local={}",
+          this, sent, snapshotSource, minIndex, local);
+      return false;
+    }
+    snapshotFromFollower = sent;
+    follower.setSnapshotIndex(sent.getIndex());
+    LOG.info("{}: installSnapshot {} from {} successfully", this, sent, snapshotSource);
+    server.getRaftServerMetrics().getCounter(LOG_APPENDER_INSTALL_SNAPSHOT_FROM_FOLLOWER_METRIC).inc();
+    return true;
+  }
+
+  /** Update the index of the latest snapshot in the follower from an INCONSISTENCY reply. */
+  protected void updateFollowerSnapshotIndex(AppendEntriesReplyProto reply) {
+    follower.setLatestSnapshotIndex(reply.getHasSnapshot()? reply.getSnapshotIndex(): RaftLog.INVALID_LOG_INDEX);
+  }
+
+  private SnapshotInfo getIncrementalSnapshot(SnapshotInfo snapshot) {
+    final long followerSnapshotIndex = follower.getLatestSnapshotIndex();
+    if (snapshot == null || followerSnapshotIndex == RaftLog.INVALID_LOG_INDEX) {
+      return snapshot;
+    }
+    final SnapshotInfo incremental = snapshot.getIncrementalSnapshot(followerSnapshotIndex);
+    return incremental != null && !incremental.getFiles().isEmpty()? incremental: snapshot;
+  }
+
   /** Check and send appendEntries RPC */
   protected void runAppenderImpl() throws InterruptedException, IOException {
     while (isAppenderRunning()) {
       if (shouldSendRequest()) {
         SnapshotInfo snapshot = shouldInstallSnapshot();
         if (snapshot != null) {
-          LOG.info("{}: followerNextIndex = {} but logStartIndex = {}, send snapshot {} to follower",
-              this, follower.getNextIndex(), raftLog.getStartIndex(), snapshot);
-
-          final InstallSnapshotReplyProto r = installSnapshot(snapshot);
-          if (r != null && r.getResult() == InstallSnapshotResult.NOT_LEADER) {
-            checkResponseTerm(r.getTerm());
-          } // otherwise if r is null, retry the snapshot installation
+          if (!installSnapshotFromFollower(snapshot)) {
+            LOG.info("{}: followerNextIndex = {} but logStartIndex = {}, send snapshot {} to follower",
+                this, follower.getNextIndex(), raftLog.getStartIndex(), snapshot);
+
+            final InstallSnapshotReplyProto r = installSnapshot(snapshot);
+            if (r != null && r.getResult() == InstallSnapshotResult.NOT_LEADER) {
+              checkResponseTerm(r.getTerm());
+            } // otherwise if r is null, retry the snapshot installation
+          }
         } else {
           final AppendEntriesReplyProto r = sendAppendEntriesWithRetries();
           if (r != null) {
@@ -468,8 +618,10 @@ public class LogAppender {
           }
         }
       }
-      if (isAppenderRunning() && !shouldAppendEntries(follower.getNextIndex())) {
-        final long waitTime = getHeartbeatRemainingTime();
+      if (isAppenderRunning()) {
+        // wait until the heartbeat if there are no entries to send, or wait for the throttled entries.
+        final long waitTime = !shouldAppendEntries(follower.getNextIndex())? getHeartbeatRemainingTime()
+            : getCatchUpWaitTimeMs();
         if (waitTime > 0) {
           synchronized (this) {
             wait(waitTime);
@@ -503,7 +655,8 @@ public class LogAppender {
           checkResponseTerm(reply.getTerm());
           break;
         case INCONSISTENCY:
-          follower.decreaseNextIndex(reply.getNextIndex());
+          updateFollowerSnapshotIndex(reply);
+          follower.decreaseNextIndex(getNextIndexForInconsistency(reply));
           break;
         case UNRECOGNIZED:
           LOG.warn("{}: received {}", this, reply.getResult());
@@ -512,6 +665,35 @@ public class LogAppender {
     }
   }
 
+  /**
+   * Compute the follower's next index from an INCONSISTENCY reply.
+   * When the reply carries a conflicting term,
+   * skip over the entire term instead of backtracking one index at a time:
+   * if the leader has entries of the conflicting term,
+   * the next index is the index after the last such entry;
+   * otherwise, it is the first index of the conflicting term in the follower log.
+   */
+  protected long getNextIndexForInconsistency(AppendEntriesReplyProto reply) {
+    return getNextIndexForInconsistency(raftLog, reply);
+  }
+
+  static long getNextIndexForInconsistency(RaftLog raftLog, AppendEntriesReplyProto reply) {
+    final long conflictTerm = reply.getConflictTerm();
+    if (conflictTerm <= 0) {
+      return reply.getNextIndex();
+    }
+    final long lastIndexOfTerm = raftLog.getLastIndexOfTerm(conflictTerm, Long.MAX_VALUE);
+    return lastIndexOfTerm != RaftLog.INVALID_LOG_INDEX? lastIndexOfTerm + 1: reply.getConflictTermFirstIndex();
+  }
+
+  /**
+   * @return true if the follower is a bootstrapping peer;
+   *         a learner is not initializing although it does not attend the votes.
+   */
+  private boolean isFollowerInitializing() {
+    return !follower.isAttendingVote() && !server.getRaftConf().isLearner(getFollowerId());
+  }
+
   private void handleException(Exception e) {
     LOG.trace("TRACE", e);
     server.getServerRpc().handleException(follower.getPeer().getId(), e, false);
@@ -554,6 +736,10 @@ public class LogAppender {
    * @return the time in milliseconds that the leader should send a heartbeat.
    */
   protected long getHeartbeatRemainingTime() {
+    if (leaderState.getReadIndexRound() > readIndexRound) {
+      // a ReadIndex heartbeat round has started; send a heartbeat immediately
+      return 0L;
+    }
     return halfMinTimeoutMs - follower.getLastRpcTime().elapsedTimeMs();
   }
 
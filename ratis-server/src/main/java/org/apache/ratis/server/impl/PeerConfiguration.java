@@ -35,6 +35,8 @@ import java.util.Objects;
  * The objects of this class are immutable.
  */
 class PeerConfiguration {
+  static final PeerConfiguration EMPTY = new PeerConfiguration(Collections.emptyList());
+
   private final Map<RaftPeerId, RaftPeer> peers;
 
   PeerConfiguration(Iterable<RaftPeer> peers) {
@@ -23,6 +23,8 @@ import org.apache.ratis.statemachine.TransactionContext;
 import org.apache.ratis.util.Preconditions;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public class PendingRequest implements Comparable<PendingRequest> {
@@ -30,12 +32,24 @@ public class PendingRequest implements Comparable<PendingRequest> {
   private final RaftClientRequest request;
   private final TransactionContext entry;
   private final CompletableFuture<RaftClientReply> future;
+  /** The requests batched into the same log entry; null if this is not a batch. */
+  private final List<PendingRequest> batch;
 
   PendingRequest(long index, RaftClientRequest request, TransactionContext entry) {
     this.index = index;
     this.request = request;
     this.entry = entry;
     this.future = new CompletableFuture<>();
+    this.batch = null;
+  }
+
+  /** Create a batch, which has neither a request nor a future of its own. */
+  PendingRequest(long index, List<PendingRequest> batch, TransactionContext entry) {
+    this.index = index;
+    this.request = null;
+    this.entry = entry;
+    this.future = null;
+    this.batch = Collections.unmodifiableList(batch);
   }
 
   PendingRequest(SetConfigurationRequest request) {
@@ -58,6 +72,15 @@ public class PendingRequest implements Comparable<PendingRequest> {
     return entry;
   }
 
+  boolean isBatch() {
+    return batch != null;
+  }
+
+  /** @return the requests in this batch; or, if this is not a batch, a singleton list of this request. */
+  List<PendingRequest> getBatch() {
+    return batch != null? batch: Collections.singletonList(this);
+  }
+
   /**
    * This is only used when setting new raft configuration.
    */
@@ -84,6 +107,6 @@ public class PendingRequest implements Comparable<PendingRequest> {
   @Override
   public String toString() {
     return getClass().getSimpleName() + "(index=" + index
-        + ", request=" + request;
+        + (batch != null? ", batch=" + batch.size(): ", request=" + request);
   }
 }
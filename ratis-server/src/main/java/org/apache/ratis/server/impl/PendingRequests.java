@@ -38,18 +38,14 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 class PendingRequests {
   public static final Logger LOG = LoggerFactory.getLogger(PendingRequests.class);
 
-  static class Permit {}
-
   static class RequestLimits extends ResourceSemaphore.Group {
     RequestLimits(int elementLimit, SizeInBytes byteLimit) {
       super(elementLimit, byteLimit.getSizeInt());
@@ -67,18 +63,45 @@ class PendingRequests {
       return tryAcquire(1, Message.getSize(message));
     }
 
+    ResourceSemaphore.ResourceAcquireStatus tryAcquire(Collection<Message> messages) {
+      return tryAcquire(messages.size(), messages.stream().mapToInt(Message::getSize).sum());
+    }
+
     void release(Message message) {
       release(1, Message.getSize(message));
     }
   }
 
+  /**
+   * The pending requests in a ring buffer indexed by the log index,
+   * which covers the range from the smallest index to the largest index of the pending requests in the ring.
+   * Since the log indices are dense and increasing, the ring is grown only when the range exceeds its capacity.
+   *
+   * The capacity is bounded by a multiple of the element limit.
+   * When the range exceeds the max capacity, e.g. a request is stuck while the later requests keep completing,
+   * the requests falling behind the ring are moved to a map.
+   */
   private static class RequestMap {
+    private static final int INITIAL_CAPACITY = 16;
+
     private final Object name;
-    private final ConcurrentMap<Long, PendingRequest> map = new ConcurrentHashMap<>();
     private final RaftServerMetrics raftServerMetrics;
 
-    /** Permits to put new requests, always synchronized. */
-    private final Map<Permit, Permit> permits = new HashMap<>();
+    /** The max length of the ring, which is a power of two at least twice the element limit. */
+    private final int maxCapacity;
+    /** The ring, where the request of log index i is at i & (ring.length - 1); the length is a power of two. */
+    private PendingRequest[] ring = new PendingRequest[INITIAL_CAPACITY];
+    /** The requests with the indices smaller than base, which have fallen behind the ring. */
+    private final Map<Long, PendingRequest> outliers = new HashMap<>();
+    /** The smallest index in the ring, i.e. the ring covers [base, end). */
+    private long base = 0;
+    /** One plus the largest index in the ring. */
+    private long end = 0;
+    /** The number of the requests in the ring, excluding the outliers. */
+    private int size = 0;
+
+    /** The number of the permits acquired for putting new requests. */
+    private int permits = 0;
     /** Track and limit the number of requests and the total message size. */
     private final RequestLimits resource;
 
@@ -86,83 +109,166 @@ class PendingRequests {
       this.name = name;
       this.resource = new RequestLimits(elementLimit, byteLimit);
       this.raftServerMetrics = raftServerMetrics;
+      this.maxCapacity = Math.max(INITIAL_CAPACITY, roundUpToPowerOfTwo(Math.min(2L * elementLimit, 1 << 30)));
 
       raftServerMetrics.addNumPendingRequestsGauge(resource::getElementCount);
       raftServerMetrics.addNumPendingRequestsByteSize(resource::getByteSize);
     }
 
-    Permit tryAcquire(Message message) {
-      final ResourceSemaphore.ResourceAcquireStatus acquired = resource.tryAcquire(message);
+    boolean tryAcquire(Message message) {
+      return tryAcquire(resource.tryAcquire(message));
+    }
+
+    boolean tryAcquire(Collection<Message> messages) {
+      return tryAcquire(resource.tryAcquire(messages));
+    }
+
+    private boolean tryAcquire(ResourceSemaphore.ResourceAcquireStatus acquired) {
       LOG.trace("tryAcquire? {}", acquired);
       if (acquired == ResourceSemaphore.ResourceAcquireStatus.FAILED_IN_ELEMENT_LIMIT) {
         raftServerMetrics.onRequestQueueLimitHit();
         raftServerMetrics.onResourceLimitHit();
-        return null;
+        return false;
       } else if (acquired == ResourceSemaphore.ResourceAcquireStatus.FAILED_IN_BYTE_SIZE_LIMIT) {
         raftServerMetrics.onRequestByteSizeLimitHit();
         raftServerMetrics.onResourceLimitHit();
-        return null;
+        return false;
       }
       return putPermit();
     }
 
-    private synchronized Permit putPermit() {
+    private synchronized boolean putPermit() {
       if (resource.isClosed()) {
-        return null;
+        return false;
       }
-      final Permit permit = new Permit();
-      permits.put(permit, permit);
-      return permit;
+      permits++;
+      return true;
+    }
+
+    private int slot(long index) {
+      return (int) index & (ring.length - 1);
     }
 
-    synchronized PendingRequest put(Permit permit, long index, PendingRequest p) {
+    synchronized PendingRequest put(long index, PendingRequest p) {
       LOG.debug("{}: PendingRequests.put {} -> {}", name, index, p);
-      final Permit removed = permits.remove(permit);
-      if (removed == null) {
+      if (permits == 0) {
         return null;
       }
-      Preconditions.assertTrue(removed == permit);
-      final PendingRequest previous = map.put(index, p);
-      Preconditions.assertTrue(previous == null);
+      permits--;
+      if (size == 0) {
+        base = end = index;
+      }
+      Preconditions.assertTrue(index >= end, () -> name + ": index " + index + " < end " + end);
+      if (index - base >= ring.length) {
+        grow(Math.min(index - base + 1, maxCapacity));
+        if (index - base >= ring.length) {
+          moveToOutliers(index - ring.length + 1);
+        }
+      }
+      ring[slot(index)] = p;
+      end = index + 1;
+      size++;
       return p;
     }
 
-    PendingRequest get(long index) {
-      final PendingRequest r = map.get(index);
+    static int roundUpToPowerOfTwo(long n) {
+      return n <= 1? 1: Integer.highestOneBit((int) n - 1) << 1;
+    }
+
+    /** Grow the ring to the smallest power of two at least the given capacity. */
+    private void grow(long capacity) {
+      final int newLength = roundUpToPowerOfTwo(capacity);
+      if (newLength <= ring.length) {
+        return;
+      }
+      final PendingRequest[] newRing = new PendingRequest[newLength];
+      for(long i = base; i < end; i++) {
+        newRing[(int) i & (newLength - 1)] = ring[slot(i)];
+      }
+      LOG.debug("{}: grow the ring from {} to {}", name, ring.length, newLength);
+      ring = newRing;
+    }
+
+    /** Move the requests with the indices smaller than the given new base from the ring to the outliers. */
+    private void moveToOutliers(long newBase) {
+      for(; base < end && base < newBase; base++) {
+        final int slot = slot(base);
+        if (ring[slot] != null) {
+          LOG.debug("{}: move the request at index {} to the outliers", name, base);
+          outliers.put(base, ring[slot]);
+          ring[slot] = null;
+          size--;
+        }
+      }
+      if (size == 0) {
+        base = end = newBase;
+      } else {
+        // advance the base to the smallest pending index in the ring
+        for(; ring[slot(base)] == null; base++);
+      }
+    }
+
+    synchronized PendingRequest get(long index) {
+      final PendingRequest r = index >= base && index < end? ring[slot(index)]: outliers.get(index);
       LOG.debug("{}: PendingRequests.get {} returns {}", name, index, r);
       return r;
     }
 
     PendingRequest remove(long index) {
-      final PendingRequest r = map.remove(index);
+      final PendingRequest r;
+      synchronized (this) {
+        if (index < base || index >= end) {
+          r = outliers.remove(index);
+        } else if ((r = ring[slot(index)]) != null) {
+          ring[slot(index)] = null;
+          size--;
+          if (size == 0) {
+            base = end;
+          } else {
+            // advance the base to the smallest pending index
+            for(; ring[slot(base)] == null; base++);
+          }
+        }
+        if (r == null) {
+          LOG.debug("{}: PendingRequests.remove {} returns null", name, index);
+          return null;
+        }
+      }
       LOG.debug("{}: PendingRequests.remove {} returns {}", name, index, r);
-      if (r == null) {
-        return null;
+      for (PendingRequest p : r.getBatch()) {
+        resource.release(p.getRequest().getMessage());
       }
-      resource.release(r.getRequest().getMessage());
       LOG.trace("release");
       return r;
     }
 
     Collection<TransactionContext> setNotLeaderException(NotLeaderException nle, Collection<CommitInfoProto> commitInfos) {
+      final List<PendingRequest> pendings;
       synchronized (this) {
         resource.close();
-        permits.clear();
+        permits = 0;
+
+        pendings = new ArrayList<>(outliers.values());
+        outliers.clear();
+        for(long i = base; i < end; i++) {
+          final int slot = slot(i);
+          if (ring[slot] != null) {
+            pendings.add(ring[slot]);
+            ring[slot] = null;
+          }
+        }
+        size = 0;
+        base = end;
       }
 
       LOG.debug("{}: PendingRequests.setNotLeaderException", name);
-      final List<TransactionContext> transactions = new ArrayList<>(map.size());
-      for(;;) {
-        final Iterator<Long> i = map.keySet().iterator();
-        if (!i.hasNext()) { // the map is empty
-          return transactions;
-        }
-
-        final PendingRequest pending = map.remove(i.next());
-        if (pending != null) {
-          transactions.add(pending.setNotLeaderException(nle, commitInfos));
+      final List<TransactionContext> transactions = new ArrayList<>(pendings.size());
+      for (PendingRequest pending : pendings) {
+        for (PendingRequest p : pending.getBatch()) {
+          transactions.add(p.setNotLeaderException(nle, commitInfos));
         }
       }
+      return transactions;
     }
   }
 
@@ -178,17 +284,45 @@ class PendingRequests {
         raftServerMetrics);
   }
 
-  Permit tryAcquire(Message message) {
+  /** Acquire a permit to add a pending request; the permit is released once the request is removed. */
+  boolean tryAcquire(Message message) {
     return pendingRequests.tryAcquire(message);
   }
 
-  PendingRequest add(Permit permit, RaftClientRequest request, TransactionContext entry) {
+  /** Acquire a permit to add a pending batch. */
+  boolean tryAcquire(Collection<Message> messages) {
+    return pendingRequests.tryAcquire(messages);
+  }
+
+  /** Add a pending request using an acquired permit; return null if the permits are invalidated. */
+  PendingRequest add(RaftClientRequest request, TransactionContext entry) {
     // externally synced for now
     Preconditions.assertTrue(request.is(RaftClientRequestProto.TypeCase.WRITE));
     final long index = entry.getLogEntry().getIndex();
     LOG.debug("{}: addPendingRequest at index={}, request={}", name, index, request);
     final PendingRequest pending = new PendingRequest(index, request, entry);
-    return pendingRequests.put(permit, index, pending);
+    return pendingRequests.put(index, pending);
+  }
+
+  /**
+   * Add a batch of requests which have been appended as a single log entry.
+   * @param requests the requests in the batch.
+   * @param entries the transactions of the requests, where each transaction has the same log index as the batch.
+   * @param batch the transaction of the batch.
+   * @return the pending requests, one for each request in the batch; or null if the permits are invalidated.
+   */
+  List<PendingRequest> addBatch(List<RaftClientRequest> requests,
+      List<TransactionContext> entries, TransactionContext batch) {
+    // externally synced for now
+    Preconditions.assertTrue(requests.size() == entries.size());
+    final long index = batch.getLogEntry().getIndex();
+    LOG.debug("{}: addPendingRequest at index={}, a batch of {} requests", name, index, requests.size());
+    final List<PendingRequest> pendings = new ArrayList<>(requests.size());
+    for (int i = 0; i < requests.size(); i++) {
+      Preconditions.assertTrue(requests.get(i).is(RaftClientRequestProto.TypeCase.WRITE));
+      pendings.add(new PendingRequest(index, requests.get(i), entries.get(i)));
+    }
+    return pendingRequests.put(index, new PendingRequest(index, pendings, batch)) != null? pendings: null;
   }
 
   PendingRequest addConfRequest(SetConfigurationRequest request) {
@@ -224,6 +358,15 @@ class PendingRequests {
     return pendingRequest != null ? pendingRequest.getEntry() : null;
   }
 
+  /** @return the transactions of the requests in the batch at the given index; or null if it is not found. */
+  List<TransactionContext> getBatchTransactionContexts(long index) {
+    final PendingRequest pendingRequest = pendingRequests.get(index);
+    if (pendingRequest == null || !pendingRequest.isBatch()) {
+      return null;
+    }
+    return pendingRequest.getBatch().stream().map(PendingRequest::getEntry).collect(Collectors.toList());
+  }
+
   void replyPendingRequest(long index, RaftClientReply reply) {
     final PendingRequest pending = pendingRequests.remove(index);
     if (pending != null) {
@@ -232,6 +375,20 @@ class PendingRequests {
     }
   }
 
+  /** Reply the request at the given offset of the batch at the given index; the batch is not removed. */
+  void replyPendingRequest(long index, int offset, RaftClientReply reply) {
+    final PendingRequest pending = pendingRequests.get(index);
+    if (pending != null) {
+      Preconditions.assertTrue(pending.getIndex() == index);
+      pending.getBatch().get(offset).setReply(reply);
+    }
+  }
+
+  /** Remove the pending request at the given index, which must have been replied. */
+  void removePendingRequest(long index) {
+    pendingRequests.remove(index);
+  }
+
   /**
    * The leader state is stopped. Send NotLeaderException to all the pending
    * requests since they have not got applied to the state machine yet.
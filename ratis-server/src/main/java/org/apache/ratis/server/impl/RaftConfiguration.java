@@ -31,6 +31,10 @@ import java.util.stream.Collectors;
  * The configuration is stable if there is no on-going peer change. Otherwise,
  * the configuration is transitional, i.e. in the middle of a peer change.
  *
+ * Besides the voting peers, the configuration may have non-voting learners.
+ * The learners receive the log from the leader
+ * but they neither count toward the commit quorum nor take part in the elections.
+ *
  * The objects of this class are immutable.
  */
 public class RaftConfiguration {
@@ -43,6 +47,7 @@ public class RaftConfiguration {
   public static class Builder {
     private PeerConfiguration oldConf;
     private PeerConfiguration conf;
+    private PeerConfiguration learners = PeerConfiguration.EMPTY;
     private long logEntryIndex = RaftServerConstants.INVALID_LOG_INDEX;
 
     private boolean forceStable = false;
@@ -67,7 +72,16 @@ public class RaftConfiguration {
 
       Preconditions.assertTrue(!forceTransitional);
       forceStable = true;
-      return setConf(transitionalConf.conf);
+      return setConf(transitionalConf.conf).setLearners(transitionalConf.learners);
+    }
+
+    Builder setLearners(PeerConfiguration learners) {
+      this.learners = Objects.requireNonNull(learners);
+      return this;
+    }
+
+    public Builder setLearners(Iterable<RaftPeer> learners) {
+      return setLearners(new PeerConfiguration(learners));
     }
 
 
@@ -109,7 +123,7 @@ public class RaftConfiguration {
       if (forceStable) {
         Preconditions.assertTrue(oldConf == null);
       }
-      return new RaftConfiguration(conf, oldConf, logEntryIndex);
+      return new RaftConfiguration(conf, oldConf, learners, logEntryIndex);
     }
   }
 
@@ -120,14 +134,21 @@ public class RaftConfiguration {
    * or the new peer configuration while this configuration is transitional.
    */
   private final PeerConfiguration conf;
+  /** The non-voting learners. */
+  private final PeerConfiguration learners;
 
   /** The index of the corresponding log entry for this configuration. */
   private final long logEntryIndex;
 
   private RaftConfiguration(PeerConfiguration conf, PeerConfiguration oldConf,
-      long logEntryIndex) {
+      PeerConfiguration learners, long logEntryIndex) {
     this.conf = Objects.requireNonNull(conf);
     this.oldConf = oldConf;
+    this.learners = Objects.requireNonNull(learners);
+    for (RaftPeer learner : learners.getPeers()) {
+      Preconditions.assertTrue(!conf.contains(learner.getId()),
+          () -> "The learner " + learner + " is also a voter in " + conf);
+    }
     this.logEntryIndex = logEntryIndex;
   }
 
@@ -149,6 +170,11 @@ public class RaftConfiguration {
     return oldConf != null && oldConf.contains(peerId);
   }
 
+  /** @return true iff the given peer is a non-voting learner. */
+  public boolean isLearner(RaftPeerId peerId) {
+    return learners.contains(peerId);
+  }
+
   /**
    * @return true iff the given peer is contained in conf and,
    *         if old conf exists, is contained in old conf.
@@ -169,13 +195,13 @@ public class RaftConfiguration {
     RaftPeer peer = conf.getPeer(id);
     if (peer != null) {
       return peer;
-    } else if (oldConf != null) {
-      return oldConf.getPeer(id);
+    } else if (oldConf != null && (peer = oldConf.getPeer(id)) != null) {
+      return peer;
     }
-    return null;
+    return learners.getPeer(id);
   }
 
-  /** @return all the peers from the conf, and the old conf if it exists. */
+  /** @return all the voting peers from the conf, and the old conf if it exists. */
   public Collection<RaftPeer> getPeers() {
     final Collection<RaftPeer> peers = new ArrayList<>(conf.getPeers());
     if (oldConf != null) {
@@ -199,6 +225,18 @@ public class RaftConfiguration {
     return others;
   }
 
+  /** @return the non-voting learners. */
+  public Collection<RaftPeer> getLearners() {
+    return learners.getPeers();
+  }
+
+  /** @return all the voting peers and all the learners. */
+  public Collection<RaftPeer> getAllPeers() {
+    final Collection<RaftPeer> peers = getPeers();
+    getLearners().stream().filter(p -> !peers.contains(p)).forEach(peers::add);
+    return peers;
+  }
+
   /** @return true if the self id together with the others are in the majority. */
   boolean hasMajority(Collection<RaftPeerId> others, RaftPeerId selfId) {
     Preconditions.assertTrue(!others.contains(selfId));
@@ -208,15 +246,20 @@ public class RaftConfiguration {
 
   @Override
   public String toString() {
-    return logEntryIndex + ": " + conf + ", old=" + oldConf;
+    return logEntryIndex + ": " + conf + ", old=" + oldConf
+        + (learners.size() == 0? "": ", learners=" + learners);
+  }
+
+  boolean hasNoChange(Collection<RaftPeer> newMembers, Collection<RaftPeer> newLearners) {
+    return isStable() && hasNoChange(conf, newMembers) && hasNoChange(learners, newLearners);
   }
 
-  boolean hasNoChange(Collection<RaftPeer> newMembers) {
-    if (!isStable() || conf.size() != newMembers.size()) {
+  private static boolean hasNoChange(PeerConfiguration current, Collection<RaftPeer> newPeers) {
+    if (current.size() != newPeers.size()) {
       return false;
     }
-    for (RaftPeer peer : newMembers) {
-      if (!conf.contains(peer.getId())) {
+    for (RaftPeer peer : newPeers) {
+      if (!current.contains(peer.getId())) {
         return false;
       }
     }
@@ -259,7 +302,8 @@ public class RaftConfiguration {
     final RaftConfiguration that = (RaftConfiguration)obj;
     return this.logEntryIndex == that.logEntryIndex
         && Objects.equals(this.conf,  that.conf)
-        && Objects.equals(this.oldConf,  that.oldConf);
+        && Objects.equals(this.oldConf,  that.oldConf)
+        && Objects.equals(this.learners,  that.learners);
   }
 
   @Override
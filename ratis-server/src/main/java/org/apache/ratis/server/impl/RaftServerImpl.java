@@ -28,13 +28,13 @@ import org.apache.ratis.server.metrics.LeaderElectionMetrics;
 import org.apache.ratis.server.protocol.RaftServerAsynchronousProtocol;
 import org.apache.ratis.server.protocol.RaftServerProtocol;
 import org.apache.ratis.server.protocol.TermIndex;
-import org.apache.ratis.server.storage.FileInfo;
 import org.apache.ratis.server.raftlog.RaftLog;
 import org.apache.ratis.server.storage.RaftStorageDirectory;
 import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.statemachine.TransactionContext;
 import org.apache.ratis.thirdparty.com.google.common.annotations.VisibleForTesting;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +48,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -77,6 +78,10 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   private final int rpcSlownessTimeoutMs;
   private final int sleepDeviationThresholdMs;
   private final boolean installSnapshotEnabled;
+  private final RaftServerConfigKeys.Read.Option readOption;
+  private final TimeDuration readTimeout;
+  /** Is the read lease enabled?  If it is the case, the followers are sticky to the current leader. */
+  private final boolean readLeaseEnabled;
 
   private final LifeCycle lifeCycle;
   private final ServerState state;
@@ -91,6 +96,14 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   private final RaftServerMetrics raftServerMetrics;
 
   private AtomicReference<TermIndex> inProgressInstallSnapshotRequest;
+  private final FollowerSnapshotSender snapshotSender = new FollowerSnapshotSender(this);
+  /** The follower designated by the leader to send a snapshot to this server; guarded by this. */
+  private RaftPeerId snapshotSource;
+  /** The leader term when {@link #snapshotSource} is designated; guarded by this. */
+  private long snapshotSourceTerm;
+  private final ReadIndexRequests readIndexRequests;
+  /** Batch the write requests; null if write batching is disabled. */
+  private final WriteBatcher writeBatcher;
 
   RaftServerImpl(RaftGroup group, StateMachine stateMachine, RaftServerProxy proxy) throws IOException {
     final RaftPeerId id = proxy.getId();
@@ -105,6 +118,9 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     rpcSlownessTimeoutMs = RaftServerConfigKeys.Rpc.slownessTimeout(properties).toIntExact(TimeUnit.MILLISECONDS);
     sleepDeviationThresholdMs = RaftServerConfigKeys.sleepDeviationThreshold(properties);
     installSnapshotEnabled = RaftServerConfigKeys.Log.Appender.installSnapshotEnabled(properties);
+    readOption = RaftServerConfigKeys.Read.option(properties);
+    readTimeout = RaftServerConfigKeys.Read.timeout(properties);
+    readLeaseEnabled = RaftServerConfigKeys.Read.Lease.enabled(properties);
     Preconditions.assertTrue(maxTimeoutMs > minTimeoutMs,
         "max timeout: %s, min timeout: %s", maxTimeoutMs, minTimeoutMs);
     this.proxy = proxy;
@@ -116,6 +132,20 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     this.jmxAdapter = new RaftServerJmxAdapter();
     this.leaderElectionMetrics = LeaderElectionMetrics.getLeaderElectionMetrics(this);
     this.raftServerMetrics = RaftServerMetrics.getRaftServerMetrics(this);
+    raftServerMetrics.addTimerLagMetric(proxy.getTimer());
+    this.readIndexRequests = new ReadIndexRequests(getMemberId(), this::sendReadIndexAsync);
+    this.writeBatcher = newWriteBatcher(properties, stateMachine);
+  }
+
+  private WriteBatcher newWriteBatcher(RaftProperties properties, StateMachine stateMachine) {
+    if (!RaftServerConfigKeys.Write.Batch.enabled(properties)) {
+      return null;
+    } else if (!stateMachine.supportsWriteBatch()) {
+      LOG.warn("{}: {} is enabled but {} does not support write batch; the write requests are not batched.",
+          getMemberId(), RaftServerConfigKeys.Write.Batch.ENABLED_KEY, stateMachine);
+      return null;
+    }
+    return new WriteBatcher(getMemberId(), properties, proxy.getTimer(), this::appendTransactions);
   }
 
   private RetryCache initRetryCache(RaftProperties prop) {
@@ -179,7 +209,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       return false;
     }
     RaftConfiguration conf = getRaftConf();
-    if (conf != null && conf.contains(getId())) {
+    if (conf != null && (conf.contains(getId()) || conf.isLearner(getId()))) {
       LOG.info("{}: start as a follower, conf={}", getMemberId(), conf);
       startAsFollower();
     } else {
@@ -241,7 +271,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
   }
 
   RaftGroup getGroup() {
-    return RaftGroup.valueOf(getMemberId().getGroupId(), getRaftConf().getPeers());
+    return RaftGroup.valueOf(getMemberId().getGroupId(), getRaftConf().getAllPeers());
   }
 
   public void shutdown(boolean deleteDirectory) {
@@ -267,6 +297,10 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       } catch (Exception ignored) {
         LOG.warn("{}: Failed to shutdown LeaderState monitor", getMemberId(), ignored);
       }
+      snapshotSender.close();
+      if (writeBatcher != null) {
+        writeBatcher.close();
+      }
       try{
         state.close();
       } catch (Exception ignored) {
@@ -508,8 +542,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
       // append the message to its local log
       final LeaderState leaderState = role.getLeaderStateNonNull();
-      final PendingRequests.Permit permit = leaderState.tryAcquirePendingRequest(request.getMessage());
-      if (permit == null) {
+      if (!leaderState.tryAcquirePendingRequest(request.getMessage())) {
         cacheEntry.failWithException(new ResourceUnavailableException(
             getMemberId() + ": Failed to acquire a pending write request for " + request));
         return cacheEntry.getReplyFuture();
@@ -529,7 +562,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       }
 
       // put the request into the pending queue
-      pending = leaderState.addPendingRequest(permit, request, context);
+      pending = leaderState.addPendingRequest(request, context);
       if (pending == null) {
         cacheEntry.failWithException(new ResourceUnavailableException(
             getMemberId() + ": Failed to add a pending write request for " + request));
@@ -540,17 +573,135 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return pending.getFuture();
   }
 
+  /**
+   * Handle a batch of normal update requests from clients:
+   * append all the requests to the log as a single entry.
+   */
+  private void appendTransactions(List<WriteBatcher.Write> writes) {
+    if (writes.size() == 1) {
+      final WriteBatcher.Write w = writes.get(0);
+      try {
+        w.complete(appendTransaction(w.getRequest(), w.getContext(), w.getCacheEntry()));
+      } catch (IOException e) {
+        w.complete(JavaUtils.completeExceptionally(e));
+      }
+      return;
+    }
+
+    try {
+      assertLifeCycleState(LifeCycle.States.RUNNING);
+    } catch (ServerNotReadyException e) {
+      writes.forEach(w -> w.complete(JavaUtils.completeExceptionally(e)));
+      return;
+    }
+    synchronized (this) {
+      if (checkLeaderState(writes.get(0).getRequest(), null) != null) {
+        writes.forEach(w -> w.complete(checkLeaderState(w.getRequest(), w.getCacheEntry())));
+        return;
+      }
+
+      // append the batch to its local log
+      final LeaderState leaderState = role.getLeaderStateNonNull();
+      if (!leaderState.tryAcquirePendingRequests(WriteBatcher.getMessages(writes))) {
+        writes.forEach(w -> {
+          w.getCacheEntry().failWithException(new ResourceUnavailableException(
+              getMemberId() + ": Failed to acquire a pending write request for " + w.getRequest()));
+          w.complete(w.getCacheEntry().getReplyFuture());
+        });
+        return;
+      }
+      final List<RaftClientRequest> requests = new ArrayList<>(writes.size());
+      final List<TransactionContext> contexts = new ArrayList<>(writes.size());
+      final TransactionContext batch;
+      try {
+        // pre-append the transactions individually in the log order
+        for (WriteBatcher.Write w : writes) {
+          requests.add(w.getRequest());
+          contexts.add(w.getContext().preAppendTransaction());
+        }
+        batch = WriteBatcher.newBatchTransactionContext(stateMachine, contexts);
+        state.appendLog(batch);
+      } catch (IOException e) {
+        // the exception is thrown by the SM in the preAppend stage.
+        final StateMachineException sme = e instanceof StateMachineException? (StateMachineException) e
+            : new StateMachineException(getMemberId(), e);
+        writes.forEach(w -> {
+          final RaftClientReply exceptionReply = new RaftClientReply(w.getRequest(), sme, getCommitInfos());
+          w.getCacheEntry().failWithReply(exceptionReply);
+          w.complete(CompletableFuture.completedFuture(exceptionReply));
+        });
+        // leader will step down here
+        if (isLeader()) {
+          leaderState.submitStepDownEvent();
+        }
+        return;
+      }
+      final LogEntryProto entry = batch.getLogEntry();
+      contexts.forEach(c -> c.initLogEntry(entry.getTerm(), entry.getIndex()));
+
+      // put the requests into the pending queue
+      final List<PendingRequest> pendings = leaderState.addPendingBatch(requests, contexts, batch);
+      if (pendings == null) {
+        writes.forEach(w -> {
+          w.getCacheEntry().failWithException(new ResourceUnavailableException(
+              getMemberId() + ": Failed to add a pending write request for " + w.getRequest()));
+          w.complete(w.getCacheEntry().getReplyFuture());
+        });
+        return;
+      }
+      leaderState.notifySenders();
+      for (int i = 0; i < writes.size(); i++) {
+        writes.get(i).complete(pendings.get(i).getFuture());
+      }
+    }
+  }
+
+  /**
+   * Submit the requests in the given batch individually, in the order of the batch,
+   * and then combine the replies.
+   * The batch is failed as a whole if the leader fails to handle any of the requests,
+   * so that the client retries the batch; the retry cache dedups the requests already handled.
+   */
+  private CompletableFuture<RaftClientReply> writeBatchAsync(WriteBatchRequest batch) throws IOException {
+    final CompletableFuture<RaftClientReply> reply = checkLeaderState(batch, null);
+    if (reply != null) {
+      return reply;
+    }
+    final List<CompletableFuture<RaftClientReply>> futures = new ArrayList<>(batch.getMessages().size());
+    for (RaftClientRequest request : batch.getRequests()) {
+      futures.add(submitClientRequestAsync(request));
+    }
+    return JavaUtils.allOf(futures).thenApply(dummy -> {
+      final List<RaftClientReply> replies = futures.stream()
+          .map(CompletableFuture::join)
+          .collect(Collectors.toList());
+      for (RaftClientReply r : replies) {
+        final RaftException e = r.getNotLeaderException() != null? r.getNotLeaderException()
+            : r.getLeaderNotReadyException();
+        if (e != null) {
+          return new RaftClientReply(batch, e, getCommitInfos());
+        }
+      }
+      return new WriteBatchReply(batch, replies, getCommitInfos());
+    });
+  }
+
   @Override
   public CompletableFuture<RaftClientReply> submitClientRequestAsync(
       RaftClientRequest request) throws IOException {
     assertLifeCycleState(LifeCycle.States.RUNNING);
     LOG.debug("{}: receive client request({})", getMemberId(), request);
+    if (request instanceof WriteBatchRequest) {
+      return writeBatchAsync((WriteBatchRequest) request);
+    }
     Timer timer = raftServerMetrics.getClientRequestTimer(request);
     final Timer.Context timerContext = (timer != null) ? timer.time() : null;
 
     CompletableFuture<RaftClientReply> replyFuture;
     if (request.is(RaftClientRequestProto.TypeCase.STALEREAD)) {
       replyFuture =  staleReadAsync(request);
+    } else if (request.getType().isFollowerRead() && !isLeader()) {
+      replyFuture = followerReadAsync(request);
     } else {
       // first check the server's leader state
       CompletableFuture<RaftClientReply> reply = checkLeaderState(request, null);
@@ -572,9 +723,13 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       }
 
       if (type.is(RaftClientRequestProto.TypeCase.READ)) {
-        // TODO: We might not be the leader anymore by the time this completes.
-        // See the RAFT paper section 8 (last part)
-        replyFuture =  processQueryFuture(stateMachine.query(request.getMessage()), request);
+        if (readOption == RaftServerConfigKeys.Read.Option.LINEARIZABLE || type.isFollowerRead()) {
+          replyFuture = readAsync(request);
+        } else {
+          // TODO: We might not be the leader anymore by the time this completes.
+          // See the RAFT paper section 8 (last part)
+          replyFuture = processQueryFuture(stateMachine.query(request.getMessage()), request);
+        }
       } else if (type.is(RaftClientRequestProto.TypeCase.WATCH)) {
         replyFuture = watchAsync(request);
       } else if (type.is(RaftClientRequestProto.TypeCase.STREAM)) {
@@ -582,7 +737,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       } else {
         // query the retry cache
         RetryCache.CacheQueryResult previousResult = retryCache.queryCache(
-            request.getClientId(), request.getCallId());
+            request.getClientId(), request.getCallId(), request.getSlidingWindowEntry());
         if (previousResult.isRetry()) {
           // if the previous attempt is still pending or it succeeded, return its
           // future
@@ -599,7 +754,13 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
                 new StateMachineException(getMemberId(), context.getException()), getCommitInfos());
             cacheEntry.failWithReply(exceptionReply);
             replyFuture =  CompletableFuture.completedFuture(exceptionReply);
+          } else if (writeBatcher != null && WriteBatcher.isBatchable(context)) {
+            replyFuture = writeBatcher.add(request, context, cacheEntry);
           } else {
+            if (writeBatcher != null) {
+              // keep the order with the requests in the current batch
+              writeBatcher.flush();
+            }
             replyFuture = appendTransaction(request, context, cacheEntry);
           }
         }
@@ -621,6 +782,76 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
             new RaftClientReply(request, generateNotLeaderException(), getCommitInfos())));
   }
 
+  /**
+   * Serve a read request by the ReadIndex protocol (see the RAFT paper section 8):
+   * confirm the leadership with a round of heartbeats,
+   * wait until the read index is applied and then query the state machine.
+   * If the leadership cannot be confirmed in time, reply a {@link NotLeaderException}.
+   */
+  private CompletableFuture<RaftClientReply> readAsync(RaftClientRequest request) {
+    final CompletableFuture<Long> readIndex = role.getLeaderState()
+        .map(LeaderState::getReadIndexAsync)
+        .orElse(null);
+    if (readIndex == null) {
+      return CompletableFuture.completedFuture(
+          new RaftClientReply(request, generateNotLeaderException(), getCommitInfos()));
+    }
+    return queryAsync(readIndex, request);
+  }
+
+  /**
+   * Serve a linearizable read on a follower:
+   * request the read index from the leader,
+   * wait until the read index is applied locally and then query the state machine.
+   * The requests to the leader are batched across the concurrent reads, see {@link ReadIndexRequests}.
+   */
+  private CompletableFuture<RaftClientReply> followerReadAsync(RaftClientRequest request) {
+    try {
+      assertGroup(request.getRequestorId(), request.getRaftGroupId());
+    } catch (GroupMismatchException e) {
+      return JavaUtils.completeExceptionally(e);
+    }
+    return queryAsync(readIndexRequests.getReadIndexAsync(), request);
+  }
+
+  /** Query the state machine once the given read index is applied. */
+  private CompletableFuture<RaftClientReply> queryAsync(CompletableFuture<Long> readIndex, RaftClientRequest request) {
+    final CompletableFuture<RaftClientReply> reply = readIndex
+        .thenCompose(state::getAppliedIndexFuture)
+        // do not query the state machine in the appender or the updater threads
+        .thenComposeAsync(applied -> processQueryFuture(stateMachine.query(request.getMessage()), request))
+        .exceptionally(e -> {
+          e = JavaUtils.unwrapCompletionException(e);
+          if (e instanceof NotLeaderException) {
+            return new RaftClientReply(request, (NotLeaderException)e, getCommitInfos());
+          }
+          throw new CompletionException(e);
+        });
+    final HashedWheelTimer.Timeout timeout = proxy.getTimer().onTimeout(readTimeout, () -> {
+      if (reply.complete(new RaftClientReply(request, generateNotLeaderException(), getCommitInfos()))) {
+        LOG.warn("{}: Timeout ({}) for the linearizable read {}", getMemberId(), readTimeout, request);
+      }
+    }, LOG, () -> getMemberId() + ": Failed to timeout " + request);
+    reply.whenComplete((r, e) -> timeout.cancel());
+    return reply;
+  }
+
+  /** Send a readIndex request to the leader; a failure is converted to a {@link NotLeaderException}. */
+  private CompletableFuture<Long> sendReadIndexAsync() {
+    final RaftPeerId leaderId = state.getLeaderId();
+    if (leaderId == null || leaderId.equals(getId())) {
+      return JavaUtils.completeExceptionally(generateNotLeaderException());
+    }
+    final ReadIndexRequestProto request = ServerProtoUtils.toReadIndexRequestProto(getMemberId(), leaderId);
+    return getServerRpc().readIndexAsync(request).handle((reply, e) -> {
+      if (e != null || !reply.getServerReply().getSuccess()) {
+        LOG.debug("{}: Failed to get the read index from {}: reply={}", getMemberId(), leaderId, reply, e);
+        throw new CompletionException(generateNotLeaderException());
+      }
+      return reply.getReadIndex();
+    });
+  }
+
   private CompletableFuture<RaftClientReply> staleReadAsync(RaftClientRequest request) {
     final long minIndex = request.getType().getStaleRead().getMinIndex();
     final long commitIndex = state.getLog().getLastCommittedIndex();
@@ -716,6 +947,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     }
 
     final List<RaftPeer> peersInNewConf = request.getPeersInNewConf();
+    final List<RaftPeer> learnersInNewConf = request.getLearnersInNewConf();
     final PendingRequest pending;
     synchronized (this) {
       reply = checkLeaderState(request, null);
@@ -732,7 +964,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       }
 
       // return success with a null message if the new conf is the same as the current
-      if (current.hasNoChange(peersInNewConf)) {
+      if (current.hasNoChange(peersInNewConf, learnersInNewConf)) {
         pending = new PendingRequest(request);
         pending.setReply(new RaftClientReply(request, getCommitInfos()));
         return pending.getFuture();
@@ -740,6 +972,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
       // add new peers into the rpc service
       getServerRpc().addPeers(peersInNewConf);
+      getServerRpc().addPeers(learnersInNewConf);
       // add staging state into the leaderState
       pending = leaderState.startSetConfiguration(request);
     }
@@ -748,16 +981,22 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
   private boolean shouldWithholdVotes(long candidateTerm) {
     if (state.getCurrentTerm() < candidateTerm) {
-      return false;
+      // With the read lease, withhold the votes even for a higher term;
+      // otherwise, a new leader could be elected while the current leader still holds the lease.
+      return readLeaseEnabled && isFollowingLeader();
     } else if (isLeader()) {
       return true;
     } else {
-      // following a leader and not yet timeout
-      return isFollower() && state.hasLeader()
-          && role.getFollowerState().map(FollowerState::shouldWithholdVotes).orElse(false);
+      return isFollowingLeader();
     }
   }
 
+  /** Is this server following a leader and not yet timeout? */
+  private boolean isFollowingLeader() {
+    return isFollower() && state.hasLeader()
+        && role.getFollowerState().map(FollowerState::shouldWithholdVotes).orElse(false);
+  }
+
   /**
    * check if the remote peer is not included in the current conf
    * and should shutdown. should shutdown if all the following stands:
@@ -869,6 +1108,25 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     }
   }
 
+  @Override
+  public CompletableFuture<ReadIndexReplyProto> readIndexAsync(ReadIndexRequestProto r) throws IOException {
+    final RaftRpcRequestProto request = r.getServerRequest();
+    final RaftPeerId requestorId = RaftPeerId.valueOf(request.getRequestorId());
+    LOG.debug("{}: receive readIndex from {}", getMemberId(), requestorId);
+    assertLifeCycleState(LifeCycle.States.RUNNING);
+    assertGroup(requestorId, ProtoUtils.toRaftGroupId(request.getRaftGroupId()));
+
+    final LeaderState leaderState = role.getLeaderState().filter(LeaderState::isReady).orElse(null);
+    if (leaderState == null) {
+      return CompletableFuture.completedFuture(ServerProtoUtils.toReadIndexReplyProto(
+          requestorId, getMemberId(), false, RaftLog.INVALID_LOG_INDEX));
+    }
+    return leaderState.getReadIndexAsync()
+        .thenApply(index -> ServerProtoUtils.toReadIndexReplyProto(requestorId, getMemberId(), true, index))
+        .exceptionally(e -> ServerProtoUtils.toReadIndexReplyProto(
+            requestorId, getMemberId(), false, RaftLog.INVALID_LOG_INDEX));
+  }
+
   @Override
   public CompletableFuture<AppendEntriesReplyProto> appendEntriesAsync(AppendEntriesRequestProto r)
       throws IOException {
@@ -943,33 +1201,41 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
             + ", commits" + ProtoUtils.toString(commitInfos)
             + ", entries: " + ServerProtoUtils.toString(entries));
 
-    final long currentTerm;
     final long followerCommit = state.getLog().getLastCommittedIndex();
-    final Optional<FollowerState> followerState;
     Timer.Context timer = raftServerMetrics.getFollowerAppendEntryTimer(isHeartbeat).time();
-    synchronized (this) {
-      final boolean recognized = state.recognizeLeader(leaderId, leaderTerm);
-      currentTerm = state.getCurrentTerm();
-      if (!recognized) {
-        final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(
-            leaderId, getMemberId(), currentTerm, followerCommit, state.getNextIndex(), NOT_LEADER, callId,
-            RaftLog.INVALID_LOG_INDEX, isHeartbeat);
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("{}: Not recognize {} (term={}) as leader, state: {} reply: {}",
-              getMemberId(), leaderId, leaderTerm, state, ServerProtoUtils.toString(reply));
+    if (!isRecognizedLeaderAsFollower(leaderId, leaderTerm)) {
+      // Slow path: the leader, the term or the role may have to be changed.
+      synchronized (this) {
+        final boolean recognized = state.recognizeLeader(leaderId, leaderTerm);
+        if (!recognized) {
+          return CompletableFuture.completedFuture(
+              toNotLeaderReply(leaderId, leaderTerm, followerCommit, callId, isHeartbeat));
+        }
+        try {
+          changeToFollowerAndPersistMetadata(leaderTerm, "appendEntries");
+        } catch (IOException e) {
+          return JavaUtils.completeExceptionally(e);
+        }
+        state.setLeader(leaderId, "appendEntries");
+
+        if (!initializing && lifeCycle.compareAndTransition(STARTING, RUNNING)) {
+          role.startFollowerState(this);
         }
-        return CompletableFuture.completedFuture(reply);
-      }
-      try {
-        changeToFollowerAndPersistMetadata(leaderTerm, "appendEntries");
-      } catch (IOException e) {
-        return JavaUtils.completeExceptionally(e);
       }
-      state.setLeader(leaderId, "appendEntries");
+    }
 
-      if (!initializing && lifeCycle.compareAndTransition(STARTING, RUNNING)) {
-        role.startFollowerState(this);
+    final long currentTerm;
+    final Optional<FollowerState> followerState;
+    final List<CompletableFuture<Long>> futures;
+    // Validate and append under the append lock, which serializes with the changes of the term and the leader
+    // so that RaftServer's lock is not required for the consecutive appendEntries from the same leader.
+    try(AutoCloseableLock ignored = state.lockAppend()) {
+      if (!state.isRecognizedLeader(leaderId, leaderTerm)) {
+        // the term or the leader has been changed after the check above
+        return CompletableFuture.completedFuture(
+            toNotLeaderReply(leaderId, leaderTerm, followerCommit, callId, isHeartbeat));
       }
+      currentTerm = leaderTerm;
       followerState = updateLastRpcTime(FollowerState.UpdateType.APPEND_START);
 
       // Check that the append entries are not inconsistent. There are 3
@@ -988,10 +1254,8 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       }
 
       state.updateConfiguration(entries);
+      futures = entries.length == 0 ? Collections.emptyList() : state.getLog().append(entries);
     }
-
-    final List<CompletableFuture<Long>> futures = entries.length == 0 ? Collections.emptyList()
-        : state.getLog().append(entries);
     commitInfos.forEach(commitInfoCache::update);
 
     if (!isHeartbeat) {
@@ -1000,16 +1264,14 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return JavaUtils.allOf(futures).whenCompleteAsync(
         (r, t) -> followerState.ifPresent(fs -> fs.updateLastRpcTime(FollowerState.UpdateType.APPEND_COMPLETE))
     ).thenApply(v -> {
-      final AppendEntriesReplyProto reply;
-      synchronized(this) {
-        state.updateStatemachine(leaderCommit, currentTerm);
-        final long n = isHeartbeat? state.getLog().getNextIndex(): entries[entries.length - 1].getIndex() + 1;
-        final long matchIndex = entries.length != 0 ? entries[entries.length - 1].getIndex() :
-            RaftLog.INVALID_LOG_INDEX;
-        reply = ServerProtoUtils.toAppendEntriesReplyProto(leaderId, getMemberId(), currentTerm,
-            state.getLog().getLastCommittedIndex(), n, SUCCESS, callId, matchIndex,
-            isHeartbeat);
-      }
+      // the log and the state machine updater have their own synchronization
+      state.updateStatemachine(leaderCommit, currentTerm);
+      final long n = isHeartbeat? state.getLog().getNextIndex(): entries[entries.length - 1].getIndex() + 1;
+      final long matchIndex = entries.length != 0 ? entries[entries.length - 1].getIndex() :
+          RaftLog.INVALID_LOG_INDEX;
+      final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(leaderId, getMemberId(),
+          currentTerm, state.getLog().getLastCommittedIndex(), n, SUCCESS, callId, matchIndex,
+          isHeartbeat);
       logAppendEntries(isHeartbeat, () ->
           getMemberId() + ": succeeded to handle AppendEntries. Reply: " + ServerProtoUtils.toString(reply));
       timer.stop();  // TODO: future never completes exceptionally?
@@ -1017,21 +1279,76 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     });
   }
 
+  /**
+   * Is this server a running follower which has already recognized the given leader in the given term?
+   * If it is the case, the appendEntries request can skip the slow path, which requires RaftServer's lock.
+   */
+  private boolean isRecognizedLeaderAsFollower(RaftPeerId leaderId, long leaderTerm) {
+    return role.isFollower() && lifeCycle.getCurrentState() == RUNNING
+        && state.isRecognizedLeader(leaderId, leaderTerm);
+  }
+
+  private AppendEntriesReplyProto toNotLeaderReply(RaftPeerId leaderId, long leaderTerm, long followerCommit,
+      long callId, boolean isHeartbeat) {
+    final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(
+        leaderId, getMemberId(), state.getCurrentTerm(), followerCommit, state.getNextIndex(), NOT_LEADER, callId,
+        RaftLog.INVALID_LOG_INDEX, isHeartbeat);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("{}: Not recognize {} (term={}) as leader, state: {} reply: {}",
+          getMemberId(), leaderId, leaderTerm, state, ServerProtoUtils.toString(reply));
+    }
+    return reply;
+  }
+
   private AppendEntriesReplyProto checkInconsistentAppendEntries(RaftPeerId leaderId, long currentTerm,
       long followerCommit, TermIndex previous, long callId, boolean isHeartbeat, LogEntryProto... entries) {
-    final long replyNextIndex = checkInconsistentAppendEntries(previous, entries);
+    long replyNextIndex = checkInconsistentAppendEntries(entries);
+    TermIndex conflict = null;
+    // Check if "previous" is contained in current state.
+    if (replyNextIndex == -1 && previous != null && !state.containsTermIndex(previous)) {
+      conflict = getConflict(state.getLog(), previous);
+      replyNextIndex = conflict != null? conflict.getIndex(): Math.min(state.getNextIndex(), previous.getIndex());
+      LOG.info("{}: Failed appendEntries as previous log entry ({}) is not found, conflict={}",
+          getMemberId(), previous, conflict);
+    }
     if (replyNextIndex == -1) {
       return null;
     }
 
     final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(
         leaderId, getMemberId(), currentTerm, followerCommit, replyNextIndex, INCONSISTENCY, callId,
-        RaftLog.INVALID_LOG_INDEX, isHeartbeat);
+        RaftLog.INVALID_LOG_INDEX, isHeartbeat, conflict, getLatestSnapshotIndex());
     LOG.info("{}: inconsistency entries. Reply:{}", getMemberId(), ServerProtoUtils.toString(reply));
     return reply;
   }
 
-  private long checkInconsistentAppendEntries(TermIndex previous, LogEntryProto... entries) {
+  /**
+   * @return the index of the latest snapshot of the state machine;
+   *         or {@link RaftLog#INVALID_LOG_INDEX} if there is no snapshot.
+   */
+  private long getLatestSnapshotIndex() {
+    final SnapshotInfo snapshot = stateMachine.getLatestSnapshot();
+    return snapshot != null? snapshot.getIndex(): RaftLog.INVALID_LOG_INDEX;
+  }
+
+  /**
+   * The local log has an entry at the index of the given previous entry but with a different term.
+   * Find the first uncommitted index of the conflicting term
+   * so that the leader could skip over the entire term instead of backtracking one index at a time.
+   *
+   * @return the conflicting term and its first index; or null if there is no conflicting entry.
+   */
+  static TermIndex getConflict(RaftLog log, TermIndex previous) {
+    final TermIndex local = log.getTermIndex(previous.getIndex());
+    if (local == null || local.getTerm() <= 0) {
+      return null;
+    }
+    final long firstIndex = log.getFirstIndexOfTerm(
+        local.getTerm(), log.getLastCommittedIndex() + 1, local.getIndex());
+    return firstIndex == RaftLog.INVALID_LOG_INDEX? null: TermIndex.newTermIndex(local.getTerm(), firstIndex);
+  }
+
+  private long checkInconsistentAppendEntries(LogEntryProto... entries) {
     // Check if a snapshot installation through state machine is in progress.
     final TermIndex installSnapshot = inProgressInstallSnapshotRequest.get();
     if (installSnapshot != null) {
@@ -1058,13 +1375,6 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       }
     }
 
-    // Check if "previous" is contained in current state.
-    if (previous != null && !state.containsTermIndex(previous)) {
-      final long replyNextIndex = Math.min(state.getNextIndex(), previous.getIndex());
-      LOG.info("{}: Failed appendEntries as previous log entry ({}) is not found", getMemberId(), previous);
-      return replyNextIndex;
-    }
-
     return -1;
   }
 
@@ -1088,19 +1398,29 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
   private InstallSnapshotReplyProto installSnapshotImpl(InstallSnapshotRequestProto request) throws IOException {
     final RaftRpcRequestProto r = request.getServerRequest();
-    final RaftPeerId leaderId = RaftPeerId.valueOf(r.getRequestorId());
+    final RaftPeerId requestorId = RaftPeerId.valueOf(r.getRequestorId());
     final RaftGroupId leaderGroupId = ProtoUtils.toRaftGroupId(r.getRaftGroupId());
     CodeInjectionForTesting.execute(INSTALL_SNAPSHOT, getId(),
-        leaderId, request);
+        requestorId, request);
 
     assertLifeCycleState(LifeCycle.States.STARTING_OR_RUNNING);
-    assertGroup(leaderId, leaderGroupId);
+    assertGroup(requestorId, leaderGroupId);
+
+    // The snapshot chunks may be sent by another follower on behalf of the leader.
+    final ByteString chunkLeaderId = request.getSnapshotChunk().getLeaderId();
+    final RaftPeerId leaderId = chunkLeaderId.isEmpty()? requestorId: RaftPeerId.valueOf(chunkLeaderId);
 
     // Check if install snapshot from Leader is enabled
     if (installSnapshotEnabled) {
       // Leader has sent InstallSnapshot request with SnapshotInfo. Install the snapshot.
       if (request.hasSnapshotChunk()) {
-        return checkAndInstallSnapshot(request, leaderId);
+        return checkAndInstallSnapshot(request, requestorId, leaderId);
+      } else if (request.hasSendSnapshot()) {
+        // Leader has directed this server to send its snapshot to another follower.
+        return snapshotSender.sendSnapshot(request, leaderId);
+      } else if (request.hasSnapshotSource()) {
+        // Leader has designated another follower to send its snapshot to this server.
+        return designateSnapshotSource(request, leaderId);
       }
     } else {
       // Leader has only sent a notification to install snapshot. Inform State Machine to install snapshot.
@@ -1110,50 +1430,79 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     }
     // There is a mismatch between configurations on leader and follower.
     final InstallSnapshotReplyProto reply = ServerProtoUtils.toInstallSnapshotReplyProto(
-        leaderId, getMemberId(), InstallSnapshotResult.CONF_MISMATCH);
+        requestorId, getMemberId(), InstallSnapshotResult.CONF_MISMATCH);
     LOG.error("{}: Configuration Mismatch ({}): Leader {} has it set to {} but follower {} has it set to {}",
         getMemberId(), RaftServerConfigKeys.Log.Appender.INSTALL_SNAPSHOT_ENABLED_KEY,
         leaderId, request.hasSnapshotChunk(), getId(), installSnapshotEnabled);
     return reply;
   }
 
+  /**
+   * @param requestorId the sender of the request,
+   *                    which is either the leader or a follower sending the snapshot on behalf of the leader.
+   */
   private InstallSnapshotReplyProto checkAndInstallSnapshot(
-      InstallSnapshotRequestProto request, RaftPeerId leaderId) throws IOException {
+      InstallSnapshotRequestProto request, RaftPeerId requestorId, RaftPeerId leaderId) throws IOException {
     final long currentTerm;
     final long leaderTerm = request.getLeaderTerm();
     InstallSnapshotRequestProto.SnapshotChunkProto snapshotChunkRequest = request.getSnapshotChunk();
     final TermIndex lastTermIndex = ServerProtoUtils.toTermIndex(snapshotChunkRequest.getTermIndex());
     final long lastIncludedIndex = lastTermIndex.getIndex();
+    final boolean installChunkWithoutLock;
+    boolean synced = false;
     synchronized (this) {
       final boolean recognized = state.recognizeLeader(leaderId, leaderTerm);
       currentTerm = state.getCurrentTerm();
       if (!recognized) {
-        final InstallSnapshotReplyProto reply = ServerProtoUtils.toInstallSnapshotReplyProto(leaderId, getMemberId(),
-            currentTerm, snapshotChunkRequest.getRequestIndex(), InstallSnapshotResult.NOT_LEADER);
+        final InstallSnapshotReplyProto reply = ServerProtoUtils.toInstallSnapshotReplyProto(requestorId,
+            getMemberId(), currentTerm, snapshotChunkRequest.getRequestIndex(), InstallSnapshotResult.NOT_LEADER);
         LOG.warn("{}: Failed to recognize leader for installSnapshot chunk.", getMemberId());
         return reply;
       }
+      final boolean relayed = !requestorId.equals(leaderId);
+      if (relayed && (!requestorId.equals(snapshotSource) || leaderTerm != snapshotSourceTerm)) {
+        LOG.warn("{}: Rejected installSnapshot chunk from {} since it is not designated by leader {} (term={})",
+            getMemberId(), requestorId, leaderId, leaderTerm);
+        return ServerProtoUtils.toInstallSnapshotReplyProto(requestorId, getMemberId(),
+            currentTerm, snapshotChunkRequest.getRequestIndex(), InstallSnapshotResult.NOT_LEADER);
+      }
       changeToFollowerAndPersistMetadata(leaderTerm, "installSnapshot");
       state.setLeader(leaderId, "installSnapshot");
 
       updateLastRpcTime(FollowerState.UpdateType.INSTALL_SNAPSHOT_START);
-      try {
-        // Check and append the snapshot chunk. We simply put this in lock
-        // considering a follower peer requiring a snapshot installation does not
-        // have a lot of requests
-        Preconditions.assertTrue(
-            state.getLog().getNextIndex() <= lastIncludedIndex,
-            "%s log's next id is %s, last included index in snapshot is %s",
-            getMemberId(), state.getLog().getNextIndex(), lastIncludedIndex);
-
-        //TODO: We should only update State with installed snapshot once the request is done.
-        state.installSnapshot(request);
-
-        // update the committed index
-        // re-load the state machine if this is the last chunk
-        if (snapshotChunkRequest.getDone()) {
-          state.reloadStateMachine(lastIncludedIndex, leaderTerm);
+      // The chunks between the first and the last chunks are installed without the server lock,
+      // so that the chunks of different files sent over parallel streams are written concurrently.
+      installChunkWithoutLock = snapshotChunkRequest.getRequestIndex() != 0 && !snapshotChunkRequest.getDone()
+          && state.isInstallingSnapshot();
+      if (!installChunkWithoutLock) {
+        try (AutoCloseableLock ignored = state.lockAppend()) {
+          // Check and append the snapshot chunk. We simply put this in lock
+          // considering a follower peer requiring a snapshot installation does not
+          // have a lot of requests
+          Preconditions.assertTrue(
+              state.getLog().getNextIndex() <= lastIncludedIndex,
+              "%s log's next id is %s, last included index in snapshot is %s",
+              getMemberId(), state.getLog().getNextIndex(), lastIncludedIndex);
+
+          //TODO: We should only update State with installed snapshot once the request is done.
+          synced = state.installSnapshot(request);
+
+          // update the committed index
+          // re-load the state machine if this is the last chunk
+          if (snapshotChunkRequest.getDone()) {
+            state.reloadStateMachine(lastIncludedIndex);
+            if (relayed) {
+              snapshotSource = null;
+            }
+          }
+        } finally {
+          updateLastRpcTime(FollowerState.UpdateType.INSTALL_SNAPSHOT_COMPLETE);
         }
+      }
+    }
+    if (installChunkWithoutLock) {
+      try {
+        synced = state.installSnapshotChunk(request);
       } finally {
         updateLastRpcTime(FollowerState.UpdateType.INSTALL_SNAPSHOT_COMPLETE);
       }
@@ -1161,8 +1510,37 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     if (snapshotChunkRequest.getDone()) {
       LOG.info("{}: successfully install the entire snapshot-{}", getMemberId(), lastIncludedIndex);
     }
+    return ServerProtoUtils.toInstallSnapshotReplyProto(requestorId, getMemberId(),
+        currentTerm, snapshotChunkRequest.getRequestIndex(), InstallSnapshotResult.SUCCESS, synced);
+  }
+
+  /**
+   * Record the follower designated by the leader to send a snapshot to this server,
+   * so that only the chunks from that follower are accepted on behalf of the leader.
+   */
+  private InstallSnapshotReplyProto designateSnapshotSource(
+      InstallSnapshotRequestProto request, RaftPeerId leaderId) throws IOException {
+    final long leaderTerm = request.getLeaderTerm();
+    final RaftPeerId source = RaftPeerId.valueOf(request.getSnapshotSource().getSourceId());
+    final long currentTerm;
+    synchronized (this) {
+      final boolean recognized = state.recognizeLeader(leaderId, leaderTerm);
+      currentTerm = state.getCurrentTerm();
+      if (!recognized) {
+        LOG.warn("{}: Failed to recognize leader for designating snapshot source {}.", getMemberId(), source);
+        return ServerProtoUtils.toInstallSnapshotReplyProto(leaderId, getMemberId(),
+            currentTerm, InstallSnapshotResult.NOT_LEADER, null);
+      }
+      changeToFollowerAndPersistMetadata(leaderTerm, "installSnapshot");
+      state.setLeader(leaderId, "installSnapshot");
+      updateLastRpcTime(FollowerState.UpdateType.INSTALL_SNAPSHOT_NOTIFICATION);
+
+      snapshotSource = source;
+      snapshotSourceTerm = leaderTerm;
+    }
+    LOG.info("{}: Leader {} designates {} to send a snapshot", getMemberId(), leaderId, source);
     return ServerProtoUtils.toInstallSnapshotReplyProto(leaderId, getMemberId(),
-        currentTerm, snapshotChunkRequest.getRequestIndex(), InstallSnapshotResult.SUCCESS);
+        currentTerm, InstallSnapshotResult.SUCCESS, null);
   }
 
   private InstallSnapshotReplyProto notifyStateMachineToInstallSnapshot(
@@ -1218,7 +1596,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
 
               if (reply != null) {
                 stateMachine.pause();
-                state.reloadStateMachine(reply.getIndex(), leaderTerm);
+                state.reloadStateMachine(reply.getIndex());
                 state.updateInstalledSnapshotIndex(reply);
               }
               inProgressInstallSnapshotRequest.compareAndSet(firstAvailableLogTermIndex, null);
@@ -1235,17 +1613,6 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     }
   }
 
-  synchronized InstallSnapshotRequestProto createInstallSnapshotRequest(
-      RaftPeerId targetId, String requestId, int requestIndex,
-      SnapshotInfo snapshot, List<FileChunkProto> chunks, boolean done) {
-    OptionalLong totalSize = snapshot.getFiles().stream()
-        .mapToLong(FileInfo::getFileSize).reduce(Long::sum);
-    assert totalSize.isPresent();
-    return ServerProtoUtils.toInstallSnapshotRequestProto(getMemberId(), targetId,
-        requestId, requestIndex, state.getCurrentTerm(), snapshot.getTermIndex(),
-        chunks, totalSize.getAsLong(), done);
-  }
-
   synchronized InstallSnapshotRequestProto createInstallSnapshotRequest(
       RaftPeerId targetId, TermIndex firstAvailableLogTermIndex) {
     assert (firstAvailableLogTermIndex.getIndex() > 0);
@@ -1271,6 +1638,24 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
    */
   private CompletableFuture<Message> replyPendingRequest(
       LogEntryProto logEntry, CompletableFuture<Message> stateMachineFuture) {
+    final long logIndex = logEntry.getIndex();
+    return replyPendingRequest(logEntry, stateMachineFuture,
+        r -> updatePendingRequests(leader -> leader.replyPendingRequest(logIndex, r)));
+  }
+
+  private synchronized void updatePendingRequests(Consumer<LeaderState> update) {
+    final LeaderState leaderState = role.getLeaderState().orElse(null);
+    if (isLeader() && leaderState != null) { // is leader and is running
+      update.accept(leaderState);
+    }
+  }
+
+  /**
+   * Build the reply from the given state machine future,
+   * and then use it to update the pending request and the retry cache.
+   */
+  private CompletableFuture<Message> replyPendingRequest(LogEntryProto logEntry,
+      CompletableFuture<Message> stateMachineFuture, Consumer<RaftClientReply> replyPending) {
     Preconditions.assertTrue(logEntry.hasStateMachineLogEntry());
     final StateMachineLogEntryProto smLog = logEntry.getStateMachineLogEntry();
     // update the retry cache
@@ -1282,7 +1667,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
               "retry cache entry should be pending: %s", cacheEntry);
     }
     if (cacheEntry.isFailed()) {
-      retryCache.refreshEntry(new RetryCache.CacheEntry(cacheEntry.getKey()));
+      retryCache.refreshEntry(new RetryCache.CacheEntry(cacheEntry.getKey(), cacheEntry.getSeqNum()));
     }
 
     final long logIndex = logEntry.getIndex();
@@ -1298,12 +1683,7 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       }
 
       // update pending request
-      synchronized (RaftServerImpl.this) {
-        final LeaderState leaderState = role.getLeaderState().orElse(null);
-        if (isLeader() && leaderState != null) { // is leader and is running
-          leaderState.replyPendingRequest(logIndex, r);
-        }
-      }
+      replyPending.accept(r);
       cacheEntry.updateResult(r);
     });
   }
@@ -1324,15 +1704,13 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
       // the reply should have already been set. only need to record
       // the new conf in the metadata file.
       state.writeRaftConfiguration(next);
+    } else if (ServerProtoUtils.isBatch(next)) {
+      return applyLogsToStateMachine(Collections.singletonList(next));
     } else if (next.hasStateMachineLogEntry()) {
       // check whether there is a TransactionContext because we are the leader.
       TransactionContext trx = role.getLeaderState()
           .map(leader -> leader.getTransactionContext(next.getIndex())).orElseGet(
-              () -> TransactionContext.newBuilder()
-                  .setServerRole(role.getCurrentRole())
-                  .setStateMachine(stateMachine)
-                  .setLogEntry(next)
-                  .build());
+              () -> newTransactionContext(next));
 
       // Let the StateMachine inject logic for committed transactions in sequential order.
       trx = stateMachine.applyTransactionSerial(trx);
@@ -1351,6 +1729,84 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
     return null;
   }
 
+  /**
+   * Apply the transactions in the given state machine log entries,
+   * including the transactions in the batch entries, using {@link StateMachine#applyTransactions(List)}.
+   * The pending requests are replied individually.
+   *
+   * @param entries consecutive log entries, each of which has a state machine log entry.
+   * @return a future which completes once all the transactions have been applied.
+   */
+  CompletableFuture<Message> applyLogsToStateMachine(List<LogEntryProto> entries) {
+    return applyLogsToStateMachine(entries, getStateMachine()::applyTransactions);
+  }
+
+  /**
+   * The same as {@link #applyLogsToStateMachine(List)}
+   * except that the transactions are applied by the given function.
+   */
+  CompletableFuture<Message> applyLogsToStateMachine(List<LogEntryProto> entries,
+      Function<List<TransactionContext>, List<CompletableFuture<Message>>> applyTransactions) {
+    final Optional<LeaderState> leader = role.getLeaderState();
+    final List<LogEntryProto> transactionEntries = new ArrayList<>();
+    final List<TransactionContext> transactions = new ArrayList<>();
+    final List<Consumer<RaftClientReply>> replyPendings = new ArrayList<>();
+    final List<Long> batchIndices = new ArrayList<>();
+    for (LogEntryProto entry : entries) {
+      Preconditions.assertTrue(entry.hasStateMachineLogEntry(),
+          () -> "Unexpected entry " + ServerProtoUtils.toString(entry));
+      final long logIndex = entry.getIndex();
+      // check whether there are TransactionContexts because we are the leader.
+      if (ServerProtoUtils.isBatch(entry)) {
+        final List<LogEntryProto> batch = ServerProtoUtils.toBatchedLogEntryProtos(entry);
+        transactionEntries.addAll(batch);
+        transactions.addAll(leader.map(l -> l.getBatchTransactionContexts(logIndex)).orElseGet(
+            () -> batch.stream().map(this::newTransactionContext).collect(Collectors.toList())));
+        for (int i = 0; i < batch.size(); i++) {
+          final int offset = i;
+          replyPendings.add(r -> updatePendingRequests(l -> l.replyPendingRequest(logIndex, offset, r)));
+        }
+        batchIndices.add(logIndex);
+      } else {
+        transactionEntries.add(entry);
+        transactions.add(leader.map(l -> l.getTransactionContext(logIndex)).orElseGet(
+            () -> newTransactionContext(entry)));
+        replyPendings.add(r -> updatePendingRequests(l -> l.replyPendingRequest(logIndex, r)));
+      }
+    }
+
+    final List<CompletableFuture<Message>> stateMachineFutures;
+    try {
+      stateMachineFutures = applyTransactions.apply(transactions);
+    } catch (Throwable e) {
+      LOG.error("{}: applyTransactions failed for {} entries from index {}",
+          getMemberId(), entries.size(), entries.get(0).getIndex(), e);
+      throw e;
+    }
+    Preconditions.assertTrue(stateMachineFutures.size() == transactions.size(),
+        () -> "The number of futures " + stateMachineFutures.size()
+            + " does not match the number of transactions " + transactions.size());
+
+    final List<CompletableFuture<Message>> futures = new ArrayList<>(transactions.size());
+    for (int i = 0; i < transactions.size(); i++) {
+      futures.add(replyPendingRequest(transactionEntries.get(i), stateMachineFutures.get(i), replyPendings.get(i)));
+    }
+    final CompletableFuture<Void> applied = JavaUtils.allOf(futures);
+    if (!batchIndices.isEmpty()) {
+      // the pending batches are removed once all the requests in the batches have been replied.
+      applied.whenComplete((dummy, e) -> updatePendingRequests(l -> batchIndices.forEach(l::removePendingRequest)));
+    }
+    return applied.thenApply(dummy -> null);
+  }
+
+  private TransactionContext newTransactionContext(LogEntryProto entry) {
+    return TransactionContext.newBuilder()
+        .setServerRole(role.getCurrentRole())
+        .setStateMachine(stateMachine)
+        .setLogEntry(entry)
+        .build();
+  }
+
   /**
    * The given log entry is being truncated.
    * Fail the corresponding client request, if there is any.
@@ -1358,7 +1814,9 @@ public class RaftServerImpl implements RaftServerProtocol, RaftServerAsynchronou
    * @param logEntry the log entry being truncated
    */
   public void notifyTruncatedLogEntry(LogEntryProto logEntry) {
-    if (logEntry.hasStateMachineLogEntry()) {
+    if (ServerProtoUtils.isBatch(logEntry)) {
+      ServerProtoUtils.toBatchedLogEntryProtos(logEntry).forEach(this::notifyTruncatedLogEntry);
+    } else if (logEntry.hasStateMachineLogEntry()) {
       final StateMachineLogEntryProto smLog = logEntry.getStateMachineLogEntry();
       final ClientId clientId = ClientId.valueOf(smLog.getClientId());
       final long callId = smLog.getCallId();
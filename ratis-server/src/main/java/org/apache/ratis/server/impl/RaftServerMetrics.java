@@ -23,6 +23,7 @@ import static org.apache.ratis.server.metrics.RaftLogMetrics.FOLLOWER_APPEND_ENT
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
@@ -37,6 +38,7 @@ import org.apache.ratis.protocol.RaftPeer;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.server.metrics.RatisMetrics;
 import org.apache.ratis.thirdparty.com.google.common.annotations.VisibleForTesting;
+import org.apache.ratis.util.HashedWheelTimer;
 import org.apache.ratis.util.Preconditions;
 
 /**
@@ -64,6 +66,11 @@ public final class RaftServerMetrics extends RatisMetrics {
   public static final String RETRY_CACHE_HIT_RATE_METRIC = "retryCacheHitRate";
   public static final String RETRY_CACHE_MISS_COUNT_METRIC = "retryCacheMissCount";
   public static final String RETRY_CACHE_MISS_RATE_METRIC = "retryCacheMissRate";
+  public static final String LOG_APPENDER_THROTTLED_TIME = "logAppenderThrottledTime";
+  public static final String READ_LEASE_HIT_COUNT_METRIC = "readLeaseHitCount";
+  public static final String READ_LEASE_EXPIRED_COUNT_METRIC = "readLeaseExpiredCount";
+  public static final String READ_LEASE_HIT_RATIO_METRIC = "readLeaseHitRatio";
+  public static final String TIMER_SHARD_LAG_METRIC = "timerShard%dLagMs";
 
   private Map<String, Long> followerLastHeartbeatElapsedTimeMap = new HashMap<>();
   private CommitInfoCache commitInfoCache;
@@ -82,6 +89,7 @@ public final class RaftServerMetrics extends RatisMetrics {
     commitInfoCache = server.getCommitInfoCache();
     addPeerCommitIndexGauge(server.getId());
     addRetryCacheMetric(server);
+    addReadLeaseMetric();
   }
 
   private RatisMetricRegistry getMetricRegistryForRaftServer(String serverId) {
@@ -98,6 +106,25 @@ public final class RaftServerMetrics extends RatisMetrics {
     registry.gauge(RETRY_CACHE_MISS_RATE_METRIC, () -> () -> raftServer.getRetryCache().stats().missRate());
   }
 
+  /** Add the lag of each shard of the given timer. */
+  void addTimerLagMetric(HashedWheelTimer timer) {
+    for(int i = 0; i < timer.getNumShards(); i++) {
+      final int shard = i;
+      registry.gauge(String.format(TIMER_SHARD_LAG_METRIC, shard),
+          () -> () -> timer.getLag(shard).toLong(TimeUnit.MILLISECONDS));
+    }
+  }
+
+  private void addReadLeaseMetric() {
+    final Counter hit = registry.counter(READ_LEASE_HIT_COUNT_METRIC);
+    final Counter expired = registry.counter(READ_LEASE_EXPIRED_COUNT_METRIC);
+    registry.gauge(READ_LEASE_HIT_RATIO_METRIC, () -> () -> {
+      final long h = hit.getCount();
+      final long total = h + expired.getCount();
+      return total == 0? 0.0: (double) h / total;
+    });
+  }
+
   /**
    * Register a follower with this Leader Metrics registry instance.
    * @param peer {@Link RaftPeer} representing the follower
@@ -214,6 +241,18 @@ public final class RaftServerMetrics extends RatisMetrics {
     registry.counter(RESOURCE_LIMIT_HIT_COUNTER).inc();
   }
 
+  void onReadLeaseHit() {
+    registry.counter(READ_LEASE_HIT_COUNT_METRIC).inc();
+  }
+
+  void onReadLeaseExpired() {
+    registry.counter(READ_LEASE_EXPIRED_COUNT_METRIC).inc();
+  }
+
+  void onLogAppenderThrottled(long nanos) {
+    registry.timer(LOG_APPENDER_THROTTLED_TIME).update(nanos, TimeUnit.NANOSECONDS);
+  }
+
   public RatisMetricRegistry getRegistry() {
     return registry;
   }
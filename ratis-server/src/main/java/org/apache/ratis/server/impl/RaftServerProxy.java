@@ -26,6 +26,8 @@ import org.apache.ratis.proto.RaftProtos.CommitInfoProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
 import org.apache.ratis.proto.RaftProtos.RaftRpcRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteReplyProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteRequestProto;
 import org.apache.ratis.protocol.*;
@@ -34,6 +36,7 @@ import org.apache.ratis.server.RaftServer;
 import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.RaftServerRpc;
 import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.HashedWheelTimer;
 import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.LifeCycle;
@@ -156,6 +159,8 @@ public class RaftServerProxy implements RaftServer {
 
   private final RaftServerRpc serverRpc;
   private final ServerFactory factory;
+  private final TransferThrottler transferThrottler;
+  private final HashedWheelTimer timer;
 
   private ExecutorService implExecutor;
 
@@ -172,6 +177,8 @@ public class RaftServerProxy implements RaftServer {
     this.serverRpc = factory.newRaftServerRpc(this);
     this.id = id != null? id: RaftPeerId.valueOf(getIdStringFrom(serverRpc));
     this.lifeCycle = new LifeCycle(this.id + "-" + getClass().getSimpleName());
+    this.transferThrottler = new TransferThrottler(properties);
+    this.timer = HashedWheelTimer.newInstance(this.id + "-timer", properties);
 
     this.implExecutor = Executors.newSingleThreadExecutor();
   }
@@ -257,6 +264,16 @@ public class RaftServerProxy implements RaftServer {
     return serverRpc;
   }
 
+  /** @return the throttler shared by the background transfers of all the groups. */
+  TransferThrottler getTransferThrottler() {
+    return transferThrottler;
+  }
+
+  /** @return the timer shared by the request timeouts of all the groups. */
+  public HashedWheelTimer getTimer() {
+    return timer;
+  }
+
   public boolean containsGroup(RaftGroupId groupId) {
     return impls.containsGroup(groupId);
   }
@@ -319,6 +336,7 @@ public class RaftServerProxy implements RaftServer {
       } catch(IOException ignored) {
         LOG.warn(getId() + ": Failed to close " + getRpcType() + " server", ignored);
       }
+      timer.close();
     });
   }
 
@@ -455,6 +473,12 @@ public class RaftServerProxy implements RaftServer {
     return submitRequest(groupId, impl -> impl.appendEntriesAsync(request));
   }
 
+  @Override
+  public CompletableFuture<ReadIndexReplyProto> readIndexAsync(ReadIndexRequestProto request) {
+    final RaftGroupId groupId = ProtoUtils.toRaftGroupId(request.getServerRequest().getRaftGroupId());
+    return submitRequest(groupId, impl -> impl.readIndexAsync(request));
+  }
+
   @Override
   public AppendEntriesReplyProto appendEntries(AppendEntriesRequestProto request) throws IOException {
     return getImpl(request.getServerRequest()).appendEntries(request);
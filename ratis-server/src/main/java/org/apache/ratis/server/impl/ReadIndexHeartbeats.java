@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Confirm the leadership for the ReadIndex requests by rounds of heartbeats.
+ * A round is confirmed once a majority of the voters, including the leader itself,
+ * have replied to an appendEntries request which was sent after the round started.
+ *
+ * The requests are batched:
+ * the requests arriving while a round is in progress wait for the next round,
+ * so that there is at most one round in progress at any time.
+ */
+class ReadIndexHeartbeats {
+  static final Logger LOG = LoggerFactory.getLogger(ReadIndexHeartbeats.class);
+
+  private final String name;
+  private final Runnable notifySenders;
+
+  /** The current round; it is increased when a new round starts. */
+  private volatile long round = 0;
+  /** The acked rounds of the voters. */
+  private VoterIndices voters;
+  /** The future of the current round; null if there is no round in progress. */
+  private CompletableFuture<Void> current;
+  /** The future of the next round; null if no requests are waiting for the next round. */
+  private CompletableFuture<Void> next;
+
+  ReadIndexHeartbeats(Object name, Runnable notifySenders) {
+    this.name = name + "-" + getClass().getSimpleName();
+    this.notifySenders = notifySenders;
+  }
+
+  /** @return the current round. */
+  long getRound() {
+    return round;
+  }
+
+  void setVoters(VoterIndices voters) {
+    synchronized (this) {
+      this.voters = voters;
+    }
+    // the new configuration may have a different majority
+    check();
+  }
+
+  /** @return a future which completes when a round started after this call is confirmed. */
+  CompletableFuture<Void> confirm() {
+    final CompletableFuture<Void> f;
+    final long r;
+    synchronized (this) {
+      if (current != null) {
+        if (next == null) {
+          next = new CompletableFuture<>();
+        }
+        return next;
+      }
+      f = current = new CompletableFuture<>();
+      r = ++round;
+    }
+    LOG.debug("{}: start round {}", name, r);
+    notifySenders.run();
+    // it can be confirmed immediately if the leader is the only voter
+    check();
+    return f;
+  }
+
+  /** Check if the current round is confirmed; if so, complete it and start the next round if there is any. */
+  void check() {
+    for(;;) {
+      final CompletableFuture<Void> confirmed;
+      final boolean started;
+      synchronized (this) {
+        if (current == null || voters == null || !voters.update() || voters.getMajority() < round) {
+          return;
+        }
+        confirmed = current;
+        current = next;
+        next = null;
+        started = current != null;
+        if (started) {
+          round++;
+        }
+      }
+      confirmed.complete(null);
+      if (!started) {
+        return;
+      }
+      notifySenders.run();
+    }
+  }
+
+  /** Fail all the rounds, including the current round and the next round. */
+  void fail(Exception e) {
+    final CompletableFuture<Void> c;
+    final CompletableFuture<Void> n;
+    synchronized (this) {
+      c = current;
+      n = next;
+      current = null;
+      next = null;
+    }
+    if (c != null) {
+      c.completeExceptionally(e);
+    }
+    if (n != null) {
+      n.completeExceptionally(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.util.JavaUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Request the read index from the leader for the linearizable reads served by a follower.
+ *
+ * The requests are batched:
+ * the reads arriving while a request is in progress wait for the next request,
+ * since the read index of the request in progress may be computed by the leader before the reads arrived.
+ * Therefore, there is at most one request in progress at any time.
+ */
+class ReadIndexRequests {
+  static final Logger LOG = LoggerFactory.getLogger(ReadIndexRequests.class);
+
+  private final String name;
+  /** Send a request to the leader and return a future of the read index. */
+  private final Supplier<CompletableFuture<Long>> sendRequest;
+
+  /** The future of the request in progress; null if there is no request in progress. */
+  private CompletableFuture<Long> current;
+  /** The future of the next request; null if no reads are waiting for the next request. */
+  private CompletableFuture<Long> next;
+
+  ReadIndexRequests(Object name, Supplier<CompletableFuture<Long>> sendRequest) {
+    this.name = name + "-" + getClass().getSimpleName();
+    this.sendRequest = sendRequest;
+  }
+
+  /** @return a future of the read index from a request sent after this call. */
+  CompletableFuture<Long> getReadIndexAsync() {
+    final CompletableFuture<Long> f;
+    synchronized (this) {
+      if (current != null) {
+        if (next == null) {
+          next = new CompletableFuture<>();
+        }
+        return next;
+      }
+      f = current = new CompletableFuture<>();
+    }
+    send(f);
+    return f;
+  }
+
+  private void send(CompletableFuture<Long> f) {
+    CompletableFuture<Long> sent;
+    try {
+      sent = sendRequest.get();
+    } catch (Throwable t) {
+      sent = JavaUtils.completeExceptionally(t);
+    }
+    sent.whenComplete((readIndex, e) -> {
+      if (e != null) {
+        LOG.debug("{}: Failed to get the read index", name, e);
+        f.completeExceptionally(e);
+      } else {
+        f.complete(readIndex);
+      }
+      final CompletableFuture<Long> n;
+      synchronized (this) {
+        n = current = next;
+        next = null;
+      }
+      if (n != null) {
+        send(n);
+      }
+    });
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
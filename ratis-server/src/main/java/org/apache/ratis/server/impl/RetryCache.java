@@ -18,20 +18,34 @@
 package org.apache.ratis.server.impl;
 
 import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.apache.ratis.proto.RaftProtos.SlidingWindowEntry;
 import org.apache.ratis.protocol.ClientId;
 import org.apache.ratis.protocol.RaftClientReply;
 import org.apache.ratis.thirdparty.com.google.common.annotations.VisibleForTesting;
-import org.apache.ratis.thirdparty.com.google.common.cache.Cache;
-import org.apache.ratis.thirdparty.com.google.common.cache.CacheBuilder;
-import org.apache.ratis.thirdparty.com.google.common.cache.CacheStats;
 import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.Preconditions;
 import org.apache.ratis.util.TimeDuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The retry cache, which is organized per client.
+ * The entries of a client are kept in a hash table with the callIds as primitive keys.
+ *
+ * An entry is evicted when it expires,
+ * or when the client has received the reply, i.e. a subsequent request of the client
+ * is the first request of a sliding window (see {@link SlidingWindowEntry#getIsFirst()}).
+ */
 public class RetryCache implements Closeable {
   static final Logger LOG = LoggerFactory.getLogger(RetryCache.class);
 
@@ -44,6 +58,14 @@ public class RetryCache implements Closeable {
       this.callId = callId;
     }
 
+    ClientId getClientId() {
+      return clientId;
+    }
+
+    long getCallId() {
+      return callId;
+    }
+
     @Override
     public int hashCode() {
       return clientId.hashCode() ^ Long.hashCode(callId);
@@ -73,6 +95,9 @@ public class RetryCache implements Closeable {
   @VisibleForTesting
   public static class CacheEntry {
     private final CacheKey key;
+    /** The sequence number of the sliding window request; 0 for non-sliding-window requests. */
+    private final long seqNum;
+    private final long creationNanos = System.nanoTime();
     private final CompletableFuture<RaftClientReply> replyFuture =
         new CompletableFuture<>();
 
@@ -86,7 +111,12 @@ public class RetryCache implements Closeable {
     private volatile boolean failed = false;
 
     CacheEntry(CacheKey key) {
+      this(key, 0);
+    }
+
+    CacheEntry(CacheKey key, long seqNum) {
       this.key = key;
+      this.seqNum = seqNum;
     }
 
     @Override
@@ -128,6 +158,14 @@ public class RetryCache implements Closeable {
     CacheKey getKey() {
       return key;
     }
+
+    long getSeqNum() {
+      return seqNum;
+    }
+
+    boolean isExpired(long nowNanos, long expirationNanos) {
+      return nowNanos - creationNanos >= expirationNanos;
+    }
   }
 
   static class CacheQueryResult {
@@ -148,87 +186,320 @@ public class RetryCache implements Closeable {
     }
   }
 
-  private final Cache<CacheKey, CacheEntry> cache;
+  /** The hit and miss statistics of the cache lookups. */
+  public static class Statistics {
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    void record(boolean hit) {
+      (hit? hitCount: missCount).increment();
+    }
+
+    public long hitCount() {
+      return hitCount.sum();
+    }
+
+    public long missCount() {
+      return missCount.sum();
+    }
+
+    public long requestCount() {
+      return hitCount() + missCount();
+    }
+
+    /** @return the ratio of the hits to the requests; or 1.0 if there are no requests. */
+    public double hitRate() {
+      final long requestCount = requestCount();
+      return requestCount == 0? 1.0: (double) hitCount() / requestCount;
+    }
+
+    /** @return the ratio of the misses to the requests; or 0.0 if there are no requests. */
+    public double missRate() {
+      final long requestCount = requestCount();
+      return requestCount == 0? 0.0: (double) missCount() / requestCount;
+    }
+  }
+
+  /**
+   * The entries of a client in an open addressing hash table,
+   * where the callIds are the keys and the collisions are resolved by linear probing.
+   * The methods must be invoked with the lock of this object.
+   */
+  static class ClientEntries {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ClientId clientId;
+    private long[] callIds = new long[INITIAL_CAPACITY];
+    private CacheEntry[] entries = new CacheEntry[INITIAL_CAPACITY];
+    private int size = 0;
+    /** The entries in the write order for evicting the expired entries; it may contain evicted entries. */
+    private final Deque<CacheEntry> writeOrder = new ArrayDeque<>();
+    /** The sliding window entries with sequence numbers less than this number have been evicted. */
+    private long evictedSeqNum = 0;
+    /** Is this object removed from the cache? */
+    private boolean removed = false;
+
+    ClientEntries(ClientId clientId) {
+      this.clientId = clientId;
+    }
+
+    ClientId getClientId() {
+      return clientId;
+    }
+
+    private static int hash(long callId) {
+      final long h = callId * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+
+    /** @return the slot of the given callId if it exists; otherwise, return the empty slot for it. */
+    private int slotOf(long callId) {
+      final int mask = entries.length - 1;
+      for(int i = hash(callId) & mask; ; i = (i + 1) & mask) {
+        if (entries[i] == null || callIds[i] == callId) {
+          return i;
+        }
+      }
+    }
+
+    int size() {
+      return size;
+    }
+
+    CacheEntry get(long callId) {
+      return entries[slotOf(callId)];
+    }
+
+    /** Put the given entry, which replaces the existing entry with the same callId, if there is any. */
+    CacheEntry put(CacheEntry entry) {
+      final long callId = entry.getKey().getCallId();
+      int i = slotOf(callId);
+      if (entries[i] == null) {
+        // keep the load factor <= 3/4
+        if (4 * (size + 1) > 3 * entries.length) {
+          resize(2 * entries.length);
+          i = slotOf(callId);
+        }
+        callIds[i] = callId;
+        size++;
+      }
+      entries[i] = entry;
+      writeOrder.addLast(entry);
+      return entry;
+    }
+
+    private void resize(int capacity) {
+      final long[] oldCallIds = callIds;
+      final CacheEntry[] oldEntries = entries;
+      callIds = new long[capacity];
+      entries = new CacheEntry[capacity];
+      for(int j = 0; j < oldEntries.length; j++) {
+        if (oldEntries[j] != null) {
+          final int i = slotOf(oldCallIds[j]);
+          callIds[i] = oldCallIds[j];
+          entries[i] = oldEntries[j];
+        }
+      }
+    }
+
+    /** Remove the given entry if it is still in the table. */
+    private boolean remove(CacheEntry entry) {
+      final int i = slotOf(entry.getKey().getCallId());
+      if (entries[i] != entry) {
+        return false;
+      }
+      removeAt(i);
+      return true;
+    }
+
+    /** Remove the entry in the given slot. */
+    private void removeAt(int hole) {
+      // backward shift deletion: move the subsequent entries of the probe sequence into the hole.
+      final int mask = entries.length - 1;
+      for(int j = (hole + 1) & mask; entries[j] != null; j = (j + 1) & mask) {
+        final int home = hash(callIds[j]) & mask;
+        if (((j - home) & mask) >= ((j - hole) & mask)) {
+          callIds[hole] = callIds[j];
+          entries[hole] = entries[j];
+          hole = j;
+        }
+      }
+      entries[hole] = null;
+      size--;
+    }
+
+    /** Evict the expired entries. */
+    void evictExpired(long nowNanos, long expirationNanos) {
+      for(CacheEntry first; (first = writeOrder.peekFirst()) != null
+          && (first.isExpired(nowNanos, expirationNanos) || get(first.getKey().getCallId()) != first); ) {
+        writeOrder.pollFirst();
+        remove(first);
+      }
+    }
+
+    /** Evict the entries of the sliding window requests with sequence numbers less than the given seqNum. */
+    void evictReplied(long seqNum) {
+      if (seqNum <= evictedSeqNum) {
+        return; // already evicted, e.g. for the other requests in the same batch.
+      }
+      evictedSeqNum = seqNum;
+      for(int i = 0; i < entries.length; ) {
+        final CacheEntry e = entries[i];
+        if (e != null && e.seqNum > 0 && e.seqNum < seqNum) {
+          // the slot may be refilled by the backward shift deletion; check it again.
+          removeAt(i);
+        } else {
+          i++;
+        }
+      }
+    }
+
+    void clear() {
+      callIds = new long[INITIAL_CAPACITY];
+      entries = new CacheEntry[INITIAL_CAPACITY];
+      size = 0;
+      writeOrder.clear();
+    }
+  }
+
+  private final ConcurrentMap<ClientId, ClientEntries> clients = new ConcurrentHashMap<>();
+  private final long expirationNanos;
+  /** The next time to evict the expired entries of all the clients, including the inactive clients. */
+  private final AtomicLong nextEvictionNanos;
+  private final Statistics statistics = new Statistics();
 
   /**
    * @param expirationTime time for an entry to expire in milliseconds
    */
   RetryCache(TimeDuration expirationTime) {
-    cache = CacheBuilder.newBuilder()
-        .recordStats()
-        .expireAfterWrite(expirationTime.getDuration(), expirationTime.getUnit())
-        .build();
+    this.expirationNanos = expirationTime.toLong(TimeUnit.NANOSECONDS);
+    Preconditions.assertTrue(expirationNanos > 0, () -> "Non-positive expirationTime " + expirationTime);
+    this.nextEvictionNanos = new AtomicLong(System.nanoTime() + expirationNanos);
   }
 
-  CacheEntry getOrCreateEntry(ClientId clientId, long callId) {
-    final CacheKey key = new CacheKey(clientId, callId);
+  /** Apply the given function to the entries of the given client with the lock of the entries. */
+  private <T> T applyToClient(ClientId clientId, Function<ClientEntries, T> function) {
+    final long now = System.nanoTime();
+    evictExpiredClients(now);
+    for(;;) {
+      final ClientEntries c = clients.computeIfAbsent(clientId, ClientEntries::new);
+      synchronized (c) {
+        if (!c.removed) {
+          c.evictExpired(now, expirationNanos);
+          return function.apply(c);
+        }
+      }
+    }
+  }
+
+  private void evictExpiredClients(long now) {
+    final long next = nextEvictionNanos.get();
+    if (now - next < 0 || !nextEvictionNanos.compareAndSet(next, now + expirationNanos)) {
+      return;
+    }
+    for(ClientEntries c : clients.values()) {
+      synchronized (c) {
+        c.evictExpired(now, expirationNanos);
+        if (c.size() == 0) {
+          c.removed = true;
+          clients.remove(c.getClientId(), c);
+        }
+      }
+    }
+  }
+
+  private CacheEntry getIfPresent(ClientId clientId, long callId) {
+    final ClientEntries c = clients.get(clientId);
     final CacheEntry entry;
-    try {
-      entry = cache.get(key, () -> new CacheEntry(key));
-    } catch (ExecutionException e) {
-      throw new IllegalStateException(e);
+    if (c == null) {
+      entry = null;
+    } else {
+      final long now = System.nanoTime();
+      synchronized (c) {
+        c.evictExpired(now, expirationNanos);
+        entry = c.get(callId);
+      }
     }
+    statistics.record(entry != null);
     return entry;
   }
 
+  /**
+   * Get the entry of the given request, or create a new entry if there is none.
+   * A created entry does not have a sequence number since the log entries do not carry it,
+   * so that it is not evicted by {@link ClientEntries#evictReplied(long)} but only when it expires.
+   */
+  CacheEntry getOrCreateEntry(ClientId clientId, long callId) {
+    return applyToClient(clientId, c -> {
+      final CacheEntry entry = c.get(callId);
+      statistics.record(entry != null);
+      return entry != null? entry: c.put(new CacheEntry(new CacheKey(clientId, callId)));
+    });
+  }
+
   CacheEntry refreshEntry(CacheEntry newEntry) {
-    cache.put(newEntry.key, newEntry);
-    return newEntry;
+    return applyToClient(newEntry.getKey().getClientId(), c -> c.put(newEntry));
   }
 
   CacheQueryResult queryCache(ClientId clientId, long callId) {
-    CacheKey key = new CacheKey(clientId, callId);
-    final CacheEntry newEntry = new CacheEntry(key);
-    CacheEntry cacheEntry;
-    try {
-      cacheEntry = cache.get(key, () -> newEntry);
-    } catch (ExecutionException e) {
-      throw new IllegalStateException(e);
-    }
-
-    if (cacheEntry == newEntry) {
-      // this is the entry we just newly created
-      return new CacheQueryResult(cacheEntry, false);
-    } else if (!cacheEntry.isDone() || !cacheEntry.isFailed()){
-      // the previous attempt is either pending or successful
-      return new CacheQueryResult(cacheEntry, true);
-    }
+    return queryCache(clientId, callId, null);
+  }
 
-    // the previous attempt failed, replace it with a new one.
-    synchronized (this) {
-      // need to recheck, since there may be other retry attempts being
-      // processed at the same time. The recheck+replacement should be protected
-      // by lock.
-      CacheEntry currentEntry = cache.getIfPresent(key);
-      if (currentEntry == cacheEntry || currentEntry == null) {
-        // if the failed entry has not got replaced by another retry, or the
-        // failed entry got invalidated, we add a new cache entry
-        return new CacheQueryResult(refreshEntry(newEntry), false);
-      } else {
-        return new CacheQueryResult(currentEntry, true);
+  /**
+   * Query the cache for the given request.
+   * When the request is the first request of a sliding window,
+   * the entries of the previous requests in the sliding window are evicted
+   * since the client has received the replies.
+   */
+  CacheQueryResult queryCache(ClientId clientId, long callId, SlidingWindowEntry slidingWindowEntry) {
+    final long seqNum = slidingWindowEntry != null? slidingWindowEntry.getSeqNum(): 0;
+    final boolean isFirst = slidingWindowEntry != null && slidingWindowEntry.getIsFirst();
+    return applyToClient(clientId, c -> {
+      if (isFirst) {
+        c.evictReplied(seqNum);
       }
-    }
+      final CacheEntry cacheEntry = c.get(callId);
+      statistics.record(cacheEntry != null);
+      if (cacheEntry == null) {
+        return new CacheQueryResult(c.put(new CacheEntry(new CacheKey(clientId, callId), seqNum)), false);
+      } else if (!cacheEntry.isDone() || !cacheEntry.isFailed()) {
+        // the previous attempt is either pending or successful
+        return new CacheQueryResult(cacheEntry, true);
+      }
+      // the previous attempt failed, replace it with a new one.
+      return new CacheQueryResult(c.put(new CacheEntry(cacheEntry.getKey(), seqNum)), false);
+    });
   }
 
   @VisibleForTesting
   public long size() {
-    return cache.size();
+    long size = 0;
+    for(ClientEntries c : clients.values()) {
+      synchronized (c) {
+        size += c.size();
+      }
+    }
+    return size;
   }
 
-  public CacheStats stats() {
-    return cache.stats();
+  public Statistics stats() {
+    return statistics;
   }
 
   @VisibleForTesting
   CacheEntry get(ClientId clientId, long callId) {
-    return cache.getIfPresent(new CacheKey(clientId, callId));
+    return getIfPresent(clientId, callId);
   }
 
   @Override
   public synchronized void close() {
-    if (cache != null) {
-      cache.invalidateAll();
+    for(ClientEntries c : clients.values()) {
+      synchronized (c) {
+        c.clear();
+        c.removed = true;
+      }
     }
+    clients.clear();
   }
 
   static CompletableFuture<RaftClientReply> failWithReply(
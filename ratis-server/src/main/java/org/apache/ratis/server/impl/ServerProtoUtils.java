@@ -26,6 +26,7 @@ import org.apache.ratis.protocol.RaftGroupMemberId;
 import org.apache.ratis.protocol.RaftPeer;
 import org.apache.ratis.protocol.RaftPeerId;
 import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.server.raftlog.RaftLog;
 import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.util.Preconditions;
 import org.apache.ratis.util.ProtoUtils;
@@ -71,6 +72,9 @@ public interface ServerProtoUtils {
 
   static String toStateMachineLogEntryString(StateMachineLogEntryProto smLog,
                                              Function<StateMachineLogEntryProto, String> function) {
+    if (smLog.getBatchCount() > 0) {
+      return "batch of " + smLog.getBatchCount();
+    }
     final ByteString clientId = smLog.getClientId();
     String callIdString = (clientId.isEmpty() ? "<empty clientId>" : ClientId.valueOf(clientId))
         + ", cid=" + smLog.getCallId();
@@ -127,7 +131,10 @@ public interface ServerProtoUtils {
     }
     return ProtoUtils.toString(reply.getServerReply()) + "," + reply.getResult()
         + ",nextIndex:" + reply.getNextIndex() + ",term:" + reply.getTerm()
-        + ",followerCommit:" + reply.getFollowerCommit();
+        + ",followerCommit:" + reply.getFollowerCommit()
+        + (reply.getConflictTerm() > 0? ",conflict:" + TermIndex.toString(
+            reply.getConflictTerm(), reply.getConflictTermFirstIndex()): "")
+        + (reply.getHasSnapshot()? ",snapshotIndex:" + reply.getSnapshotIndex(): "");
   }
 
   static String toString(RequestVoteReplyProto proto) {
@@ -151,6 +158,13 @@ public interface ServerProtoUtils {
         final InstallSnapshotRequestProto.NotificationProto notification = proto.getNotification();
         s = "notify:" + toTermIndexString(notification.getFirstAvailableTermIndex());
         break;
+      case SENDSNAPSHOT:
+        final InstallSnapshotRequestProto.SendSnapshotProto send = proto.getSendSnapshot();
+        s = "send:" + RaftPeerId.valueOf(send.getTarget().getId()) + ",minIndex=" + send.getMinIndex();
+        break;
+      case SNAPSHOTSOURCE:
+        s = "source:" + RaftPeerId.valueOf(proto.getSnapshotSource().getSourceId());
+        break;
       default:
         throw new IllegalStateException("Unexpected body case in " + proto);
     }
@@ -164,11 +178,14 @@ public interface ServerProtoUtils {
     final String s;
     switch (proto.getInstallSnapshotReplyBodyCase()) {
       case REQUESTINDEX:
-        s = ",requestIndex=" + proto.getRequestIndex();
+        s = ",requestIndex=" + proto.getRequestIndex() + (proto.getSynced()? ",synced": "");
         break;
       case SNAPSHOTINDEX:
         s = ",snapshotIndex=" + proto.getSnapshotIndex();
         break;
+      case SNAPSHOTTERMINDEX:
+        s = ",snapshotTermIndex=" + toTermIndexString(proto.getSnapshotTermIndex());
+        break;
       default:
         s = ""; // result is not SUCCESS
     }
@@ -178,7 +195,8 @@ public interface ServerProtoUtils {
   static RaftConfigurationProto.Builder toRaftConfigurationProto(RaftConfiguration conf) {
     return RaftConfigurationProto.newBuilder()
         .addAllPeers(ProtoUtils.toRaftPeerProtos(conf.getPeersInConf()))
-        .addAllOldPeers(ProtoUtils.toRaftPeerProtos(conf.getPeersInOldConf()));
+        .addAllOldPeers(ProtoUtils.toRaftPeerProtos(conf.getPeersInOldConf()))
+        .addAllLearners(ProtoUtils.toRaftPeerProtos(conf.getLearners()));
   }
 
   static RaftConfiguration toRaftConfiguration(LogEntryProto entry) {
@@ -186,6 +204,7 @@ public interface ServerProtoUtils {
     final RaftConfigurationProto proto = entry.getConfigurationEntry();
     final RaftConfiguration.Builder b = RaftConfiguration.newBuilder()
         .setConf(ProtoUtils.toRaftPeers(proto.getPeersList()))
+        .setLearners(ProtoUtils.toRaftPeers(proto.getLearnersList()))
         .setLogEntryIndex(entry.getIndex());
     if (proto.getOldPeersCount() > 0) {
       b.setOldConf(ProtoUtils.toRaftPeers(proto.getOldPeersList()));
@@ -209,6 +228,18 @@ public interface ServerProtoUtils {
         .build();
   }
 
+  /** @return true iff the given entry is a batch of the entries of client requests. */
+  static boolean isBatch(LogEntryProto entry) {
+    return entry.hasStateMachineLogEntry() && entry.getStateMachineLogEntry().getBatchCount() > 0;
+  }
+
+  /** @return the entries in the given batch, where each entry has the same term and index as the batch. */
+  static List<LogEntryProto> toBatchedLogEntryProtos(LogEntryProto batch) {
+    return batch.getStateMachineLogEntry().getBatchList().stream()
+        .map(smLog -> toLogEntryProto(smLog, batch.getTerm(), batch.getIndex()))
+        .collect(Collectors.toList());
+  }
+
   static LogEntryProto toLogEntryProto(long commitIndex, long term, long index) {
     return LogEntryProto.newBuilder()
         .setTerm(term)
@@ -237,6 +268,10 @@ public interface ServerProtoUtils {
     return toStateMachineLogEntryProto(request.getClientId(), request.getCallId(), logData, stateMachineData);
   }
 
+  static StateMachineLogEntryProto toStateMachineLogEntryProto(List<StateMachineLogEntryProto> batch) {
+    return StateMachineLogEntryProto.newBuilder().addAllBatch(batch).build();
+  }
+
   static StateMachineLogEntryProto toStateMachineLogEntryProto(
       ClientId clientId, long callId, ByteString logData, ByteString stateMachineData) {
     final StateMachineLogEntryProto.Builder b = StateMachineLogEntryProto.newBuilder()
@@ -337,14 +372,34 @@ public interface ServerProtoUtils {
     return b.build();
   }
 
+  static ReadIndexRequestProto toReadIndexRequestProto(RaftGroupMemberId requestorId, RaftPeerId replyId) {
+    return ReadIndexRequestProto.newBuilder()
+        .setServerRequest(toRaftRpcRequestProtoBuilder(requestorId, replyId))
+        .build();
+  }
+
+  static ReadIndexReplyProto toReadIndexReplyProto(
+      RaftPeerId requestorId, RaftGroupMemberId replyId, boolean success, long readIndex) {
+    return ReadIndexReplyProto.newBuilder()
+        .setServerReply(toRaftRpcReplyProtoBuilder(requestorId, replyId, success))
+        .setReadIndex(readIndex)
+        .build();
+  }
+
   static InstallSnapshotReplyProto toInstallSnapshotReplyProto(
       RaftPeerId requestorId, RaftGroupMemberId replyId,
       long currentTerm, int requestIndex, InstallSnapshotResult result) {
+    return toInstallSnapshotReplyProto(requestorId, replyId, currentTerm, requestIndex, result, false);
+  }
+
+  static InstallSnapshotReplyProto toInstallSnapshotReplyProto(
+      RaftPeerId requestorId, RaftGroupMemberId replyId,
+      long currentTerm, int requestIndex, InstallSnapshotResult result, boolean synced) {
     final RaftRpcReplyProto.Builder rb = toRaftRpcReplyProtoBuilder(requestorId,
         replyId, result == InstallSnapshotResult.SUCCESS);
     final InstallSnapshotReplyProto.Builder builder = InstallSnapshotReplyProto
         .newBuilder().setServerReply(rb).setTerm(currentTerm).setResult(result)
-        .setRequestIndex(requestIndex);
+        .setRequestIndex(requestIndex).setSynced(synced);
     return builder.build();
   }
 
@@ -361,6 +416,19 @@ public interface ServerProtoUtils {
     return builder.build();
   }
 
+  static InstallSnapshotReplyProto toInstallSnapshotReplyProto(
+      RaftPeerId requestorId, RaftGroupMemberId replyId,
+      long currentTerm, InstallSnapshotResult result, TermIndex sentSnapshot) {
+    final RaftRpcReplyProto.Builder rb = toRaftRpcReplyProtoBuilder(requestorId,
+        replyId, result == InstallSnapshotResult.SUCCESS);
+    final InstallSnapshotReplyProto.Builder builder = InstallSnapshotReplyProto
+        .newBuilder().setServerReply(rb).setTerm(currentTerm).setResult(result);
+    if (sentSnapshot != null) {
+      builder.setSnapshotTermIndex(toTermIndexProto(sentSnapshot));
+    }
+    return builder.build();
+  }
+
   static InstallSnapshotReplyProto toInstallSnapshotReplyProto(
       RaftPeerId requestorId, RaftGroupMemberId replyId,
       InstallSnapshotResult result) {
@@ -371,9 +439,10 @@ public interface ServerProtoUtils {
     return builder.build();
   }
 
+  @SuppressWarnings("parameternumber")
   static InstallSnapshotRequestProto toInstallSnapshotRequestProto(
-      RaftGroupMemberId requestorId, RaftPeerId replyId, String requestId, int requestIndex,
-      long term, TermIndex lastTermIndex, List<FileChunkProto> chunks,
+      RaftGroupMemberId requestorId, RaftPeerId replyId, RaftPeerId leaderId, String requestId, int requestIndex,
+      long term, TermIndex lastTermIndex, long baseIndex, List<FileChunkProto> chunks,
       long totalSize, boolean done) {
     final InstallSnapshotRequestProto.SnapshotChunkProto.Builder snapshotChunkProto =
         InstallSnapshotRequestProto.SnapshotChunkProto.newBuilder()
@@ -383,6 +452,12 @@ public interface ServerProtoUtils {
             .addAllFileChunks(chunks)
             .setTotalSize(totalSize)
             .setDone(done);
+    if (baseIndex != RaftLog.INVALID_LOG_INDEX) {
+      snapshotChunkProto.setIncremental(true).setBaseIndex(baseIndex);
+    }
+    if (leaderId != null) {
+      snapshotChunkProto.setLeaderId(leaderId.toByteString());
+    }
     return InstallSnapshotRequestProto.newBuilder()
         .setServerRequest(toRaftRpcRequestProtoBuilder(requestorId, replyId))
         // .setRaftConfiguration()  TODO: save and pass RaftConfiguration
@@ -404,23 +479,63 @@ public interface ServerProtoUtils {
         .build();
   }
 
+  static InstallSnapshotRequestProto toInstallSnapshotRequestProto(
+      RaftGroupMemberId requestorId, RaftPeerId replyId, long leaderTerm, RaftPeer target, long minIndex) {
+    final InstallSnapshotRequestProto.SendSnapshotProto.Builder sendSnapshotProto =
+        InstallSnapshotRequestProto.SendSnapshotProto.newBuilder()
+            .setTarget(target.getRaftPeerProto())
+            .setMinIndex(minIndex);
+    return InstallSnapshotRequestProto.newBuilder()
+        .setServerRequest(toRaftRpcRequestProtoBuilder(requestorId, replyId))
+        .setLeaderTerm(leaderTerm)
+        .setSendSnapshot(sendSnapshotProto)
+        .build();
+  }
+
+  static InstallSnapshotRequestProto toInstallSnapshotRequestProto(
+      RaftGroupMemberId requestorId, RaftPeerId replyId, long leaderTerm, RaftPeerId source) {
+    final InstallSnapshotRequestProto.SnapshotSourceProto.Builder snapshotSourceProto =
+        InstallSnapshotRequestProto.SnapshotSourceProto.newBuilder()
+            .setSourceId(source.toByteString());
+    return InstallSnapshotRequestProto.newBuilder()
+        .setServerRequest(toRaftRpcRequestProtoBuilder(requestorId, replyId))
+        .setLeaderTerm(leaderTerm)
+        .setSnapshotSource(snapshotSourceProto)
+        .build();
+  }
+
   @SuppressWarnings("parameternumber")
   static AppendEntriesReplyProto toAppendEntriesReplyProto(
       RaftPeerId requestorId, RaftGroupMemberId replyId, long term,
       long followerCommit, long nextIndex, AppendResult result, long callId,
       long matchIndex, boolean isHeartbeat) {
+    return toAppendEntriesReplyProto(requestorId, replyId, term, followerCommit, nextIndex, result, callId,
+        matchIndex, isHeartbeat, null, RaftLog.INVALID_LOG_INDEX);
+  }
+
+  @SuppressWarnings("parameternumber")
+  static AppendEntriesReplyProto toAppendEntriesReplyProto(
+      RaftPeerId requestorId, RaftGroupMemberId replyId, long term,
+      long followerCommit, long nextIndex, AppendResult result, long callId,
+      long matchIndex, boolean isHeartbeat, TermIndex conflict, long snapshotIndex) {
     RaftRpcReplyProto.Builder rpcReply = toRaftRpcReplyProtoBuilder(
         requestorId, replyId, result == AppendResult.SUCCESS)
         .setCallId(callId);
-    return AppendEntriesReplyProto.newBuilder()
+    final AppendEntriesReplyProto.Builder b = AppendEntriesReplyProto.newBuilder()
         .setServerReply(rpcReply)
         .setTerm(term)
         .setNextIndex(nextIndex)
         .setMatchIndex(matchIndex)
         .setFollowerCommit(followerCommit)
         .setResult(result)
-        .setIsHearbeat(isHeartbeat)
-        .build();
+        .setIsHearbeat(isHeartbeat);
+    if (conflict != null) {
+      b.setConflictTerm(conflict.getTerm()).setConflictTermFirstIndex(conflict.getIndex());
+    }
+    if (snapshotIndex != RaftLog.INVALID_LOG_INDEX) {
+      b.setHasSnapshot(true).setSnapshotIndex(snapshotIndex);
+    }
+    return b.build();
   }
 
   static AppendEntriesRequestProto toAppendEntriesRequestProto(
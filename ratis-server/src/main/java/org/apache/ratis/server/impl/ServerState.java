@@ -30,6 +30,8 @@ import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.statemachine.StateMachine;
 import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.util.AutoCloseableLock;
+import org.apache.ratis.util.LifeCycle;
 import org.apache.ratis.util.TimeDuration;
 import org.apache.ratis.util.Timestamp;
 
@@ -44,14 +46,21 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 import static org.apache.ratis.server.impl.RaftServerImpl.LOG;
 
 /**
  * Common states of a raft peer. Protected by RaftServer's lock.
+ *
+ * The changes of the term, the leader and the vote are also protected by the append lock
+ * so that the follower appendEntries path can validate and append log entries
+ * without holding RaftServer's lock.
  */
 public class ServerState implements Closeable {
   private final RaftGroupMemberId memberId;
@@ -92,6 +101,14 @@ public class ServerState implements Closeable {
    */
   private final AtomicReference<TermIndex> latestInstalledSnapshot = new AtomicReference<>();
 
+  /**
+   * Serialize the follower appendEntries operations with the changes of the term and the leader.
+   * It also serializes the leader log appends, including the metadata entries,
+   * which may be written without holding RaftServer's lock.
+   * When both locks are required, RaftServer's lock must be acquired before this lock.
+   */
+  private final ReentrantLock appendLock = new ReentrantLock();
+
   ServerState(RaftPeerId id, RaftGroup group, RaftProperties prop,
               RaftServerImpl server, StateMachine stateMachine)
       throws IOException {
@@ -107,7 +124,7 @@ public class ServerState implements Closeable {
         group.getGroupId().getUuid().toString());
     storage = new RaftStorage(dir, RaftServerConstants.StartupOption.REGULAR,
         RaftServerConfigKeys.Log.corruptionPolicy(prop));
-    snapshotManager = new SnapshotManager(storage, id);
+    snapshotManager = new SnapshotManager(storage, id, RaftServerConfigKeys.Snapshot.installSyncInterval(prop));
 
     long lastApplied = initStatemachine(stateMachine, group.getGroupId());
 
@@ -201,13 +218,15 @@ public class ServerState implements Closeable {
   }
 
   boolean updateCurrentTerm(long newTerm) {
-    final long current = currentTerm.getAndUpdate(curTerm -> Math.max(curTerm, newTerm));
-    if (newTerm > current) {
-      votedFor = null;
-      setLeader(null, "updateCurrentTerm");
-      return true;
+    try(AutoCloseableLock ignored = lockAppend()) {
+      final long current = currentTerm.getAndUpdate(curTerm -> Math.max(curTerm, newTerm));
+      if (newTerm > current) {
+        votedFor = null;
+        setLeader(null, "updateCurrentTerm");
+        return true;
+      }
+      return false;
     }
-    return false;
   }
 
   RaftPeerId getLeaderId() {
@@ -222,9 +241,11 @@ public class ServerState implements Closeable {
    * Become a candidate and start leader election
    */
   long initElection() {
-    votedFor = getMemberId().getPeerId();
-    setLeader(null, "initElection");
-    return currentTerm.incrementAndGet();
+    try(AutoCloseableLock ignored = lockAppend()) {
+      votedFor = getMemberId().getPeerId();
+      setLeader(null, "initElection");
+      return currentTerm.incrementAndGet();
+    }
   }
 
   void persistMetadata() throws IOException {
@@ -235,11 +256,33 @@ public class ServerState implements Closeable {
    * Vote for a candidate and update the local state.
    */
   void grantVote(RaftPeerId candidateId) {
-    votedFor = candidateId;
-    setLeader(null, "grantVote");
+    try(AutoCloseableLock ignored = lockAppend()) {
+      votedFor = candidateId;
+      setLeader(null, "grantVote");
+    }
+  }
+
+  /** Acquire the append lock; see {@link #appendLock}. */
+  AutoCloseableLock lockAppend() {
+    return AutoCloseableLock.acquire(appendLock);
+  }
+
+  /**
+   * Is the given leader already recognized in the given term?
+   * When it returns true with the append lock held,
+   * the term and the leader will not be changed until the lock is released.
+   */
+  boolean isRecognizedLeader(RaftPeerId leaderId, long leaderTerm) {
+    return leaderTerm == currentTerm.get() && leaderId.equals(this.leaderId);
   }
 
   void setLeader(RaftPeerId newLeaderId, String op) {
+    try(AutoCloseableLock ignored = lockAppend()) {
+      setLeaderImpl(newLeaderId, op);
+    }
+  }
+
+  private void setLeaderImpl(RaftPeerId newLeaderId, String op) {
     if (!Objects.equals(leaderId, newLeaderId)) {
       String suffix;
       if (newLeaderId == null) {
@@ -279,7 +322,9 @@ public class ServerState implements Closeable {
   }
 
   void appendLog(TransactionContext operation) throws StateMachineException {
-    log.append(currentTerm.get(), operation);
+    try(AutoCloseableLock ignored = lockAppend()) {
+      log.append(currentTerm.get(), operation);
+    }
     Objects.requireNonNull(operation.getLogEntry());
   }
 
@@ -352,15 +397,30 @@ public class ServerState implements Closeable {
 
   void setRaftConf(long logIndex, RaftConfiguration conf) {
     configurationManager.addConfiguration(logIndex, conf);
-    server.getServerRpc().addPeers(conf.getPeers());
+    onRaftConfAdded(logIndex, conf);
+  }
+
+  private void onRaftConfAdded(long logIndex, RaftConfiguration conf) {
+    server.getServerRpc().addPeers(conf.getAllPeers());
     LOG.info("{}: set configuration {} at {}", getMemberId(), conf, logIndex);
     LOG.trace("{}: {}", getMemberId(), configurationManager);
   }
 
+  /**
+   * Replace the configurations from the first entry onwards with the configurations in the entries.
+   * It is called with the append lock but without the server lock,
+   * so the configurations are replaced in a single operation for the readers of the current configuration.
+   */
   void updateConfiguration(LogEntryProto[] entries) {
     if (entries != null && entries.length > 0) {
-      configurationManager.removeConfigurations(entries[0].getIndex());
-      Arrays.stream(entries).forEach(this::setRaftConf);
+      final Map<Long, RaftConfiguration> confs = new TreeMap<>();
+      for (LogEntryProto entry : entries) {
+        if (entry.hasConfigurationEntry()) {
+          confs.put(entry.getIndex(), ServerProtoUtils.toRaftConfiguration(entry));
+        }
+      }
+      configurationManager.replaceConfigurations(entries[0].getIndex(), confs);
+      confs.forEach(this::onRaftConfAdded);
     }
   }
 
@@ -372,8 +432,8 @@ public class ServerState implements Closeable {
     return false;
   }
 
-  void reloadStateMachine(long lastIndexInSnapshot, long currentTerm) {
-    log.updateLastCommitted(lastIndexInSnapshot, currentTerm);
+  void reloadStateMachine(long lastIndexInSnapshot) {
+    log.onSnapshotInstalled(lastIndexInSnapshot);
     stateMachineUpdater.reloadStateMachine();
   }
 
@@ -394,12 +454,34 @@ public class ServerState implements Closeable {
     return storage;
   }
 
-  void installSnapshot(InstallSnapshotRequestProto request) throws IOException {
+  /** @return true if the chunks are forced to the disk; see {@link SnapshotManager#installSnapshot}. */
+  boolean installSnapshot(InstallSnapshotRequestProto request) throws IOException {
     // TODO: verify that we need to install the snapshot
     StateMachine sm = server.getStateMachine();
-    sm.pause(); // pause the SM to prepare for install snapshot
-    snapshotManager.installSnapshot(sm, request);
+    if (sm.getLifeCycleState() != LifeCycle.State.PAUSED) {
+      // pause the SM to prepare for install snapshot; it stays paused for the subsequent chunks
+      sm.pause();
+    }
+    final boolean synced = snapshotManager.installSnapshot(sm, request);
     updateInstalledSnapshotIndex(ServerProtoUtils.toTermIndex(request.getSnapshotChunk().getTermIndex()));
+    return synced;
+  }
+
+  /** @return true if a snapshot installation has been started, i.e. the state machine is paused. */
+  boolean isInstallingSnapshot() {
+    return server.getStateMachine().getLifeCycleState() == LifeCycle.State.PAUSED;
+  }
+
+  /**
+   * Install a chunk after the installation has been started.
+   * It does not require the server lock, so that the chunks of different files can be installed concurrently.
+   */
+  boolean installSnapshotChunk(InstallSnapshotRequestProto request) throws IOException {
+    if (!isInstallingSnapshot()) {
+      throw new IOException(getMemberId() + ": Failed to install " + ServerProtoUtils.toString(request)
+          + " since the snapshot installation has not been started");
+    }
+    return snapshotManager.installSnapshot(server.getStateMachine(), request);
   }
 
   void updateInstalledSnapshotIndex(TermIndex lastTermIndexInSnapshot) {
@@ -436,6 +518,11 @@ public class ServerState implements Closeable {
     return stateMachineUpdater.getStateMachineLastAppliedIndex();
   }
 
+  /** @return a future which completes once the log entries up to the given index are applied. */
+  CompletableFuture<Long> getAppliedIndexFuture(long index) {
+    return stateMachineUpdater.getAppliedIndexFuture(index);
+  }
+
   boolean containsTermIndex(TermIndex ti) {
     Objects.requireNonNull(ti, "ti == null");
 
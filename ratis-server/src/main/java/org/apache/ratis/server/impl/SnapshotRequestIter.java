@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.io.MD5Hash;
+import org.apache.ratis.proto.RaftProtos.FileChunkProto;
+import org.apache.ratis.proto.RaftProtos.FileDigestAlgorithm;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.storage.FileDigester;
+import org.apache.ratis.server.storage.FileInfo;
+import org.apache.ratis.statemachine.SnapshotInfo;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.com.google.protobuf.UnsafeByteOperations;
+import org.apache.ratis.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The {@link InstallSnapshotRequestProto}s for sending the files of a snapshot to a follower.
+ * The requests are sent either by the leader
+ * or by another follower on behalf of the leader.
+ */
+public class SnapshotRequestIter implements Iterable<InstallSnapshotRequestProto> {
+  public static final Logger LOG = LoggerFactory.getLogger(SnapshotRequestIter.class);
+
+  private final RaftServerImpl server;
+  private final RaftPeerId targetId;
+  /** The leader id if the requests are sent by a follower on behalf of the leader; otherwise, null. */
+  private final RaftPeerId leaderId;
+  private final long leaderTerm;
+  private final int snapshotChunkMaxSize;
+  private final FileDigestAlgorithm digestAlgorithm;
+
+  private final SnapshotInfo snapshot;
+  private final long totalSize;
+  private final List<FileInfo> files;
+  /** The path of the last snapshot file, whose last chunk is the last request of the snapshot. */
+  private final Path lastFilePath;
+  private FileInputStream in;
+  private int fileIndex;
+
+  private FileInfo currentFileInfo;
+  /** The MD5 digest of the current file; null for the other algorithms. */
+  private ByteString currentFileDigest;
+  /** For computing the digest of the current file from the chunks; null for MD5. */
+  private FileDigester currentFileDigester;
+  private long currentFileSize;
+  private long currentOffset = 0;
+  private int chunkIndex = 0;
+
+  private final String requestId;
+  private int requestIndex;
+  /** For throttling the chunks; null if throttling is disabled. */
+  private final TransferThrottler.Transfer transfer;
+
+  /**
+   * @param leaderId the leader id if the requests are sent by a follower on behalf of the leader; otherwise, null.
+   * @param files a sublist of the snapshot files in the same order.
+   *              The last request is marked as done only if it is for the last chunk of the last snapshot file.
+   * @param requestIndex the index of the first request.
+   * @param fileIndex the index of the first file in the given files.
+   * @param offset the offset in the first file.
+   */
+  @SuppressWarnings("parameternumber")
+  SnapshotRequestIter(RaftServerImpl server, RaftPeerId targetId, RaftPeerId leaderId, long leaderTerm,
+      SnapshotInfo snapshot, List<FileInfo> files, String requestId, int requestIndex, int fileIndex, long offset)
+      throws IOException {
+    this.server = server;
+    this.targetId = targetId;
+    this.leaderId = leaderId;
+    this.leaderTerm = leaderTerm;
+    this.snapshotChunkMaxSize = RaftServerConfigKeys.Log.Appender.snapshotChunkSizeMax(
+        server.getProxy().getProperties()).getSizeInt();
+    this.digestAlgorithm = RaftServerConfigKeys.Log.Appender.snapshotDigestAlgorithm(
+        server.getProxy().getProperties());
+
+    this.snapshot = snapshot;
+    this.totalSize = snapshot.getFiles().stream().mapToLong(FileInfo::getFileSize).sum();
+    this.requestId = requestId;
+    this.requestIndex = requestIndex;
+    this.files = files;
+    this.fileIndex = fileIndex;
+    final List<FileInfo> snapshotFiles = snapshot.getFiles();
+    this.lastFilePath = snapshotFiles.isEmpty()? null: snapshotFiles.get(snapshotFiles.size() - 1).getPath();
+
+    final TransferThrottler throttler = server.getProxy().getTransferThrottler();
+    this.transfer = throttler.isEnabled()? throttler.newTransfer(): null;
+    if (fileIndex < files.size()) {
+      startReadFile(offset);
+    }
+  }
+
+  private void startReadFile(long offset) throws IOException {
+    currentFileInfo = files.get(fileIndex);
+    File snapshotFile = currentFileInfo.getPath().toFile();
+    currentFileSize = snapshotFile.length();
+    final int bufLength = getSnapshotChunkLength(currentFileSize);
+    if (digestAlgorithm == FileDigestAlgorithm.MD5) {
+      final MD5Hash md5 = currentFileInfo.getFileDigest();
+      // a snapshot installed with another algorithm does not have md5 files
+      currentFileDigest = md5 != null? ByteString.copyFrom(md5.getDigest())
+          : FileDigester.digest(digestAlgorithm, snapshotFile);
+      currentFileDigester = null;
+    } else {
+      currentFileDigest = null;
+      currentFileDigester = FileDigester.newInstance(digestAlgorithm);
+      if (offset > 0) {
+        currentFileDigester.update(snapshotFile, offset);
+      }
+    }
+    currentOffset = offset;
+    chunkIndex = bufLength == 0? 0: Math.toIntExact(offset / bufLength);
+    in = new FileInputStream(snapshotFile);
+    if (offset > 0) {
+      in.getChannel().position(offset);
+    }
+  }
+
+  /** @return the number of the requests for sending all the given files from the beginning. */
+  public int getNumRequests() {
+    int n = 0;
+    for (FileInfo f : files) {
+      // an empty file is sent in an empty chunk
+      n += f.getFileSize() == 0? 1: Math.toIntExact((f.getFileSize() - 1) / snapshotChunkMaxSize + 1);
+    }
+    return n;
+  }
+
+  /** @return the index of the next request. */
+  public int getRequestIndex() {
+    return requestIndex;
+  }
+
+  /** @return the index of the file of the next request. */
+  public int getFileIndex() {
+    return fileIndex;
+  }
+
+  /** @return the offset, in the current file, of the next request. */
+  public long getOffset() {
+    return currentOffset;
+  }
+
+  private int getSnapshotChunkLength(long len) {
+    return len < snapshotChunkMaxSize? (int)len: snapshotChunkMaxSize;
+  }
+
+  /** Throttle a snapshot chunk; wait if necessary. */
+  private void acquireSnapshotChunk(long bytes) throws InterruptedIOException {
+    if (transfer == null) {
+      return;
+    }
+    final long throttled;
+    try {
+      throttled = transfer.acquire(bytes);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      final InterruptedIOException iioe = new InterruptedIOException(this + ": interrupted while throttling");
+      iioe.initCause(e);
+      throw iioe;
+    }
+    if (throttled > 0) {
+      server.getRaftServerMetrics().onLogAppenderThrottled(throttled);
+    }
+  }
+
+  private FileChunkProto readFileChunk(int length) throws IOException {
+    FileChunkProto.Builder builder = FileChunkProto.newBuilder()
+        .setOffset(currentOffset).setChunkIndex(chunkIndex);
+    // A new buffer is used for each chunk since the request may still be serialized
+    // by the rpc after it is passed to onNext(..); then, wrapping the buffer without copying is safe.
+    final byte[] buf = new byte[length];
+    IOUtils.readFully(in, buf, 0, length);
+    Path relativePath = server.getState().getStorage().getStorageDir()
+        .relativizeToRoot(currentFileInfo.getPath());
+    builder.setFilename(relativePath.toString());
+    final boolean done = currentOffset + length == currentFileInfo.getFileSize();
+    builder.setDone(done);
+    builder.setDigestAlgorithm(digestAlgorithm);
+    if (currentFileDigester != null) {
+      // the digest is only checked with the last chunk of the file
+      currentFileDigester.update(ByteBuffer.wrap(buf));
+      if (done) {
+        builder.setFileDigest(currentFileDigester.digest());
+      }
+    } else {
+      builder.setFileDigest(currentFileDigest);
+    }
+    builder.setData(UnsafeByteOperations.unsafeWrap(buf));
+    return builder.build();
+  }
+
+  @Override
+  public Iterator<InstallSnapshotRequestProto> iterator() {
+    return new Iterator<InstallSnapshotRequestProto>() {
+      @Override
+      public boolean hasNext() {
+        return fileIndex < files.size();
+      }
+
+      @Override
+      public InstallSnapshotRequestProto next() {
+        if (fileIndex >= files.size()) {
+          throw new NoSuchElementException();
+        }
+        final int targetLength = getSnapshotChunkLength(
+            currentFileSize - currentOffset);
+        FileChunkProto chunk;
+        try {
+          acquireSnapshotChunk(targetLength);
+          chunk = readFileChunk(targetLength);
+          boolean done = currentFileInfo.getPath().equals(lastFilePath) &&
+              chunk.getDone();
+          InstallSnapshotRequestProto request = ServerProtoUtils.toInstallSnapshotRequestProto(
+              server.getMemberId(), targetId, leaderId, requestId, requestIndex++, leaderTerm,
+              snapshot.getTermIndex(), snapshot.getBaseIndex(), Collections.singletonList(chunk), totalSize, done);
+          currentOffset += targetLength;
+          chunkIndex++;
+
+          if (currentOffset >= currentFileSize) {
+            in.close();
+            fileIndex++;
+            if (fileIndex < files.size()) {
+              startReadFile(0L);
+            }
+          }
+
+          return request;
+        } catch (IOException e) {
+          if (in != null) {
+            try {
+              in.close();
+            } catch (IOException ignored) {
+            }
+          }
+          LOG.warn("{}: Failed to prepare installSnapshot request", SnapshotRequestIter.this, e);
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return server.getMemberId() + "->" + targetId + "-" + getClass().getSimpleName();
+  }
+}
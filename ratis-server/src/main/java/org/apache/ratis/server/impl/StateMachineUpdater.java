@@ -35,10 +35,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
@@ -53,7 +58,10 @@ import com.codahale.metrics.Timer;
  *
  * If the auto log compaction is enabled, the state machine updater thread will
  * trigger a snapshot of the state machine by calling
- * {@link StateMachine#takeSnapshot} when the log size exceeds a limit.
+ * {@link StateMachine#takeSnapshotAsync} or {@link StateMachine#takeSnapshot}
+ * when the log size exceeds a limit.
+ * An asynchronous snapshot is persisted in the background
+ * while the updater thread continues applying the committed entries.
  */
 class StateMachineUpdater implements Runnable {
   static final Logger LOG = LoggerFactory.getLogger(StateMachineUpdater.class);
@@ -71,11 +79,26 @@ class StateMachineUpdater implements Runnable {
   private final RaftLog raftLog;
 
   private final Long autoSnapshotThreshold;
+  /** The max number of transactions applied in a batch. */
+  private final int applyBatchElementLimit;
 
   private final Thread updater;
   private final RaftLogIndex appliedIndex;
+  /**
+   * The index of the last entry submitted to the state machine.
+   * It is the same as the applied index unless the transactions are applied in parallel.
+   */
+  private final RaftLogIndex submittedIndex;
+  /** Apply the transactions in parallel; null if it is disabled. */
+  private final KeyPartitionedApplier parallelApplier;
+  /** The entries which are applied in parallel but not yet included in the applied index. */
+  private final NavigableMap<Long, Long> appliedOutOfOrder = new TreeMap<>();
   private final RaftLogIndex snapshotIndex;
   private final AtomicReference<Long> stopIndex = new AtomicReference<>();
+  /** The futures waiting for the applied index to reach the keys. */
+  private final NavigableMap<Long, CompletableFuture<Long>> appliedIndexFutures = new ConcurrentSkipListMap<>();
+  /** The asynchronous snapshot in progress, if there is any. */
+  private volatile CompletableFuture<Void> pendingSnapshot = CompletableFuture.completedFuture(null);
   private volatile State state = State.RUNNING;
   private SnapshotRetentionPolicy snapshotRetentionPolicy;
   private StateMachineMetrics stateMachineMetrics = null;
@@ -92,9 +115,13 @@ class StateMachineUpdater implements Runnable {
 
     this.appliedIndex = new RaftLogIndex("appliedIndex", lastAppliedIndex);
     this.snapshotIndex = new RaftLogIndex("snapshotIndex", lastAppliedIndex);
+    this.submittedIndex = new RaftLogIndex("submittedIndex", lastAppliedIndex);
+    this.parallelApplier = RaftServerConfigKeys.Apply.Parallel.enabled(properties)?
+        new KeyPartitionedApplier(name, stateMachine, RaftServerConfigKeys.Apply.Parallel.threads(properties)): null;
 
     final boolean autoSnapshot = RaftServerConfigKeys.Snapshot.autoTriggerEnabled(properties);
     this.autoSnapshotThreshold = autoSnapshot? RaftServerConfigKeys.Snapshot.autoTriggerThreshold(properties): null;
+    this.applyBatchElementLimit = RaftServerConfigKeys.Apply.Batch.elementLimit(properties);
     final int numSnapshotFilesRetained = RaftServerConfigKeys.Snapshot.retentionFileNum(properties);
     this.snapshotRetentionPolicy = new SnapshotRetentionPolicy() {
       @Override
@@ -121,6 +148,9 @@ class StateMachineUpdater implements Runnable {
 
   private void stop() {
     state = State.STOP;
+    if (parallelApplier != null) {
+      parallelApplier.shutdown();
+    }
     try {
       stateMachine.close();
       stateMachineMetrics.unregister();
@@ -166,10 +196,14 @@ class StateMachineUpdater implements Runnable {
         }
 
         final MemoizedSupplier<List<CompletableFuture<Message>>> futures = applyLog();
+        completeAppliedIndexFutures();
         checkAndTakeSnapshot(futures);
 
         if (shouldStop()) {
+          waitForSubmitted();
+          waitForPendingSnapshot();
           checkAndTakeSnapshot(futures);
+          waitForPendingSnapshot();
           stop();
         }
       } catch (InterruptedException e) {
@@ -192,8 +226,8 @@ class StateMachineUpdater implements Runnable {
     // When a peer starts, the committed is initialized to 0.
     // It will be updated only after the leader contacts other peers.
     // Thus it is possible to have applied > committed initially.
-    final long applied = getLastAppliedIndex();
-    for(; applied >= raftLog.getLastCommittedIndex() && state == State.RUNNING && !shouldStop(); ) {
+    final long submitted = getLastSubmittedIndex();
+    for(; submitted >= raftLog.getLastCommittedIndex() && state == State.RUNNING && !shouldStop(); ) {
       wait();
     }
   }
@@ -207,15 +241,44 @@ class StateMachineUpdater implements Runnable {
     Objects.requireNonNull(snapshot, "snapshot == null");
     final long i = snapshot.getIndex();
     snapshotIndex.setUnconditionally(i, infoIndexChange);
-    appliedIndex.setUnconditionally(i, infoIndexChange);
+    synchronized (appliedOutOfOrder) {
+      appliedOutOfOrder.clear();
+      appliedIndex.setUnconditionally(i, infoIndexChange);
+    }
+    submittedIndex.setUnconditionally(i, infoIndexChange);
     state = State.RUNNING;
+    completeAppliedIndexFutures();
   }
 
-  private MemoizedSupplier<List<CompletableFuture<Message>>> applyLog() throws RaftLogIOException {
+  /** @return a future which completes with the applied index once it is at least the given index. */
+  CompletableFuture<Long> getAppliedIndexFuture(long index) {
+    final long applied = getLastAppliedIndex();
+    if (applied >= index) {
+      return CompletableFuture.completedFuture(applied);
+    }
+    final CompletableFuture<Long> f = appliedIndexFutures.computeIfAbsent(index, i -> new CompletableFuture<>());
+    // the applied index may have been updated before the future was added
+    completeAppliedIndexFutures();
+    return f;
+  }
+
+  private void completeAppliedIndexFutures() {
+    final long applied = getLastAppliedIndex();
+    for(Map.Entry<Long, CompletableFuture<Long>> e;
+        (e = appliedIndexFutures.firstEntry()) != null && e.getKey() <= applied; ) {
+      if (appliedIndexFutures.remove(e.getKey(), e.getValue())) {
+        e.getValue().complete(applied);
+      }
+    }
+  }
+
+  private MemoizedSupplier<List<CompletableFuture<Message>>> applyLog()
+      throws RaftLogIOException, InterruptedException, ExecutionException {
     final MemoizedSupplier<List<CompletableFuture<Message>>> futures = MemoizedSupplier.valueOf(ArrayList::new);
     final long committed = raftLog.getLastCommittedIndex();
-    for(long applied; (applied = getLastAppliedIndex()) < committed && state == State.RUNNING && !shouldStop(); ) {
-      final long nextIndex = applied + 1;
+    for(long submitted;
+        (submitted = getLastSubmittedIndex()) < committed && state == State.RUNNING && !shouldStop(); ) {
+      final long nextIndex = submitted + 1;
       final LogEntryProto next = raftLog.get(nextIndex);
       if (next != null) {
         if (LOG.isTraceEnabled()) {
@@ -224,12 +287,26 @@ class StateMachineUpdater implements Runnable {
           LOG.debug("{}: applying nextIndex={}", this, nextIndex);
         }
 
+        if (parallelApplier != null) {
+          applyLogInParallel(next, futures);
+          continue;
+        }
+        if (applyBatchElementLimit > 1 && next.hasStateMachineLogEntry()) {
+          final List<LogEntryProto> batch = getApplyBatch(next, committed);
+          futures.get().add(server.applyLogsToStateMachine(batch));
+          final long lastIndex = batch.get(batch.size() - 1).getIndex();
+          Preconditions.assertTrue(appliedIndex.updateIncreasingly(lastIndex, debugIndexChange));
+          submittedIndex.setUnconditionally(lastIndex, debugIndexChange);
+          continue;
+        }
+
         final CompletableFuture<Message> f = server.applyLogToStateMachine(next);
         if (f != null) {
           futures.get().add(f);
         }
         final long incremented = appliedIndex.incrementAndGet(debugIndexChange);
         Preconditions.assertTrue(incremented == nextIndex);
+        submittedIndex.setUnconditionally(incremented, debugIndexChange);
       } else {
         LOG.debug("{}: logEntry {} is null. There may be snapshot to load. state:{}",
             this, nextIndex, state);
@@ -239,6 +316,86 @@ class StateMachineUpdater implements Runnable {
     return futures;
   }
 
+  /**
+   * Submit the given entry to the parallel applier.
+   * The entries without a state machine log entry, such as the conf entries,
+   * are applied by the current thread after all the previous entries have been applied.
+   */
+  private void applyLogInParallel(LogEntryProto next, MemoizedSupplier<List<CompletableFuture<Message>>> futures)
+      throws InterruptedException, ExecutionException {
+    final long index = next.getIndex();
+    if (next.hasStateMachineLogEntry()) {
+      final CompletableFuture<Message> f = server.applyLogsToStateMachine(
+          Collections.singletonList(next), parallelApplier::applyTransactions);
+      futures.get().add(f);
+      Preconditions.assertTrue(submittedIndex.incrementAndGet(debugIndexChange) == index);
+      f.whenComplete((reply, e) -> onAppliedInParallel(next.getTerm(), index));
+    } else {
+      waitForSubmitted();
+      server.applyLogToStateMachine(next);
+      Preconditions.assertTrue(submittedIndex.incrementAndGet(debugIndexChange) == index);
+      onAppliedInParallel(next.getTerm(), index);
+    }
+  }
+
+  /**
+   * The entry at the given index has been applied in parallel.
+   * Advance the applied index to the contiguous applied prefix
+   * and then notify the state machine.
+   */
+  private void onAppliedInParallel(long term, long index) {
+    synchronized (appliedOutOfOrder) {
+      appliedOutOfOrder.put(index, term);
+      long appliedTerm = -1;
+      for(Map.Entry<Long, Long> first; (first = appliedOutOfOrder.firstEntry()) != null
+          && first.getKey() == getLastAppliedIndex() + 1; ) {
+        appliedOutOfOrder.remove(first.getKey());
+        appliedIndex.incrementAndGet(debugIndexChange);
+        appliedTerm = first.getValue();
+      }
+      if (appliedTerm < 0) {
+        return;
+      }
+      stateMachine.notifyIndexUpdate(appliedTerm, getLastAppliedIndex());
+    }
+    completeAppliedIndexFutures();
+    notifyUpdater();
+  }
+
+  /** Wait for all the submitted entries to be applied. */
+  private void waitForSubmitted() throws InterruptedException, ExecutionException {
+    getAppliedIndexFuture(getLastSubmittedIndex()).get();
+  }
+
+  /**
+   * @return the consecutive state machine log entries starting from the given entry,
+   *         up to the committed index and the apply batch element limit.
+   */
+  private List<LogEntryProto> getApplyBatch(LogEntryProto first, long committed) throws RaftLogIOException {
+    final List<LogEntryProto> batch = new ArrayList<>();
+    batch.add(first);
+    int numTransactions = getNumTransactions(first);
+    for(long i = first.getIndex() + 1; i <= committed && numTransactions < applyBatchElementLimit; i++) {
+      final LogEntryProto next = raftLog.get(i);
+      if (next == null || !next.hasStateMachineLogEntry()) {
+        break;
+      }
+      final int n = getNumTransactions(next);
+      if (numTransactions + n > applyBatchElementLimit) {
+        break;
+      }
+      batch.add(next);
+      numTransactions += n;
+    }
+    LOG.debug("{}: applying {} entries ({} transactions) from index {}",
+        this, batch.size(), numTransactions, first.getIndex());
+    return batch;
+  }
+
+  private static int getNumTransactions(LogEntryProto entry) {
+    return ServerProtoUtils.isBatch(entry)? entry.getStateMachineLogEntry().getBatchCount(): 1;
+  }
+
   private void checkAndTakeSnapshot(MemoizedSupplier<List<CompletableFuture<Message>>> futures)
       throws ExecutionException, InterruptedException {
     // check if need to trigger a snapshot
@@ -246,22 +403,49 @@ class StateMachineUpdater implements Runnable {
       if (futures.isInitialized()) {
         JavaUtils.allOf(futures.get()).get();
       }
+      // the snapshot must see a contiguous applied prefix
+      waitForSubmitted();
 
       takeSnapshot();
     }
   }
 
   private void takeSnapshot() {
-    final long i;
+    // all the transactions up to the fence index have completed
+    final long fenceIndex = getLastAppliedIndex();
+    final Timer.Context takeSnapshotTimerContext = stateMachineMetrics.getTakeSnapshotTimer().time();
+    final CompletableFuture<Long> future;
     try {
-      Timer.Context takeSnapshotTimerContext = stateMachineMetrics.getTakeSnapshotTimer().time();
-      i = stateMachine.takeSnapshot();
+      future = stateMachine.takeSnapshotAsync();
+      if (future == null) {
+        final long i = stateMachine.takeSnapshot();
+        takeSnapshotTimerContext.stop();
+        onSnapshotTaken(i, fenceIndex);
+        return;
+      }
+    } catch (IOException e) {
+      LOG.error(name + ": Failed to take snapshot", e);
+      return;
+    }
+
+    LOG.info("{}: Taking a snapshot asynchronously at fence index {}", name, fenceIndex);
+    pendingSnapshot = future.handle((i, e) -> {
       takeSnapshotTimerContext.stop();
+      if (e != null) {
+        LOG.error(name + ": Failed to take snapshot asynchronously at fence index " + fenceIndex,
+            JavaUtils.unwrapCompletionException(e));
+      } else {
+        onSnapshotTaken(i, fenceIndex);
+      }
+      return null;
+    });
+  }
 
-      final long appliedIndex = getLastAppliedIndex();
-      if (i > appliedIndex) {
+  private void onSnapshotTaken(long i, long fenceIndex) {
+    try {
+      if (i > fenceIndex) {
         throw new StateMachineException(
-            "Bug in StateMachine: snapshot index = " + i + " > appliedIndex = " + appliedIndex
+            "Bug in StateMachine: snapshot index = " + i + " > fenceIndex = " + fenceIndex
             + "; StateMachine class=" +  stateMachine.getClass().getName() + ", stateMachine=" + stateMachine);
       }
       stateMachine.getStateMachineStorage().cleanupOldSnapshots(snapshotRetentionPolicy);
@@ -272,7 +456,8 @@ class StateMachineUpdater implements Runnable {
 
     if (i >= 0) {
       LOG.info("{}: Took a snapshot at index {}", name, i);
-      snapshotIndex.updateIncreasingly(i, infoIndexChange);
+      // a newer snapshot may have been installed while an asynchronous snapshot was in progress
+      snapshotIndex.updateToMax(i, infoIndexChange);
 
       final LongStream commitIndexStream = server.getCommitInfos().stream().mapToLong(CommitInfoProto::getCommitIndex);
       final long purgeIndex = LongStream.concat(LongStream.of(i), commitIndexStream).min().orElse(i);
@@ -280,12 +465,17 @@ class StateMachineUpdater implements Runnable {
     }
   }
 
+  private void waitForPendingSnapshot() throws InterruptedException, ExecutionException {
+    // the exceptions, if there are any, are already handled
+    pendingSnapshot.get();
+  }
+
   private boolean shouldStop() {
     return Optional.ofNullable(stopIndex.get()).filter(i -> i <= getLastAppliedIndex()).isPresent();
   }
 
   private boolean shouldTakeSnapshot() {
-    if (autoSnapshotThreshold == null) {
+    if (autoSnapshotThreshold == null || !pendingSnapshot.isDone()) {
       return false;
     } else if (shouldStop()) {
       return getLastAppliedIndex() - snapshotIndex.get() > 0;
@@ -297,6 +487,10 @@ class StateMachineUpdater implements Runnable {
     return appliedIndex.get();
   }
 
+  private long getLastSubmittedIndex() {
+    return submittedIndex.get();
+  }
+
   long getStateMachineLastAppliedIndex() {
     return stateMachine.getLastAppliedTermIndex().getIndex();
   }
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.util.TimeDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Throttle the background transfers of all the groups in a {@link RaftServerProxy},
+ * i.e. the snapshot chunks and the committed log entries sent to the lagging followers,
+ * so that they do not saturate the disk and the network used by the foreground appends.
+ *
+ * There is a per-server token bucket shared by all the transfers
+ * and a per-transfer token bucket for each {@link Transfer}.
+ * The rate of the per-server bucket is halved when the average latency of the foreground appends
+ * exceeds a threshold and then increased gradually back to the configured rate.
+ *
+ * This class is threadsafe.
+ */
+public class TransferThrottler {
+  public static final Logger LOG = LoggerFactory.getLogger(TransferThrottler.class);
+
+  /** The rate is not reduced below 1/MAX_RATE_REDUCTION of the configured rate. */
+  static final int MAX_RATE_REDUCTION = 16;
+  /** The minimum interval between two rate adjustments. */
+  static final long ADJUSTMENT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * A token bucket holding at most one second of tokens.
+   * The number of tokens may become negative so that a transfer larger than the bucket can still be made;
+   * the following transfers have to wait until the debt is paid.
+   */
+  static class TokenBucket {
+    private final LongSupplier clock;
+    /** In bytes per second. */
+    private long rate;
+    private double tokens;
+    private long lastRefillNanos;
+
+    TokenBucket(long rate, LongSupplier clock) {
+      this.clock = clock;
+      this.rate = rate;
+      this.tokens = rate;
+      this.lastRefillNanos = clock.getAsLong();
+    }
+
+    private void refill() {
+      final long now = clock.getAsLong();
+      tokens = Math.min(rate, tokens + (now - lastRefillNanos) * (double) rate / TimeUnit.SECONDS.toNanos(1));
+      lastRefillNanos = now;
+    }
+
+    /** @return the nanoseconds to wait until the bucket has tokens. */
+    synchronized long getWaitNanos() {
+      refill();
+      return tokens > 0? 0: (long) Math.ceil(-tokens * TimeUnit.SECONDS.toNanos(1) / rate) + 1;
+    }
+
+    synchronized void consume(long bytes) {
+      tokens -= bytes;
+    }
+
+    synchronized long getRate() {
+      return rate;
+    }
+
+    synchronized void setRate(long rate) {
+      refill();
+      this.rate = rate;
+    }
+  }
+
+  /** A transfer, e.g. a snapshot installation, subject to the per-transfer limit. */
+  public final class Transfer {
+    /** Null if there is no per-transfer limit. */
+    private final TokenBucket bucket;
+
+    private Transfer() {
+      this.bucket = perTransferRate > 0? new TokenBucket(perTransferRate, clock): null;
+    }
+
+    /** @return the time in nanoseconds to wait until this transfer can acquire bytes; 0 means no waiting. */
+    public long getWaitNanos() {
+      return Math.max(perServer != null? perServer.getWaitNanos(): 0, bucket != null? bucket.getWaitNanos(): 0);
+    }
+
+    /**
+     * Consume the given number of bytes without waiting, e.g. after {@link #getWaitNanos()} has returned 0.
+     * The tokens may become negative so that the following transfers have to wait.
+     */
+    public void consume(long bytes) {
+      if (perServer != null) {
+        perServer.consume(bytes);
+      }
+      if (bucket != null) {
+        bucket.consume(bytes);
+      }
+    }
+
+    /**
+     * Acquire the given number of bytes and wait if necessary.
+     * @return the time in nanoseconds throttled.
+     */
+    public long acquire(long bytes) throws InterruptedException {
+      long throttled = 0;
+      for (long wait; (wait = getWaitNanos()) > 0; ) {
+        TimeUnit.NANOSECONDS.sleep(wait);
+        throttled += wait;
+      }
+      consume(bytes);
+      return throttled;
+    }
+
+    /**
+     * Try to acquire the given number of bytes without waiting.
+     * @return 0 if the bytes are acquired; otherwise, return the time in nanoseconds to wait.
+     */
+    public long tryAcquire(long bytes) {
+      final long wait = getWaitNanos();
+      if (wait == 0) {
+        consume(bytes);
+      }
+      return wait;
+    }
+  }
+
+  private final LongSupplier clock;
+  /** Null if there is no per-server limit. */
+  private final TokenBucket perServer;
+  private final long perServerRate;
+  private final long perTransferRate;
+  private final long latencyThresholdNanos;
+
+  /**
+   * The exponentially weighted moving average of the foreground append latency,
+   * stored as the bits of a double so that it can be updated without a lock.
+   */
+  private final AtomicLong averageLatencyNanos = new AtomicLong(Double.doubleToRawLongBits(0));
+  private final AtomicLong lastAdjustmentNanos;
+
+  TransferThrottler(RaftProperties properties) {
+    this(RaftServerConfigKeys.Log.Appender.throttleBandwidthPerServer(properties).getSize(),
+        RaftServerConfigKeys.Log.Appender.throttleBandwidthPerTransfer(properties).getSize(),
+        RaftServerConfigKeys.Log.Appender.throttleLatencyThreshold(properties), System::nanoTime);
+  }
+
+  TransferThrottler(long perServerRate, long perTransferRate, TimeDuration latencyThreshold, LongSupplier clock) {
+    this.clock = clock;
+    this.perServerRate = perServerRate;
+    this.perTransferRate = perTransferRate;
+    this.perServer = perServerRate > 0? new TokenBucket(perServerRate, clock): null;
+    this.latencyThresholdNanos = latencyThreshold.toLong(TimeUnit.NANOSECONDS);
+    this.lastAdjustmentNanos = new AtomicLong(clock.getAsLong());
+  }
+
+  /** @return is any limit configured? */
+  public boolean isEnabled() {
+    return perServerRate > 0 || perTransferRate > 0;
+  }
+
+  public Transfer newTransfer() {
+    return new Transfer();
+  }
+
+  /** @return the current per-server rate in bytes per second; or 0 if there is no per-server limit. */
+  long getPerServerRate() {
+    return perServer != null? perServer.getRate(): 0;
+  }
+
+  /**
+   * Update the foreground append latency and adjust the per-server rate if necessary.
+   * It is called for every append reply, so that it does not take any lock
+   * except for the rare rate adjustments.
+   */
+  public void onForegroundLatency(long nanos) {
+    if (perServer == null || latencyThresholdNanos <= 0) {
+      return;
+    }
+    final double average = updateAverageLatency(nanos);
+    final long now = clock.getAsLong();
+    final long last = lastAdjustmentNanos.get();
+    if (now - last < ADJUSTMENT_INTERVAL_NANOS || !lastAdjustmentNanos.compareAndSet(last, now)) {
+      return; // not yet time to adjust, or another thread is adjusting
+    }
+    final long current = perServer.getRate();
+    final long step = Math.max(1, perServerRate / MAX_RATE_REDUCTION);
+    final long rate = average > latencyThresholdNanos? Math.max(step, current / 2)
+        : Math.min(perServerRate, current + step);
+    if (rate != current) {
+      perServer.setRate(rate);
+      LOG.debug("Set per-server transfer rate to {} bytes/s", rate);
+    }
+  }
+
+  private double updateAverageLatency(long nanos) {
+    for(;;) {
+      final long bits = averageLatencyNanos.get();
+      final double previous = Double.longBitsToDouble(bits);
+      final double updated = previous == 0? nanos: 0.8 * previous + 0.2 * nanos;
+      if (averageLatencyNanos.compareAndSet(bits, Double.doubleToRawLongBits(updated))) {
+        return updated;
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Compute the min, the majority and the max of an index (e.g. the match index)
+ * over the voting members of a configuration.
+ * For a transitional configuration, the old and the new configurations are computed separately
+ * and then combined by taking the minimum.
+ *
+ * The arrays are allocated once for each configuration and then reused,
+ * so that {@link #update()} does not allocate any objects.
+ *
+ * This class is NOT threadsafe.
+ */
+class VoterIndices {
+  /** The voters of a (new or old) configuration. */
+  private static class Voters {
+    private final FollowerInfo[] followers;
+    private final boolean includeSelf;
+    /** For sorting the indices. */
+    private final long[] sorted;
+
+    Voters(List<FollowerInfo> followers, boolean includeSelf) {
+      this.followers = followers.toArray(new FollowerInfo[followers.size()]);
+      this.includeSelf = includeSelf;
+      this.sorted = new long[includeSelf? this.followers.length + 1: this.followers.length];
+    }
+
+    boolean isEmpty() {
+      return sorted.length == 0;
+    }
+
+    void sort(ToLongFunction<FollowerInfo> followerIndex, LongSupplier logIndex) {
+      for (int i = 0; i < followers.length; i++) {
+        sorted[i] = followerIndex.applyAsLong(followers[i]);
+      }
+      if (includeSelf) {
+        // note that we also need to wait for the local disk I/O
+        sorted[followers.length] = logIndex.getAsLong();
+      }
+      // sorting a small primitive array does not allocate
+      Arrays.sort(sorted);
+    }
+
+    long getMin() {
+      return sorted[0];
+    }
+
+    long getMajority() {
+      return sorted[(sorted.length - 1) / 2];
+    }
+
+    long getMax() {
+      return sorted[sorted.length - 1];
+    }
+  }
+
+  private final Voters newConf;
+  /** Null if the configuration is not transitional. */
+  private final Voters oldConf;
+
+  private final ToLongFunction<FollowerInfo> followerIndex;
+  private final LongSupplier logIndex;
+
+  private long min;
+  private long majority;
+  private long max;
+
+  VoterIndices(List<FollowerInfo> followersInNewConf, boolean includeSelfInNewConf,
+      List<FollowerInfo> followersInOldConf, boolean includeSelfInOldConf,
+      ToLongFunction<FollowerInfo> followerIndex, LongSupplier logIndex) {
+    this.newConf = new Voters(followersInNewConf, includeSelfInNewConf);
+    this.oldConf = followersInOldConf == null? null: new Voters(followersInOldConf, includeSelfInOldConf);
+    this.followerIndex = followerIndex;
+    this.logIndex = logIndex;
+  }
+
+  /**
+   * Update the min, the majority and the max from the current indices.
+   *
+   * @return true if the indices are updated;
+   *         otherwise, return false, i.e. the (new or old) configuration does not have any voters.
+   */
+  boolean update() {
+    if (newConf.isEmpty() || (oldConf != null && oldConf.isEmpty())) {
+      return false;
+    }
+
+    newConf.sort(followerIndex, logIndex);
+    min = newConf.getMin();
+    majority = newConf.getMajority();
+    max = newConf.getMax();
+
+    if (oldConf != null) {
+      oldConf.sort(followerIndex, logIndex);
+      min = Math.min(min, oldConf.getMin());
+      majority = Math.min(majority, oldConf.getMajority());
+      max = Math.min(max, oldConf.getMax());
+    }
+    return true;
+  }
+
+  long getMin() {
+    return min;
+  }
+
+  long getMajority() {
+    return majority;
+  }
+
+  long getMax() {
+    return max;
+  }
+}
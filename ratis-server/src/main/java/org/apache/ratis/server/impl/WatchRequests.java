@@ -28,14 +28,17 @@ import org.apache.ratis.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Deque;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 class WatchRequests {
@@ -43,11 +46,18 @@ class WatchRequests {
 
   static class PendingWatch {
     private final WatchRequestTypeProto watch;
+    /** The call id of the first request of this watch. */
+    private final long callId;
     private final Timestamp creationTime;
     private final Supplier<CompletableFuture<Void>> future = JavaUtils.memoize(CompletableFuture::new);
+    /** The position in {@link WatchHeap}, or -1 if it is not in the heap. */
+    private int heapIndex = -1;
+    /** The {@link TimeoutBucket} containing this watch, or null if it is not in any bucket. */
+    private TimeoutBucket bucket;
 
-    PendingWatch(WatchRequestTypeProto watch, Timestamp creationTime) {
+    PendingWatch(WatchRequestTypeProto watch, long callId, Timestamp creationTime) {
       this.watch = watch;
+      this.callId = callId;
       this.creationTime = creationTime;
     }
 
@@ -59,6 +69,10 @@ class WatchRequests {
       return watch.getIndex();
     }
 
+    long getCallId() {
+      return callId;
+    }
+
     Timestamp getCreationTime() {
       return creationTime;
     }
@@ -70,12 +84,166 @@ class WatchRequests {
     }
   }
 
+  /**
+   * A min-heap of the pending watches ordered by their log indices.
+   * The indices are kept in a primitive array so that the comparisons do not dereference the watches.
+   * Each watch records its position so that it can be removed in O(log n) time.
+   *
+   * This class is NOT threadsafe.
+   */
+  static class WatchHeap {
+    private long[] indices = new long[16];
+    private PendingWatch[] watches = new PendingWatch[16];
+    private int size = 0;
+
+    int size() {
+      return size;
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    /** @return the min index, or {@link Long#MAX_VALUE} if the heap is empty. */
+    long peekIndex() {
+      return size == 0? Long.MAX_VALUE: indices[0];
+    }
+
+    void add(PendingWatch pending) {
+      Preconditions.assertTrue(pending.heapIndex == -1, () -> pending + " is already in the heap");
+      if (size == watches.length) {
+        indices = Arrays.copyOf(indices, size << 1);
+        watches = Arrays.copyOf(watches, size << 1);
+      }
+      siftUp(size++, pending);
+    }
+
+    PendingWatch poll() {
+      if (size == 0) {
+        return null;
+      }
+      final PendingWatch first = watches[0];
+      removeAt(0);
+      return first;
+    }
+
+    /** @return true iff the given watch was in the heap. */
+    boolean remove(PendingWatch pending) {
+      final int i = pending.heapIndex;
+      if (i < 0 || i >= size || watches[i] != pending) {
+        return false;
+      }
+      removeAt(i);
+      return true;
+    }
+
+    void forEach(Consumer<PendingWatch> action) {
+      for (int i = 0; i < size; i++) {
+        action.accept(watches[i]);
+      }
+    }
+
+    void clear() {
+      for (int i = 0; i < size; i++) {
+        watches[i].heapIndex = -1;
+        watches[i] = null;
+      }
+      size = 0;
+    }
+
+    private void removeAt(int i) {
+      watches[i].heapIndex = -1;
+      final int last = --size;
+      final PendingWatch moved = watches[last];
+      watches[last] = null;
+      if (i == last) {
+        return;
+      }
+      siftDown(i, moved);
+      if (watches[i] == moved) {
+        siftUp(i, moved);
+      }
+    }
+
+    private void siftUp(int i, PendingWatch pending) {
+      final long index = pending.getIndex();
+      while (i > 0) {
+        final int parent = (i - 1) >>> 1;
+        if (indices[parent] <= index) {
+          break;
+        }
+        set(i, watches[parent]);
+        i = parent;
+      }
+      set(i, pending);
+    }
+
+    private void siftDown(int i, PendingWatch pending) {
+      final long index = pending.getIndex();
+      final int half = size >>> 1;
+      while (i < half) {
+        int child = (i << 1) + 1;
+        final int right = child + 1;
+        if (right < size && indices[right] < indices[child]) {
+          child = right;
+        }
+        if (index <= indices[child]) {
+          break;
+        }
+        set(i, watches[child]);
+        i = child;
+      }
+      set(i, pending);
+    }
+
+    private void set(int i, PendingWatch pending) {
+      indices[i] = pending.getIndex();
+      watches[i] = pending;
+      pending.heapIndex = i;
+    }
+  }
+
+  /**
+   * The watches sharing the same deadline.
+   * Since the creation times are rounded up to the timeout denomination,
+   * the watches with the same index in a bucket are the same watch.
+   */
+  static class TimeoutBucket {
+    private final long deadline;
+    private final Map<Long, PendingWatch> watches = new HashMap<>();
+
+    TimeoutBucket(long deadline) {
+      this.deadline = deadline;
+    }
+
+    void add(PendingWatch pending) {
+      watches.put(pending.getIndex(), pending);
+      pending.bucket = this;
+    }
+
+    void remove(PendingWatch pending) {
+      watches.remove(pending.getIndex(), pending);
+      pending.bucket = null;
+    }
+
+    boolean isEmpty() {
+      return watches.isEmpty();
+    }
+  }
+
   private class WatchQueue {
     private final ReplicationLevel replication;
-    private final SortedMap<PendingWatch, PendingWatch> q = new TreeMap<>(
-        Comparator.comparingLong(PendingWatch::getIndex).thenComparing(PendingWatch::getCreationTime));
+    /** The pending watches ordered by index for releasing the satisfied watches. */
+    private final WatchHeap heap = new WatchHeap();
+    /**
+     * The pending watches bucketed by deadline, i.e. a coarse timing wheel with the timeout denomination as the tick.
+     * Since the deadlines are computed under the lock, they are non-decreasing in the order of the buckets.
+     */
+    private final Deque<TimeoutBucket> buckets = new ArrayDeque<>();
+    /** Is a timeout task scheduled?  There is at most one timeout task for each queue. */
+    private boolean timeoutScheduled = false;
     private final ResourceSemaphore resource;
-    private volatile long index; //Invariant: q.isEmpty() or index < any element q
+    private volatile long index; //Invariant: heap.isEmpty() or index < any element in heap
 
     WatchQueue(ReplicationLevel replication, int elementLimit) {
       this.replication = replication;
@@ -87,78 +255,124 @@ class WatchRequests {
     }
 
     CompletableFuture<Void> add(RaftClientRequest request) {
-      final long currentTime = Timestamp.currentTimeNanos();
-      final long roundUp = watchTimeoutDenominationNanos.roundUpNanos(currentTime);
-      final PendingWatch pending = new PendingWatch(request.getType().getWatch(), Timestamp.valueOf(roundUp));
-
-      final PendingWatch computed;
+      final WatchRequestTypeProto watch = request.getType().getWatch();
+      final PendingWatch pending;
+      final long deadline;
       synchronized (this) {
-        if (pending.getIndex() <= getIndex()) { // compare again synchronized
+        if (watch.getIndex() <= getIndex()) { // compare again synchronized
           // watch condition already satisfied
           return null;
         }
-        computed = q.compute(pending, (key, old) -> old != null? old: resource.tryAcquire()? pending: null);
-      }
 
-      if (computed == null) {
-        // failed to acquire
-        return JavaUtils.completeExceptionally(new ResourceUnavailableException(
-            "Failed to acquire a pending watch request in " + name + " for " + request));
-      }
-      if (computed != pending) {
-        // already exists in q
-        return computed.getFuture();
-      }
+        final long roundUp = watchTimeoutDenominationNanos.roundUpNanos(Timestamp.currentTimeNanos());
+        deadline = roundUp + watchTimeoutNanos.getDuration();
+        final TimeoutBucket last = buckets.peekLast();
+        final PendingWatch existing = last == null || last.deadline != deadline? null
+            : last.watches.get(watch.getIndex());
+        if (existing != null) {
+          return existing.getFuture();
+        }
+        if (!resource.tryAcquire()) {
+          return JavaUtils.completeExceptionally(new ResourceUnavailableException(
+              "Failed to acquire a pending watch request in " + name + " for " + request));
+        }
 
-      // newly added to q
-      final TimeDuration timeout = watchTimeoutNanos.apply(duration -> duration + roundUp - currentTime);
-      scheduler.onTimeout(timeout, () -> handleTimeout(request, pending),
-          LOG, () -> name + ": Failed to timeout " + request);
+        pending = new PendingWatch(watch, request.getCallId(), Timestamp.valueOf(roundUp));
+        heap.add(pending);
+        final TimeoutBucket bucket;
+        if (last == null || last.deadline != deadline) {
+          bucket = new TimeoutBucket(deadline);
+          buckets.addLast(bucket);
+        } else {
+          bucket = last;
+        }
+        bucket.add(pending);
+
+        if (timeoutScheduled) {
+          return pending.getFuture();
+        }
+        timeoutScheduled = true;
+      }
+      scheduleTimeout(deadline);
       return pending.getFuture();
     }
 
-    void handleTimeout(RaftClientRequest request, PendingWatch pending) {
-      if (removeExisting(pending)) {
-        pending.getFuture().completeExceptionally(
-            new NotReplicatedException(request.getCallId(), replication, pending.getIndex()));
-        LOG.debug("{}: timeout {}, {}", name, pending, request);
-      }
+    private void scheduleTimeout(long deadline) {
+      final TimeDuration delay = TimeDuration.valueOf(
+          Math.max(0L, deadline - Timestamp.currentTimeNanos()), TimeUnit.NANOSECONDS);
+      timer.onTimeout(delay, this::handleTimeouts,
+          LOG, () -> name + ": Failed to timeout " + replication + " watches");
     }
 
-    synchronized boolean removeExisting(PendingWatch pending) {
-      final PendingWatch removed = q.remove(pending);
-      if (removed == null) {
-        return false;
+    /** Time out all the watches in the expired buckets and then schedule the next timeout task, if there is any. */
+    void handleTimeouts() {
+      final List<PendingWatch> timeouts = new ArrayList<>();
+      final TimeoutBucket next;
+      synchronized (this) {
+        final long now = Timestamp.currentTimeNanos();
+        for(TimeoutBucket b; (b = buckets.peekFirst()) != null && b.deadline - now <= 0; ) {
+          buckets.pollFirst();
+          for(PendingWatch pending : b.watches.values()) {
+            pending.bucket = null;
+            if (heap.remove(pending)) {
+              resource.release();
+              timeouts.add(pending);
+            }
+          }
+        }
+
+        next = buckets.peekFirst();
+        timeoutScheduled = next != null;
       }
-      Preconditions.assertTrue(removed == pending);
-      resource.release();
-      return true;
-    }
 
-    synchronized void updateIndex(final long newIndex) {
-      if (newIndex <= getIndex()) { // compare again synchronized
-        return;
+      for(PendingWatch pending : timeouts) {
+        pending.getFuture().completeExceptionally(
+            new NotReplicatedException(pending.getCallId(), replication, pending.getIndex()));
+        LOG.debug("{}: timeout {}", name, pending);
+      }
+      if (next != null) {
+        scheduleTimeout(next.deadline);
       }
-      LOG.debug("{}: update {} index from {} to {}", name, replication, index, newIndex);
-      index = newIndex;
+    }
 
-      for(; !q.isEmpty();) {
-        final PendingWatch first = q.firstKey();
-        if (first.getIndex() > newIndex) {
+    void updateIndex(final long newIndex) {
+      final List<PendingWatch> completed = new ArrayList<>();
+      synchronized (this) {
+        if (newIndex <= getIndex()) { // compare again synchronized
           return;
         }
-        final boolean removed = removeExisting(first);
-        Preconditions.assertTrue(removed);
-        LOG.debug("{}: complete {}", name, first);
-        first.getFuture().complete(null);
+        LOG.debug("{}: update {} index from {} to {}", name, replication, index, newIndex);
+        index = newIndex;
+
+        // release all the satisfied watches in one pass and remove them from their buckets,
+        // so that the buckets hold only the pending watches.
+        for(; heap.peekIndex() <= newIndex; ) {
+          final PendingWatch pending = heap.poll();
+          pending.bucket.remove(pending);
+          completed.add(pending);
+          resource.release();
+        }
+        // drop the empty buckets at the head; the other empty buckets are dropped when they expire.
+        for(TimeoutBucket b; (b = buckets.peekFirst()) != null && b.isEmpty(); ) {
+          buckets.pollFirst();
+        }
+      }
+
+      for(PendingWatch pending : completed) {
+        LOG.debug("{}: complete {}", name, pending);
+        pending.getFuture().complete(null);
       }
     }
 
+    /** @return the number of the watches in the buckets. */
+    synchronized int getNumBucketedWatches() {
+      return buckets.stream().mapToInt(b -> b.watches.size()).sum();
+    }
+
     synchronized void failAll(Exception e) {
-      for(PendingWatch pending : q.values()) {
-        pending.getFuture().completeExceptionally(e);
-      }
-      q.clear();
+      heap.forEach(pending -> pending.getFuture().completeExceptionally(e));
+      heap.clear();
+      buckets.clear();
       resource.close();
     }
   }
@@ -168,10 +382,11 @@ class WatchRequests {
 
   private final TimeDuration watchTimeoutNanos;
   private final TimeDuration watchTimeoutDenominationNanos;
-  private final TimeoutScheduler scheduler = TimeoutScheduler.getInstance();
+  private final HashedWheelTimer timer;
 
-  WatchRequests(Object name, RaftProperties properties) {
+  WatchRequests(Object name, RaftProperties properties, HashedWheelTimer timer) {
     this.name = name + "-" + getClass().getSimpleName();
+    this.timer = timer;
 
     final TimeDuration watchTimeout = RaftServerConfigKeys.Watch.timeout(properties);
     this.watchTimeoutNanos = watchTimeout.to(TimeUnit.NANOSECONDS);
@@ -204,6 +419,11 @@ class WatchRequests {
     }
   }
 
+  /** For testing. */
+  int getNumBucketedWatches(ReplicationLevel replication) {
+    return queues.get(replication).getNumBucketedWatches();
+  }
+
   void failWatches(Exception e) {
     queues.values().forEach(q -> q.failAll(e));
   }
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.AlreadyClosedException;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.statemachine.impl.TransactionContextImpl;
+import org.apache.ratis.util.Daemon;
+import org.apache.ratis.util.HashedWheelTimer;
+import org.apache.ratis.util.TimeDuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Batch the write requests arriving at the leader concurrently into a single log entry
+ * in order to amortize the per-entry overhead of small writes.
+ *
+ * A batch is flushed once it reaches the element limit or the byte limit,
+ * or once the linger time has elapsed since its first request arrived.
+ * The batches are flushed in the order of the requests added.
+ * A linger flush is run by the executor of this batcher, not by the timer threads,
+ * since appending a batch may block.
+ */
+class WriteBatcher {
+  static final Logger LOG = LoggerFactory.getLogger(WriteBatcher.class);
+
+  /** A write request waiting in a batch. */
+  static class Write {
+    private final RaftClientRequest request;
+    private final TransactionContext context;
+    private final RetryCache.CacheEntry cacheEntry;
+    private final CompletableFuture<RaftClientReply> future = new CompletableFuture<>();
+
+    Write(RaftClientRequest request, TransactionContext context, RetryCache.CacheEntry cacheEntry) {
+      this.request = request;
+      this.context = context;
+      this.cacheEntry = cacheEntry;
+    }
+
+    RaftClientRequest getRequest() {
+      return request;
+    }
+
+    TransactionContext getContext() {
+      return context;
+    }
+
+    RetryCache.CacheEntry getCacheEntry() {
+      return cacheEntry;
+    }
+
+    CompletableFuture<RaftClientReply> getFuture() {
+      return future;
+    }
+
+    /** Complete this write with the given reply future. */
+    void complete(CompletableFuture<RaftClientReply> reply) {
+      reply.whenComplete((r, e) -> {
+        if (e != null) {
+          future.completeExceptionally(e);
+        } else {
+          future.complete(r);
+        }
+      });
+    }
+
+    int getSize() {
+      return context.getStateMachineLogEntry().getSerializedSize();
+    }
+  }
+
+  /** The transaction of a batch, where the transactions in the batch are pre-appended individually. */
+  private static class BatchTransactionContext extends TransactionContextImpl {
+    BatchTransactionContext(StateMachine stateMachine, StateMachineLogEntryProto batch) {
+      super(stateMachine, null, batch, null);
+    }
+
+    @Override
+    public TransactionContext preAppendTransaction() {
+      return this;
+    }
+
+    @Override
+    public TransactionContext cancelTransaction() {
+      return this;
+    }
+  }
+
+  /** @return true iff the given transaction can be batched, i.e. it does not have state machine data. */
+  static boolean isBatchable(TransactionContext context) {
+    return !context.getStateMachineLogEntry().hasStateMachineEntry();
+  }
+
+  /** @return the transaction of a batch of the given transactions, which have been pre-appended. */
+  static TransactionContext newBatchTransactionContext(StateMachine stateMachine, List<TransactionContext> batch) {
+    return new BatchTransactionContext(stateMachine, ServerProtoUtils.toStateMachineLogEntryProto(
+        batch.stream().map(TransactionContext::getStateMachineLogEntry).collect(Collectors.toList())));
+  }
+
+  static List<Message> getMessages(List<Write> writes) {
+    return writes.stream().map(w -> w.getRequest().getMessage()).collect(Collectors.toList());
+  }
+
+  private final String name;
+  private final int elementLimit;
+  private final long byteLimit;
+  private final TimeDuration linger;
+  /** Append the given batch; it is called in the order of the batches. */
+  private final Consumer<List<Write>> appendBatch;
+  /** Schedule the linger flushes. */
+  private final HashedWheelTimer timer;
+  /** Run the linger flushes so that the timer threads only fire the timeouts. */
+  private final ExecutorService flushExecutor;
+
+  private List<Write> batch = new ArrayList<>();
+  private long batchSize = 0;
+  /** The id of the current batch, which is increased when a batch is flushed. */
+  private long batchId = 0;
+
+  WriteBatcher(Object name, RaftProperties properties, HashedWheelTimer timer, Consumer<List<Write>> appendBatch) {
+    this.name = name + "-" + getClass().getSimpleName();
+    this.elementLimit = RaftServerConfigKeys.Write.Batch.elementLimit(properties);
+    this.byteLimit = RaftServerConfigKeys.Write.Batch.byteLimit(properties).getSize();
+    this.linger = RaftServerConfigKeys.Write.Batch.linger(properties);
+    this.timer = timer;
+    this.appendBatch = appendBatch;
+    this.flushExecutor = Executors.newSingleThreadExecutor(r -> new Daemon(r, this.name + "-flush"));
+  }
+
+  /** Add the given write to the current batch. */
+  CompletableFuture<RaftClientReply> add(RaftClientRequest request, TransactionContext context,
+      RetryCache.CacheEntry cacheEntry) {
+    final Write write = new Write(request, context, cacheEntry);
+    final long id;
+    synchronized (this) {
+      batch.add(write);
+      batchSize += write.getSize();
+      if (batch.size() >= elementLimit || batchSize >= byteLimit || linger.isNonPositive()) {
+        flush();
+        return write.getFuture();
+      } else if (batch.size() > 1) {
+        // the linger of the current batch has already been scheduled
+        return write.getFuture();
+      }
+      id = batchId;
+    }
+    timer.onShortTimeout(linger, () -> flushExecutor.execute(() -> flush(id)), LOG,
+        () -> name + ": Failed to submit the flush of batch " + id);
+    return write.getFuture();
+  }
+
+  private synchronized void flush(long id) {
+    if (id == batchId) {
+      try {
+        flush();
+      } catch (Throwable t) {
+        LOG.error("{}: Failed to flush batch {}", name, id, t);
+      }
+    }
+  }
+
+  /** Flush the current batch, if there is any. */
+  synchronized void flush() {
+    if (batch.isEmpty()) {
+      return;
+    }
+    final List<Write> flushed = Collections.unmodifiableList(batch);
+    batch = new ArrayList<>();
+    batchSize = 0;
+    batchId++;
+    LOG.debug("{}: flush a batch of {} writes", name, flushed.size());
+    appendBatch.accept(flushed);
+  }
+
+  /** Stop the flush executor and fail the writes in the current batch. */
+  void close() {
+    flushExecutor.shutdown();
+    final List<Write> remaining;
+    synchronized (this) {
+      remaining = batch;
+      batch = new ArrayList<>();
+      batchSize = 0;
+      batchId++;
+    }
+    final AlreadyClosedException e = new AlreadyClosedException(name + " is closed");
+    remaining.forEach(w -> w.getFuture().completeExceptionally(e));
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -65,6 +65,8 @@ public class RaftLogMetrics extends RatisMetrics {
   public static final String RAFT_LOG_APPEND_ENTRY_COUNT = "appendEntryCount";
   public static final String RAFT_LOG_PURGE_METRIC = "purgeLog";
   public static final String LOG_APPENDER_INSTALL_SNAPSHOT_METRIC = "numInstallSnapshot";
+  // Number of snapshots sent by a follower on behalf of the leader
+  public static final String LOG_APPENDER_INSTALL_SNAPSHOT_FROM_FOLLOWER_METRIC = "numInstallSnapshotFromFollower";
 
   //////////////////////////////
   // Raft Log Read Path Metrics
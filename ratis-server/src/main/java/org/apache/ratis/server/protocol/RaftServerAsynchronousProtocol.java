@@ -20,6 +20,8 @@ package org.apache.ratis.server.protocol;
 
 import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
 
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
@@ -28,4 +30,8 @@ public interface RaftServerAsynchronousProtocol {
 
   CompletableFuture<AppendEntriesReplyProto> appendEntriesAsync(AppendEntriesRequestProto request)
       throws IOException;
+
+  /** A follower requests the read index from the leader. */
+  CompletableFuture<ReadIndexReplyProto> readIndexAsync(ReadIndexRequestProto request)
+      throws IOException;
 }
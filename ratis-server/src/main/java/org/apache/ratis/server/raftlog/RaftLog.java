@@ -129,6 +129,17 @@ public abstract class RaftLog implements RaftLogSequentialOps, Closeable {
     return false;
   }
 
+  /**
+   * Update the last committed index to the last index included in an installed snapshot.
+   * Unlike {@link #updateLastCommitted(long, long)}, the term is not checked
+   * since the entries included in a snapshot must have been committed.
+   */
+  public void onSnapshotInstalled(long lastSnapshotIndex) {
+    try(AutoCloseableLock writeLock = writeLock()) {
+      commitIndex.updateToMax(Math.min(lastSnapshotIndex, getFlushIndex()), infoIndexChange);
+    }
+  }
+
   /**
    * Does the log contains the given term and index? Used to check the
    * consistency between the local log of a follower and the log entries sent
@@ -139,6 +150,69 @@ public abstract class RaftLog implements RaftLogSequentialOps, Closeable {
     return ti.equals(getTermIndex(ti.getIndex()));
   }
 
+  /**
+   * Since the terms in a log are non-decreasing, use binary search to find
+   * the first index of the given term within the given range.
+   *
+   * @param term the term to search.
+   * @param lowerBound the lower bound (inclusive) of the search range.
+   * @param upperBound the upper bound (inclusive) of the search range.
+   * @return the first index of the given term; or {@link #INVALID_LOG_INDEX} if not found.
+   */
+  public long getFirstIndexOfTerm(long term, long lowerBound, long upperBound) {
+    long low = Math.max(lowerBound, getStartIndex());
+    long high = upperBound;
+    long found = INVALID_LOG_INDEX;
+    while (low <= high) {
+      final long mid = (low + high) >>> 1;
+      final TermIndex ti = getTermIndex(mid);
+      if (ti == null) {
+        return INVALID_LOG_INDEX;
+      } else if (ti.getTerm() < term) {
+        low = mid + 1;
+      } else {
+        if (ti.getTerm() == term) {
+          found = mid;
+        }
+        high = mid - 1;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Since the terms in a log are non-decreasing, use binary search to find
+   * the last index of the given term which is less than or equal to the given upper bound.
+   *
+   * @param term the term to search.
+   * @param upperBound the upper bound (inclusive) of the search range.
+   * @return the last index of the given term; or {@link #INVALID_LOG_INDEX} if not found.
+   */
+  public long getLastIndexOfTerm(long term, long upperBound) {
+    final TermIndex last = getLastEntryTermIndex();
+    if (last == null) {
+      return INVALID_LOG_INDEX;
+    }
+    long low = getStartIndex();
+    long high = Math.min(upperBound, last.getIndex());
+    long found = INVALID_LOG_INDEX;
+    while (low <= high) {
+      final long mid = (low + high) >>> 1;
+      final TermIndex ti = getTermIndex(mid);
+      if (ti == null) {
+        return INVALID_LOG_INDEX;
+      } else if (ti.getTerm() > term) {
+        high = mid - 1;
+      } else {
+        if (ti.getTerm() == term) {
+          found = mid;
+        }
+        low = mid + 1;
+      }
+    }
+    return found;
+  }
+
   /**
    * @return the index of the next log entry to append.
    */
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.io.MD5Hash;
+import org.apache.ratis.proto.RaftProtos.FileDigestAlgorithm;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.PureJavaCrc32C;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.zip.Checksum;
+
+/**
+ * Compute the digest of a snapshot file incrementally
+ * using a {@link FileDigestAlgorithm}.
+ */
+public abstract class FileDigester {
+  private static final int BUFFER_SIZE = 8 << 10;
+
+  /** @return a new digester for the given algorithm. */
+  public static FileDigester newInstance(FileDigestAlgorithm algorithm) {
+    switch (algorithm) {
+      case MD5:
+        return new Md5();
+      case CRC32C:
+        return new Crc32c();
+      default:
+        throw new IllegalArgumentException("Unsupported file digest algorithm " + algorithm);
+    }
+  }
+
+  /** @return the digest of the given file using the given algorithm. */
+  public static ByteString digest(FileDigestAlgorithm algorithm, File file) throws IOException {
+    final FileDigester digester = newInstance(algorithm);
+    digester.update(file, file.length());
+    return digester.digest();
+  }
+
+  private final FileDigestAlgorithm algorithm;
+
+  private FileDigester(FileDigestAlgorithm algorithm) {
+    this.algorithm = algorithm;
+  }
+
+  public FileDigestAlgorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  /** Update the digest with the remaining bytes of the given buffer. */
+  public abstract void update(ByteBuffer data);
+
+  abstract void update(byte[] data, int offset, int length);
+
+  /** Update the digest with the first length bytes of the given file. */
+  public void update(File file, long length) throws IOException {
+    final byte[] buf = new byte[BUFFER_SIZE];
+    try (InputStream in = new FileInputStream(file)) {
+      for (long remaining = length; remaining > 0; ) {
+        final int n = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+        if (n < 0) {
+          throw new IOException("Unexpected end of " + file + " at " + (length - remaining) + " < " + length);
+        }
+        update(buf, 0, n);
+        remaining -= n;
+      }
+    }
+  }
+
+  /** @return the digest of the bytes updated so far. */
+  public abstract ByteString digest();
+
+  private static class Md5 extends FileDigester {
+    private final MessageDigest digester = MD5Hash.newDigester();
+
+    Md5() {
+      super(FileDigestAlgorithm.MD5);
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+      digester.update(data);
+    }
+
+    @Override
+    void update(byte[] data, int offset, int length) {
+      digester.update(data, offset, length);
+    }
+
+    @Override
+    public ByteString digest() {
+      return ByteString.copyFrom(digester.digest());
+    }
+  }
+
+  private static class Crc32c extends FileDigester {
+    private final Checksum checksum = new PureJavaCrc32C();
+    /** For copying the buffers without an accessible array, such as the read-only buffers of a ByteString. */
+    private byte[] copyBuffer;
+
+    Crc32c() {
+      super(FileDigestAlgorithm.CRC32C);
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+      if (data.hasArray()) {
+        update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        data.position(data.limit());
+        return;
+      }
+      if (copyBuffer == null) {
+        copyBuffer = new byte[BUFFER_SIZE];
+      }
+      while (data.hasRemaining()) {
+        final int n = Math.min(copyBuffer.length, data.remaining());
+        data.get(copyBuffer, 0, n);
+        update(copyBuffer, 0, n);
+      }
+    }
+
+    @Override
+    void update(byte[] data, int offset, int length) {
+      checksum.update(data, offset, length);
+    }
+
+    @Override
+    public ByteString digest() {
+      final ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES);
+      buf.putInt((int) checksum.getValue()).flip();
+      return ByteString.copyFrom(buf);
+    }
+  }
+}
@@ -50,6 +50,7 @@ public class RaftStorageDirectory {
   static final String LOG_FILE_PREFIX = "log";
   static final String STATE_MACHINE = "sm"; // directory containing state machine snapshots
   static final String TEMP = "tmp";
+  static final String SNAPSHOT_TEMP_PREFIX = "snapshot_";
   static final Pattern CLOSED_SEGMENT_REGEX = Pattern.compile("log_(\\d+)-(\\d+)");
   static final Pattern OPEN_SEGMENT_REGEX = Pattern.compile("log_inprogress_(\\d+)(?:\\..*)?");
   private static final String CONF_EXTENSION = ".conf";
@@ -173,9 +174,22 @@ public class RaftStorageDirectory {
     return new File(getRoot(), STATE_MACHINE);
   }
 
+  /** Returns the temporary directory $rootdir/tmp/ */
+  public File getTempDir() {
+    return new File(getRoot(), TEMP);
+  }
+
   /** Returns a uniquely named temporary directory under $rootdir/tmp/ */
   public File getNewTempDir() {
-    return new File(new File(getRoot(), TEMP), UUID.randomUUID().toString());
+    return new File(getTempDir(), UUID.randomUUID().toString());
+  }
+
+  /**
+   * Returns the temporary directory under $rootdir/tmp/ for installing the snapshot with the given term and index.
+   * The directory is the same for the chunks of the snapshot so that an interrupted installation can be resumed.
+   */
+  public File getSnapshotTempDir(long term, long index) {
+    return new File(getTempDir(), SNAPSHOT_TEMP_PREFIX + term + "_" + index);
   }
 
   public Path relativizeToRoot(Path p) {
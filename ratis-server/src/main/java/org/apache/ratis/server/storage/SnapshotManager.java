@@ -18,20 +18,34 @@
 package org.apache.ratis.server.storage;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.ratis.io.MD5Hash;
 import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.proto.RaftProtos.FileChunkProto;
+import org.apache.ratis.proto.RaftProtos.FileDigestAlgorithm;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
 import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.util.FileUtils;
-import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.MD5FileUtil;
-import org.apache.ratis.util.Preconditions;
+import org.apache.ratis.util.SizeInBytes;
+import org.apache.ratis.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,29 +59,176 @@ public class SnapshotManager {
 
   private final RaftStorage storage;
   private final RaftPeerId selfId;
+  private final long syncInterval;
+
+  /** A file being installed, which is kept open across the chunks. */
+  private static class InstallingFile {
+    private final File file;
+    private final FileChannel channel;
+    private final FileDigestAlgorithm digestAlgorithm;
+    private final long syncInterval;
+    /** The number of bytes written since the last force. */
+    private long unsyncedLength = 0;
+    /**
+     * The digest computed incrementally from the chunks written,
+     * or null if the chunks were not written sequentially from offset 0 (e.g. a resumed installation).
+     */
+    private FileDigester digester;
+    /** The number of bytes fed to {@link #digester}. */
+    private long digestedLength = 0;
+
+    InstallingFile(File file, FileDigestAlgorithm digestAlgorithm, long syncInterval) throws IOException {
+      this.file = file;
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      this.digestAlgorithm = digestAlgorithm;
+      this.syncInterval = syncInterval;
+      this.digester = FileDigester.newInstance(digestAlgorithm);
+    }
+
+    /**
+     * Write the chunk data without copying it.
+     * The file is forced to the disk at its last chunk or when the unsynced length reaches the sync interval.
+     *
+     * @return true if the file, including this chunk, has been forced to the disk.
+     */
+    boolean write(FileChunkProto chunk) throws IOException {
+      updateDigest(chunk);
+      long position = chunk.getOffset();
+      for (ByteBuffer data : chunk.getData().asReadOnlyByteBufferList()) {
+        while (data.hasRemaining()) {
+          position += channel.write(data, position);
+        }
+      }
+      unsyncedLength += chunk.getData().size();
+      if (!chunk.getDone() && unsyncedLength < syncInterval) {
+        return false;
+      }
+      channel.force(false);
+      unsyncedLength = 0;
+      return true;
+    }
+
+    private void updateDigest(FileChunkProto chunk) {
+      if (digester == null) {
+        return;
+      }
+      if (chunk.getOffset() != digestedLength || chunk.getDigestAlgorithm() != digestAlgorithm) {
+        // the chunks are not sequential or use another algorithm; the digest will be computed from the file.
+        digester = null;
+        return;
+      }
+      for (ByteBuffer data : chunk.getData().asReadOnlyByteBufferList()) {
+        digester.update(data);
+      }
+      digestedLength += chunk.getData().size();
+    }
+
+    /**
+     * @return the digest, using the given algorithm, computed from the chunks;
+     *         re-read the file only if it is unavailable.
+     */
+    ByteString getDigest(FileDigestAlgorithm algorithm) throws IOException {
+      return digester != null && algorithm == digestAlgorithm? digester.digest()
+          : FileDigester.digest(algorithm, file);
+    }
+
+    void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close {}", file, e);
+      }
+    }
+  }
+
+  /**
+   * The files being installed.
+   * The files of a snapshot may be sent over multiple streams in parallel,
+   * so that the chunks of different files may interleave.
+   */
+  private final Map<File, InstallingFile> installingFiles = new ConcurrentHashMap<>();
+  /**
+   * The first and the last requests of an installation hold the write lock
+   * since they create and remove the temporary directory.
+   * The other requests hold the read lock so that the chunks of different files are written concurrently.
+   * The chunks of the same file are sent over the same stream, so they are never written concurrently.
+   */
+  private final ReadWriteLock installLock = new ReentrantReadWriteLock();
 
   public SnapshotManager(RaftStorage storage, RaftPeerId selfId)
       throws IOException {
+    this(storage, selfId, RaftServerConfigKeys.Snapshot.INSTALL_SYNC_INTERVAL_DEFAULT);
+  }
+
+  public SnapshotManager(RaftStorage storage, RaftPeerId selfId, SizeInBytes syncInterval) {
     this.storage = storage;
     this.selfId = selfId;
+    this.syncInterval = syncInterval.getSize();
   }
 
-  public void installSnapshot(StateMachine stateMachine,
+  /**
+   * Install a snapshot chunk request.
+   * The chunks of a snapshot are written to the same temporary directory.
+   * A file is forced to the disk at its last chunk and after every sync interval bytes,
+   * so that an interrupted installation can be resumed after the last synced request.
+   * A request with requestIndex 0 starts a new installation
+   * and removes the previous temporary snapshot directories.
+   * The requests other than the first and the last requests may be installed concurrently.
+   *
+   * For an incremental snapshot, the latest snapshot of the state machine must be the base snapshot,
+   * where the latest snapshot of a state machine supporting snapshot chains is the last link of its chain.
+   * The files are added to the state machine directory
+   * instead of replacing the directory when the installation is done.
+   *
+   * @return true if the chunks of the request, and the previous chunks of the same files, are forced to the disk.
+   */
+  public boolean installSnapshot(StateMachine stateMachine,
+      InstallSnapshotRequestProto request) throws IOException {
+    final InstallSnapshotRequestProto.SnapshotChunkProto chunk = request.getSnapshotChunk();
+    final boolean exclusive = chunk.getRequestIndex() == 0 || chunk.getDone();
+    final Lock lock = exclusive? installLock.writeLock() : installLock.readLock();
+    lock.lock();
+    try {
+      return installSnapshotImpl(stateMachine, request);
+    } catch (IOException | RuntimeException e) {
+      if (exclusive) {
+        // no other streams are writing; otherwise, only the file of the failed chunk is closed.
+        closeInstallingFiles();
+      }
+      throw e;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean installSnapshotImpl(StateMachine stateMachine,
       InstallSnapshotRequestProto request) throws IOException {
     final InstallSnapshotRequestProto.SnapshotChunkProto snapshotChunkRequest =
         request.getSnapshotChunk();
+    final long lastIncludedTerm = snapshotChunkRequest.getTermIndex().getTerm();
     final long lastIncludedIndex = snapshotChunkRequest.getTermIndex().getIndex();
     final RaftStorageDirectory dir = storage.getStorageDir();
 
-    File tmpDir = dir.getNewTempDir();
+    final boolean incremental = snapshotChunkRequest.getIncremental();
+    final long baseIndex = snapshotChunkRequest.getBaseIndex();
+
+    final File tmpDir = dir.getSnapshotTempDir(lastIncludedTerm, lastIncludedIndex);
+    if (snapshotChunkRequest.getRequestIndex() == 0) {
+      closeInstallingFiles();
+      deleteSnapshotTempDirs(dir);
+      if (incremental) {
+        final SnapshotInfo latest = stateMachine.getLatestSnapshot();
+        if (latest == null || latest.getIndex() != baseIndex) {
+          throw new IOException("Failed to install incremental snapshot-" + lastIncludedIndex
+              + ": the base snapshot-" + baseIndex + " is not the latest snapshot " + latest + " in " + selfId);
+        }
+      }
+    }
     FileUtils.createDirectories(tmpDir);
-    tmpDir.deleteOnExit();
 
     LOG.info("Installing snapshot:{}, to tmp dir:{}", request, tmpDir);
 
-    // TODO: Make sure that subsequent requests for the same installSnapshot are coming in order,
-    // and are not lost when whole request cycle is done. Check requestId and requestIndex here
-
+    boolean synced = true;
     for (FileChunkProto chunk : snapshotChunkRequest.getFileChunksList()) {
       SnapshotInfo pi = stateMachine.getLatestSnapshot();
       if (pi != null && pi.getTermIndex().getIndex() >= lastIncludedIndex) {
@@ -81,56 +242,116 @@ public class SnapshotManager {
       File tmpSnapshotFile = new File(tmpDir,
           new File(dir.getRoot(), fileName).getName());
 
-      FileOutputStream out = null;
-      try {
-        // if offset is 0, delete any existing temp snapshot file if it has the
-        // same last index.
-        if (chunk.getOffset() == 0) {
-          if (tmpSnapshotFile.exists()) {
-            FileUtils.deleteFully(tmpSnapshotFile);
-          }
-          // create the temp snapshot file and put padding inside
-          out = new FileOutputStream(tmpSnapshotFile);
-        } else {
-          Preconditions.assertTrue(tmpSnapshotFile.exists());
-          out = new FileOutputStream(tmpSnapshotFile, true);
-          FileChannel fc = out.getChannel();
-          fc.position(chunk.getOffset());
+      if (chunk.getOffset() == 0) {
+        // if offset is 0, delete any existing temp snapshot file
+        if (tmpSnapshotFile.exists()) {
+          closeInstallingFile(tmpSnapshotFile);
+          FileUtils.deleteFully(tmpSnapshotFile);
         }
-
-        // write data to the file
-        out.write(chunk.getData().toByteArray());
-      } finally {
-        IOUtils.cleanup(null, out);
+      } else if (!tmpSnapshotFile.exists() || tmpSnapshotFile.length() < chunk.getOffset()) {
+        // the previous chunks are missing, e.g. the installation was resumed on another server
+        throw new IOException("Failed to install snapshot-" + lastIncludedIndex + ": chunk offset "
+            + chunk.getOffset() + " is beyond the length " + tmpSnapshotFile.length() + " of " + tmpSnapshotFile);
       }
 
-      // rename the temp snapshot file if this is the last chunk. also verify
-      // the md5 digest and create the md5 meta-file.
-      if (chunk.getDone()) {
-        final MD5Hash expectedDigest =
-            new MD5Hash(chunk.getFileDigest().toByteArray());
-        // calculate the checksum of the snapshot file and compare it with the
-        // file digest in the request
-        MD5Hash digest = MD5FileUtil.computeMd5ForFile(tmpSnapshotFile);
-        if (!digest.equals(expectedDigest)) {
-          LOG.warn("The snapshot md5 digest {} does not match expected {}",
-              digest, expectedDigest);
-          // rename the temp snapshot file to .corrupt
-//          NativeIO.renameTo(tmpSnapshotFile, // TODO:
-//              dir.getCorruptSnapshotFile(lastIncludedTerm, lastIncludedIndex));
-          throw new IOException("MD5 mismatch for snapshot-" + lastIncludedIndex
-              + " installation");
-        } else {
-          MD5FileUtil.saveMD5File(tmpSnapshotFile, digest);
-        }
+      try {
+        synced &= installChunk(chunk, tmpSnapshotFile, lastIncludedIndex);
+      } catch (IOException | RuntimeException e) {
+        // the other files may still be written by the other streams, so that only this file is closed.
+        closeInstallingFile(tmpSnapshotFile);
+        throw e;
       }
     }
 
     if (snapshotChunkRequest.getDone()) {
-      LOG.info("Install snapshot is done, renaming tnp dir:{} to:{}",
-          tmpDir, dir.getStateMachineDir());
-      dir.getStateMachineDir().delete();
-      tmpDir.renameTo(dir.getStateMachineDir());
+      if (incremental) {
+        LOG.info("Install incremental snapshot is done, moving the files in tmp dir:{} to:{}",
+            tmpDir, dir.getStateMachineDir());
+        moveFiles(tmpDir, dir.getStateMachineDir());
+        FileUtils.deleteFully(tmpDir);
+      } else {
+        LOG.info("Install snapshot is done, renaming tnp dir:{} to:{}",
+            tmpDir, dir.getStateMachineDir());
+        dir.getStateMachineDir().delete();
+        tmpDir.renameTo(dir.getStateMachineDir());
+      }
+    }
+    return synced;
+  }
+
+  /** @return true if the file, including the chunk, has been forced to the disk. */
+  private boolean installChunk(FileChunkProto chunk, File tmpSnapshotFile, long lastIncludedIndex)
+      throws IOException {
+    final InstallingFile installing = getInstallingFile(tmpSnapshotFile, chunk.getDigestAlgorithm());
+    final boolean synced = installing.write(chunk);
+
+    // rename the temp snapshot file if this is the last chunk. also verify
+    // the digest and, for an md5 digest, create the md5 meta-file.
+    if (chunk.getDone()) {
+      final FileDigestAlgorithm algorithm = chunk.getDigestAlgorithm();
+      final ByteString digest = installing.getDigest(algorithm);
+      closeInstallingFile(tmpSnapshotFile);
+      final ByteString expectedDigest = chunk.getFileDigest();
+      // compare the checksum of the snapshot file with the file digest in the request
+      if (!digest.equals(expectedDigest)) {
+        LOG.warn("The snapshot {} digest {} does not match expected {}", algorithm,
+            StringUtils.bytes2HexString(digest),
+            StringUtils.bytes2HexString(expectedDigest));
+        // rename the temp snapshot file to .corrupt
+//        NativeIO.renameTo(tmpSnapshotFile, // TODO:
+//            dir.getCorruptSnapshotFile(lastIncludedTerm, lastIncludedIndex));
+        throw new IOException(algorithm + " mismatch for snapshot-" + lastIncludedIndex
+            + " installation");
+      } else if (algorithm == FileDigestAlgorithm.MD5) {
+        MD5FileUtil.saveMD5File(tmpSnapshotFile, new MD5Hash(digest.toByteArray()));
+      }
+    }
+    return synced;
+  }
+
+  /** Move the files, including the md5 files, from the source directory to the target directory. */
+  private static void moveFiles(File srcDir, File dstDir) throws IOException {
+    final File[] files = srcDir.listFiles();
+    if (files == null) {
+      throw new IOException("Failed to list " + srcDir);
+    }
+    // move the md5 files at last since a file without md5 is considered incomplete.
+    Arrays.sort(files, Comparator.comparing(f -> f.getName().endsWith(MD5FileUtil.MD5_SUFFIX)));
+    for (File f : files) {
+      Files.move(f.toPath(), new File(dstDir, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private InstallingFile getInstallingFile(File file, FileDigestAlgorithm digestAlgorithm) throws IOException {
+    final InstallingFile installing = installingFiles.get(file);
+    if (installing != null) {
+      return installing;
+    }
+    final InstallingFile created = new InstallingFile(file, digestAlgorithm, syncInterval);
+    final InstallingFile previous = installingFiles.putIfAbsent(file, created);
+    if (previous != null) {
+      created.close();
+      return previous;
+    }
+    return created;
+  }
+
+  private void closeInstallingFile(File file) {
+    Optional.ofNullable(installingFiles.remove(file)).ifPresent(InstallingFile::close);
+  }
+
+  private void closeInstallingFiles() {
+    installingFiles.values().forEach(InstallingFile::close);
+    installingFiles.clear();
+  }
+
+  private static void deleteSnapshotTempDirs(RaftStorageDirectory dir) throws IOException {
+    final File[] tmpDirs = dir.getTempDir().listFiles(
+        (d, name) -> name.startsWith(RaftStorageDirectory.SNAPSHOT_TEMP_PREFIX));
+    if (tmpDirs != null) {
+      for (File tmpDir : tmpDirs) {
+        FileUtils.deleteFully(tmpDir);
+      }
     }
   }
 }
@@ -20,6 +20,7 @@ package org.apache.ratis.statemachine;
 import java.util.List;
 
 import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.server.raftlog.RaftLog;
 import org.apache.ratis.server.storage.FileInfo;
 
 /**
@@ -55,4 +56,24 @@ public interface SnapshotInfo {
    * @return a list of Files corresponding to the this snapshot.
    */
   List<FileInfo> getFiles();
+
+  /**
+   * Returns the index of the snapshot which this snapshot is based on.
+   * A snapshot with a base is an incremental snapshot:
+   * its files only include the changes after the base snapshot
+   * so that it can only be installed on a replica having the base snapshot.
+   * @return the index of the base snapshot; or {@link RaftLog#INVALID_LOG_INDEX} if this is a full snapshot.
+   */
+  default long getBaseIndex() {
+    return RaftLog.INVALID_LOG_INDEX;
+  }
+
+  /**
+   * Returns an incremental snapshot, from the snapshot with the given base index to this snapshot,
+   * which can be sent to a replica having the base snapshot instead of sending this snapshot.
+   * @return the incremental snapshot; or null if it is unavailable.
+   */
+  default SnapshotInfo getIncrementalSnapshot(long baseIndex) {
+    return null;
+  }
 }
@@ -37,7 +37,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
@@ -99,6 +101,24 @@ public interface StateMachine extends Closeable {
   // TODO: refactor this
   long takeSnapshot() throws IOException;
 
+  /**
+   * Take a snapshot asynchronously.
+   *
+   * This method is invoked by the state machine updater thread after all the transactions up to the
+   * last applied index, the fence index, have completed.
+   * The implementation should capture a consistent point-in-time view of the state before returning
+   * (e.g. by copy-on-write or by switching to a new memtable)
+   * and then persist it in the background so that the subsequent transactions can be applied concurrently.
+   * The log is purged after the returned future has completed.
+   *
+   * @return a future of the largest index of the log entry included in the snapshot,
+   *         which must not be larger than the fence index;
+   *         or null if asynchronous snapshot is not supported, in which case {@link #takeSnapshot()} is invoked.
+   */
+  default CompletableFuture<Long> takeSnapshotAsync() throws IOException {
+    return null;
+  }
+
   /**
    * @return StateMachineStorage to interact with the durability guarantees provided by the
    * state machine.
@@ -107,6 +127,8 @@ public interface StateMachine extends Closeable {
 
   /**
    * Returns the information for the latest durable snapshot.
+   * For a state machine supporting incremental snapshots,
+   * it is the latest snapshot chain so that its index is the index of the last delta.
    */
   SnapshotInfo getLatestSnapshot();
 
@@ -210,6 +232,67 @@ public interface StateMachine extends Closeable {
   // TODO: We do not need to return CompletableFuture
   CompletableFuture<Message> applyTransaction(TransactionContext trx);
 
+  /**
+   * Apply a batch of committed transactions in the log order.
+   * The batch may contain the transactions of consecutive log entries
+   * (see {@link RaftServerConfigKeys.Apply.Batch}),
+   * and the transactions batched by the leader into a single log entry
+   * (see {@link RaftServerConfigKeys.Write.Batch}),
+   * where the log entries of the transactions in such an entry have the same term and index;
+   * the latter happens only if {@link #supportsWriteBatch()} returns true.
+   *
+   * The default implementation applies the transactions one by one
+   * using {@link #applyTransactionSerial(TransactionContext)} and {@link #applyTransaction(TransactionContext)}.
+   * A state machine may override it in order to amortize the cost of applying the transactions,
+   * such as committing them to the underlying storage at once.
+   *
+   * @param transactions the transactions in the log order.
+   * @return a list of futures, one for each transaction in the same order.
+   */
+  default List<CompletableFuture<Message>> applyTransactions(List<TransactionContext> transactions) {
+    final List<CompletableFuture<Message>> futures = new ArrayList<>(transactions.size());
+    for (TransactionContext trx : transactions) {
+      futures.add(applyTransaction(applyTransactionSerial(trx)));
+    }
+    return futures;
+  }
+
+  /**
+   * Does this state machine support the transactions batched by the leader into a single log entry
+   * (see {@link RaftServerConfigKeys.Write.Batch})?
+   * The transactions in such an entry have the same term and index,
+   * so that a state machine keying its state by the log index must not support it.
+   * A state machine returning true should override {@link #applyTransactions(List)}
+   * to apply the transactions of an entry together.
+   *
+   * The default implementation returns false, i.e. the write requests are not batched.
+   *
+   * @return true if the transactions in a log entry can be applied by {@link #applyTransactions(List)}.
+   */
+  default boolean supportsWriteBatch() {
+    return false;
+  }
+
+  /**
+   * Get the conflict keys of the given transaction for applying the transactions in parallel
+   * (see {@link RaftServerConfigKeys.Apply.Parallel}).
+   * The transactions sharing a key are applied in the log order
+   * while the transactions with disjoint keys may be applied concurrently
+   * by calling {@link #applyTransaction(TransactionContext)}.
+   * Since the transactions may complete out of order,
+   * the server notifies the contiguous applied prefix using {@link #notifyIndexUpdate(long, long)};
+   * the state machine should not update its last applied index in {@link #applyTransaction(TransactionContext)}.
+   *
+   * The default implementation returns null.
+   *
+   * @param trx the transaction returned by {@link #applyTransactionSerial(TransactionContext)}.
+   * @return the conflict keys of the transaction;
+   *         or null if the transaction conflicts with all the other transactions.
+   */
+  default Collection<?> getConflictKeys(TransactionContext trx) {
+    return null;
+  }
+
   TermIndex getLastAppliedTermIndex();
 
   /**
@@ -36,13 +36,25 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
  * A StateMachineStorage that stores the snapshot in a single file.
+ *
+ * Incremental snapshots are supported by storing deltas in separated files.
+ * A delta file includes only the changes after its base snapshot,
+ * which is either a full snapshot or another delta.
+ * The latest snapshot chain consists of the latest full snapshot and the deltas following it.
+ * A chain can be compacted in the background by merging it into a new full snapshot;
+ * see {@link #compactLatestSnapshotChainAsync(SnapshotChainMerger, Executor)}.
  */
 public class SimpleStateMachineStorage implements StateMachineStorage {
 
@@ -53,11 +65,18 @@ public class SimpleStateMachineStorage implements StateMachineStorage {
   /** snapshot.term_index */
   public static final Pattern SNAPSHOT_REGEX =
       Pattern.compile(SNAPSHOT_FILE_PREFIX + "\\.(\\d+)_(\\d+)");
+  static final String DELTA_FILE_PREFIX = "delta";
+  /** delta.term_baseIndex_index */
+  public static final Pattern DELTA_REGEX =
+      Pattern.compile(DELTA_FILE_PREFIX + "\\.(\\d+)_(\\d+)_(\\d+)");
 
   private RaftStorage raftStorage;
   private File smDir = null;
 
   private volatile SingleFileSnapshotInfo currentSnapshot = null;
+  private volatile SnapshotChainInfo currentSnapshotChain = null;
+  /** The compaction in progress, if there is any. */
+  private CompletableFuture<SingleFileSnapshotInfo> compaction = CompletableFuture.completedFuture(null);
 
   @Override
   public void init(RaftStorage raftStorage) throws IOException {
@@ -89,8 +108,8 @@ public class SimpleStateMachineStorage implements StateMachineStorage {
         }
       }
 
+      allSnapshotFiles.sort(new SnapshotFileComparator());
       if (allSnapshotFiles.size() > snapshotRetentionPolicy.getNumSnapshotsRetained()) {
-        allSnapshotFiles.sort(new SnapshotFileComparator());
         List<File> snapshotFilesToBeCleaned = allSnapshotFiles.subList(
             snapshotRetentionPolicy.getNumSnapshotsRetained(), allSnapshotFiles.size()).stream()
             .map(singleFileSnapshotInfo -> singleFileSnapshotInfo.getFile().getPath().toFile())
@@ -100,6 +119,20 @@ public class SimpleStateMachineStorage implements StateMachineStorage {
           FileUtils.deleteFileQuietly(snapshotFile);
         }
       }
+
+      if (!allSnapshotFiles.isEmpty()) {
+        // the deltas up to the oldest retained full snapshot are no longer needed
+        final int oldest = Math.min(snapshotRetentionPolicy.getNumSnapshotsRetained(), allSnapshotFiles.size()) - 1;
+        final long oldestIndex = allSnapshotFiles.get(oldest).getIndex();
+        for (Delta delta : findDeltas()) {
+          if (delta.getIndex() <= oldestIndex) {
+            final File deltaFile = delta.getFile().getPath().toFile();
+            LOG.info("Deleting old delta at {}", deltaFile.getAbsolutePath());
+            FileUtils.deleteFileQuietly(deltaFile);
+            FileUtils.deleteFileQuietly(MD5FileUtil.getDigestFileForFile(deltaFile));
+          }
+        }
+      }
     }
   }
 
@@ -156,19 +189,146 @@ public class SimpleStateMachineStorage implements StateMachineStorage {
     return latest;
   }
 
+  /** A delta file with its base index. */
+  private static class Delta extends SingleFileSnapshotInfo {
+    private final long baseIndex;
+
+    Delta(FileInfo fileInfo, long term, long baseIndex, long endIndex) {
+      super(fileInfo, term, endIndex);
+      this.baseIndex = baseIndex;
+    }
+
+    @Override
+    public long getBaseIndex() {
+      return baseIndex;
+    }
+  }
+
+  private List<Delta> findDeltas() throws IOException {
+    final List<Delta> deltas = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(smDir.toPath())) {
+      for (Path path : stream) {
+        final Matcher matcher = DELTA_REGEX.matcher(path.getFileName().toString());
+        if (matcher.matches()) {
+          final long term = Long.parseLong(matcher.group(1));
+          final long baseIndex = Long.parseLong(matcher.group(2));
+          final long endIndex = Long.parseLong(matcher.group(3));
+          deltas.add(new Delta(new FileInfo(path, null), term, baseIndex, endIndex));
+        }
+      }
+    }
+    return deltas;
+  }
+
+  /**
+   * Find the latest snapshot chain, which starts from the latest full snapshot
+   * and then follows the deltas based on the previous link.
+   * When there are multiple deltas based on the same link, the one with the largest index is chosen.
+   *
+   * @return the latest snapshot chain; or null if there is no full snapshot.
+   */
+  public SnapshotChainInfo findLatestSnapshotChain() throws IOException {
+    final SingleFileSnapshotInfo full = findLatestSnapshot();
+    if (full == null) {
+      return null;
+    }
+    final Map<Long, Delta> deltas = new HashMap<>();
+    for (Delta d : findDeltas()) {
+      deltas.merge(d.getBaseIndex(), d, (x, y) -> x.getIndex() >= y.getIndex()? x: y);
+    }
+
+    final List<SingleFileSnapshotInfo> links = new ArrayList<>();
+    links.add(full);
+    for (Delta d = deltas.get(full.getIndex()); d != null && d.getIndex() > d.getBaseIndex();
+         d = deltas.get(d.getIndex())) {
+      final Path path = d.getFile().getPath();
+      final MD5Hash digest = MD5FileUtil.readStoredMd5ForFile(path.toFile());
+      links.add(new SingleFileSnapshotInfo(new FileInfo(path, digest), d.getTerm(), d.getIndex()));
+    }
+    return new SnapshotChainInfo(links);
+  }
+
   public void loadLatestSnapshot() throws IOException {
     this.currentSnapshot = findLatestSnapshot();
+    this.currentSnapshotChain = findLatestSnapshotChain();
   }
 
   public static String getSnapshotFileName(long term, long endIndex) {
     return SNAPSHOT_FILE_PREFIX + "." + term + "_" + endIndex;
   }
 
+  public static String getDeltaFileName(long term, long baseIndex, long endIndex) {
+    return DELTA_FILE_PREFIX + "." + term + "_" + baseIndex + "_" + endIndex;
+  }
+
+  public File getDeltaFile(long term, long baseIndex, long endIndex) {
+    return new File(smDir, getDeltaFileName(term, baseIndex, endIndex));
+  }
+
+  /** @return the latest full snapshot. */
   @Override
   public SingleFileSnapshotInfo getLatestSnapshot() {
     return currentSnapshot;
   }
 
+  /** @return the latest snapshot chain; see {@link #findLatestSnapshotChain()}. */
+  public SnapshotChainInfo getLatestSnapshotChain() {
+    return currentSnapshotChain;
+  }
+
+  /** Merge the files of a snapshot chain into a full snapshot file, which is state machine specific. */
+  @FunctionalInterface
+  public interface SnapshotChainMerger {
+    void merge(SnapshotChainInfo chain, File fullSnapshotFile) throws IOException;
+  }
+
+  /**
+   * Compact the latest snapshot chain asynchronously
+   * by merging it into a full snapshot with the same term and index as the chain.
+   * The deltas in the chain are removed by {@link #cleanupOldSnapshots(SnapshotRetentionPolicy)}
+   * once the new full snapshot becomes the oldest retained snapshot.
+   * When there is a compaction in progress, its future is returned instead of starting another one.
+   *
+   * @return the future of the new full snapshot; it completes with null if the chain does not have any deltas.
+   */
+  public synchronized CompletableFuture<SingleFileSnapshotInfo> compactLatestSnapshotChainAsync(
+      SnapshotChainMerger merger, Executor executor) {
+    if (!compaction.isDone()) {
+      return compaction;
+    }
+    final SnapshotChainInfo chain = getLatestSnapshotChain();
+    if (chain == null || chain.getLinks().size() <= 1) {
+      return CompletableFuture.completedFuture(null);
+    }
+    compaction = CompletableFuture.supplyAsync(() -> {
+      try {
+        return compact(chain, merger);
+      } catch (IOException e) {
+        throw new CompletionException("Failed to compact " + chain, e);
+      }
+    }, executor);
+    return compaction;
+  }
+
+  private SingleFileSnapshotInfo compact(SnapshotChainInfo chain, SnapshotChainMerger merger) throws IOException {
+    final long term = chain.getTerm();
+    final long index = chain.getIndex();
+    final File tmpFile = getTmpSnapshotFile(term, index);
+    final File snapshotFile = getSnapshotFile(term, index);
+    LOG.info("Compacting snapshot chain {} to {}", chain, snapshotFile);
+    try {
+      merger.merge(chain, tmpFile);
+      final MD5Hash digest = MD5FileUtil.computeMd5ForFile(tmpFile);
+      // save the md5 file first so that the snapshot file is complete once it is renamed
+      MD5FileUtil.saveMD5File(snapshotFile, digest);
+      FileUtils.move(tmpFile, snapshotFile);
+      loadLatestSnapshot();
+      return new SingleFileSnapshotInfo(new FileInfo(snapshotFile.toPath(), digest), term, index);
+    } finally {
+      FileUtils.deleteFileQuietly(tmpFile);
+    }
+  }
+
   @VisibleForTesting
   public File getSmDir() {
     return smDir;
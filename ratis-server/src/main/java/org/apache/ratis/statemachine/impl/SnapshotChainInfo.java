@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.statemachine.impl;
+
+import org.apache.ratis.server.raftlog.RaftLog;
+import org.apache.ratis.server.storage.FileInfo;
+import org.apache.ratis.statemachine.SnapshotInfo;
+import org.apache.ratis.util.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A chain of snapshots, where the first link is either a full snapshot or the base index of the chain
+ * and each subsequent link is a delta including only the changes after the previous link.
+ * The term and index of the chain are the term and index of the last link.
+ */
+public class SnapshotChainInfo extends FileListSnapshotInfo {
+  private static List<FileInfo> getFiles(List<? extends SnapshotInfo> links) {
+    final List<FileInfo> files = new ArrayList<>();
+    links.forEach(link -> files.addAll(link.getFiles()));
+    return files;
+  }
+
+  private static SnapshotInfo getLast(List<? extends SnapshotInfo> links) {
+    Preconditions.assertTrue(!links.isEmpty(), "links is empty");
+    return links.get(links.size() - 1);
+  }
+
+  private final List<SnapshotInfo> links;
+  private final long baseIndex;
+
+  /** Create a chain starting from a full snapshot. */
+  public SnapshotChainInfo(List<? extends SnapshotInfo> links) {
+    this(links, RaftLog.INVALID_LOG_INDEX);
+  }
+
+  /**
+   * @param links the links of the chain in increasing index order.
+   * @param baseIndex the index of the snapshot which the first link is based on;
+   *                  or {@link RaftLog#INVALID_LOG_INDEX} if the first link is a full snapshot.
+   */
+  public SnapshotChainInfo(List<? extends SnapshotInfo> links, long baseIndex) {
+    super(getFiles(links), getLast(links).getTerm(), getLast(links).getIndex());
+    for (int i = 1; i < links.size(); i++) {
+      Preconditions.assertTrue(links.get(i - 1).getIndex() < links.get(i).getIndex(),
+          () -> "The links are not in increasing index order: " + links);
+    }
+    this.links = Collections.unmodifiableList(new ArrayList<>(links));
+    this.baseIndex = baseIndex;
+  }
+
+  /** @return the links of this chain. */
+  public List<SnapshotInfo> getLinks() {
+    return links;
+  }
+
+  @Override
+  public long getBaseIndex() {
+    return baseIndex;
+  }
+
+  /** @return the chain of the links after the link with the given index; or null if there is no such link. */
+  @Override
+  public SnapshotInfo getIncrementalSnapshot(long base) {
+    for (int i = 0; i < links.size() - 1; i++) {
+      if (links.get(i).getIndex() == base) {
+        return new SnapshotChainInfo(links.subList(i + 1, links.size()), base);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return (baseIndex == RaftLog.INVALID_LOG_INDEX? "": "base=" + baseIndex + ", ") + links;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis;
+
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerTestUtil;
+import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.JavaUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Test the non-voting learners. */
+public abstract class LearnerTests<CLUSTER extends MiniRaftCluster>
+    extends BaseTest
+    implements MiniRaftCluster.Factory.Get<CLUSTER> {
+  static final int NUM_VOTERS = 3;
+  static final int NUM_LEARNERS = 2;
+
+  @Before
+  public void setup() {
+    final RaftProperties p = getProperties();
+    p.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+  }
+
+  @Test
+  public void testLearners() throws Exception {
+    runWithNewCluster(NUM_VOTERS, this::runTestLearners);
+  }
+
+  void runTestLearners(CLUSTER cluster) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+    final RaftPeer[] voters = cluster.getPeers().toArray(new RaftPeer[0]);
+    final RaftPeer[] learners = cluster.addNewPeers(NUM_LEARNERS, true).newPeers;
+
+    try (RaftClient client = cluster.createClient()) {
+      for (int i = 0; i < 10; i++) {
+        Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m" + i)).isSuccess());
+      }
+
+      // add the learners
+      Assert.assertTrue(client.setConfiguration(voters, learners).isSuccess());
+      for (int i = 10; i < 20; i++) {
+        Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m" + i)).isSuccess());
+      }
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      final long committed = leader.getState().getLog().getLastCommittedIndex();
+      for (RaftPeer learner : learners) {
+        Assert.assertTrue(RaftServerTestUtil.isLearner(leader, learner.getId()));
+        Assert.assertFalse(RaftServerTestUtil.isVoter(leader, learner.getId()));
+        final RaftServerImpl server = cluster.getRaftServerImpl(learner.getId());
+        JavaUtils.attemptUntilTrue(() -> server.getState().getLastAppliedIndex() >= committed,
+            10, cluster.getTimeoutMax(), "waitApplied-" + learner.getId(), LOG);
+        Assert.assertTrue(RaftServerTestUtil.isLearner(server, learner.getId()));
+        Assert.assertFalse(server.isLeader());
+      }
+
+      // the learners serve stale reads and linearizable reads
+      for (RaftPeer learner : learners) {
+        for (int i = 0; i < 20; i++) {
+          final RaftTestUtil.SimpleMessage m = new RaftTestUtil.SimpleMessage("m" + i);
+          final RaftClientReply stale = client.sendStaleRead(m, 0, learner.getId());
+          Assert.assertTrue(stale.isSuccess());
+          final RaftClientReply reply = client.sendReadOnly(m, learner.getId());
+          Assert.assertTrue(reply.isSuccess());
+          Assert.assertEquals(learner.getId(), reply.getServerId());
+        }
+      }
+
+      // the learners are not counted in the majority:
+      // the leader and a follower are still a majority of the voters
+      final List<RaftPeerId> killed = new ArrayList<>();
+      Arrays.stream(learners).map(RaftPeer::getId).forEach(killed::add);
+      Arrays.stream(voters).map(RaftPeer::getId)
+          .filter(id -> !id.equals(leader.getId()))
+          .findFirst().ifPresent(killed::add);
+      killed.forEach(cluster::killServer);
+      Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m20")).isSuccess());
+      for (RaftPeerId id : killed) {
+        cluster.restartServer(id, false);
+      }
+    }
+
+    // promote a learner to a voter
+    final List<RaftPeer> newVoters = new ArrayList<>(Arrays.asList(voters));
+    newVoters.add(learners[0]);
+    try (RaftClient client = cluster.createClient()) {
+      Assert.assertTrue(client.setConfiguration(newVoters.toArray(new RaftPeer[0]),
+          new RaftPeer[]{learners[1]}).isSuccess());
+      Assert.assertTrue(client.send(new RaftTestUtil.SimpleMessage("m21")).isSuccess());
+    }
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    Assert.assertFalse(RaftServerTestUtil.isLearner(leader, learners[0].getId()));
+    Assert.assertTrue(RaftServerTestUtil.isLearner(leader, learners[1].getId()));
+    Assert.assertTrue(RaftServerTestUtil.isVoter(leader, learners[0].getId()));
+    Assert.assertFalse(RaftServerTestUtil.isVoter(leader, learners[1].getId()));
+  }
+}
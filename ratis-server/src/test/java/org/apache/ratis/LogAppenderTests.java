@@ -37,6 +37,7 @@ import org.apache.ratis.server.impl.ServerState;
 import org.apache.ratis.server.raftlog.RaftLog;
 import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
 import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.Log4jUtils;
 import org.apache.ratis.util.SizeInBytes;
 import org.junit.Assert;
@@ -55,6 +56,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
 
 public abstract class LogAppenderTests<CLUSTER extends MiniRaftCluster>
     extends BaseTest
@@ -168,6 +170,45 @@ public abstract class LogAppenderTests<CLUSTER extends MiniRaftCluster>
     }
   }
 
+  @Test
+  public void testCatchUpThrottled() throws Exception {
+    final RaftProperties p = getProperties();
+    RaftServerConfigKeys.Log.Appender.setThrottleBandwidthPerServer(p, SizeInBytes.valueOf("64KB"));
+    try {
+      runWithNewCluster(3, this::runTestCatchUpThrottled);
+    } finally {
+      RaftServerConfigKeys.Log.Appender.setThrottleBandwidthPerServer(p,
+          RaftServerConfigKeys.Log.Appender.THROTTLE_BANDWIDTH_PER_SERVER_DEFAULT);
+    }
+  }
+
+  void runTestCatchUpThrottled(CLUSTER cluster) throws Exception {
+    final RaftServerImpl leader = waitForLeader(cluster);
+    final RaftPeerId lagging = cluster.getFollowers().get(0).getId();
+    cluster.killServer(lagging);
+
+    // about 250KB of committed entries for the lagging follower to catch up
+    try (RaftClient client = cluster.createClient(leader.getId())) {
+      for (SimpleMessage m : generateMsgs(12)) {
+        Assert.assertTrue(client.send(m).isSuccess());
+      }
+    }
+    final long committed = leader.getState().getLog().getLastCommittedIndex();
+    final Timer throttled = leader.getRaftServerMetrics().getRegistry()
+        .timer(RaftServerMetrics.LOG_APPENDER_THROTTLED_TIME);
+    final long before = throttled.getCount();
+
+    final RaftServerImpl follower = cluster.restartServer(lagging, false);
+    JavaUtils.attempt(() -> Assert.assertTrue(follower.getState().getLog().getLastCommittedIndex() >= committed),
+        100, ONE_SECOND, "catch up", LOG);
+
+    // the appender waits for the throttled entries instead of spinning, and each throttle period is recorded once.
+    final long count = throttled.getCount() - before;
+    LOG.info("throttled count = {}", count);
+    Assert.assertTrue("count = " + count, count > 0);
+    Assert.assertTrue("count = " + count, count < 500);
+  }
+
   void runTest(CLUSTER cluster) throws Exception {
     final int numMsgs = 10;
     final int numClients = 5;
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.util.JavaUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test applying the non-conflicting transactions in parallel.
+ * The writes are sent asynchronously so that the conflicting writes of a client are in flight together.
+ */
+public abstract class ParallelApplyTests<CLUSTER extends MiniRaftCluster>
+    extends BaseTest
+    implements MiniRaftCluster.Factory.Get<CLUSTER> {
+  static final int NUM_SERVERS = 3;
+  static final int NUM_CLIENTS = 10;
+  static final int NUM_MESSAGES = 20;
+
+  /**
+   * A state machine using the client of a message as the conflict key.
+   * It records the applied messages of each client and the max number of concurrent transactions.
+   */
+  public static class ParallelApplyStateMachine extends BaseStateMachine {
+    static ParallelApplyStateMachine get(RaftServerImpl s) {
+      return (ParallelApplyStateMachine)s.getStateMachine();
+    }
+
+    private final Map<String, List<String>> applied = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    static String getMessage(TransactionContext trx) {
+      return trx.getStateMachineLogEntry().getLogData().toStringUtf8();
+    }
+
+    static String getClient(String message) {
+      return message.substring(0, message.indexOf('m'));
+    }
+
+    @Override
+    public Collection<?> getConflictKeys(TransactionContext trx) {
+      return Collections.singleton(getClient(getMessage(trx)));
+    }
+
+    @Override
+    public CompletableFuture<Message> applyTransaction(TransactionContext trx) {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        // make the transactions overlap
+        Thread.sleep(2);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return JavaUtils.completeExceptionally(e);
+      } finally {
+        running.decrementAndGet();
+      }
+
+      // the last applied index is updated by notifyIndexUpdate
+      final String m = getMessage(trx);
+      applied.computeIfAbsent(getClient(m), k -> Collections.synchronizedList(new ArrayList<>())).add(m);
+      return CompletableFuture.completedFuture(Message.valueOf(trx.getStateMachineLogEntry().getLogData()));
+    }
+
+    List<String> getApplied(String client) {
+      return applied.getOrDefault(client, Collections.emptyList());
+    }
+
+    int getMaxRunning() {
+      return maxRunning.get();
+    }
+  }
+
+  @Before
+  public void setup() {
+    final RaftProperties p = getProperties();
+    p.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        ParallelApplyStateMachine.class, StateMachine.class);
+    RaftServerConfigKeys.Apply.Parallel.setEnabled(p, true);
+    RaftServerConfigKeys.Apply.Parallel.setThreads(p, 4);
+  }
+
+  @Test
+  public void testParallelApply() throws Exception {
+    runWithNewCluster(NUM_SERVERS, this::runTestParallelApply);
+  }
+
+  void runTestParallelApply(CLUSTER cluster) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+
+    final AtomicLong lastIndex = new AtomicLong();
+    RaftTestUtil.runClientsConcurrently(NUM_CLIENTS, c -> cluster.createClient(), (c, client) -> {
+      // pipeline the writes so that the writes of the same client are outstanding at the same time
+      final List<CompletableFuture<RaftClientReply>> replies = new ArrayList<>(NUM_MESSAGES);
+      for (int i = 0; i < NUM_MESSAGES; i++) {
+        replies.add(client.sendAsync(new RaftTestUtil.SimpleMessage(toString(c, i))));
+      }
+      for (CompletableFuture<RaftClientReply> f : replies) {
+        final RaftClientReply reply = f.get();
+        if (!reply.isSuccess()) {
+          return false;
+        }
+        lastIndex.accumulateAndGet(reply.getLogIndex(), Math::max);
+      }
+      return true;
+    });
+
+    int maxRunning = 0;
+    for (RaftServerImpl server : cluster.iterateServerImpls()) {
+      final ParallelApplyStateMachine stateMachine = ParallelApplyStateMachine.get(server);
+      // the applied index is the contiguous applied prefix
+      JavaUtils.attemptUntilTrue(() -> stateMachine.getLastAppliedTermIndex().getIndex() >= lastIndex.get(),
+          10, cluster.getTimeoutMax(), "waitApplied-" + server.getId(), LOG);
+
+      // the transactions of each client are applied in order
+      for (int c = 0; c < NUM_CLIENTS; c++) {
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < NUM_MESSAGES; i++) {
+          expected.add(toString(c, i));
+        }
+        Assert.assertEquals(expected, new ArrayList<>(stateMachine.getApplied("c" + c)));
+      }
+      LOG.info("{}: max concurrent transactions {}", server.getId(), stateMachine.getMaxRunning());
+      maxRunning = Math.max(maxRunning, stateMachine.getMaxRunning());
+    }
+    Assert.assertTrue(maxRunning > 1);
+  }
+
+  static String toString(int clientIndex, int messageIndex) {
+    return "c" + clientIndex + "m" + messageIndex;
+  }
+}
@@ -263,6 +263,48 @@ public abstract class RaftAsyncTests<CLUSTER extends MiniRaftCluster> extends Ba
         cluster -> RaftBasicTests.testWithLoad(5, 500, true, cluster, LOG));
   }
 
+  @Test
+  public void testWriteBatchAsync() throws Exception {
+    RaftClientConfigKeys.Async.Batch.setEnabled(getProperties(), true);
+    RaftClientConfigKeys.Async.Batch.setLinger(getProperties(), TimeDuration.valueOf(5, TimeUnit.MILLISECONDS));
+    runWithNewCluster(NUM_SERVERS, this::runTestWriteBatchAsync);
+    //reset for the other tests
+    RaftClientConfigKeys.Async.Batch.setEnabled(getProperties(), RaftClientConfigKeys.Async.Batch.ENABLED_DEFAULT);
+  }
+
+  void runTestWriteBatchAsync(CLUSTER cluster) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+    final int numMessages = 100;
+    final List<CompletableFuture<RaftClientReply>> writes = new ArrayList<>();
+    final List<CompletableFuture<RaftClientReply>> reads = new ArrayList<>();
+    try (RaftClient client = cluster.createClient()) {
+      for (int i = 0; i < numMessages; i++) {
+        writes.add(client.sendAsync(new SimpleMessage("m" + i)));
+        if (i % 10 == 9) {
+          // a non-write request sends the current batch first
+          reads.add(client.sendReadOnlyAsync(new SimpleMessage("m" + i)));
+        }
+      }
+
+      // the messages are applied in the order submitted
+      long previous = 0;
+      for (CompletableFuture<RaftClientReply> f : writes) {
+        final RaftClientReply reply = f.get();
+        Assert.assertTrue(reply.isSuccess());
+        Assert.assertTrue(reply.getLogIndex() > previous);
+        previous = reply.getLogIndex();
+      }
+      // the reads may or may not see the preceding writes, but they must complete
+      for (CompletableFuture<RaftClientReply> f : reads) {
+        f.handle((r, e) -> null).get();
+      }
+      // the messages have been applied
+      for (int i = 0; i < numMessages; i++) {
+        Assert.assertTrue(client.sendReadOnly(new SimpleMessage("m" + i)).isSuccess());
+      }
+    }
+  }
+
   @Test
   public void testStaleReadAsync() throws Exception {
     runWithNewCluster(NUM_SERVERS, this::runTestStaleReadAsync);
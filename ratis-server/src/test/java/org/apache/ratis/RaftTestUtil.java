@@ -41,6 +41,7 @@ import org.apache.ratis.util.CollectionUtils;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.ProtoUtils;
 import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.function.CheckedBiFunction;
 import org.junit.Assert;
 import org.junit.AssumptionViolatedException;
 import org.slf4j.Logger;
@@ -55,6 +56,9 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -62,6 +66,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.IntSupplier;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -433,6 +438,34 @@ public interface RaftTestUtil {
     }).start();
   }
 
+  /**
+   * Run the given number of clients concurrently, each in its own thread,
+   * and then assert that all of them have succeeded.
+   *
+   * @param newClient create the client of the given client index.
+   * @param run run the client of the given client index; return true if it has succeeded.
+   */
+  static void runClientsConcurrently(int numClients, IntFunction<RaftClient> newClient,
+      CheckedBiFunction<Integer, RaftClient, Boolean, Exception> run) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(numClients);
+    try {
+      final List<Future<Boolean>> clients = new ArrayList<>(numClients);
+      for (int c = 0; c < numClients; c++) {
+        final int clientIndex = c;
+        clients.add(executor.submit(() -> {
+          try (RaftClient client = newClient.apply(clientIndex)) {
+            return run.apply(clientIndex, client);
+          }
+        }));
+      }
+      for (int c = 0; c < numClients; c++) {
+        Assert.assertTrue("client " + c + " failed", clients.get(c).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   static void assertSameLog(RaftLog expected, RaftLog computed) throws Exception {
     Assert.assertEquals(expected.getLastEntryTermIndex(), computed.getLastEntryTermIndex());
     final long lastIndex = expected.getNextIndex() - 1;
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis;
+
+import com.codahale.metrics.Counter;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.BlockRequestHandlingInjection;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerMetrics;
+import org.apache.ratis.server.impl.RaftServerTestUtil;
+import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Test linearizable reads using the ReadIndex protocol. */
+public abstract class ReadIndexTests<CLUSTER extends MiniRaftCluster>
+    extends BaseTest
+    implements MiniRaftCluster.Factory.Get<CLUSTER> {
+  static final int NUM_SERVERS = 3;
+  static final int NUM_READERS = 10;
+  static final TimeDuration READ_TIMEOUT = TimeDuration.valueOf(2, TimeUnit.SECONDS);
+
+  @Before
+  public void setup() {
+    final RaftProperties p = getProperties();
+    p.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        SimpleStateMachine4Testing.class, StateMachine.class);
+    RaftServerConfigKeys.Read.setOption(p, RaftServerConfigKeys.Read.Option.LINEARIZABLE);
+    RaftServerConfigKeys.Read.setTimeout(p, READ_TIMEOUT);
+    RaftServerConfigKeys.Read.Lease.setEnabled(p, false);
+  }
+
+  /** Are the concurrent reads batched into fewer heartbeat rounds than the reads? */
+  protected boolean isConcurrentReadBatched() {
+    return true;
+  }
+
+  @Test
+  public void testLinearizableRead() throws Exception {
+    runWithNewCluster(NUM_SERVERS, this::runTestLinearizableRead);
+  }
+
+  void runTestLinearizableRead(CLUSTER cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final int numMessages = 50;
+    try (RaftClient client = cluster.createClient(leader.getId())) {
+      for (int i = 0; i < numMessages; i++) {
+        final RaftTestUtil.SimpleMessage m = new RaftTestUtil.SimpleMessage("m" + i);
+        Assert.assertTrue(client.send(m).isSuccess());
+        // a read right after a write must see the write
+        Assert.assertTrue(client.sendReadOnly(m).isSuccess());
+      }
+    }
+
+    // the concurrent reads are batched behind the heartbeat rounds
+    final long roundBefore = RaftServerTestUtil.getReadIndexRound(leader);
+    RaftTestUtil.runClientsConcurrently(NUM_READERS, r -> cluster.createClient(leader.getId()), (r, client) -> {
+      for (int i = 0; i < numMessages; i++) {
+        if (!client.sendReadOnly(new RaftTestUtil.SimpleMessage("m" + i)).isSuccess()) {
+          return false;
+        }
+      }
+      return true;
+    });
+    final long rounds = RaftServerTestUtil.getReadIndexRound(leader) - roundBefore;
+    final int numReads = NUM_READERS * numMessages;
+    LOG.info("{} reads in {} rounds", numReads, rounds);
+    Assert.assertTrue(rounds > 0);
+    if (isConcurrentReadBatched()) {
+      Assert.assertTrue(rounds < numReads);
+    }
+  }
+
+  @Test
+  public void testFollowerRead() throws Exception {
+    runWithNewCluster(NUM_SERVERS, this::runTestFollowerRead);
+  }
+
+  void runTestFollowerRead(CLUSTER cluster) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+    final List<RaftServerImpl> followers = cluster.getFollowers();
+    final int numMessages = 50;
+    try (RaftClient client = cluster.createClient()) {
+      for (int i = 0; i < numMessages; i++) {
+        final RaftTestUtil.SimpleMessage m = new RaftTestUtil.SimpleMessage("m" + i);
+        Assert.assertTrue(client.send(m).isSuccess());
+        // a follower read right after a write must see the write
+        for (RaftServerImpl follower : followers) {
+          final RaftClientReply reply = client.sendReadOnly(m, follower.getId());
+          Assert.assertTrue(reply.isSuccess());
+          Assert.assertEquals(follower.getId(), reply.getServerId());
+        }
+      }
+    }
+
+    // the concurrent reads are served by the followers
+    RaftTestUtil.runClientsConcurrently(NUM_READERS, r -> cluster.createClient(), (r, client) -> {
+      final RaftPeerId followerId = followers.get(r % followers.size()).getId();
+      for (int i = 0; i < numMessages; i++) {
+        if (!client.sendReadOnly(new RaftTestUtil.SimpleMessage("m" + i), followerId).isSuccess()) {
+          return false;
+        }
+      }
+      return true;
+    });
+  }
+
+  @Test
+  public void testLeaseRead() throws Exception {
+    final RaftProperties p = getProperties();
+    RaftServerConfigKeys.Read.Lease.setEnabled(p, true);
+    RaftServerConfigKeys.Read.Lease.setDriftBound(p, TimeDuration.valueOf(10, TimeUnit.MILLISECONDS));
+    runWithNewCluster(NUM_SERVERS, this::runTestLeaseRead);
+  }
+
+  void runTestLeaseRead(CLUSTER cluster) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+    final int numMessages = 50;
+    try (RaftClient client = cluster.createClient()) {
+      for (int i = 0; i < numMessages; i++) {
+        final RaftTestUtil.SimpleMessage m = new RaftTestUtil.SimpleMessage("m" + i);
+        Assert.assertTrue(client.send(m).isSuccess());
+        Assert.assertTrue(client.sendReadOnly(m).isSuccess());
+      }
+    }
+    // count all the servers since the leader may have changed
+    final long hits = getCount(cluster, RaftServerMetrics.READ_LEASE_HIT_COUNT_METRIC);
+    final long expired = getCount(cluster, RaftServerMetrics.READ_LEASE_EXPIRED_COUNT_METRIC);
+    LOG.info("{} reads: {} lease hits, {} lease expired", numMessages, hits, expired);
+    Assert.assertTrue(hits > 0);
+
+    // once the followers are killed, the lease expires and then the reads fall back to the heartbeat rounds
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final Counter leaderExpired = leader.getRaftServerMetrics()
+        .getCounter(RaftServerMetrics.READ_LEASE_EXPIRED_COUNT_METRIC);
+    final long leaderExpiredBefore = leaderExpired.getCount();
+    for (RaftServerImpl follower : cluster.getFollowers()) {
+      cluster.killServer(follower.getId());
+    }
+    cluster.getTimeoutMax().sleep();
+    final RaftClientRequest request = new RaftClientRequest(ClientId.randomId(), leader.getId(),
+        cluster.getGroupId(), 1, new RaftTestUtil.SimpleMessage("m0"), RaftClientRequest.readRequestType(), null);
+    final RaftClientReply reply = leader.submitClientRequestAsync(request)
+        .get(READ_TIMEOUT.toLong(TimeUnit.MILLISECONDS) * 5, TimeUnit.MILLISECONDS);
+    Assert.assertNotNull(reply.getNotLeaderException());
+    Assert.assertTrue(leaderExpired.getCount() > leaderExpiredBefore);
+  }
+
+  @Test
+  public void testLeaseReadWithPartitionedFollower() throws Exception {
+    final RaftProperties p = getProperties();
+    RaftServerConfigKeys.Read.Lease.setEnabled(p, true);
+    RaftServerConfigKeys.Read.Lease.setDriftBound(p, TimeDuration.valueOf(10, TimeUnit.MILLISECONDS));
+    runWithNewCluster(NUM_SERVERS, this::runTestLeaseReadWithPartitionedFollower);
+  }
+
+  void runTestLeaseReadWithPartitionedFollower(CLUSTER cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final String leaderId = leader.getId().toString();
+    final String partitionedId = cluster.getFollowers().get(0).getId().toString();
+    final BlockRequestHandlingInjection injection = BlockRequestHandlingInjection.getInstance();
+    injection.blockLink(leaderId, partitionedId);
+    injection.blockLink(partitionedId, leaderId);
+    try {
+      // The partitioned follower times out and requests votes with higher terms.
+      // The other follower keeps hearing from the leader so that it withholds its vote.
+      for (int i = 0; i < 3; i++) {
+        cluster.getTimeoutMax().sleep();
+      }
+      Assert.assertTrue(leader.isLeader());
+      Assert.assertEquals(1, cluster.getServerAliveStream().filter(RaftServerImpl::isLeader).count());
+
+      final RaftTestUtil.SimpleMessage m = new RaftTestUtil.SimpleMessage("m");
+      try (RaftClient client = cluster.createClient()) {
+        Assert.assertTrue(client.send(m).isSuccess());
+      }
+      // a read at the leader must see the write; otherwise, it must fail with NotLeaderException
+      final RaftClientRequest request = new RaftClientRequest(ClientId.randomId(), leader.getId(),
+          cluster.getGroupId(), 1, m, RaftClientRequest.readRequestType(), null);
+      final RaftClientReply reply = leader.submitClientRequestAsync(request)
+          .get(READ_TIMEOUT.toLong(TimeUnit.MILLISECONDS) * 5, TimeUnit.MILLISECONDS);
+      if (!reply.isSuccess()) {
+        Assert.assertNotNull("Unexpected reply " + reply, reply.getNotLeaderException());
+      }
+    } finally {
+      injection.unblockLink(leaderId, partitionedId);
+      injection.unblockLink(partitionedId, leaderId);
+    }
+  }
+
+  static long getCount(MiniRaftCluster cluster, String counter) {
+    return cluster.getServerAliveStream()
+        .map(RaftServerImpl::getRaftServerMetrics)
+        .mapToLong(m -> m.getCounter(counter).getCount())
+        .sum();
+  }
+
+  @Test
+  public void testReadWithoutQuorum() throws Exception {
+    runWithNewCluster(NUM_SERVERS, this::runTestReadWithoutQuorum);
+  }
+
+  void runTestReadWithoutQuorum(CLUSTER cluster) throws Exception {
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final RaftTestUtil.SimpleMessage m = new RaftTestUtil.SimpleMessage("m");
+    try (RaftClient client = cluster.createClient(leader.getId())) {
+      Assert.assertTrue(client.send(m).isSuccess());
+      Assert.assertTrue(client.sendReadOnly(m).isSuccess());
+    }
+
+    // the leader cannot confirm its leadership once the followers are killed
+    for (RaftServerImpl follower : cluster.getFollowers()) {
+      cluster.killServer(follower.getId());
+    }
+    final RaftClientRequest request = new RaftClientRequest(ClientId.randomId(), leader.getId(),
+        cluster.getGroupId(), 1, m, RaftClientRequest.readRequestType(), null);
+    final RaftClientReply reply = leader.submitClientRequestAsync(request)
+        .get(READ_TIMEOUT.toLong(TimeUnit.MILLISECONDS) * 5, TimeUnit.MILLISECONDS);
+    Assert.assertFalse(reply.isSuccess());
+    Assert.assertNotNull(reply.getNotLeaderException());
+  }
+}
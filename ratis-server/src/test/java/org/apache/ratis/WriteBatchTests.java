@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Test the leader batching the write requests into a single log entry. */
+public abstract class WriteBatchTests<CLUSTER extends MiniRaftCluster>
+    extends BaseTest
+    implements MiniRaftCluster.Factory.Get<CLUSTER> {
+  static final int NUM_SERVERS = 3;
+  static final int NUM_CLIENTS = 10;
+  static final int NUM_MESSAGES = 20;
+
+  /** A state machine recording the applied messages; its transactions do not have state machine data. */
+  public static class WriteBatchStateMachine extends BaseStateMachine {
+    static WriteBatchStateMachine get(RaftServerImpl s) {
+      return (WriteBatchStateMachine)s.getStateMachine();
+    }
+
+    private final Set<String> applied = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger maxApplyBatchSize = new AtomicInteger();
+
+    @Override
+    public boolean supportsWriteBatch() {
+      return true;
+    }
+
+    @Override
+    public List<CompletableFuture<Message>> applyTransactions(List<TransactionContext> transactions) {
+      maxApplyBatchSize.accumulateAndGet(transactions.size(), Math::max);
+      return super.applyTransactions(transactions);
+    }
+
+    @Override
+    public CompletableFuture<Message> applyTransaction(TransactionContext trx) {
+      applied.add(trx.getStateMachineLogEntry().getLogData().toStringUtf8());
+      return super.applyTransaction(trx);
+    }
+
+    boolean isApplied(String message) {
+      return applied.contains(message);
+    }
+
+    int getMaxApplyBatchSize() {
+      return maxApplyBatchSize.get();
+    }
+  }
+
+  /** A state machine not supporting write batch, e.g. it keys its state by the log index. */
+  public static class NoWriteBatchStateMachine extends WriteBatchStateMachine {
+    @Override
+    public boolean supportsWriteBatch() {
+      return false;
+    }
+  }
+
+  @Before
+  public void setup() {
+    final RaftProperties p = getProperties();
+    p.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        WriteBatchStateMachine.class, StateMachine.class);
+    RaftServerConfigKeys.Write.Batch.setEnabled(p, true);
+    RaftServerConfigKeys.Write.Batch.setElementLimit(p, 16);
+    RaftServerConfigKeys.Write.Batch.setLinger(p, TimeDuration.valueOf(5, TimeUnit.MILLISECONDS));
+    RaftServerConfigKeys.Apply.Batch.setElementLimit(p, RaftServerConfigKeys.Apply.Batch.ELEMENT_LIMIT_DEFAULT);
+  }
+
+  @Test
+  public void testWriteBatch() throws Exception {
+    runWithNewCluster(NUM_SERVERS, this::runTestWriteBatch);
+  }
+
+  void runTestWriteBatch(CLUSTER cluster) throws Exception {
+    // the concurrent writes share the log entries
+    final Set<Long> indices = writeConcurrently(cluster);
+    final int numWrites = NUM_CLIENTS * NUM_MESSAGES;
+    LOG.info("{} writes in {} log entries", numWrites, indices.size());
+    Assert.assertTrue(indices.size() < numWrites);
+  }
+
+  @Test
+  public void testWriteBatchNotSupported() throws Exception {
+    getProperties().setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
+        NoWriteBatchStateMachine.class, StateMachine.class);
+    runWithNewCluster(NUM_SERVERS, this::runTestWriteBatchNotSupported);
+  }
+
+  void runTestWriteBatchNotSupported(CLUSTER cluster) throws Exception {
+    // the write batch is enabled but each write still has its own log entry
+    final Set<Long> indices = writeConcurrently(cluster);
+    Assert.assertEquals(NUM_CLIENTS * NUM_MESSAGES, indices.size());
+  }
+
+  @Test
+  public void testApplyBatch() throws Exception {
+    final RaftProperties p = getProperties();
+    RaftServerConfigKeys.Write.Batch.setEnabled(p, false);
+    RaftServerConfigKeys.Apply.Batch.setElementLimit(p, 16);
+    runWithNewCluster(NUM_SERVERS, this::runTestApplyBatch);
+  }
+
+  void runTestApplyBatch(CLUSTER cluster) throws Exception {
+    // each write has its own log entry
+    final Set<Long> indices = writeConcurrently(cluster);
+    Assert.assertEquals(NUM_CLIENTS * NUM_MESSAGES, indices.size());
+
+    // the transactions of the consecutive committed entries are applied in batches
+    int maxApplyBatchSize = 0;
+    for (RaftServerImpl server : cluster.iterateServerImpls()) {
+      final int size = WriteBatchStateMachine.get(server).getMaxApplyBatchSize();
+      LOG.info("{}: max apply batch size {}", server.getId(), size);
+      Assert.assertTrue(size <= 16);
+      maxApplyBatchSize = Math.max(maxApplyBatchSize, size);
+    }
+    Assert.assertTrue(maxApplyBatchSize > 1);
+  }
+
+  /**
+   * Send the writes from concurrent clients and then wait for all the servers to apply them.
+   * @return the log indices of the writes.
+   */
+  Set<Long> writeConcurrently(CLUSTER cluster) throws Exception {
+    RaftTestUtil.waitForLeader(cluster);
+
+    final Set<Long> indices = ConcurrentHashMap.newKeySet();
+    RaftTestUtil.runClientsConcurrently(NUM_CLIENTS, c -> cluster.createClient(), (c, client) -> {
+      for (int i = 0; i < NUM_MESSAGES; i++) {
+        final RaftClientReply reply = client.send(new RaftTestUtil.SimpleMessage(toString(c, i)));
+        if (!reply.isSuccess()) {
+          return false;
+        }
+        indices.add(reply.getLogIndex());
+      }
+      return true;
+    });
+
+    // all the servers have applied all the writes
+    for (RaftServerImpl server : cluster.iterateServerImpls()) {
+      final WriteBatchStateMachine stateMachine = WriteBatchStateMachine.get(server);
+      for (int c = 0; c < NUM_CLIENTS; c++) {
+        for (int i = 0; i < NUM_MESSAGES; i++) {
+          final String m = toString(c, i);
+          JavaUtils.attemptUntilTrue(() -> stateMachine.isApplied(m),
+              10, cluster.getTimeoutMax(), "waitApplied-" + server.getId() + "-" + m, LOG);
+        }
+      }
+    }
+    return indices;
+  }
+
+  static String toString(int clientIndex, int messageIndex) {
+    return "c" + clientIndex + "m" + messageIndex;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.raftlog.RaftLog;
+import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the follower appendEntries path for a recognized leader
+ * while another thread keeps taking RaftServer's lock,
+ * as the vote, the client and the admin requests do.
+ * Each {@link #appendEntries()} sends a heartbeat to a follower in a running cluster
+ * and {@link #holdServerLock()} holds the follower's lock for a short time.
+ *
+ * With serverLock=true, RaftServer's lock is taken twice for each heartbeat
+ * as it was before the append lock was introduced:
+ * once for the validation and the append, and once again in the completion stage
+ * for updating the state machine and building the reply.
+ * Then, the two paths can be compared in the same run.
+ *
+ * Run it with
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *   -Dexec.args="-cp %classpath org.apache.ratis.server.impl.AppendEntriesBenchmark"
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AppendEntriesBenchmark {
+  /** The number of {@link Blackhole#consumeCPU(long)} tokens spent under the lock by {@link #holdServerLock()}. */
+  static final long HOLD_TOKENS = 1000;
+
+  /** Take RaftServer's lock for the appendEntries validation and append as before. */
+  @Param({"false", "true"})
+  private boolean serverLock;
+
+  private MiniRaftClusterWithSimulatedRpc cluster;
+  private RaftServerImpl follower;
+  private AppendEntriesRequestProto heartbeat;
+
+  @Setup
+  public void setup() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    RaftServerConfigKeys.Log.setUseMemory(properties, true);
+    cluster = MiniRaftClusterWithSimulatedRpc.FACTORY.newCluster(3, properties);
+    cluster.start();
+    final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+    final RaftLog leaderLog = leader.getState().getLog();
+    follower = JavaUtils.attemptRepeatedly(() -> cluster.getFollowers().stream()
+        .filter(f -> f.getState().getLog().getLastCommittedIndex() == leaderLog.getLastCommittedIndex())
+        .findFirst().orElseThrow(() -> new IllegalStateException("No follower has caught up")),
+        50, TimeDuration.valueOf(100, TimeUnit.MILLISECONDS), "get follower", null);
+
+    heartbeat = ServerProtoUtils.toAppendEntriesRequestProto(leader.getMemberId(), follower.getId(),
+        leader.getState().getCurrentTerm(), Collections.emptyList(), leaderLog.getLastCommittedIndex(), false,
+        follower.getState().getLog().getLastEntryTermIndex(), Collections.emptyList(), 0);
+  }
+
+  @TearDown
+  public void tearDown() {
+    cluster.shutdown();
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public AppendEntriesReplyProto appendEntries() throws Exception {
+    if (!serverLock) {
+      return follower.appendEntriesAsync(heartbeat).get();
+    }
+    final CompletableFuture<AppendEntriesReplyProto> reply;
+    synchronized (follower) {
+      reply = follower.appendEntriesAsync(heartbeat);
+    }
+    return reply.thenApply(r -> {
+      synchronized (follower) {
+        return r;
+      }
+    }).get();
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public void holdServerLock() {
+    synchronized (follower) {
+      Blackhole.consumeCPU(HOLD_TOKENS);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(AppendEntriesBenchmark.class.getSimpleName()).build()).run();
+  }
+}
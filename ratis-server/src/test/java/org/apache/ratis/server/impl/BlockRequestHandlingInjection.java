@@ -21,6 +21,8 @@ import org.apache.ratis.RaftTestUtil;
 import org.apache.ratis.util.CodeInjectionForTesting;
 import org.apache.ratis.util.StringUtils;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -41,6 +43,8 @@ public class BlockRequestHandlingInjection implements CodeInjectionForTesting.Co
 
   private final Map<String, Boolean> requestors = new ConcurrentHashMap<>();
   private final Map<String, Boolean> repliers = new ConcurrentHashMap<>();
+  /** The blocked (requestor, replier) pairs. */
+  private final Map<List<String>, Boolean> links = new ConcurrentHashMap<>();
 
   private BlockRequestHandlingInjection() {}
 
@@ -62,9 +66,21 @@ public class BlockRequestHandlingInjection implements CodeInjectionForTesting.Co
     repliers.remove(replier);
   }
 
+  /** Block the requests from the given requestor to the given replier. */
+  public void blockLink(String requestor, String replier) {
+    LOG.info("Block requests from " + requestor + " to " + replier);
+    links.put(Arrays.asList(requestor, replier), true);
+  }
+
+  public void unblockLink(String requestor, String replier) {
+    LOG.info("UnBlock requests from " + requestor + " to " + replier);
+    links.remove(Arrays.asList(requestor, replier));
+  }
+
   public void unblockAll() {
     requestors.clear();
     repliers.clear();
+    links.clear();
   }
 
   @Override
@@ -85,13 +101,16 @@ public class BlockRequestHandlingInjection implements CodeInjectionForTesting.Co
 
   private boolean shouldBlock(Object localId, Object remoteId) {
     return (localId != null && repliers.containsKey(localId.toString())) ||
-        (remoteId != null && requestors.containsKey(remoteId.toString()));
+        (remoteId != null && requestors.containsKey(remoteId.toString())) ||
+        (localId != null && remoteId != null
+            && links.containsKey(Arrays.asList(remoteId.toString(), localId.toString())));
   }
 
   @Override
   public String toString() {
     return getClass().getSimpleName()
         + ": requestors=" + requestors.keySet()
-        + ", repliers=" + repliers.keySet();
+        + ", repliers=" + repliers.keySet()
+        + ", links=" + links.keySet();
   }
 }
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.RaftPeerRole;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftGroupMemberId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Benchmark {@link PendingRequests} with a steady number of in-flight writes:
+ * each operation adds a pending request at the next log index
+ * and then replies the oldest pending request.
+ *
+ * Run it with
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *   -Dexec.args="-cp %classpath org.apache.ratis.server.impl.PendingRequestsBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PendingRequestsBenchmark {
+  @Param({"16", "1024"})
+  private int inFlight;
+
+  private final ClientId clientId = ClientId.randomId();
+  private final RaftGroupMemberId memberId = RaftGroupMemberId.valueOf(
+      RaftPeerId.valueOf("s0"), RaftGroupId.randomId());
+  private final StateMachine stateMachine = new BaseStateMachine();
+  private final Message message = Message.valueOf("benchmark");
+
+  private PendingRequests pendingRequests;
+  private RaftClientReply reply;
+  private long nextIndex;
+
+  @Setup
+  public void setup() {
+    final RaftServerImpl server = mock(RaftServerImpl.class);
+    when(server.getMemberId()).thenReturn(memberId);
+    when(server.getId()).thenReturn(memberId.getPeerId());
+    pendingRequests = new PendingRequests(memberId, new RaftProperties(),
+        RaftServerMetrics.getRaftServerMetrics(server));
+    reply = new RaftClientReply(clientId, memberId, 0, true, message, null, 0, null);
+
+    nextIndex = 1;
+    for (int i = 0; i < inFlight; i++) {
+      add();
+    }
+  }
+
+  private PendingRequest add() {
+    final long index = nextIndex++;
+    final RaftClientRequest request = new RaftClientRequest(clientId, memberId.getPeerId(),
+        memberId.getGroupId(), index, message, RaftClientRequest.writeRequestType(), null);
+    final TransactionContext trx = TransactionContext.newBuilder()
+        .setServerRole(RaftPeerRole.LEADER)
+        .setStateMachine(stateMachine)
+        .setClientRequest(request)
+        .build();
+    trx.initLogEntry(1, index);
+    if (!pendingRequests.tryAcquire(message)) {
+      throw new IllegalStateException("Failed to acquire a permit at index " + index);
+    }
+    return pendingRequests.add(request, trx);
+  }
+
+  @Benchmark
+  public TransactionContext addAndReply() {
+    add();
+    final long oldest = nextIndex - inFlight - 1;
+    final TransactionContext trx = pendingRequests.getTransactionContext(oldest);
+    pendingRequests.replyPendingRequest(oldest, reply);
+    return trx;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(PendingRequestsBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -19,11 +19,15 @@ package org.apache.ratis.server.impl;
 
 import org.apache.log4j.Level;
 import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
 import org.apache.ratis.proto.RaftProtos.RaftPeerRole;
 import org.apache.ratis.protocol.ClientId;
 import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftPeer;
 import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.raftlog.RaftLog;
+import org.apache.ratis.util.CodeInjectionForTesting;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.Log4jUtils;
 import org.apache.ratis.util.TimeDuration;
@@ -31,8 +35,10 @@ import org.junit.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -74,7 +80,7 @@ public class RaftServerTestUtil {
       if (current.containsInConf(server.getId())) {
         numIncluded++;
         Assert.assertTrue(server.getRaftConf().isStable());
-        Assert.assertTrue(server.getRaftConf().hasNoChange(peers));
+        Assert.assertTrue(server.getRaftConf().hasNoChange(peers, Collections.emptyList()));
       } else if (server.isAlive()) {
         // The server is successfully removed from the conf
         // It may not be shutdown since it may not be able to talk to the new leader (who is not in its conf).
@@ -110,12 +116,42 @@ public class RaftServerTestUtil {
     return getLeaderState(server).map(LeaderState::getLogAppenders).orElse(null);
   }
 
+  /** @return is the given peer a learner in the current conf of the given server? */
+  public static boolean isLearner(RaftServerImpl server, RaftPeerId id) {
+    return server.getRaftConf().isLearner(id);
+  }
+
+  /** @return is the given peer a voter in the current conf of the given server? */
+  public static boolean isVoter(RaftServerImpl server, RaftPeerId id) {
+    return server.getRaftConf().containsInConf(id);
+  }
+
+  /** @return the current ReadIndex heartbeat round of the leader. */
+  public static long getReadIndexRound(RaftServerImpl leader) {
+    return getLeaderState(leader).map(LeaderState::getReadIndexRound).orElseThrow(
+        () -> new IllegalStateException(leader + " is not the leader"));
+  }
+
   public static void restartLogAppenders(RaftServerImpl server) {
     final LeaderState leaderState = getLeaderState(server).orElseThrow(
         () -> new IllegalStateException(server + " is not the leader"));
     leaderState.getLogAppenders().forEach(leaderState::restartSender);
   }
 
+  /** Send an empty snapshot chunk from the given server to the target on behalf of the given leader. */
+  public static InstallSnapshotReplyProto sendSnapshotChunk(RaftServerImpl server, RaftPeerId target,
+      RaftPeerId leaderId) throws IOException {
+    final InstallSnapshotRequestProto request = ServerProtoUtils.toInstallSnapshotRequestProto(
+        server.getMemberId(), target, leaderId, "test", 0, server.getState().getCurrentTerm(),
+        server.getState().getLog().getLastEntryTermIndex(), RaftLog.INVALID_LOG_INDEX, Collections.emptyList(), 0, false);
+    return server.getServerRpc().installSnapshot(request);
+  }
+
+  /** Inject the code to be executed when a server receives an installSnapshot request. */
+  public static void setInstallSnapshotInjection(CodeInjectionForTesting.Code code) {
+    CodeInjectionForTesting.put(RaftServerImpl.INSTALL_SNAPSHOT, code);
+  }
+
   public static Logger getStateMachineUpdaterLog() {
     return StateMachineUpdater.LOG;
   }
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Test replacing the configurations of the conflicting log entries in {@link ConfigurationManager}. */
+public class TestConfigurationManager extends BaseTest {
+  static RaftConfiguration newConf(long index, String... peers) {
+    final RaftPeer[] p = new RaftPeer[peers.length];
+    for (int i = 0; i < peers.length; i++) {
+      p[i] = new RaftPeer(RaftPeerId.valueOf(peers[i]));
+    }
+    return RaftConfiguration.newBuilder().setConf(Arrays.asList(p)).setLogEntryIndex(index).build();
+  }
+
+  @Test
+  public void testReplaceConfigurations() {
+    final RaftConfiguration initial = newConf(0, "s0", "s1", "s2");
+    final ConfigurationManager manager = new ConfigurationManager(initial);
+    manager.addConfiguration(5, newConf(5, "s0", "s1", "s2", "s3"));
+    manager.addConfiguration(8, newConf(8, "s0", "s1", "s3"));
+    Assert.assertEquals(3, manager.numOfConf());
+
+    // the entries from index 6 conflict; the new entries have a configuration at index 7
+    final RaftConfiguration conf7 = newConf(7, "s0", "s1", "s4");
+    final Map<Long, RaftConfiguration> confs = new TreeMap<>();
+    confs.put(7L, conf7);
+    manager.replaceConfigurations(6, confs);
+    Assert.assertSame(conf7, manager.getCurrent());
+    Assert.assertEquals(3, manager.numOfConf());
+
+    // the new entries do not have any configuration
+    manager.replaceConfigurations(5, Collections.emptyMap());
+    Assert.assertSame(initial, manager.getCurrent());
+    Assert.assertEquals(1, manager.numOfConf());
+  }
+}
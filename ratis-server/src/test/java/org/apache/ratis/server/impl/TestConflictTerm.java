@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
+import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto.AppendResult;
+import org.apache.ratis.proto.RaftProtos.LogEntryProto;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftGroupMemberId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.server.raftlog.RaftLog;
+import org.apache.ratis.server.raftlog.memory.MemoryRaftLog;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the conflict-term hint in the appendEntries INCONSISTENCY replies,
+ * which lets the leader skip a divergent suffix of the follower log a whole term at a time.
+ */
+public class TestConflictTerm extends BaseTest {
+  static final RaftGroupId GROUP_ID = RaftGroupId.randomId();
+  static final RaftPeerId LEADER_ID = RaftPeerId.valueOf("leader");
+  static final RaftGroupMemberId FOLLOWER_ID = RaftGroupMemberId.valueOf(RaftPeerId.valueOf("follower"), GROUP_ID);
+
+  /** @return a log with the given terms, where the entry at index i has term terms[i]. */
+  static RaftLog newLog(String name, long commitIndex, long... terms) throws Exception {
+    final RaftLog log = new MemoryRaftLog(RaftGroupMemberId.valueOf(RaftPeerId.valueOf(name), GROUP_ID),
+        RaftLog.INVALID_LOG_INDEX, new RaftProperties());
+    log.open(RaftLog.INVALID_LOG_INDEX, null);
+    final LogEntryProto[] entries = new LogEntryProto[terms.length];
+    for (int i = 0; i < terms.length; i++) {
+      entries[i] = ServerProtoUtils.toLogEntryProto(RaftLog.INVALID_LOG_INDEX, terms[i], i);
+    }
+    log.append(entries);
+    Assert.assertTrue(log.updateLastCommitted(commitIndex, terms[Math.toIntExact(commitIndex)]));
+    return log;
+  }
+
+  /**
+   * Run the appendEntries consistency check of the follower and
+   * the next index update of the leader until the leader finds the last matching entry.
+   *
+   * @return the number of INCONSISTENCY replies, i.e. the round trips to find the last matching entry.
+   */
+  static int countInconsistencies(RaftLog leader, RaftLog follower, boolean conflictHint) {
+    long nextIndex = leader.getNextIndex();
+    for (int n = 0; ; n++) {
+      final TermIndex previous = leader.getTermIndex(nextIndex - 1);
+      if (follower.contains(previous)) {
+        return n;
+      }
+      final TermIndex conflict = conflictHint? RaftServerImpl.getConflict(follower, previous): null;
+      final long replyNextIndex = conflict != null? conflict.getIndex()
+          : Math.min(follower.getNextIndex(), previous.getIndex());
+      final AppendEntriesReplyProto reply = ServerProtoUtils.toAppendEntriesReplyProto(LEADER_ID, FOLLOWER_ID,
+          previous.getTerm(), follower.getLastCommittedIndex(), replyNextIndex, AppendResult.INCONSISTENCY, n,
+          RaftLog.INVALID_LOG_INDEX, false, conflict, RaftLog.INVALID_LOG_INDEX);
+      nextIndex = LogAppender.getNextIndexForInconsistency(leader, reply);
+    }
+  }
+
+  @Test
+  public void testConflictTermNotInLeader() throws Exception {
+    // the follower has 5 uncommitted entries of term 2 which the leader of term 3 does not have
+    final RaftLog leader = newLog("leader", 4, 1, 1, 1, 1, 1, 3, 3, 3);
+    final RaftLog follower = newLog("follower", 4, 1, 1, 1, 1, 1, 2, 2, 2, 2, 2);
+
+    Assert.assertEquals(TermIndex.newTermIndex(2, 5),
+        RaftServerImpl.getConflict(follower, leader.getLastEntryTermIndex()));
+    Assert.assertEquals(1, countInconsistencies(leader, follower, true));
+    // without the hint, the leader backtracks one index per round trip
+    Assert.assertEquals(3, countInconsistencies(leader, follower, false));
+  }
+
+  @Test
+  public void testConflictTermInLeader() throws Exception {
+    // the leader has the first 2 entries of term 2 but not the other 5 entries of term 2 in the follower
+    final RaftLog leader = newLog("leader", 4, 1, 1, 1, 1, 1, 2, 2, 3, 3, 3);
+    final RaftLog follower = newLog("follower", 4, 1, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2);
+
+    Assert.assertEquals(1, countInconsistencies(leader, follower, true));
+    Assert.assertEquals(3, countInconsistencies(leader, follower, false));
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.RaftPeerRole;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.Message;
+import org.apache.ratis.protocol.NotLeaderException;
+import org.apache.ratis.protocol.RaftClientReply;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftGroupMemberId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.statemachine.TransactionContext;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestPendingRequests extends BaseTest {
+  static final int ELEMENT_LIMIT = 32;
+
+  private final ClientId clientId = ClientId.randomId();
+  private final StateMachine stateMachine = new BaseStateMachine();
+  private final Message message = Message.valueOf("test");
+
+  private RaftGroupMemberId memberId;
+  private PendingRequests pendingRequests;
+  private final Map<Long, PendingRequest> added = new HashMap<>();
+
+  @Before
+  public void setup() {
+    // use a new group for each test since the metrics are registered per member
+    memberId = RaftGroupMemberId.valueOf(RaftPeerId.valueOf("s0"), RaftGroupId.randomId());
+    final RaftProperties properties = new RaftProperties();
+    RaftServerConfigKeys.Write.setElementLimit(properties, ELEMENT_LIMIT);
+    final RaftServerImpl server = mock(RaftServerImpl.class);
+    when(server.getMemberId()).thenReturn(memberId);
+    when(server.getId()).thenReturn(memberId.getPeerId());
+    pendingRequests = new PendingRequests(memberId, properties,
+        RaftServerMetrics.getRaftServerMetrics(server));
+  }
+
+  private PendingRequest add(long index) {
+    final RaftClientRequest request = new RaftClientRequest(clientId, memberId.getPeerId(),
+        memberId.getGroupId(), index, message, RaftClientRequest.writeRequestType(), null);
+    final TransactionContext trx = TransactionContext.newBuilder()
+        .setServerRole(RaftPeerRole.LEADER)
+        .setStateMachine(stateMachine)
+        .setClientRequest(request)
+        .build();
+    trx.initLogEntry(1, index);
+    Assert.assertTrue(pendingRequests.tryAcquire(message));
+    final PendingRequest pending = pendingRequests.add(request, trx);
+    Assert.assertNotNull(pending);
+    Assert.assertEquals(index, pending.getIndex());
+    added.put(index, pending);
+    return pending;
+  }
+
+  private void addRange(long from, long to) {
+    for(long i = from; i < to; i++) {
+      add(i);
+    }
+  }
+
+  private void assertPending(long index) {
+    final PendingRequest pending = added.get(index);
+    Assert.assertNotNull("index " + index + " is not added", pending);
+    Assert.assertSame(pending.getEntry(), pendingRequests.getTransactionContext(index));
+    Assert.assertFalse(pending.getFuture().isDone());
+  }
+
+  private void assertNotPending(long index) {
+    Assert.assertNull("index " + index, pendingRequests.getTransactionContext(index));
+  }
+
+  private void reply(long index) {
+    final PendingRequest pending = added.remove(index);
+    final RaftClientReply reply = new RaftClientReply(pending.getRequest(), message, Collections.emptyList());
+    pendingRequests.replyPendingRequest(index, reply);
+    Assert.assertSame(reply, pending.getFuture().join());
+    assertNotPending(index);
+  }
+
+  /** The indices pass the end of the ring many times while the number of pending requests stays small. */
+  @Test
+  public void testWrapAround() {
+    // start near a multiple of a large power of two so that the int cast of the slot wraps as well
+    final long start = (1L << 32) - 5;
+    final int inFlight = 10;
+    addRange(start, start + inFlight);
+    for(long i = start; i < start + 100; i++) {
+      reply(i);
+      add(i + inFlight);
+      for(long j = i + 1; j <= i + inFlight; j++) {
+        assertPending(j);
+      }
+      assertNotPending(i);
+      assertNotPending(i + inFlight + 1);
+    }
+  }
+
+  /** A gap of non-client entries, such as the configuration entries, is larger than the ring. */
+  @Test
+  public void testGrowAcrossGap() {
+    addRange(1, 5);
+    final long gap = 1000;
+    addRange(5 + gap, 10 + gap);
+
+    for(long i = 1; i < 10 + gap; i++) {
+      if (i < 5 || i >= 5 + gap) {
+        assertPending(i);
+      } else {
+        assertNotPending(i);
+      }
+    }
+    assertNotPending(0);
+    assertNotPending(10 + gap);
+
+    // reply all the requests before the gap; then the ring starts after the gap
+    addRange(10 + gap, 30 + gap);
+    for(long i = 1; i < 5; i++) {
+      reply(i);
+    }
+    for(long i = 5 + gap; i < 30 + gap; i++) {
+      assertPending(i);
+    }
+    for(long i = 5 + gap; i < 30 + gap; i++) {
+      reply(i);
+    }
+    Assert.assertTrue(added.isEmpty());
+
+    // the ring is empty; the next index may jump
+    add(5000);
+    assertPending(5000);
+    reply(5000);
+  }
+
+  /**
+   * A request is stuck while the later requests keep completing,
+   * so that the range of the pending indices becomes much larger than the element limit.
+   */
+  @Test
+  public void testStuckBase() {
+    final long stuck = 1;
+    add(stuck);
+    final int inFlight = ELEMENT_LIMIT / 2;
+    addRange(stuck + 1, stuck + 1 + inFlight);
+    for(long i = stuck + 1; i < 100 * ELEMENT_LIMIT; i++) {
+      reply(i);
+      add(i + inFlight);
+      assertPending(stuck);
+      assertPending(i + inFlight);
+    }
+
+    // a large jump of the index, e.g. the leader has appended many entries without pending requests
+    final long jump = 1L << 40;
+    add(jump);
+    assertPending(stuck);
+    assertPending(jump);
+    for(long i = 100 * ELEMENT_LIMIT; i < 100 * ELEMENT_LIMIT + inFlight; i++) {
+      assertPending(i);
+    }
+
+    reply(stuck);
+    for(long i = 100 * ELEMENT_LIMIT; i < 100 * ELEMENT_LIMIT + inFlight; i++) {
+      reply(i);
+    }
+    addRange(jump + 1, jump + ELEMENT_LIMIT);
+    for(long i = jump; i < jump + ELEMENT_LIMIT; i++) {
+      reply(i);
+    }
+    Assert.assertTrue(added.isEmpty());
+  }
+
+  /** The requests are replied out of order, e.g. the requests in a batch or when a reply fails. */
+  @Test
+  public void testRemoveOutOfOrder() {
+    addRange(1, 9);
+
+    reply(4);
+    assertPending(3);
+    assertPending(5);
+    // remove again
+    pendingRequests.replyPendingRequest(4, null);
+    assertNotPending(4);
+
+    reply(1);
+    reply(2);
+    // the smallest pending index is now 3
+    assertPending(3);
+    reply(3);
+    // the smallest pending index skips the replied 4
+    for(long i = 5; i < 9; i++) {
+      assertPending(i);
+    }
+
+    reply(8);
+    reply(6);
+    add(9);
+    addRange(30, 40);
+    reply(5);
+    assertPending(7);
+    assertPending(9);
+    for(long i = 10; i < 30; i++) {
+      assertNotPending(i);
+    }
+    for(long i = 30; i < 40; i++) {
+      assertPending(i);
+    }
+
+    // removing an index outside the range is a no-op
+    pendingRequests.removePendingRequest(0);
+    pendingRequests.removePendingRequest(100);
+    assertPending(7);
+    assertPending(39);
+  }
+
+  /** All the pending requests, including those across a gap, get the NotLeaderException. */
+  @Test
+  public void testSendNotLeaderResponses() {
+    addRange(1, 5);
+    addRange(100, 120);
+    reply(2);
+    reply(110);
+
+    final NotLeaderException nle = new NotLeaderException(memberId, null, Collections.emptyList());
+    final Collection<TransactionContext> transactions = pendingRequests.sendNotLeaderResponses(
+        nle, Collections.emptyList());
+    Assert.assertEquals(added.size(), transactions.size());
+    for (PendingRequest pending : added.values()) {
+      Assert.assertTrue(transactions.contains(pending.getEntry()));
+      final RaftClientReply reply = pending.getFuture().join();
+      Assert.assertSame(nle, reply.getNotLeaderException());
+      assertNotPending(pending.getIndex());
+    }
+
+    // no more requests can be added
+    Assert.assertFalse(pendingRequests.tryAcquire(message));
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.proto.RaftProtos.SlidingWindowEntry;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/** Test the entries and the evictions of {@link RetryCache}. */
+public class TestRetryCache extends BaseTest {
+  static SlidingWindowEntry newSlidingWindowEntry(long seqNum, boolean isFirst) {
+    return SlidingWindowEntry.newBuilder().setSeqNum(seqNum).setIsFirst(isFirst).build();
+  }
+
+  @Test
+  public void testEntries() {
+    final RetryCache cache = new RetryCache(TimeDuration.valueOf(60, TimeUnit.SECONDS));
+    final ClientId[] clients = {ClientId.randomId(), ClientId.randomId()};
+    final int n = 1000;
+    for (ClientId clientId : clients) {
+      for (int i = 0; i < n; i++) {
+        Assert.assertFalse(cache.queryCache(clientId, i).isRetry());
+      }
+    }
+    Assert.assertEquals(clients.length * n, cache.size());
+    Assert.assertEquals(clients.length * n, cache.stats().missCount());
+
+    // a pending entry is a retry
+    for (ClientId clientId : clients) {
+      for (int i = 0; i < n; i++) {
+        final RetryCache.CacheQueryResult r = cache.queryCache(clientId, i);
+        Assert.assertTrue(r.isRetry());
+        Assert.assertEquals(i, r.getEntry().getKey().getCallId());
+      }
+    }
+    Assert.assertEquals(clients.length * n, cache.stats().hitCount());
+
+    // a failed entry is replaced
+    final RetryCache.CacheEntry failed = cache.get(clients[0], 1);
+    failed.failWithException(new Exception("failed"));
+    final RetryCache.CacheQueryResult r = cache.queryCache(clients[0], 1);
+    Assert.assertFalse(r.isRetry());
+    Assert.assertNotSame(failed, r.getEntry());
+    Assert.assertSame(r.getEntry(), cache.get(clients[0], 1));
+    Assert.assertEquals(clients.length * n, cache.size());
+
+    cache.close();
+    Assert.assertEquals(0, cache.size());
+    Assert.assertNull(cache.get(clients[0], 1));
+  }
+
+  @Test
+  public void testEvictReplied() {
+    final RetryCache cache = new RetryCache(TimeDuration.valueOf(60, TimeUnit.SECONDS));
+    final ClientId clientId = ClientId.randomId();
+    final int n = 100;
+    // callId i is sent with seqNum i + 1 and the non-sliding-window request uses callId n
+    for (int i = 0; i < n; i++) {
+      cache.queryCache(clientId, i, newSlidingWindowEntry(i + 1, i == 0));
+    }
+    cache.getOrCreateEntry(clientId, n);
+    Assert.assertEquals(n + 1, cache.size());
+
+    // the client has received the replies for the requests before seqNum 51
+    final int first = 50;
+    cache.queryCache(clientId, first, newSlidingWindowEntry(first + 1, true));
+    Assert.assertEquals(n - first + 1, cache.size());
+    for (int i = 0; i < n; i++) {
+      Assert.assertEquals(i >= first, cache.get(clientId, i) != null);
+    }
+    Assert.assertNotNull(cache.get(clientId, n));
+
+    // the other requests of a batch share the sliding window entry of the batch
+    for (int i = n + 1; i <= n + 10; i++) {
+      cache.queryCache(clientId, i, newSlidingWindowEntry(first + 1, true));
+    }
+    Assert.assertEquals(n - first + 11, cache.size());
+    for (int i = first; i <= n + 10; i++) {
+      Assert.assertNotNull(cache.get(clientId, i));
+    }
+  }
+
+  @Test
+  public void testEvictExpired() throws Exception {
+    final TimeDuration expirationTime = TimeDuration.valueOf(100, TimeUnit.MILLISECONDS);
+    final RetryCache cache = new RetryCache(expirationTime);
+    final ClientId active = ClientId.randomId();
+    final ClientId inactive = ClientId.randomId();
+    for (int i = 0; i < 10; i++) {
+      cache.queryCache(active, i);
+      cache.queryCache(inactive, i);
+    }
+    Assert.assertEquals(20, cache.size());
+
+    expirationTime.sleep();
+    // the expired entries are evicted, including the entries of the inactive client
+    Assert.assertFalse(cache.queryCache(active, 0).isRetry());
+    Assert.assertEquals(1, cache.size());
+    Assert.assertNull(cache.get(inactive, 0));
+  }
+}
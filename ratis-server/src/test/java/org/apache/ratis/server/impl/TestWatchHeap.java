@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.ReplicationLevel;
+import org.apache.ratis.proto.RaftProtos.WatchRequestTypeProto;
+import org.apache.ratis.protocol.ClientId;
+import org.apache.ratis.protocol.RaftClientRequest;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.util.HashedWheelTimer;
+import org.apache.ratis.util.Timestamp;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Test {@link WatchRequests.WatchHeap} and the timeout buckets of {@link WatchRequests}. */
+public class TestWatchHeap extends BaseTest {
+  static WatchRequests.PendingWatch newPendingWatch(long index) {
+    final WatchRequestTypeProto watch = WatchRequestTypeProto.newBuilder()
+        .setIndex(index).setReplication(ReplicationLevel.MAJORITY).build();
+    return new WatchRequests.PendingWatch(watch, index, Timestamp.currentTime());
+  }
+
+  @Test
+  public void testAddRemovePoll() {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final WatchRequests.WatchHeap heap = new WatchRequests.WatchHeap();
+    final List<WatchRequests.PendingWatch> added = new ArrayList<>();
+    final int n = 1000;
+    for (int i = 0; i < n; i++) {
+      final WatchRequests.PendingWatch pending = newPendingWatch(random.nextInt(n / 2));
+      heap.add(pending);
+      added.add(pending);
+    }
+    Assert.assertEquals(n, heap.size());
+
+    // remove a random half
+    int removed = 0;
+    for (int i = 0; i < n / 2; i++) {
+      final WatchRequests.PendingWatch pending = added.get(random.nextInt(n));
+      if (heap.remove(pending)) {
+        removed++;
+      }
+      Assert.assertFalse(heap.remove(pending));
+    }
+    Assert.assertEquals(n - removed, heap.size());
+
+    // poll in index order
+    long previous = -1;
+    for (WatchRequests.PendingWatch pending; (pending = heap.poll()) != null; ) {
+      Assert.assertTrue(pending.getIndex() >= previous);
+      previous = pending.getIndex();
+      Assert.assertFalse(heap.remove(pending));
+    }
+    Assert.assertTrue(heap.isEmpty());
+    Assert.assertEquals(Long.MAX_VALUE, heap.peekIndex());
+  }
+
+  @Test
+  public void testSatisfiedWatchesLeaveBuckets() {
+    final RaftProperties properties = new RaftProperties();
+    final WatchRequests watches = new WatchRequests("s0", properties, HashedWheelTimer.getInstance(properties));
+    final ClientId clientId = ClientId.randomId();
+    final RaftGroupId groupId = RaftGroupId.randomId();
+    final List<CompletableFuture<Void>> futures = new ArrayList<>();
+    final int n = 100;
+    for (int i = 1; i <= n; i++) {
+      final RaftClientRequest request = new RaftClientRequest(clientId, RaftPeerId.valueOf("s0"), groupId, i,
+          RaftClientRequest.watchRequestType(i, ReplicationLevel.MAJORITY));
+      futures.add(watches.add(request));
+    }
+    Assert.assertEquals(n, watches.getNumBucketedWatches(ReplicationLevel.MAJORITY));
+
+    // the satisfied watches are removed from the buckets before the buckets expire
+    watches.update(ReplicationLevel.MAJORITY, n / 2);
+    Assert.assertEquals(n - n / 2, watches.getNumBucketedWatches(ReplicationLevel.MAJORITY));
+    for (int i = 0; i < n; i++) {
+      Assert.assertEquals(i < n / 2, futures.get(i).isDone());
+    }
+
+    watches.update(ReplicationLevel.MAJORITY, n);
+    Assert.assertEquals(0, watches.getNumBucketedWatches(ReplicationLevel.MAJORITY));
+    futures.forEach(f -> Assert.assertTrue(f.isDone() && !f.isCompletedExceptionally()));
+  }
+}
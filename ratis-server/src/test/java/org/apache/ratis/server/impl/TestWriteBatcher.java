@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.proto.RaftProtos.StateMachineLogEntryProto;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.statemachine.impl.TransactionContextImpl;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.HashedWheelTimer;
+import org.apache.ratis.util.TimeDuration;
+import org.apache.ratis.util.Timestamp;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/** Test the linger of {@link WriteBatcher}. */
+public class TestWriteBatcher extends BaseTest {
+  /** A tick much longer than the lingers so that a linger rounded up to a tick is detected. */
+  static final TimeDuration TICK = TimeDuration.valueOf(2, TimeUnit.SECONDS);
+
+  private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", TICK, 8, 1, 1);
+
+  @After
+  public void tearDown() {
+    timer.close();
+  }
+
+  static WriteBatcher newWriteBatcher(TimeDuration linger, HashedWheelTimer timer,
+      CompletableFuture<List<WriteBatcher.Write>> flushed) {
+    final RaftProperties properties = new RaftProperties();
+    RaftServerConfigKeys.Write.Batch.setLinger(properties, linger);
+    return new WriteBatcher("test", properties, timer, flushed::complete);
+  }
+
+  static void add(WriteBatcher batcher) {
+    final StateMachineLogEntryProto entry = StateMachineLogEntryProto.newBuilder()
+        .setLogData(ByteString.copyFromUtf8("m"))
+        .build();
+    batcher.add(null, new TransactionContextImpl(null, null, entry, null), null);
+  }
+
+  @Test
+  public void testLingerShorterThanTick() throws Exception {
+    final CompletableFuture<List<WriteBatcher.Write>> flushed = new CompletableFuture<>();
+    final WriteBatcher batcher = newWriteBatcher(TimeDuration.valueOf(1, TimeUnit.MILLISECONDS), timer, flushed);
+    try {
+      final Timestamp start = Timestamp.currentTime();
+      add(batcher);
+      Assert.assertEquals(1, flushed.get().size());
+      final TimeDuration elapsed = start.elapsedTime();
+      LOG.info("a lone write is flushed in {}", elapsed);
+      Assert.assertTrue("elapsed = " + elapsed, elapsed.compareTo(TICK.apply(t -> t / 2)) < 0);
+    } finally {
+      batcher.close();
+    }
+  }
+
+  @Test
+  public void testZeroLinger() {
+    final CompletableFuture<List<WriteBatcher.Write>> flushed = new CompletableFuture<>();
+    final WriteBatcher batcher = newWriteBatcher(TimeDuration.ZERO, timer, flushed);
+    try {
+      // the write is flushed by the caller without waiting for the timer
+      add(batcher);
+      Assert.assertTrue(flushed.isDone());
+      Assert.assertEquals(1, flushed.join().size());
+    } finally {
+      batcher.close();
+    }
+  }
+}
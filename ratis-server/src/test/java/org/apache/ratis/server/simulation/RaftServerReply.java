@@ -21,6 +21,7 @@ import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftRpcMessage;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteReplyProto;
 import org.apache.ratis.util.ProtoUtils;
 
@@ -30,23 +31,34 @@ public class RaftServerReply implements RaftRpcMessage {
   private final AppendEntriesReplyProto appendEntries;
   private final RequestVoteReplyProto requestVote;
   private final InstallSnapshotReplyProto installSnapshot;
+  private final ReadIndexReplyProto readIndex;
 
   RaftServerReply(AppendEntriesReplyProto a) {
     appendEntries = Objects.requireNonNull(a);
     requestVote = null;
     installSnapshot = null;
+    readIndex = null;
   }
 
   RaftServerReply(RequestVoteReplyProto r) {
     appendEntries = null;
     requestVote = Objects.requireNonNull(r);
     installSnapshot = null;
+    readIndex = null;
   }
 
   RaftServerReply(InstallSnapshotReplyProto i) {
     appendEntries = null;
     requestVote = null;
     installSnapshot = Objects.requireNonNull(i);
+    readIndex = null;
+  }
+
+  RaftServerReply(ReadIndexReplyProto r) {
+    appendEntries = null;
+    requestVote = null;
+    installSnapshot = null;
+    readIndex = Objects.requireNonNull(r);
   }
 
   boolean isAppendEntries() {
@@ -61,6 +73,10 @@ public class RaftServerReply implements RaftRpcMessage {
     return installSnapshot != null;
   }
 
+  boolean isReadIndex() {
+    return readIndex != null;
+  }
+
   AppendEntriesReplyProto getAppendEntries() {
     return appendEntries;
   }
@@ -73,6 +89,10 @@ public class RaftServerReply implements RaftRpcMessage {
     return installSnapshot;
   }
 
+  ReadIndexReplyProto getReadIndex() {
+    return readIndex;
+  }
+
   @Override
   public boolean isRequest() {
     return false;
@@ -84,6 +104,8 @@ public class RaftServerReply implements RaftRpcMessage {
       return appendEntries.getServerReply().getRequestorId().toStringUtf8();
     } else if (isRequestVote()) {
       return requestVote.getServerReply().getRequestorId().toStringUtf8();
+    } else if (isReadIndex()) {
+      return readIndex.getServerReply().getRequestorId().toStringUtf8();
     } else {
       return installSnapshot.getServerReply().getRequestorId().toStringUtf8();
     }
@@ -95,6 +117,8 @@ public class RaftServerReply implements RaftRpcMessage {
       return appendEntries.getServerReply().getReplyId().toStringUtf8();
     } else if (isRequestVote()) {
       return requestVote.getServerReply().getReplyId().toStringUtf8();
+    } else if (isReadIndex()) {
+      return readIndex.getServerReply().getReplyId().toStringUtf8();
     } else {
       return installSnapshot.getServerReply().getReplyId().toStringUtf8();
     }
@@ -106,6 +130,8 @@ public class RaftServerReply implements RaftRpcMessage {
       return ProtoUtils.toRaftGroupId(appendEntries.getServerReply().getRaftGroupId());
     } else if (isRequestVote()) {
       return ProtoUtils.toRaftGroupId(requestVote.getServerReply().getRaftGroupId());
+    } else if (isReadIndex()) {
+      return ProtoUtils.toRaftGroupId(readIndex.getServerReply().getRaftGroupId());
     } else {
       return ProtoUtils.toRaftGroupId(installSnapshot.getServerReply().getRaftGroupId());
     }
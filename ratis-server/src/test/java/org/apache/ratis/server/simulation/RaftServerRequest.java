@@ -21,6 +21,7 @@ import org.apache.ratis.protocol.RaftGroupId;
 import org.apache.ratis.protocol.RaftRpcMessage;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteRequestProto;
 import org.apache.ratis.util.ProtoUtils;
 
@@ -28,23 +29,34 @@ class RaftServerRequest implements RaftRpcMessage {
   private final AppendEntriesRequestProto appendEntries;
   private final RequestVoteRequestProto requestVote;
   private final InstallSnapshotRequestProto installSnapshot;
+  private final ReadIndexRequestProto readIndex;
 
   RaftServerRequest(AppendEntriesRequestProto a) {
     appendEntries = a;
     requestVote = null;
     installSnapshot = null;
+    readIndex = null;
   }
 
   RaftServerRequest(RequestVoteRequestProto r) {
     appendEntries = null;
     requestVote = r;
     installSnapshot = null;
+    readIndex = null;
   }
 
   RaftServerRequest(InstallSnapshotRequestProto i) {
     appendEntries = null;
     requestVote = null;
     installSnapshot = i;
+    readIndex = null;
+  }
+
+  RaftServerRequest(ReadIndexRequestProto r) {
+    appendEntries = null;
+    requestVote = null;
+    installSnapshot = null;
+    readIndex = r;
   }
 
   boolean isAppendEntries() {
@@ -59,6 +71,10 @@ class RaftServerRequest implements RaftRpcMessage {
     return installSnapshot != null;
   }
 
+  boolean isReadIndex() {
+    return readIndex != null;
+  }
+
   AppendEntriesRequestProto getAppendEntries() {
     return appendEntries;
   }
@@ -71,6 +87,10 @@ class RaftServerRequest implements RaftRpcMessage {
     return installSnapshot;
   }
 
+  ReadIndexRequestProto getReadIndex() {
+    return readIndex;
+  }
+
   @Override
   public boolean isRequest() {
     return true;
@@ -82,6 +102,8 @@ class RaftServerRequest implements RaftRpcMessage {
       return appendEntries.getServerRequest().getRequestorId().toStringUtf8();
     } else if (isRequestVote()) {
       return requestVote.getServerRequest().getRequestorId().toStringUtf8();
+    } else if (isReadIndex()) {
+      return readIndex.getServerRequest().getRequestorId().toStringUtf8();
     } else {
       return installSnapshot.getServerRequest().getRequestorId().toStringUtf8();
     }
@@ -93,6 +115,8 @@ class RaftServerRequest implements RaftRpcMessage {
       return appendEntries.getServerRequest().getReplyId().toStringUtf8();
     } else if (isRequestVote()) {
       return requestVote.getServerRequest().getReplyId().toStringUtf8();
+    } else if (isReadIndex()) {
+      return readIndex.getServerRequest().getReplyId().toStringUtf8();
     } else {
       return installSnapshot.getServerRequest().getReplyId().toStringUtf8();
     }
@@ -104,6 +128,8 @@ class RaftServerRequest implements RaftRpcMessage {
       return ProtoUtils.toRaftGroupId(appendEntries.getServerRequest().getRaftGroupId());
     } else if (isRequestVote()) {
       return ProtoUtils.toRaftGroupId(requestVote.getServerRequest().getRaftGroupId());
+    } else if (isReadIndex()) {
+      return ProtoUtils.toRaftGroupId(readIndex.getServerRequest().getRaftGroupId());
     } else {
       return ProtoUtils.toRaftGroupId(installSnapshot.getServerRequest().getRaftGroupId());
     }
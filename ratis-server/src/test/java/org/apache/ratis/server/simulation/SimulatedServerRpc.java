@@ -21,6 +21,8 @@ import org.apache.ratis.proto.RaftProtos.AppendEntriesReplyProto;
 import org.apache.ratis.proto.RaftProtos.AppendEntriesRequestProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
 import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexReplyProto;
+import org.apache.ratis.proto.RaftProtos.ReadIndexRequestProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteReplyProto;
 import org.apache.ratis.proto.RaftProtos.RequestVoteRequestProto;
 import org.apache.ratis.protocol.GroupInfoRequest;
@@ -37,12 +39,14 @@ import org.apache.ratis.server.impl.RaftServerProxy;
 import org.apache.ratis.util.Daemon;
 import org.apache.ratis.util.IOUtils;
 import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.ProtoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -123,6 +127,17 @@ class SimulatedServerRpc implements RaftServerRpc {
     return reply.getRequestVote();
   }
 
+  @Override
+  public CompletableFuture<ReadIndexReplyProto> readIndexAsync(ReadIndexRequestProto request) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return serverHandler.getRpc().sendRequest(new RaftServerRequest(request)).getReadIndex();
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
   @Override
   public void addPeers(Iterable<RaftPeer> peers) {
     // do nothing
@@ -149,6 +164,9 @@ class SimulatedServerRpc implements RaftServerRpc {
         return new RaftServerReply(server.requestVote(r.getRequestVote()));
       } else if (r.isInstallSnapshot()) {
         return new RaftServerReply(server.installSnapshot(r.getInstallSnapshot()));
+      } else if (r.isReadIndex()) {
+        return new RaftServerReply(IOUtils.getFromFuture(server.readIndexAsync(r.getReadIndex()),
+            () -> "readIndex " + ProtoUtils.toString(r.getReadIndex().getServerRequest())));
       } else {
         throw new IllegalStateException("unexpected state");
       }
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.proto.RaftProtos.FileChunkProto;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.thirdparty.com.google.protobuf.UnsafeByteOperations;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the snapshot chunk data path with and without copying the data:
+ * {@link #readChunk()} is the leader reading a chunk from a snapshot file into a {@link FileChunkProto}
+ * and {@link #writeChunk()} is the follower writing a received chunk to the snapshot file.
+ * The chunks are written to the page cache without forcing them to the disk
+ * so that the copies, but not the disk, are measured.
+ *
+ * Since a chunk is 1MB, the throughput in ops/s is the throughput in MB/s.
+ * The GC profiler reports the allocation per chunk.
+ *
+ * Run it with
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *   -Dexec.args="-cp %classpath org.apache.ratis.server.storage.SnapshotChunkBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotChunkBenchmark {
+  static final int CHUNK_SIZE = 1 << 20;
+  static final int NUM_CHUNKS = 64;
+
+  /** Copy the chunk data as before, i.e. ByteString.copyFrom on the leader and toByteArray on the follower. */
+  @Param({"true", "false"})
+  private boolean copy;
+
+  private File dir;
+  private File snapshotFile;
+  private FileInputStream in;
+  private FileChunkProto received;
+  private RandomAccessFile out;
+  private FileChannel channel;
+  private int chunkIndex;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+    snapshotFile = new File(dir, "snapshot");
+    final byte[] data = new byte[CHUNK_SIZE];
+    try (FileChannel c = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      for (int i = 0; i < NUM_CHUNKS; i++) {
+        ThreadLocalRandom.current().nextBytes(data);
+        for (ByteBuffer b = ByteBuffer.wrap(data); b.hasRemaining(); ) {
+          c.write(b);
+        }
+      }
+    }
+    in = new FileInputStream(snapshotFile);
+
+    ThreadLocalRandom.current().nextBytes(data);
+    received = FileChunkProto.newBuilder()
+        .setFilename("sm/snapshot")
+        .setData(UnsafeByteOperations.unsafeWrap(data))
+        .build();
+    final File installed = new File(dir, "installed");
+    out = new RandomAccessFile(installed, "rw");
+    channel = FileChannel.open(installed.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    in.close();
+    out.close();
+    channel.close();
+    FileUtils.deleteFully(dir);
+  }
+
+  /** @return the offset of the next chunk, which wraps around the file. */
+  private long nextOffset() {
+    final long offset = (long) chunkIndex * CHUNK_SIZE;
+    chunkIndex = (chunkIndex + 1) % NUM_CHUNKS;
+    return offset;
+  }
+
+  @Benchmark
+  public FileChunkProto readChunk() throws IOException {
+    final long offset = nextOffset();
+    in.getChannel().position(offset);
+    final byte[] buf = new byte[CHUNK_SIZE];
+    IOUtils.readFully(in, buf, 0, buf.length);
+    final ByteString data = copy? ByteString.copyFrom(buf): UnsafeByteOperations.unsafeWrap(buf);
+    return FileChunkProto.newBuilder()
+        .setFilename("sm/snapshot")
+        .setOffset(offset)
+        .setData(data)
+        .build();
+  }
+
+  @Benchmark
+  public long writeChunk() throws IOException {
+    final long offset = nextOffset();
+    if (copy) {
+      out.seek(offset);
+      out.write(received.getData().toByteArray());
+      return offset;
+    }
+    long position = offset;
+    for (ByteBuffer data : received.getData().asReadOnlyByteBufferList()) {
+      while (data.hasRemaining()) {
+        position += channel.write(data, position);
+      }
+    }
+    return position;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(SnapshotChunkBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -20,6 +20,7 @@ package org.apache.ratis.statemachine;
 import static org.apache.ratis.server.impl.StateMachineMetrics.RATIS_STATEMACHINE_METRICS;
 import static org.apache.ratis.server.impl.StateMachineMetrics.RATIS_STATEMACHINE_METRICS_DESC;
 import static org.apache.ratis.server.impl.StateMachineMetrics.STATEMACHINE_TAKE_SNAPSHOT_TIMER;
+import static org.apache.ratis.server.metrics.RaftLogMetrics.LOG_APPENDER_INSTALL_SNAPSHOT_FROM_FOLLOWER_METRIC;
 import static org.apache.ratis.server.metrics.RaftLogMetrics.LOG_APPENDER_INSTALL_SNAPSHOT_METRIC;
 import static org.apache.ratis.server.metrics.RatisMetrics.RATIS_APPLICATION_NAME_METRICS;
 
@@ -41,6 +42,8 @@ import org.apache.ratis.server.impl.RaftServerTestUtil;
 import org.apache.ratis.server.raftlog.RaftLog;
 import org.apache.ratis.server.storage.RaftStorageDirectory;
 import org.apache.ratis.server.storage.RaftStorageDirectory.LogPathAndIndex;
+import org.apache.ratis.proto.RaftProtos.FileDigestAlgorithm;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotResult;
 import org.apache.ratis.proto.RaftProtos.LogEntryProto;
 import org.apache.ratis.statemachine.impl.SimpleStateMachineStorage;
 import org.apache.ratis.util.FileUtils;
@@ -109,14 +112,24 @@ public abstract class RaftSnapshotBaseTest extends BaseTest {
 
   public abstract MiniRaftCluster.Factory<?> getFactory();
 
+  /** @return the state machine class, which must be a {@link SimpleStateMachine4Testing}. */
+  protected Class<? extends SimpleStateMachine4Testing> getStateMachineClass() {
+    return SimpleStateMachine4Testing.class;
+  }
+
+  /** Set the additional properties for the subclass. */
+  protected void setProperties(RaftProperties prop) {
+  }
+
   @Before
   public void setup() throws IOException {
     final RaftProperties prop = new RaftProperties();
     prop.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY,
-        SimpleStateMachine4Testing.class, StateMachine.class);
+        getStateMachineClass(), StateMachine.class);
     RaftServerConfigKeys.Snapshot.setAutoTriggerThreshold(
         prop, SNAPSHOT_TRIGGER_THRESHOLD);
     RaftServerConfigKeys.Snapshot.setAutoTriggerEnabled(prop, true);
+    setProperties(prop);
     this.cluster = getFactory().newCluster(1, prop);
     cluster.start();
   }
@@ -239,6 +252,75 @@ public abstract class RaftSnapshotBaseTest extends BaseTest {
     }
   }
 
+  /**
+   * The leader installs the snapshot to a new peer
+   * and then directs that peer to install the snapshot to another new peer.
+   */
+  @Test
+  public void testInstallSnapshotFromFollower() throws Exception {
+    int i = 0;
+    final List<LogPathAndIndex> logs;
+    try {
+      final RaftPeerId leaderId = RaftTestUtil.waitForLeader(cluster).getId();
+      try(final RaftClient client = cluster.createClient(leaderId)) {
+        for (; i < SNAPSHOT_TRIGGER_THRESHOLD * 2 - 1; i++) {
+          Assert.assertTrue(client.send(new SimpleMessage("m" + i)).isSuccess());
+        }
+      }
+
+      // wait for the snapshot to be done
+      final long nextIndex = cluster.getLeader().getState().getLog().getNextIndex();
+      final List<File> snapshotFiles = getSnapshotFiles(cluster, nextIndex - SNAPSHOT_TRIGGER_THRESHOLD, nextIndex);
+      JavaUtils.attemptRepeatedly(() -> snapshotFiles.stream().anyMatch(RaftSnapshotBaseTest::exists),
+          10, ONE_SECOND, "snapshotFile.exist", LOG);
+      logs = cluster.getLeader().getState().getStorage().getStorageDir().getLogSegmentFiles();
+    } finally {
+      cluster.shutdown();
+    }
+
+    // delete the log segments so that the new peers must install the snapshot
+    for (LogPathAndIndex path : logs) {
+      FileUtils.delete(path.getPath());
+    }
+
+    RaftServerConfigKeys.Log.Appender.setInstallSnapshotFromFollowerEnabled(cluster.getProperties(), true);
+    // the digests are computed from the chunks sent, since s3 does not have md5 files after the installation
+    RaftServerConfigKeys.Log.Appender.setSnapshotDigestAlgorithm(cluster.getProperties(), FileDigestAlgorithm.CRC32C);
+    cluster.restart(false);
+    try {
+      assertLeaderContent(cluster);
+      try(final RaftClient client = cluster.createClient(cluster.getLeader().getId())) {
+        Assert.assertTrue(client.send(new SimpleMessage("m" + i)).isSuccess());
+      }
+
+      // there is no other follower, the leader installs the snapshot to s3
+      final MiniRaftCluster.PeerChanges s3 = cluster.addNewPeers(new String[]{"s3"}, true);
+      cluster.setConfiguration(s3.allPeersInNewConf);
+      RaftServerTestUtil.waitAndCheckNewConf(cluster, s3.allPeersInNewConf, 0, null);
+
+      // s3 installs the snapshot to s4
+      final MiniRaftCluster.PeerChanges s4 = cluster.addNewPeers(new String[]{"s4"}, true);
+      cluster.setConfiguration(s4.allPeersInNewConf);
+      RaftServerTestUtil.waitAndCheckNewConf(cluster, s4.allPeersInNewConf, 0, null);
+
+      final RaftServerImpl leader = cluster.getLeader();
+      Assert.assertEquals(1, leader.getRaftServerMetrics()
+          .getCounter(LOG_APPENDER_INSTALL_SNAPSHOT_FROM_FOLLOWER_METRIC).getCount());
+      final RaftServerImpl follower = cluster.getRaftServerImpl(s4.newPeers[0].getId());
+      JavaUtils.attemptRepeatedly(() -> {
+        Assert.assertEquals(leader.getState().getLastAppliedIndex(), follower.getState().getLastAppliedIndex());
+        return null;
+      }, 10, ONE_SECOND, "s4 applied index", LOG);
+
+      // s3 is no longer designated after the installation, so s4 rejects the chunks from s3
+      final RaftServerImpl source = cluster.getRaftServerImpl(s3.newPeers[0].getId());
+      Assert.assertEquals(InstallSnapshotResult.NOT_LEADER,
+          RaftServerTestUtil.sendSnapshotChunk(source, follower.getId(), leader.getId()).getResult());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   protected void verifyInstallSnapshotMetric(RaftServerImpl leader) {
     Counter installSnapshotCounter = leader.getRaftServerMetrics().getCounter(LOG_APPENDER_INSTALL_SNAPSHOT_METRIC);
     Assert.assertNotNull(installSnapshotCounter);
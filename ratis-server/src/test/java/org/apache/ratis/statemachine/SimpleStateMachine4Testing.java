@@ -36,15 +36,18 @@ import org.apache.ratis.server.impl.ServerProtoUtils;
 import org.apache.ratis.server.protocol.TermIndex;
 import org.apache.ratis.server.raftlog.segmented.SegmentedRaftLogInputStream;
 import org.apache.ratis.server.raftlog.segmented.SegmentedRaftLogOutputStream;
+import org.apache.ratis.server.storage.FileInfo;
 import org.apache.ratis.server.storage.RaftStorage;
 import org.apache.ratis.statemachine.impl.BaseStateMachine;
 import org.apache.ratis.statemachine.impl.SimpleStateMachineStorage;
 import org.apache.ratis.statemachine.impl.SingleFileSnapshotInfo;
+import org.apache.ratis.statemachine.impl.SnapshotChainInfo;
 import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
 import org.apache.ratis.util.Daemon;
 import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.LifeCycle;
 import org.apache.ratis.util.MD5FileUtil;
+import org.apache.ratis.util.MemoizedSupplier;
 import org.apache.ratis.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +64,8 @@ import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -86,6 +91,8 @@ public class SimpleStateMachine4Testing extends BaseStateMachine {
   private final SortedMap<String, LogEntryProto> dataMap = Collections.synchronizedSortedMap(new TreeMap<>());
   private final Daemon checkpointer;
   private final SimpleStateMachineStorage storage = new SimpleStateMachineStorage();
+  private final MemoizedSupplier<ExecutorService> compactor = MemoizedSupplier.valueOf(
+      () -> Executors.newSingleThreadExecutor(r -> new Daemon(r, this + "-compactor")));
   private final RaftProperties properties = new RaftProperties();
   private long segmentMaxSize =
       RaftServerConfigKeys.Log.segmentSizeMax(properties).getSize();
@@ -210,7 +217,7 @@ public class SimpleStateMachine4Testing extends BaseStateMachine {
     lifeCycle.startAndTransition(() -> {
       super.initialize(server, groupId, raftStorage);
       storage.init(raftStorage);
-      loadSnapshot(storage.findLatestSnapshot());
+      loadSnapshot(storage.findLatestSnapshotChain());
 
       if (properties.getBoolean(
           RAFT_TEST_SIMPLE_STATE_MACHINE_TAKE_SNAPSHOT_KEY,
@@ -229,7 +236,7 @@ public class SimpleStateMachine4Testing extends BaseStateMachine {
   @Override
   public synchronized void reinitialize() throws IOException {
     LOG.info("Reinitializing " + this);
-    loadSnapshot(storage.findLatestSnapshot());
+    loadSnapshot(storage.findLatestSnapshotChain());
   }
 
   @Override
@@ -244,15 +251,66 @@ public class SimpleStateMachine4Testing extends BaseStateMachine {
 
   @Override
   public long takeSnapshot() {
+    return takeSnapshot(getLastAppliedTermIndex());
+  }
+
+  /** Take a snapshot including the entries up to the given index. */
+  protected long takeSnapshot(TermIndex termIndex) {
+    if (termIndex.getTerm() <= 0 || termIndex.getIndex() <= 0) {
+      return RaftServerConstants.INVALID_LOG_INDEX;
+    }
+    return takeSnapshot(termIndex, storage.getSnapshotFile(termIndex.getTerm(), termIndex.getIndex()),
+        RaftServerConstants.INVALID_LOG_INDEX);
+  }
+
+  /**
+   * Take a delta including the entries after the latest snapshot chain.
+   * If there is no snapshot, take a full snapshot instead.
+   */
+  public long takeDeltaSnapshot() {
     final TermIndex termIndex = getLastAppliedTermIndex();
     if (termIndex.getTerm() <= 0 || termIndex.getIndex() <= 0) {
       return RaftServerConstants.INVALID_LOG_INDEX;
     }
+    final SnapshotChainInfo chain = storage.getLatestSnapshotChain();
+    if (chain == null) {
+      return takeSnapshot(termIndex);
+    } else if (chain.getIndex() >= termIndex.getIndex()) {
+      return chain.getIndex();
+    }
+    final File deltaFile = storage.getDeltaFile(termIndex.getTerm(), chain.getIndex(), termIndex.getIndex());
+    return takeSnapshot(termIndex, deltaFile, chain.getIndex());
+  }
+
+  /** Compact the latest snapshot chain in the background. */
+  public CompletableFuture<SingleFileSnapshotInfo> compactSnapshotChainAsync() {
+    return storage.compactLatestSnapshotChainAsync(this::mergeSnapshotChain, compactor.get());
+  }
+
+  /** Merge the chain by writing all the entries in the chain to the full snapshot file. */
+  private void mergeSnapshotChain(SnapshotChainInfo chain, File fullSnapshotFile) throws IOException {
+    try (SegmentedRaftLogOutputStream out = new SegmentedRaftLogOutputStream(fullSnapshotFile, false,
+        segmentMaxSize, preallocatedSize, ByteBuffer.allocateDirect(bufferSize))) {
+      for (FileInfo file : chain.getFiles()) {
+        try (SegmentedRaftLogInputStream in = new SegmentedRaftLogInputStream(
+            file.getPath().toFile(), 0, chain.getIndex(), false)) {
+          for (LogEntryProto entry; (entry = in.nextEntry()) != null; ) {
+            out.write(entry);
+          }
+        }
+      }
+      out.flush();
+    }
+  }
+
+  /**
+   * Take a snapshot including the entries in the range (fromIndex, termIndex.getIndex()].
+   * It is a delta if fromIndex is a valid index.
+   */
+  protected long takeSnapshot(TermIndex termIndex, File snapshotFile, long fromIndex) {
     final long endIndex = termIndex.getIndex();
 
     // TODO: snapshot should be written to a tmp file, then renamed
-    File snapshotFile = storage.getSnapshotFile(termIndex.getTerm(),
-        termIndex.getIndex());
     LOG.debug("Taking a snapshot with t:{}, i:{}, file:{}", termIndex.getTerm(),
         termIndex.getIndex(), snapshotFile);
     try (SegmentedRaftLogOutputStream out = new SegmentedRaftLogOutputStream(snapshotFile, false,
@@ -260,7 +318,7 @@ public class SimpleStateMachine4Testing extends BaseStateMachine {
       for (final LogEntryProto entry : indexMap.values()) {
         if (entry.getIndex() > endIndex) {
           break;
-        } else {
+        } else if (entry.getIndex() > fromIndex) {
           out.write(entry);
         }
       }
@@ -292,21 +350,33 @@ public class SimpleStateMachine4Testing extends BaseStateMachine {
     return storage;
   }
 
-  private synchronized long loadSnapshot(SingleFileSnapshotInfo snapshot)
+  /** @return the latest snapshot chain if it has any deltas; otherwise, return the latest full snapshot. */
+  @Override
+  public SnapshotInfo getLatestSnapshot() {
+    final SnapshotChainInfo chain = storage.getLatestSnapshotChain();
+    return chain != null && chain.getLinks().size() > 1? chain: storage.getLatestSnapshot();
+  }
+
+  private synchronized long loadSnapshot(SnapshotInfo snapshot)
       throws IOException {
-    if (snapshot == null || !snapshot.getFile().getPath().toFile().exists()) {
-      LOG.info("The snapshot file {} does not exist",
-          snapshot == null ? null : snapshot.getFile());
+    if (snapshot == null || !snapshot.getFiles().stream().allMatch(f -> f.getPath().toFile().exists())) {
+      LOG.info("The snapshot files {} do not exist",
+          snapshot == null ? null : snapshot.getFiles());
       return RaftServerConstants.INVALID_LOG_INDEX;
     } else {
       LOG.info("Loading snapshot {}", snapshot);
       final long endIndex = snapshot.getIndex();
-      try (SegmentedRaftLogInputStream in = new SegmentedRaftLogInputStream(
-          snapshot.getFile().getPath().toFile(), 0, endIndex, false)) {
-        LogEntryProto entry;
-        while ((entry = in.nextEntry()) != null) {
-          put(entry);
-          updateLastAppliedTermIndex(entry.getTerm(), entry.getIndex());
+      // the snapshot replaces the current state
+      indexMap.clear();
+      dataMap.clear();
+      // a snapshot chain is loaded by loading the base snapshot and then each delta
+      for (FileInfo file : snapshot.getFiles()) {
+        try (SegmentedRaftLogInputStream in = new SegmentedRaftLogInputStream(
+            file.getPath().toFile(), 0, endIndex, false)) {
+          LogEntryProto entry;
+          while ((entry = in.nextEntry()) != null) {
+            put(entry);
+          }
         }
       }
       // The end index is greater than last entry in indexMap as it also
@@ -382,6 +452,9 @@ public class SimpleStateMachine4Testing extends BaseStateMachine {
     lifeCycle.checkStateAndClose(() -> {
       running = false;
       checkpointer.interrupt();
+      if (compactor.isInitialized()) {
+        compactor.get().shutdown();
+      }
     });
   }
 
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.MiniRaftCluster;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.RaftTestUtil.SimpleMessage;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.grpc.metrics.GrpcServerMetrics;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto.SnapshotChunkProto;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.server.impl.RaftServerTestUtil;
+import org.apache.ratis.server.storage.RaftStorageDirectory.LogPathAndIndex;
+import org.apache.ratis.statemachine.RaftSnapshotBaseTest;
+import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
+import org.apache.ratis.statemachine.StateMachine;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.JavaUtils;
+import org.apache.ratis.util.SizeInBytes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Test the flow control and the resumption of a snapshot installation. */
+public class TestInstallSnapshotResumeWithGrpc extends BaseTest implements MiniRaftClusterWithGrpc.FactoryGet {
+  static final int SNAPSHOT_TRIGGER_THRESHOLD = 10;
+  static final int CHUNK_SIZE = 32;
+  /** The follower forces a file to the disk after every 3 chunks. */
+  static final int SYNC_INTERVAL = 3 * CHUNK_SIZE;
+  static final int MAX_OUTSTANDING_CHUNKS = 4;
+
+  {
+    final RaftProperties p = getProperties();
+    p.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY, SimpleStateMachine4Testing.class, StateMachine.class);
+    RaftServerConfigKeys.Snapshot.setAutoTriggerThreshold(p, SNAPSHOT_TRIGGER_THRESHOLD);
+    RaftServerConfigKeys.Snapshot.setAutoTriggerEnabled(p, true);
+    RaftServerConfigKeys.Snapshot.setInstallSyncInterval(p, SizeInBytes.valueOf(SYNC_INTERVAL));
+    RaftServerConfigKeys.Log.Appender.setSnapshotChunkSizeMax(p, SizeInBytes.valueOf(CHUNK_SIZE));
+    GrpcConfigKeys.Server.setLeaderOutstandingSnapshotChunksMax(p, MAX_OUTSTANDING_CHUNKS);
+  }
+
+  private final List<SnapshotChunkProto> received = new ArrayList<>();
+
+  @After
+  public void removeInjection() {
+    RaftServerTestUtil.setInstallSnapshotInjection((localId, remoteId, args) -> false);
+  }
+
+  /** Record the chunks received by the given peer. */
+  private synchronized void record(Object localId, RaftPeerId peer, Object request) {
+    if (peer.equals(localId)) {
+      received.add(((InstallSnapshotRequestProto) request).getSnapshotChunk());
+    }
+  }
+
+  private synchronized List<SnapshotChunkProto> getReceived() {
+    return new ArrayList<>(received);
+  }
+
+  /** Take a snapshot and then delete the log, so that a new peer must install the snapshot. */
+  void createSnapshotAndRestart(MiniRaftClusterWithGrpc cluster) throws Exception {
+    final List<LogPathAndIndex> logs;
+    try {
+      final RaftPeerId leaderId = RaftTestUtil.waitForLeader(cluster).getId();
+      try (RaftClient client = cluster.createClient(leaderId)) {
+        for (int i = 0; i < SNAPSHOT_TRIGGER_THRESHOLD * 2 - 1; i++) {
+          Assert.assertTrue(client.send(new SimpleMessage("m" + i)).isSuccess());
+        }
+      }
+      final long nextIndex = cluster.getLeader().getState().getLog().getNextIndex();
+      final List<File> snapshotFiles = RaftSnapshotBaseTest.getSnapshotFiles(
+          cluster, nextIndex - SNAPSHOT_TRIGGER_THRESHOLD, nextIndex);
+      JavaUtils.attemptRepeatedly(() -> snapshotFiles.stream().anyMatch(RaftSnapshotBaseTest::exists),
+          10, ONE_SECOND, "snapshotFile.exist", LOG);
+      logs = cluster.getLeader().getState().getStorage().getStorageDir().getLogSegmentFiles();
+    } finally {
+      cluster.shutdown();
+    }
+    for (LogPathAndIndex path : logs) {
+      FileUtils.delete(path.getPath());
+    }
+    cluster.restart(false);
+    RaftTestUtil.waitForLeader(cluster);
+  }
+
+  MiniRaftCluster.PeerChanges addNewPeer(MiniRaftClusterWithGrpc cluster) throws Exception {
+    final MiniRaftCluster.PeerChanges change = cluster.addNewPeers(new String[]{"s3"}, true);
+    cluster.setConfiguration(change.allPeersInNewConf);
+    return change;
+  }
+
+  /** The stream breaks in the middle; the installation resumes after the last chunk forced to the disk. */
+  @Test
+  public void testResumeFromSyncedOffset() throws Exception {
+    runWithNewCluster(1, this::runTestResumeFromSyncedOffset);
+  }
+
+  void runTestResumeFromSyncedOffset(MiniRaftClusterWithGrpc cluster) throws Exception {
+    createSnapshotAndRestart(cluster);
+
+    // fail the 6th request once, where the 3rd request is the last synced request before it
+    final int failIndex = 5;
+    final RaftPeerId s3 = RaftPeerId.valueOf("s3");
+    final AtomicBoolean failed = new AtomicBoolean();
+    RaftServerTestUtil.setInstallSnapshotInjection((localId, remoteId, args) -> {
+      record(localId, s3, args[0]);
+      if (s3.equals(localId)
+          && ((InstallSnapshotRequestProto) args[0]).getSnapshotChunk().getRequestIndex() == failIndex
+          && failed.compareAndSet(false, true)) {
+        throw new IllegalStateException("Injected failure at requestIndex " + failIndex);
+      }
+      return false;
+    });
+
+    final MiniRaftCluster.PeerChanges change = addNewPeer(cluster);
+    RaftServerTestUtil.waitAndCheckNewConf(cluster, change.allPeersInNewConf, 0, null);
+    Assert.assertTrue(failed.get());
+
+    final List<SnapshotChunkProto> chunks = getReceived();
+    chunks.forEach(c -> LOG.info("received requestIndex={}, offset={}, done={}", c.getRequestIndex(),
+        c.getFileChunks(0).getOffset(), c.getDone()));
+    // the first request after the failed request, which is not a request sent before the failure
+    int i = 0;
+    for(; chunks.get(i).getRequestIndex() != failIndex; i++);
+    for(i++; chunks.get(i).getRequestIndex() > failIndex; i++);
+    final SnapshotChunkProto resumed = chunks.get(i);
+    Assert.assertEquals(chunks.get(0).getRequestId(), resumed.getRequestId());
+    Assert.assertEquals(SYNC_INTERVAL / CHUNK_SIZE, resumed.getRequestIndex());
+    Assert.assertEquals(SYNC_INTERVAL, resumed.getFileChunks(0).getOffset());
+  }
+
+  /** The number of the outstanding chunks is bounded when the follower is slow. */
+  @Test
+  public void testOutstandingChunksBounded() throws Exception {
+    runWithNewCluster(1, this::runTestOutstandingChunksBounded);
+  }
+
+  void runTestOutstandingChunksBounded(MiniRaftClusterWithGrpc cluster) throws Exception {
+    createSnapshotAndRestart(cluster);
+    final RaftServerImpl leader = cluster.getLeader();
+    final RaftPeerId s3 = RaftPeerId.valueOf("s3");
+    final String gaugeName = String.format(
+        GrpcServerMetrics.RATIS_GRPC_METRICS_LOG_APPENDER_PENDING_SNAPSHOT_CHUNKS_COUNT, s3);
+    final AtomicInteger max = new AtomicInteger();
+    // when the slow follower handles a chunk, sample the number of the outstanding chunks in the leader
+    RaftServerTestUtil.setInstallSnapshotInjection((localId, remoteId, args) -> {
+      if (s3.equals(localId)) {
+        new GrpcServerMetrics(leader.getMemberId().toString()).getRegistry()
+            .getGauges((name, metric) -> name.contains(gaugeName)).values()
+            .forEach(g -> max.accumulateAndGet(((Number) g.getValue()).intValue(), Math::max));
+        try {
+          TimeUnit.MILLISECONDS.sleep(20);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return false;
+    });
+
+    final MiniRaftCluster.PeerChanges change = addNewPeer(cluster);
+    RaftServerTestUtil.waitAndCheckNewConf(cluster, change.allPeersInNewConf, 0, null);
+    LOG.info("max outstanding chunks = {}", max);
+    Assert.assertTrue("max = " + max, max.get() <= MAX_OUTSTANDING_CHUNKS);
+    Assert.assertTrue("max = " + max, max.get() > 1);
+  }
+}
@@ -128,10 +128,6 @@ public class TestRaftServerWithGrpc extends BaseTest implements MiniRaftClusterW
     testFailureCase("appendEntries",
         () -> rpc.appendEntries(null),
         UnsupportedOperationException.class);
-
-    testFailureCase("installSnapshot",
-        () -> rpc.installSnapshot(null),
-        UnsupportedOperationException.class);
   }
 
   @Test
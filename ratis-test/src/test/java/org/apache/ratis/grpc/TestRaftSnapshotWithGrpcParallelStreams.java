@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc;
+
+import org.apache.ratis.conf.RaftProperties;
+import org.apache.ratis.io.MD5Hash;
+import org.apache.ratis.server.RaftServerConfigKeys;
+import org.apache.ratis.server.storage.FileInfo;
+import org.apache.ratis.statemachine.SimpleStateMachine4Testing;
+import org.apache.ratis.statemachine.SnapshotInfo;
+import org.apache.ratis.statemachine.impl.FileListSnapshotInfo;
+import org.apache.ratis.statemachine.impl.SingleFileSnapshotInfo;
+import org.apache.ratis.util.MD5FileUtil;
+import org.apache.ratis.util.SizeInBytes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Install snapshots with multiple files over parallel streams. */
+public class TestRaftSnapshotWithGrpcParallelStreams extends TestRaftSnapshotWithGrpc {
+  /** A state machine with some additional files in each snapshot. */
+  public static class MultiFileStateMachine extends SimpleStateMachine4Testing {
+    static final int NUM_EXTRA_FILES = 4;
+
+    @Override
+    public SnapshotInfo getLatestSnapshot() {
+      final SingleFileSnapshotInfo snapshot = getStateMachineStorage().getLatestSnapshot();
+      if (snapshot == null) {
+        return null;
+      }
+      final File snapshotFile = snapshot.getFile().getPath().toFile();
+      final List<FileInfo> files = new ArrayList<>();
+      for (int i = 0; i < NUM_EXTRA_FILES; i++) {
+        files.add(getExtraFile(snapshotFile, i));
+      }
+      files.add(snapshot.getFile());
+      return new FileListSnapshotInfo(files, snapshot.getTerm(), snapshot.getIndex());
+    }
+
+    /** Create the extra file if it does not exist, i.e. it is not yet created or installed. */
+    static FileInfo getExtraFile(File snapshotFile, int i) {
+      final File f = new File(snapshotFile.getParentFile(), "extra" + i + "_" + snapshotFile.getName());
+      try {
+        if (!f.exists()) {
+          final byte[] data = new byte[3000 + 1000 * i];
+          ThreadLocalRandom.current().nextBytes(data);
+          Files.write(f.toPath(), data);
+          MD5FileUtil.saveMD5File(f, MD5Hash.digest(data));
+        }
+        return new FileInfo(f.toPath(), MD5FileUtil.readStoredMd5ForFile(f));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to create " + f, e);
+      }
+    }
+  }
+
+  @Override
+  protected Class<? extends SimpleStateMachine4Testing> getStateMachineClass() {
+    return MultiFileStateMachine.class;
+  }
+
+  @Override
+  protected void setProperties(RaftProperties prop) {
+    GrpcConfigKeys.Server.setLeaderSnapshotStreams(prop, 2);
+    // each file is sent with multiple chunks
+    RaftServerConfigKeys.Log.Appender.setSnapshotChunkSizeMax(prop, SizeInBytes.valueOf("1KB"));
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc.server;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftTestUtil;
+import org.apache.ratis.RaftTestUtil.SimpleMessage;
+import org.apache.ratis.client.RaftClient;
+import org.apache.ratis.grpc.GrpcConfigKeys;
+import org.apache.ratis.grpc.MiniRaftClusterWithGrpc;
+import org.apache.ratis.grpc.metrics.GrpcServerMetrics;
+import org.apache.ratis.protocol.RaftGroup;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.server.impl.RaftServerImpl;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TestGrpcHeartbeatCoalescing extends BaseTest implements MiniRaftClusterWithGrpc.FactoryGet {
+  {
+    GrpcConfigKeys.Server.setHeartbeatCoalescingEnabled(getProperties(), true);
+  }
+
+  static final int NUM_GROUPS = 4;
+
+  @Test
+  public void testHeartbeatCoalescing() throws Exception {
+    runWithNewCluster(3, this::runTestHeartbeatCoalescing);
+  }
+
+  void runTestHeartbeatCoalescing(MiniRaftClusterWithGrpc cluster) throws Exception {
+    // add more groups with the same peers,
+    // so that a server is the leader of multiple groups and sends their heartbeats to the same followers
+    final List<RaftGroup> groups = new ArrayList<>();
+    groups.add(cluster.getGroup());
+    for (int i = 1; i < NUM_GROUPS; i++) {
+      final RaftGroup g = RaftGroup.valueOf(RaftGroupId.randomId(), cluster.getPeers());
+      try (RaftClient client = cluster.createClient(g)) {
+        for (RaftPeer p : g.getPeers()) {
+          client.groupAdd(g, p.getId());
+        }
+      }
+      groups.add(g);
+    }
+
+    final Map<RaftGroupId, RaftServerImpl> leaders = new HashMap<>();
+    final Map<RaftGroupId, Long> terms = new HashMap<>();
+    for (RaftGroup group : groups) {
+      final RaftGroupId groupId = group.getGroupId();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster, groupId);
+      leaders.put(groupId, leader);
+      terms.put(groupId, leader.getState().getCurrentTerm());
+      try (RaftClient client = cluster.createClient(leader.getId(), group)) {
+        Assert.assertTrue(client.send(new SimpleMessage("m")).isSuccess());
+      }
+    }
+    final long rpcsBefore = getCount(cluster, GrpcServerMetrics.RATIS_GRPC_COALESCED_HEARTBEATS_RPC_COUNT);
+    final long heartbeatsBefore = getCount(cluster, GrpcServerMetrics.RATIS_GRPC_COALESCED_HEARTBEATS_COUNT);
+
+    // the followers should not start an election when the heartbeats are coalesced
+    TimeUnit.SECONDS.sleep(2);
+    for (RaftGroup group : groups) {
+      final RaftGroupId groupId = group.getGroupId();
+      final RaftServerImpl leader = leaders.get(groupId);
+      Assert.assertEquals(leader.getId(), RaftTestUtil.waitForLeader(cluster, groupId).getId());
+      Assert.assertEquals(terms.get(groupId).longValue(), leader.getState().getCurrentTerm());
+    }
+
+    final long numRpcs = getCount(cluster, GrpcServerMetrics.RATIS_GRPC_COALESCED_HEARTBEATS_RPC_COUNT)
+        - rpcsBefore;
+    final long numHeartbeats = getCount(cluster, GrpcServerMetrics.RATIS_GRPC_COALESCED_HEARTBEATS_COUNT)
+        - heartbeatsBefore;
+    LOG.info("leaders = {}, numRpcs = {}, numHeartbeats = {}", leaders.values(), numRpcs, numHeartbeats);
+    Assert.assertTrue(numRpcs > 0);
+    // there are more groups than servers, so some heartbeats are sent in the same rpc
+    Assert.assertTrue("numHeartbeats = " + numHeartbeats + " <= numRpcs = " + numRpcs, numHeartbeats > numRpcs);
+  }
+
+  @Test
+  public void testCheckWindow() {
+    final TimeDuration timeoutMin = TimeDuration.valueOf(150, TimeUnit.MILLISECONDS);
+    final TimeDuration window = TimeDuration.valueOf(15, TimeUnit.MILLISECONDS);
+    Assert.assertSame(window, GrpcHeartbeatCoalescer.checkWindow(window, timeoutMin));
+    testFailureCase("window too large",
+        () -> GrpcHeartbeatCoalescer.checkWindow(TimeDuration.valueOf(16, TimeUnit.MILLISECONDS), timeoutMin),
+        IllegalArgumentException.class);
+  }
+
+  static long getCount(MiniRaftClusterWithGrpc cluster, String counter) {
+    return cluster.getPeers().stream()
+        .map(p -> new GrpcServerMetrics(p.getId().toString()).getRegistry())
+        .mapToLong(r -> r.counter(counter).getCount())
+        .sum();
+  }
+}
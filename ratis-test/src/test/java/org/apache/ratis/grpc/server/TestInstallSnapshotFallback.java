@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.grpc.server;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotReplyProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto.SnapshotChunkProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotResult;
+import org.apache.ratis.proto.RaftProtos.RaftRpcReplyProto;
+import org.apache.ratis.proto.grpc.RaftServerProtocolServiceGrpc.RaftServerProtocolServiceImplBase;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.thirdparty.io.grpc.Server;
+import org.apache.ratis.thirdparty.io.grpc.netty.NettyServerBuilder;
+import org.apache.ratis.thirdparty.io.grpc.stub.ClientCallStreamObserver;
+import org.apache.ratis.thirdparty.io.grpc.stub.ClientResponseObserver;
+import org.apache.ratis.thirdparty.io.grpc.stub.StreamObserver;
+import org.apache.ratis.util.IOUtils;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/** Install snapshots to a peer running an old version, which does not have the installSnapshotStream rpc. */
+public class TestInstallSnapshotFallback extends BaseTest {
+  /** The installSnapshot rpc of an old version, which has a single reply. */
+  static class OldInstallSnapshotService extends RaftServerProtocolServiceImplBase {
+    private final List<Integer> numRequestsPerCall = new ArrayList<>();
+
+    synchronized List<Integer> getNumRequestsPerCall() {
+      return new ArrayList<>(numRequestsPerCall);
+    }
+
+    @Override
+    public StreamObserver<InstallSnapshotRequestProto> installSnapshot(
+        StreamObserver<InstallSnapshotReplyProto> responseObserver) {
+      return new StreamObserver<InstallSnapshotRequestProto>() {
+        private InstallSnapshotRequestProto last;
+        private int count = 0;
+
+        @Override
+        public void onNext(InstallSnapshotRequestProto request) {
+          last = request;
+          count++;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+          synchronized (OldInstallSnapshotService.this) {
+            numRequestsPerCall.add(count);
+          }
+          responseObserver.onNext(InstallSnapshotReplyProto.newBuilder()
+              .setServerReply(RaftRpcReplyProto.newBuilder().setSuccess(true))
+              .setRequestIndex(last.getSnapshotChunk().getRequestIndex())
+              .setResult(InstallSnapshotResult.SUCCESS)
+              .build());
+          responseObserver.onCompleted();
+        }
+      };
+    }
+  }
+
+  static List<InstallSnapshotRequestProto> newRequests(int n) {
+    final List<InstallSnapshotRequestProto> requests = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      requests.add(InstallSnapshotRequestProto.newBuilder()
+          .setSnapshotChunk(SnapshotChunkProto.newBuilder().setRequestIndex(i).setDone(i == n - 1))
+          .build());
+    }
+    return requests;
+  }
+
+  /** Send the requests over a stream and wait for it to complete. */
+  static InstallSnapshotReplyProto installSnapshot(GrpcServerProtocolClient client,
+      List<InstallSnapshotRequestProto> requests) throws IOException {
+    final CompletableFuture<InstallSnapshotReplyProto> future = new CompletableFuture<>();
+    final StreamObserver<InstallSnapshotRequestProto> requestObserver = client.installSnapshot(
+        new ClientResponseObserver<InstallSnapshotRequestProto, InstallSnapshotReplyProto>() {
+          private volatile InstallSnapshotReplyProto last;
+
+          @Override
+          public void beforeStart(ClientCallStreamObserver<InstallSnapshotRequestProto> stream) {
+          }
+
+          @Override
+          public void onNext(InstallSnapshotReplyProto reply) {
+            last = reply;
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            future.completeExceptionally(t);
+          }
+
+          @Override
+          public void onCompleted() {
+            future.complete(last);
+          }
+        });
+    requests.forEach(requestObserver::onNext);
+    requestObserver.onCompleted();
+    return IOUtils.getFromFuture(future, () -> "installSnapshot");
+  }
+
+  @Test
+  public void testFallbackToInstallSnapshot() throws Exception {
+    final OldInstallSnapshotService service = new OldInstallSnapshotService();
+    final Server server = NettyServerBuilder.forPort(0).addService(service).build().start();
+    final RaftPeer peer = new RaftPeer(RaftPeerId.valueOf("old"), "localhost:" + server.getPort());
+    try (GrpcServerProtocolClient client = new GrpcServerProtocolClient(
+        peer, 1 << 20, TimeDuration.valueOf(3, TimeUnit.SECONDS), null)) {
+      // the first stream fails since the old peer does not have the installSnapshotStream rpc
+      testFailureFromUnimplemented(client);
+      Assert.assertTrue(service.getNumRequestsPerCall().isEmpty());
+
+      // the subsequent streams send the requests one by one using the installSnapshot rpc
+      final int n = 5;
+      final InstallSnapshotReplyProto reply = installSnapshot(client, newRequests(n));
+      Assert.assertTrue(reply.getServerReply().getSuccess());
+      Assert.assertEquals(n - 1, reply.getRequestIndex());
+      final List<Integer> numRequestsPerCall = service.getNumRequestsPerCall();
+      Assert.assertEquals(n, numRequestsPerCall.size());
+      numRequestsPerCall.forEach(count -> Assert.assertEquals(1, count.intValue()));
+    } finally {
+      server.shutdownNow();
+    }
+  }
+
+  void testFailureFromUnimplemented(GrpcServerProtocolClient client) {
+    try {
+      installSnapshot(client, newRequests(2));
+      Assert.fail("The old peer should not support installSnapshotStream");
+    } catch (IOException e) {
+      LOG.info("Expected", e);
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("UNIMPLEMENTED"));
+    }
+  }
+}
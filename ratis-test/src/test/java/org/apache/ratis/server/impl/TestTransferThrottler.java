@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.util.TimeDuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestTransferThrottler extends BaseTest {
+  static final long ONE_SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void testPerServer() {
+    final AtomicLong clock = new AtomicLong();
+    final TransferThrottler throttler = new TransferThrottler(1000, 0, TimeDuration.ZERO, clock::get);
+    Assert.assertTrue(throttler.isEnabled());
+    final TransferThrottler.Transfer t1 = throttler.newTransfer();
+    final TransferThrottler.Transfer t2 = throttler.newTransfer();
+
+    // a transfer larger than the bucket is allowed but the debt has to be paid
+    Assert.assertEquals(0, t1.tryAcquire(1500));
+    final long wait = t2.tryAcquire(1);
+    Assert.assertTrue(wait > ONE_SECOND_NANOS / 2);
+    Assert.assertTrue(wait <= ONE_SECOND_NANOS / 2 + 10);
+
+    clock.addAndGet(wait);
+    Assert.assertEquals(0, t2.tryAcquire(1));
+  }
+
+  @Test
+  public void testPerTransfer() {
+    final AtomicLong clock = new AtomicLong();
+    final TransferThrottler throttler = new TransferThrottler(0, 1000, TimeDuration.ZERO, clock::get);
+    Assert.assertTrue(throttler.isEnabled());
+    final TransferThrottler.Transfer t1 = throttler.newTransfer();
+    final TransferThrottler.Transfer t2 = throttler.newTransfer();
+
+    Assert.assertEquals(0, t1.tryAcquire(1000));
+    Assert.assertTrue(t1.tryAcquire(1) > 0);
+    // the transfers are independent
+    Assert.assertEquals(0, t2.tryAcquire(1000));
+
+    clock.addAndGet(ONE_SECOND_NANOS / 10);
+    Assert.assertEquals(0, t1.tryAcquire(100));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    final TransferThrottler throttler = new TransferThrottler(0, 0, TimeDuration.ZERO, System::nanoTime);
+    Assert.assertFalse(throttler.isEnabled());
+    final TransferThrottler.Transfer t = throttler.newTransfer();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(0, t.acquire(1L << 40));
+    }
+  }
+
+  @Test
+  public void testAcquire() throws Exception {
+    final TransferThrottler throttler = new TransferThrottler(1 << 20, 0, TimeDuration.ZERO, System::nanoTime);
+    final TransferThrottler.Transfer t = throttler.newTransfer();
+    Assert.assertEquals(0, t.acquire(1 << 19));
+    Assert.assertEquals(0, t.acquire(1 << 20));
+    // the previous acquire has a debt of 512KB, i.e. half a second
+    final long throttled = t.acquire(1);
+    Assert.assertTrue("throttled = " + throttled, throttled >= ONE_SECOND_NANOS / 4);
+  }
+
+  @Test
+  public void testAdjustRate() {
+    final long rate = 1600;
+    final AtomicLong clock = new AtomicLong();
+    final TransferThrottler throttler = new TransferThrottler(rate, 0,
+        TimeDuration.valueOf(10, TimeUnit.MILLISECONDS), clock::get);
+    final long slow = TimeUnit.MILLISECONDS.toNanos(50);
+    final long fast = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // not adjusted within the interval
+    throttler.onForegroundLatency(slow);
+    Assert.assertEquals(rate, throttler.getPerServerRate());
+
+    // halved when the latency is high, down to the minimum
+    long expected = rate;
+    for (int i = 0; i < 6; i++) {
+      clock.addAndGet(TransferThrottler.ADJUSTMENT_INTERVAL_NANOS);
+      throttler.onForegroundLatency(slow);
+      expected = Math.max(rate / TransferThrottler.MAX_RATE_REDUCTION, expected / 2);
+      Assert.assertEquals(expected, throttler.getPerServerRate());
+    }
+    Assert.assertEquals(rate / TransferThrottler.MAX_RATE_REDUCTION, throttler.getPerServerRate());
+
+    // increased gradually when the latency drops
+    for (int i = 0; i < 20; i++) {
+      throttler.onForegroundLatency(fast);
+    }
+    for (int i = 0; i < TransferThrottler.MAX_RATE_REDUCTION + 2; i++) {
+      clock.addAndGet(TransferThrottler.ADJUSTMENT_INTERVAL_NANOS);
+      throttler.onForegroundLatency(fast);
+      expected = Math.min(rate, expected + rate / TransferThrottler.MAX_RATE_REDUCTION);
+      Assert.assertEquals(expected, throttler.getPerServerRate());
+    }
+    Assert.assertEquals(rate, throttler.getPerServerRate());
+  }
+}
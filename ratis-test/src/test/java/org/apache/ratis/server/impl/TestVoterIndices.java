@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.impl;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.protocol.RaftGroupId;
+import org.apache.ratis.protocol.RaftGroupMemberId;
+import org.apache.ratis.protocol.RaftPeer;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.util.Timestamp;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestVoterIndices extends BaseTest {
+  static final RaftGroupMemberId LEADER = RaftGroupMemberId.valueOf(
+      RaftPeerId.valueOf("s0"), RaftGroupId.randomId());
+
+  static List<FollowerInfo> newFollowers(long... matchIndices) {
+    final List<FollowerInfo> followers = new ArrayList<>();
+    for (int i = 0; i < matchIndices.length; i++) {
+      final RaftPeer peer = new RaftPeer(RaftPeerId.valueOf("f" + i));
+      final FollowerInfo f = new FollowerInfo(LEADER, peer, Timestamp.currentTime(), 0L, true, 1000);
+      f.updateMatchIndex(matchIndices[i]);
+      followers.add(f);
+    }
+    return followers;
+  }
+
+  static void assertIndices(long min, long majority, long max, VoterIndices indices) {
+    Assert.assertTrue(indices.update());
+    Assert.assertEquals(min, indices.getMin());
+    Assert.assertEquals(majority, indices.getMajority());
+    Assert.assertEquals(max, indices.getMax());
+  }
+
+  @Test
+  public void testNonTransitional() {
+    final AtomicLong flushIndex = new AtomicLong(10);
+    final List<FollowerInfo> followers = newFollowers(3, 7, 5, 1);
+    final VoterIndices indices = new VoterIndices(followers, true, null, false,
+        FollowerInfo::getMatchIndex, flushIndex::get);
+    // sorted: 1, 3, 5, 7, 10
+    assertIndices(1, 5, 10, indices);
+
+    // the indices are re-read from the followers and the log in each update
+    followers.get(3).updateMatchIndex(8);
+    flushIndex.set(4);
+    // sorted: 3, 4, 5, 7, 8
+    assertIndices(3, 5, 8, indices);
+
+    // the leader is not a voter
+    final VoterIndices withoutSelf = new VoterIndices(followers, false, null, false,
+        FollowerInfo::getMatchIndex, flushIndex::get);
+    // sorted: 3, 5, 7, 8
+    assertIndices(3, 5, 8, withoutSelf);
+  }
+
+  @Test
+  public void testTransitional() {
+    final List<FollowerInfo> followers = newFollowers(3, 7, 5, 9);
+    final VoterIndices indices = new VoterIndices(followers.subList(0, 2), true,
+        followers.subList(2, 4), true, FollowerInfo::getMatchIndex, () -> 6L);
+    // new: 3, 6, 7; old: 5, 6, 9
+    assertIndices(3, 6, 7, indices);
+  }
+
+  @Test
+  public void testNoVoters() {
+    final List<FollowerInfo> followers = newFollowers(3);
+    Assert.assertFalse(new VoterIndices(Collections.emptyList(), false, null, false,
+        FollowerInfo::getMatchIndex, () -> 1L).update());
+    Assert.assertFalse(new VoterIndices(followers, true, Collections.emptyList(), false,
+        FollowerInfo::getMatchIndex, () -> 1L).update());
+  }
+}
@@ -209,6 +209,31 @@ public class TestSegmentedRaftLog extends BaseTest {
     }
   }
 
+  @Test
+  public void testFindIndexOfTerm() throws Exception {
+    // terms 1 to 4, each term has 100 entries
+    List<SegmentRange> ranges = prepareRanges(1, 5, 100, 0);
+    prepareLog(ranges);
+
+    try (SegmentedRaftLog raftLog = newSegmentedRaftLog()) {
+      raftLog.open(RaftLog.INVALID_LOG_INDEX, null);
+      for (SegmentRange r : ranges) {
+        Assert.assertEquals(r.start, raftLog.getFirstIndexOfTerm(r.term, 0, 399));
+        Assert.assertEquals(r.end, raftLog.getLastIndexOfTerm(r.term, Long.MAX_VALUE));
+      }
+
+      // the search range is bounded
+      Assert.assertEquals(150, raftLog.getFirstIndexOfTerm(2, 150, 399));
+      Assert.assertEquals(RaftLog.INVALID_LOG_INDEX, raftLog.getFirstIndexOfTerm(2, 200, 399));
+      Assert.assertEquals(150, raftLog.getLastIndexOfTerm(2, 150));
+      Assert.assertEquals(RaftLog.INVALID_LOG_INDEX, raftLog.getLastIndexOfTerm(2, 99));
+
+      // term not found
+      Assert.assertEquals(RaftLog.INVALID_LOG_INDEX, raftLog.getFirstIndexOfTerm(5, 0, 399));
+      Assert.assertEquals(RaftLog.INVALID_LOG_INDEX, raftLog.getLastIndexOfTerm(5, Long.MAX_VALUE));
+    }
+  }
+
   static List<LogEntryProto> prepareLogEntries(List<SegmentRange> slist,
       Supplier<String> stringSupplier) {
     List<LogEntryProto> eList = new ArrayList<>();
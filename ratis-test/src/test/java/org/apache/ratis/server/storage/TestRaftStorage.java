@@ -20,12 +20,17 @@ package org.apache.ratis.server.storage;
 import static org.apache.ratis.statemachine.impl.SimpleStateMachineStorage.SNAPSHOT_REGEX;
 
 import org.apache.ratis.BaseTest;
+import org.apache.ratis.io.MD5Hash;
 import org.apache.ratis.server.impl.RaftServerConstants.StartupOption;
 import org.apache.ratis.server.protocol.TermIndex;
+import org.apache.ratis.server.raftlog.RaftLog;
 import org.apache.ratis.server.storage.RaftStorageDirectory.StorageState;
+import org.apache.ratis.statemachine.SnapshotInfo;
 import org.apache.ratis.statemachine.impl.SimpleStateMachineStorage;
+import org.apache.ratis.statemachine.impl.SnapshotChainInfo;
 import org.apache.ratis.statemachine.impl.SnapshotRetentionPolicy;
 import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.MD5FileUtil;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -34,11 +39,15 @@ import org.mockito.internal.util.reflection.Whitebox;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Matcher;
+import java.util.stream.Collectors;
 
 /**
  * Test RaftStorage and RaftStorageDirectory
@@ -275,4 +284,73 @@ public class TestRaftStorage extends BaseTest {
     Assert.assertTrue(stateMachineDir.listFiles().length == 5);
 
   }
+
+  static File createSnapshotFile(File file) throws IOException {
+    final byte[] data = new byte[100];
+    ThreadLocalRandom.current().nextBytes(data);
+    Files.write(file.toPath(), data);
+    MD5FileUtil.saveMD5File(file, MD5Hash.digest(data));
+    return file;
+  }
+
+  static List<Path> getPaths(SnapshotInfo snapshot) {
+    return snapshot.getFiles().stream().map(FileInfo::getPath).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testSnapshotChain() throws IOException {
+    final SimpleStateMachineStorage smStorage = new SimpleStateMachineStorage();
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.REGULAR);
+    try {
+      smStorage.init(storage);
+      Assert.assertNull(smStorage.findLatestSnapshotChain());
+
+      // an old chain: 10 -> 20
+      createSnapshotFile(smStorage.getSnapshotFile(1, 10));
+      final File oldDelta = createSnapshotFile(smStorage.getDeltaFile(1, 10, 20));
+      // the latest chain: 30 -> 40 -> 50, where the delta 40 -> 45 is replaced by the delta 40 -> 50
+      createSnapshotFile(smStorage.getSnapshotFile(1, 30));
+      createSnapshotFile(smStorage.getDeltaFile(1, 30, 40));
+      createSnapshotFile(smStorage.getDeltaFile(2, 40, 45));
+      createSnapshotFile(smStorage.getDeltaFile(2, 40, 50));
+      // not connected to the latest chain
+      createSnapshotFile(smStorage.getDeltaFile(2, 35, 60));
+
+      smStorage.loadLatestSnapshot();
+      Assert.assertEquals(30, smStorage.getLatestSnapshot().getIndex());
+      final SnapshotChainInfo chain = smStorage.getLatestSnapshotChain();
+      Assert.assertEquals(TermIndex.newTermIndex(2, 50), chain.getTermIndex());
+      Assert.assertEquals(RaftLog.INVALID_LOG_INDEX, chain.getBaseIndex());
+      Assert.assertEquals(Arrays.asList(30L, 40L, 50L),
+          chain.getLinks().stream().map(SnapshotInfo::getIndex).collect(Collectors.toList()));
+      Assert.assertEquals(3, chain.getFiles().size());
+      chain.getFiles().forEach(f -> Assert.assertNotNull(f.getFileDigest()));
+
+      // incremental snapshots
+      final SnapshotInfo from30 = chain.getIncrementalSnapshot(30);
+      Assert.assertEquals(30, from30.getBaseIndex());
+      Assert.assertEquals(50, from30.getIndex());
+      Assert.assertEquals(chain.getFiles().subList(1, 3), from30.getFiles());
+      final SnapshotInfo from40 = chain.getIncrementalSnapshot(40);
+      Assert.assertEquals(40, from40.getBaseIndex());
+      Assert.assertEquals(chain.getFiles().subList(2, 3), from40.getFiles());
+      Assert.assertNull(chain.getIncrementalSnapshot(20));
+      Assert.assertNull(chain.getIncrementalSnapshot(45));
+      Assert.assertNull(chain.getIncrementalSnapshot(50));
+
+      // the deltas up to the oldest retained full snapshot are deleted
+      smStorage.cleanupOldSnapshots(new SnapshotRetentionPolicy() {
+        @Override
+        public int getNumSnapshotsRetained() {
+          return 1;
+        }
+      });
+      Assert.assertFalse(oldDelta.exists());
+      Assert.assertFalse(smStorage.getSnapshotFile(1, 10).exists());
+      smStorage.loadLatestSnapshot();
+      Assert.assertEquals(getPaths(chain), getPaths(smStorage.getLatestSnapshotChain()));
+    } finally {
+      storage.close();
+    }
+  }
 }
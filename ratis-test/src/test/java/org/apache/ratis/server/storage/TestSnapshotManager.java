@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.server.storage;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.io.MD5Hash;
+import org.apache.ratis.proto.RaftProtos.FileChunkProto;
+import org.apache.ratis.proto.RaftProtos.FileDigestAlgorithm;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto;
+import org.apache.ratis.proto.RaftProtos.InstallSnapshotRequestProto.SnapshotChunkProto;
+import org.apache.ratis.proto.RaftProtos.TermIndexProto;
+import org.apache.ratis.protocol.RaftPeerId;
+import org.apache.ratis.server.impl.RaftServerConstants.StartupOption;
+import org.apache.ratis.server.raftlog.RaftLog;
+import org.apache.ratis.statemachine.SnapshotInfo;
+import org.apache.ratis.statemachine.impl.BaseStateMachine;
+import org.apache.ratis.statemachine.impl.FileListSnapshotInfo;
+import org.apache.ratis.thirdparty.com.google.protobuf.ByteString;
+import org.apache.ratis.util.FileUtils;
+import org.apache.ratis.util.MD5FileUtil;
+import org.apache.ratis.util.SizeInBytes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Test {@link SnapshotManager}.
+ */
+public class TestSnapshotManager extends BaseTest {
+  static final int CHUNK_SIZE = 1024;
+
+  private File storageDir;
+
+  @Before
+  public void setup() {
+    storageDir = getTestDir();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (storageDir != null) {
+      FileUtils.deleteFully(storageDir.getParentFile());
+    }
+  }
+
+  static List<FileChunkProto> newChunks(String filename, byte[] data) {
+    return newChunks(filename, data, FileDigestAlgorithm.MD5);
+  }
+
+  static List<FileChunkProto> newChunks(String filename, byte[] data, FileDigestAlgorithm algorithm) {
+    final FileDigester digester = FileDigester.newInstance(algorithm);
+    digester.update(ByteBuffer.wrap(data));
+    final ByteString digest = digester.digest();
+    final List<FileChunkProto> chunks = new ArrayList<>();
+    for (int offset = 0; offset < data.length; offset += CHUNK_SIZE) {
+      final int length = Math.min(CHUNK_SIZE, data.length - offset);
+      chunks.add(FileChunkProto.newBuilder()
+          .setFilename(filename)
+          .setFileDigest(digest)
+          .setDigestAlgorithm(algorithm)
+          .setChunkIndex(offset / CHUNK_SIZE)
+          .setOffset(offset)
+          .setData(ByteString.copyFrom(data, offset, length))
+          .setDone(offset + length == data.length)
+          .build());
+    }
+    return chunks;
+  }
+
+  static InstallSnapshotRequestProto newRequest(int requestIndex, FileChunkProto chunk, boolean done) {
+    return newRequest(requestIndex, chunk, done, RaftLog.INVALID_LOG_INDEX);
+  }
+
+  static InstallSnapshotRequestProto newRequest(int requestIndex, FileChunkProto chunk, boolean done,
+      long baseIndex) {
+    final SnapshotChunkProto.Builder b = SnapshotChunkProto.newBuilder()
+        .setRequestId("test")
+        .setRequestIndex(requestIndex)
+        .setTermIndex(TermIndexProto.newBuilder().setTerm(1).setIndex(100))
+        .addFileChunks(chunk)
+        .setDone(done);
+    if (baseIndex != RaftLog.INVALID_LOG_INDEX) {
+      b.setIncremental(true).setBaseIndex(baseIndex);
+    }
+    return InstallSnapshotRequestProto.newBuilder().setSnapshotChunk(b).build();
+  }
+
+  /** A state machine with the latest snapshot at the given index. */
+  static BaseStateMachine newStateMachine(long snapshotIndex) {
+    return new BaseStateMachine() {
+      @Override
+      public SnapshotInfo getLatestSnapshot() {
+        return new FileListSnapshotInfo(Collections.emptyList(), 1, snapshotIndex);
+      }
+    };
+  }
+
+  @Test
+  public void testCrc32cDigest() {
+    final FileDigester digester = FileDigester.newInstance(FileDigestAlgorithm.CRC32C);
+    // a read-only buffer, as the chunk data, does not have an accessible array
+    digester.update(ByteBuffer.wrap("123456789".getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer());
+    // the standard check value of CRC-32C
+    Assert.assertEquals(ByteString.copyFrom(new byte[]{(byte) 0xE3, 0x06, (byte) 0x92, (byte) 0x83}),
+        digester.digest());
+  }
+
+  /** A file with CRC32C digests is verified without an md5 file created; a mismatched digest fails it. */
+  @Test
+  public void testInstallWithCrc32c() throws Exception {
+    final byte[] data = new byte[CHUNK_SIZE * 3 + 1];
+    ThreadLocalRandom.current().nextBytes(data);
+    final List<FileChunkProto> chunks = newChunks("sm/file", data, FileDigestAlgorithm.CRC32C);
+
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.FORMAT);
+    try {
+      final SnapshotManager manager = new SnapshotManager(storage, RaftPeerId.valueOf("s0"));
+      for (int i = 0; i < chunks.size(); i++) {
+        manager.installSnapshot(new BaseStateMachine(), newRequest(i, chunks.get(i), i == chunks.size() - 1));
+      }
+      final File f = new File(storage.getStorageDir().getStateMachineDir(), "file");
+      Assert.assertArrayEquals(data, Files.readAllBytes(f.toPath()));
+      Assert.assertFalse(MD5FileUtil.getDigestFileForFile(f).exists());
+
+      // corrupt the digest of the last chunk
+      final FileChunkProto last = chunks.get(chunks.size() - 1);
+      final byte[] corrupted = last.getFileDigest().toByteArray();
+      corrupted[0] ^= 1;
+      chunks.set(chunks.size() - 1, last.toBuilder().setFileDigest(ByteString.copyFrom(corrupted)).build());
+      final SnapshotManager another = new SnapshotManager(storage, RaftPeerId.valueOf("s0"));
+      for (int i = 0; i < chunks.size() - 1; i++) {
+        another.installSnapshot(new BaseStateMachine(), newRequest(i, chunks.get(i), false));
+      }
+      testFailureCase("CRC32C mismatch", () -> another.installSnapshot(new BaseStateMachine(),
+          newRequest(chunks.size() - 1, chunks.get(chunks.size() - 1), true)), IOException.class);
+    } finally {
+      storage.close();
+    }
+  }
+
+  /** The chunks of different files may interleave when they are sent over multiple streams. */
+  @Test
+  public void testInstallInterleavedFiles() throws Exception {
+    final int numFiles = 3;
+    final byte[][] data = new byte[numFiles][];
+    final List<List<FileChunkProto>> chunks = new ArrayList<>();
+    for (int i = 0; i < numFiles; i++) {
+      data[i] = new byte[CHUNK_SIZE * (i + 2) + i];
+      ThreadLocalRandom.current().nextBytes(data[i]);
+      chunks.add(newChunks("sm/file" + i, data[i]));
+    }
+
+    // send the chunks of the files in a round-robin manner
+    final List<InstallSnapshotRequestProto> requests = new ArrayList<>();
+    for (int c = 0; requests.size() < chunks.stream().mapToInt(List::size).sum(); c++) {
+      for (List<FileChunkProto> fileChunks : chunks) {
+        if (c < fileChunks.size()) {
+          requests.add(newRequest(requests.size(), fileChunks.get(c), false));
+        }
+      }
+    }
+    // the last request completes the installation
+    final int last = requests.size() - 1;
+    requests.set(last, newRequest(last, requests.get(last).getSnapshotChunk().getFileChunks(0), true));
+
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.FORMAT);
+    try {
+      final SnapshotManager manager = new SnapshotManager(storage, RaftPeerId.valueOf("s0"));
+      for (InstallSnapshotRequestProto request : requests) {
+        manager.installSnapshot(new BaseStateMachine(), request);
+      }
+
+      final File smDir = storage.getStorageDir().getStateMachineDir();
+      for (int i = 0; i < numFiles; i++) {
+        final File f = new File(smDir, "file" + i);
+        Assert.assertArrayEquals(data[i], Files.readAllBytes(f.toPath()));
+        Assert.assertEquals(MD5Hash.digest(data[i]), MD5FileUtil.readStoredMd5ForFile(f));
+      }
+    } finally {
+      storage.close();
+    }
+  }
+
+  /** The chunks of different files, except for the first and the last requests, may be installed concurrently. */
+  @Test
+  public void testInstallFilesConcurrently() throws Exception {
+    final int numFiles = 4;
+    final byte[][] data = new byte[numFiles][];
+    final List<List<FileChunkProto>> chunks = new ArrayList<>();
+    for (int i = 0; i < numFiles; i++) {
+      data[i] = new byte[CHUNK_SIZE * 8 + i];
+      ThreadLocalRandom.current().nextBytes(data[i]);
+      chunks.add(newChunks("sm/file" + i, data[i]));
+    }
+    final List<FileChunkProto> firstFile = chunks.get(0);
+    final List<FileChunkProto> lastFile = chunks.get(numFiles - 1);
+
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.FORMAT);
+    final ExecutorService executor = Executors.newFixedThreadPool(numFiles);
+    try {
+      final SnapshotManager manager = new SnapshotManager(storage, RaftPeerId.valueOf("s0"));
+      final BaseStateMachine sm = new BaseStateMachine();
+      manager.installSnapshot(sm, newRequest(0, firstFile.get(0), false));
+
+      // the remaining chunks of each file are sent by a thread using a disjoint range of request indices
+      final List<Future<Void>> futures = new ArrayList<>();
+      int requestIndex = 1;
+      for (int i = 0; i < numFiles; i++) {
+        final List<FileChunkProto> fileChunks = chunks.get(i).subList(
+            i == 0? 1: 0, chunks.get(i).size() - (i == numFiles - 1? 1: 0));
+        final int startIndex = requestIndex;
+        requestIndex += fileChunks.size();
+        futures.add(executor.submit(() -> {
+          for (int c = 0; c < fileChunks.size(); c++) {
+            manager.installSnapshot(sm, newRequest(startIndex + c, fileChunks.get(c), false));
+          }
+          return null;
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+      manager.installSnapshot(sm, newRequest(requestIndex, lastFile.get(lastFile.size() - 1), true));
+
+      final File smDir = storage.getStorageDir().getStateMachineDir();
+      for (int i = 0; i < numFiles; i++) {
+        final File f = new File(smDir, "file" + i);
+        Assert.assertArrayEquals(data[i], Files.readAllBytes(f.toPath()));
+        Assert.assertEquals(MD5Hash.digest(data[i]), MD5FileUtil.readStoredMd5ForFile(f));
+      }
+    } finally {
+      executor.shutdown();
+      storage.close();
+    }
+  }
+
+  /** A file is forced to the disk after every sync interval bytes and at its last chunk. */
+  @Test
+  public void testSyncInterval() throws Exception {
+    final byte[] data = new byte[CHUNK_SIZE * 5 + 1];
+    ThreadLocalRandom.current().nextBytes(data);
+    final List<FileChunkProto> chunks = newChunks("sm/file", data);
+
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.FORMAT);
+    try {
+      final SnapshotManager manager = new SnapshotManager(storage, RaftPeerId.valueOf("s0"),
+          SizeInBytes.valueOf(2 * CHUNK_SIZE));
+      final List<Boolean> synced = new ArrayList<>();
+      for (int i = 0; i < chunks.size(); i++) {
+        synced.add(manager.installSnapshot(new BaseStateMachine(),
+            newRequest(i, chunks.get(i), i == chunks.size() - 1)));
+      }
+      Assert.assertEquals(Arrays.asList(false, true, false, true, false, true), synced);
+    } finally {
+      storage.close();
+    }
+  }
+
+  @Test
+  public void testMissingChunk() throws Exception {
+    final byte[] data = new byte[CHUNK_SIZE * 3];
+    ThreadLocalRandom.current().nextBytes(data);
+    final List<FileChunkProto> chunks = newChunks("sm/file", data);
+
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.FORMAT);
+    try {
+      final SnapshotManager manager = new SnapshotManager(storage, RaftPeerId.valueOf("s0"));
+      manager.installSnapshot(new BaseStateMachine(), newRequest(0, chunks.get(0), false));
+      try {
+        manager.installSnapshot(new BaseStateMachine(), newRequest(1, chunks.get(2), true));
+        Assert.fail("the installation should fail since a chunk is missing");
+      } catch (IOException e) {
+        LOG.info("Expected", e);
+      }
+    } finally {
+      storage.close();
+    }
+  }
+
+  @Test
+  public void testInstallIncrementalSnapshot() throws Exception {
+    final byte[] data = new byte[CHUNK_SIZE * 2 + 1];
+    ThreadLocalRandom.current().nextBytes(data);
+    final List<FileChunkProto> chunks = newChunks("sm/delta", data);
+
+    final RaftStorage storage = new RaftStorage(storageDir, StartupOption.FORMAT);
+    try {
+      final File smDir = storage.getStorageDir().getStateMachineDir();
+      final File base = new File(smDir, "base");
+      Files.write(base.toPath(), data);
+      final SnapshotManager manager = new SnapshotManager(storage, RaftPeerId.valueOf("s0"));
+
+      // the base snapshot does not match
+      try {
+        manager.installSnapshot(newStateMachine(40), newRequest(0, chunks.get(0), false, 50));
+        Assert.fail("the installation should fail since the base snapshot does not match");
+      } catch (IOException e) {
+        LOG.info("Expected", e);
+      }
+
+      final BaseStateMachine sm = newStateMachine(50);
+      for (int i = 0; i < chunks.size(); i++) {
+        manager.installSnapshot(sm, newRequest(i, chunks.get(i), i == chunks.size() - 1, 50));
+      }
+
+      // the delta is added to the state machine directory without removing the base snapshot
+      Assert.assertArrayEquals(data, Files.readAllBytes(base.toPath()));
+      final File delta = new File(smDir, "delta");
+      Assert.assertArrayEquals(data, Files.readAllBytes(delta.toPath()));
+      Assert.assertEquals(MD5Hash.digest(data), MD5FileUtil.readStoredMd5ForFile(delta));
+    } finally {
+      storage.close();
+    }
+  }
+}
@@ -34,7 +34,9 @@ import org.apache.ratis.server.RaftServerConfigKeys;
 import org.apache.ratis.server.impl.RaftServerImpl;
 import org.apache.ratis.server.impl.RaftServerProxy;
 import org.apache.ratis.server.impl.RaftServerTestUtil;
+import org.apache.ratis.server.protocol.TermIndex;
 import org.apache.ratis.server.simulation.MiniRaftClusterWithSimulatedRpc;
+import org.apache.ratis.util.JavaUtils;
 import org.apache.ratis.util.Log4jUtils;
 import org.junit.*;
 
@@ -45,6 +47,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
@@ -198,4 +201,58 @@ public class TestStateMachine extends BaseTest implements MiniRaftClusterWithSim
       }
     }
   }
+
+  /** Take snapshots asynchronously; the snapshots are completed only when they are released. */
+  public static class AsyncSnapshotStateMachine extends SimpleStateMachine4Testing {
+    public static AsyncSnapshotStateMachine get(RaftServerImpl s) {
+      return (AsyncSnapshotStateMachine)s.getStateMachine();
+    }
+
+    private final AtomicInteger numSnapshots = new AtomicInteger();
+    private final CompletableFuture<Void> released = new CompletableFuture<>();
+    private final CompletableFuture<TermIndex> firstFence = new CompletableFuture<>();
+
+    @Override
+    public CompletableFuture<Long> takeSnapshotAsync() {
+      numSnapshots.incrementAndGet();
+      final TermIndex fence = getLastAppliedTermIndex();
+      firstFence.complete(fence);
+      return released.thenApplyAsync(dummy -> takeSnapshot(fence));
+    }
+  }
+
+  @Test
+  public void testTakeSnapshotAsync() throws Exception {
+    final RaftProperties properties = new RaftProperties();
+    properties.setClass(MiniRaftCluster.STATEMACHINE_CLASS_KEY, AsyncSnapshotStateMachine.class, StateMachine.class);
+    RaftServerConfigKeys.Snapshot.setAutoTriggerEnabled(properties, true);
+    RaftServerConfigKeys.Snapshot.setAutoTriggerThreshold(properties, 10L);
+
+    try(MiniRaftClusterWithSimulatedRpc cluster = getFactory().newCluster(NUM_SERVERS, properties)) {
+      cluster.start();
+      final RaftServerImpl leader = RaftTestUtil.waitForLeader(cluster);
+      final AsyncSnapshotStateMachine sm = AsyncSnapshotStateMachine.get(leader);
+
+      // the transactions are applied while the snapshot is in progress
+      try(final RaftClient client = cluster.createClient(leader.getId())) {
+        for (RaftTestUtil.SimpleMessage m : RaftTestUtil.SimpleMessage.create(30)) {
+          assertTrue(client.send(m).isSuccess());
+        }
+      }
+      assertEquals(1, sm.numSnapshots.get());
+      assertNull(sm.getStateMachineStorage().getLatestSnapshot());
+      final long applied = sm.getLastAppliedTermIndex().getIndex();
+
+      sm.released.complete(null);
+      JavaUtils.attempt(() -> assertNotNull(sm.getStateMachineStorage().getLatestSnapshot()),
+          10, ONE_SECOND, "snapshot", LOG);
+      // the snapshot is taken at the fence index but not the index applied later;
+      // note that another snapshot may be triggered once the first one completes.
+      final long snapshotIndex = sm.firstFence.get().getIndex();
+      assertTrue(sm.getStateMachineStorage().getSnapshotFile(sm.firstFence.get().getTerm(), snapshotIndex).exists());
+      // the log starts at index 0, so the snapshot is triggered at index 9
+      assertTrue(snapshotIndex >= 9);
+      assertTrue(snapshotIndex < applied);
+    }
+  }
 }
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ratis.util;
+
+import org.apache.ratis.BaseTest;
+import org.apache.ratis.RaftConfigKeys;
+import org.apache.ratis.conf.RaftProperties;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestHashedWheelTimer extends BaseTest {
+  static final TimeDuration TICK = TimeDuration.valueOf(10, TimeUnit.MILLISECONDS);
+
+  static HashedWheelTimer newTimer() {
+    // a small wheel so that the timeouts take multiple rounds
+    return new HashedWheelTimer("test", TICK, 8, 2, 2);
+  }
+
+  @Test(timeout = 5000)
+  public void testTimeouts() throws Exception {
+    try (HashedWheelTimer timer = newTimer()) {
+      final int n = 20;
+      final long[] fired = new long[n];
+      final CountDownLatch latch = new CountDownLatch(n);
+      final long start = System.nanoTime();
+      for (int i = 0; i < n; i++) {
+        final int id = i;
+        timer.onTimeout(TimeDuration.valueOf(20 * i, TimeUnit.MILLISECONDS), () -> {
+          fired[id] = System.nanoTime();
+          latch.countDown();
+        }, LOG, () -> "Failed to run task " + id);
+      }
+      latch.await();
+
+      for (int i = 0; i < n; i++) {
+        final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(fired[i] - start);
+        Assert.assertTrue("task " + i + " fired early at " + elapsedMs + "ms", elapsedMs >= 20 * i);
+      }
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testCancel() throws Exception {
+    try (HashedWheelTimer timer = newTimer()) {
+      final AtomicInteger fired = new AtomicInteger();
+      final List<HashedWheelTimer.Timeout> timeouts = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        timeouts.add(timer.onTimeout(TimeDuration.valueOf(100 + 10 * i, TimeUnit.MILLISECONDS),
+            fired::incrementAndGet, LOG, () -> "Failed"));
+      }
+      // cancel the even timeouts, some before and some after they are moved to the wheel
+      for (int i = 0; i < timeouts.size(); i += 2) {
+        Assert.assertTrue(timeouts.get(i).cancel());
+        Assert.assertFalse(timeouts.get(i).cancel());
+        TICK.sleep();
+      }
+
+      JavaUtils.attempt(() -> Assert.assertEquals(5, fired.get()), 50, TICK, "fired", LOG);
+      TimeDuration.valueOf(100, TimeUnit.MILLISECONDS).sleep();
+      Assert.assertEquals(5, fired.get());
+      for (int i = 0; i < timeouts.size(); i++) {
+        Assert.assertEquals(i % 2 == 0, timeouts.get(i).isCancelled());
+        Assert.assertEquals(i % 2 == 1, timeouts.get(i).isExpired());
+      }
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testSlowTask() throws Exception {
+    try (HashedWheelTimer timer = newTimer()) {
+      final CountDownLatch blocked = new CountDownLatch(1);
+      timer.onTimeout(TimeDuration.ZERO, blocked::await, LOG, () -> "Failed to block");
+
+      // a blocked task does not delay the other tasks
+      final AtomicBoolean fired = new AtomicBoolean();
+      timer.onTimeout(TICK, () -> fired.set(true), LOG, () -> "Failed");
+      JavaUtils.attempt(() -> Assert.assertTrue(fired.get()), 50, TICK, "fired", LOG);
+      blocked.countDown();
+
+      for (int i = 0; i < timer.getNumShards(); i++) {
+        Assert.assertFalse(timer.getLag(i).isNegative());
+      }
+    }
+  }
+
+  /** The callers share a timer only if they have the same parameters. */
+  @Test
+  public void testGetInstance() {
+    final RaftProperties properties = new RaftProperties();
+    final HashedWheelTimer timer = HashedWheelTimer.getInstance(properties);
+    Assert.assertSame(timer, HashedWheelTimer.getInstance(new RaftProperties()));
+
+    RaftConfigKeys.Timer.setShards(properties, RaftConfigKeys.Timer.SHARDS_DEFAULT + 1);
+    final HashedWheelTimer other = HashedWheelTimer.getInstance(properties);
+    Assert.assertNotSame(timer, other);
+    Assert.assertEquals(RaftConfigKeys.Timer.SHARDS_DEFAULT + 1, other.getNumShards());
+    Assert.assertSame(other, HashedWheelTimer.getInstance(properties));
+  }
+}